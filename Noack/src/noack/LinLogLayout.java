@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.StringTokenizer;
 
 
@@ -165,11 +166,27 @@ public class LinLogLayout {
 	 * @return map from each node to a random initial positions.
 	 */
 	private static Map<Node,double[]> makeInitialPositions(List<Node> nodes, boolean is3d) {
+	    return makeInitialPositions(nodes, is3d, new Random());
+	}
+	
+	/**
+	 * Returns, for each node in a given list,
+	 * a random initial position in two- or three-dimensional space,
+	 * drawn from the given random number generator.  With a seeded
+	 * generator, the layouts of different runs (e.g. of the sequential
+	 * and the parallel <code>MinimizerBarnesHut</code>) can be compared. 
+	 * 
+	 * @param nodes node list.
+     * @param is3d initialize 3 (instead of 2) dimension with random numbers.
+     * @param random random number generator.
+	 * @return map from each node to a random initial positions.
+	 */
+	public static Map<Node,double[]> makeInitialPositions(List<Node> nodes, boolean is3d, Random random) {
 	    Map<Node,double[]> result = new HashMap<Node,double[]>();
 		for (Node node : nodes) {
-            double[] position = { Math.random() - 0.5,
-                                  Math.random() - 0.5,
-                                  is3d ? Math.random() - 0.5 : 0.0 };
+            double[] position = { random.nextDouble() - 0.5,
+                                  random.nextDouble() - 0.5,
+                                  is3d ? random.nextDouble() - 0.5 : 0.0 };
             result.put(node, position);
 		}
 		return result;
@@ -37,7 +37,7 @@ public class LinLogLayoutJDBC {
     new MinimizerBarnesHut(nodes, edges, 0.0, 1.0, 0.05).
         minimizeEnergy(nodeToPosition, iter);
     nodeToCluster = 
-      new OptimizerModularity().execute(nodes, edges, false);
+      new OptimizerModularity().executeMultiLevel(nodes, edges, false);
     frame = new GraphFrame(nodeToPosition, nodeToCluster);
   }
   
@@ -13,47 +13,77 @@ package noack;
 //
 //You should have received a copy of the GNU Lesser General Public
 //License along with this library; if not, write to the Free Software
-//Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA 
+//Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
 
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
  * Minimizer for the LinLog energy model and its generalizations,
- *   for computing two- and three-dimensional graph layouts.  
- *   Based on the Barnes-Hut algorithm.  
- * For more information about the LinLog energy model, 
+ *   for computing two- and three-dimensional graph layouts.
+ *   Based on the Barnes-Hut algorithm.
+ * For more information about the LinLog energy model,
  *   see the (freely downloadable) article
  *   Andreas Noack: <a href="http://jgaa.info/volume11.html">
  *   "Energy Models for Graph Clustering"</a>,
  *   Journal of Graph Algorithms and Applications 11(2):453-480, 2007.
+ * The minimizer works on an <code>IndexedGraph</code>,
+ *   with the positions stored in one array of 3 coordinates per node;
+ *   the methods with <code>Node</code> objects and position maps
+ *   convert from and to this form.
  *
  * @author Andreas Noack (an@informatik.tu-cottbus.de)
  * @version 14.11.2008
  */
 public class MinimizerBarnesHut {
-    /** Nodes with weights specifying their repulsion strength. */
-    private final List<Node> nodes;
+    /** Graph with node weights specifying their repulsion strength,
+        and with the attraction edges. */
+    private final IndexedGraph graph;
+    /** Number of nodes. */
+    private final int nrNodes;
+    /** Weight of each node. */
+    private final double[] nodeWeight;
     /** Factor for repulsion energy. */
     private double repuFactor;
     /** Exponent of the Euclidean distance in the repulsion energy. */
     private double repuExponent;
-    
-	/** Attraction edges for each node. */ 
-	private final Map<Node,Collection<Edge>> attrEdges;
+
+	/** Index of the first attraction edge of each node. */
+	private final int[] attrStart;
+	/** End node of each attraction edge. */
+	private final int[] attrEnd;
+	/** Weight of each attraction edge. */
+	private final double[] attrWeight;
 	/** Exponent of the Euclidean distance in the attraction energy. */
 	private double attrExponent;
-	
+
     /** Position of the barycenter of the nodes. */
     private final double[] baryCenter = new double[3];
     /** Factor for the gravitation energy = attraction to the barycenter.
         Set to 0.0 for no gravitation. */
     private double gravFactor;
-	
+
     /** Number of coordinates of each node. */
     private final int nrDims = 3;
-    /** Position in 3-dimensional space for each node. */
-    private Map<Node,double[]> positions;
+    /** Coordinates of the nodes in 3-dimensional space,
+        node <code>i</code> at <code>3*i</code> to <code>3*i+2</code>. */
+    private double[] positions;
+
+    /** Octtree of the current iteration, reused across iterations. */
+    private final OctTree octTree = new OctTree();
+    /** Octtrees of the cuboids on the second level, for the parallel build. */
+    private final OctTree[] cellTrees = new OctTree[64];
+    /** Nodes in the order of the leafs of the octtree, nodes with
+        weight 0.0 last, in which order the parallel minimization
+        moves them. */
+    private int[] moveOrder;
+
+    /** Number of threads for the parallel minimization,
+        0 for the sequential minimization. */
+    private int nrThreads = 0;
+    /** Worker threads during the parallel minimization, otherwise <code>null</code>. */
+    private ExecutorService executor;
 
 
 	/**
@@ -63,54 +93,95 @@ public class MinimizerBarnesHut {
      *   is proportional to the product of their weights.
      *   It is recommended to use so-called "edge-repulsion", which means
      *   to set the weight of each node to the sum of the weights
-     *   of its attraction edges.  Weights must not be negative.   
+     *   of its attraction edges.  Weights must not be negative.
 	 * @param attrEdges  attraction edges.
-     *   Omit edges with weight 0.0 (i.e. non-edges).  
+     *   Omit edges with weight 0.0 (i.e. non-edges).
      *   For unweighted graphs use weight 1.0 for all edges.
-	 *   Weights must not be negative.   
-	 *   Weights must be symmetric, i.e. the weight  
+	 *   Weights must not be negative.
+	 *   Weights must be symmetric, i.e. the weight
 	 *   from node <code>n1</code> to node <code>n2</code> must be equal to
-	 *   the weight from node <code>n2</code> to node <code>n1</code>. 
+	 *   the weight from node <code>n2</code> to node <code>n1</code>.
 	 * @param repuExponent exponent of the distance in the repulsion energy.
-	 *   Exception: The value 0.0 corresponds to logarithmic repulsion.  
+	 *   Exception: The value 0.0 corresponds to logarithmic repulsion.
 	 *   Is 0.0 in both the LinLog and the Fruchterman-Reingold energy model.
 	 *   Negative values are permitted.
 	 * @param attrExponent exponent of the distance in the attraction energy.
 	 *   Is 1.0 in the LinLog model (which is used for computing clusters,
-	 *   i.e. dense subgraphs), 
-	 *   and 3.0 in standard energy model of Fruchterman and Reingold.  
+	 *   i.e. dense subgraphs),
+	 *   and 3.0 in standard energy model of Fruchterman and Reingold.
 	 *   Must be greater than <code>repuExponent</code>.
      * @param gravFactor  factor for the gravitation energy.
      *   Gravitation attracts each node to the barycenter of all nodes,
      *   to prevent distances between unconnected graph components
-     *   from approaching infinity.  
+     *   from approaching infinity.
      *   Typical values are 0.0 if the graph is guaranteed to be connected,
      *   and positive values significantly smaller 1.0 (e.g. 0.05) otherwise.
 	 */
-	public MinimizerBarnesHut( 
-            final Collection<Node> nodes, final Collection<Edge> attrEdges, 
+	public MinimizerBarnesHut(
+            final Collection<Node> nodes, final Collection<Edge> attrEdges,
             final double repuExponent, final double attrExponent, final double gravFactor) {
-        this.nodes = new ArrayList<Node>(nodes);
-        this.attrEdges = new HashMap<Node,Collection<Edge>>();
-        for (Node node : nodes) this.attrEdges.put(node, new ArrayList<Edge>());
-        for (Edge edge : attrEdges) {
-            if (edge.startNode == edge.endNode) continue;
-            this.attrEdges.get(edge.startNode).add(edge);
-        }
+		this(new IndexedGraph(nodes, attrEdges, false), repuExponent, attrExponent, gravFactor);
+	}
+
+	/**
+	 * Initializes the attributes from a graph in index-based form.
+	 * @param graph  graph whose node weights specify the repulsion strengths
+	 *   and whose edges are the attraction edges, see the other constructor.
+	 *   Loops are ignored.
+	 * @param repuExponent exponent of the distance in the repulsion energy.
+	 * @param attrExponent exponent of the distance in the attraction energy.
+	 * @param gravFactor  factor for the gravitation energy.
+	 */
+	public MinimizerBarnesHut(final IndexedGraph graph,
+            final double repuExponent, final double attrExponent, final double gravFactor) {
+		this.graph = graph;
+		this.nrNodes = graph.nrNodes;
+		this.nodeWeight = graph.nodeWeight;
+		this.attrStart = graph.edgeStart;
+		this.attrEnd = graph.edgeEnd;
+		this.attrWeight = graph.edgeWeight;
         this.repuExponent = repuExponent;
 		this.attrExponent = attrExponent;
 		this.gravFactor = gravFactor;
 	}
 
 
+	/**
+	 * Sets the number of threads used by <code>minimizeEnergy</code>.
+	 * With the default value 0, the nodes are moved one after the other,
+	 * and each move already sees the moves made before it in the same iteration.
+	 * With a positive value, the octtree is built in parallel,
+	 * and in each iteration all nodes are moved at once (Jacobi-style)
+	 * from the positions of the previous iteration.
+	 * The parallel minimization computes the same layout for any positive
+	 * number of threads, but not the same layout as the sequential one.
+	 * @param nrThreads  number of threads, 0 for the sequential minimization.
+	 *   Must not be negative.
+	 */
+	public void setNrThreads(final int nrThreads) {
+		if (nrThreads < 0) {
+			throw new IllegalArgumentException("Negative number of threads: " + nrThreads);
+		}
+		this.nrThreads = nrThreads;
+	}
+
+	/**
+	 * Returns the number of threads used by <code>minimizeEnergy</code>.
+	 * @return number of threads, 0 for the sequential minimization
+	 */
+	public int getNrThreads() {
+		return nrThreads;
+	}
+
+
 	/**
 	 * Iteratively minimizes energy using the Barnes-Hut algorithm.
-	 * Starts from the positions in the parameter <code>positions</code>, 
+	 * Starts from the positions in the parameter <code>positions</code>,
 	 * and stores the computed positions in <code>positions</code>.
-     * @param positions  position in 3D space for each node.  
-     *   Is not copied and serves as input and output parameter.  
-     *   Each position must be a <code>double[3]</code>. 
-     *   If the input is two-dimensional (i.e. the third array element 
+     * @param positions  position in 3D space for each node.
+     *   Is not copied and serves as input and output parameter.
+     *   Each position must be a <code>double[3]</code>.
+     *   If the input is two-dimensional (i.e. the third array element
      *   is 0.0 for all nodes), the output is also two-dimensional.
      *   Different nodes with nonzero weights must have different positions.
      *   Random initial positions are appropriate.
@@ -118,7 +189,48 @@ public class MinimizerBarnesHut {
 	 *   by observing the convergence of energy.  A typical value is 100.
 	 */
 	public void minimizeEnergy(final Map<Node,double[]> positions, final int nrIterations) {
-		if (nodes.size() <= 1) return;
+		if (nrNodes <= 1) return;
+		final double[] array = graph.toArray(positions, nrDims);
+		minimizeEnergy(array, nrIterations);
+		graph.fromArray(array, positions, nrDims);
+	}
+
+	/**
+	 * Iteratively minimizes energy using the Barnes-Hut algorithm,
+	 * for positions in index-based form.
+     * @param positions  coordinates of the nodes in 3D space,
+     *   node <code>i</code> at <code>3*i</code> to <code>3*i+2</code>.
+     *   Is not copied and serves as input and output parameter;
+     *   see the other <code>minimizeEnergy</code> for the requirements.
+	 * @param nrIterations  number of iterations.
+	 */
+	public void minimizeEnergy(final double[] positions, final int nrIterations) {
+		if (nrNodes <= 1) return;
+		if (positions.length != nrDims*nrNodes) {
+			throw new IllegalArgumentException("Expected " + nrDims*nrNodes
+					+ " coordinates, got " + positions.length);
+		}
+		if (nrThreads > 0) executor = Executors.newFixedThreadPool(nrThreads);
+		try {
+			minimize(positions, nrIterations);
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+				executor = null;
+			}
+			this.positions = null;
+			moveOrder = null;
+		}
+	}
+
+
+	/**
+	 * Performs the minimization of <code>minimizeEnergy</code>,
+	 * using the worker threads if <code>executor</code> is set.
+	 * @param positions  coordinates of the nodes.
+	 * @param nrIterations  number of iterations.
+	 */
+	private void minimize(final double[] positions, final int nrIterations) {
         this.positions = positions;
 
 		initEnergyFactors();
@@ -127,10 +239,12 @@ public class MinimizerBarnesHut {
 
 		// compute initial energy
 		computeBaryCenter();
-		OctTree octTree = buildOctTree(); // for efficient repulsion computation
-		printStatistics(octTree);
+		int root = buildOctTree(); // for efficient repulsion computation
+		printStatistics(root);
 		double energySum = 0.0;
-		for (Node node : nodes) energySum += getEnergy(node, octTree);
+		for (int i = 0; i < nrNodes; i++) {
+			energySum += getEnergy(i, positions[3*i], positions[3*i+1], positions[3*i+2], root, false);
+		}
 		System.out.println("initial energy " + energySum);
 
 		// minimize energy
@@ -138,13 +252,13 @@ public class MinimizerBarnesHut {
 		final double[] bestDir = new double[nrDims];
 		for (int step = 1; step <= nrIterations; step++) {
 			computeBaryCenter();
-			octTree = buildOctTree();
+			root = buildOctTree();
 
 			if (nrIterations >= 50 && finalRepuExponent < 1.0) {
 				attrExponent = finalAttrExponent;
 				repuExponent = finalRepuExponent;
 				if (step <= 0.6*nrIterations) {
-					// use energy model with few local minima 
+					// use energy model with few local minima
 					attrExponent += 1.1 * (1.0 - finalRepuExponent);
 					repuExponent += 0.9 * (1.0 - finalRepuExponent);
 				} else if (step <= 0.9*nrIterations) {
@@ -158,56 +272,58 @@ public class MinimizerBarnesHut {
 
 			// move each node
 			energySum = 0.0;
-			for (Node node : nodes) {
-				final double oldEnergy = getEnergy(node, octTree);
+			if (executor != null) {
+				energySum = moveNodesParallel(root);
+			} else for (int i = 0; i < nrNodes; i++) {
+				final int p = 3*i;
+				final double oldEnergy = getEnergy(i, positions[p], positions[p+1], positions[p+2], root, false);
 
 				// compute direction of the move of the node
-				getDirection(node, octTree, bestDir);
+				getDirection(i, positions[p], positions[p+1], positions[p+2], root, bestDir);
 
 				// line search: compute length of the move
-                double[] pos = positions.get(node);
-				for (int d=0; d<nrDims; d++) oldPos[d] = pos[d]; 
+				for (int d=0; d<nrDims; d++) oldPos[d] = positions[p+d];
 				double bestEnergy = oldEnergy;
 				int bestMultiple = 0;
                 for (int d=0; d<nrDims; d++) bestDir[d] /= 32;
 				for (int multiple = 32;
 					 multiple >= 1 && (bestMultiple==0 || bestMultiple/2==multiple);
 					 multiple /= 2) {
-                    octTree.removeNode(node, pos, 0);
-                    for (int d=0; d<nrDims; d++) pos[d] = oldPos[d] + bestDir[d] * multiple;
-                    octTree.addNode(node, pos, 0);
-					double curEnergy = getEnergy(node, octTree);
+                    octTree.removeNode(root, i, positions[p], positions[p+1], positions[p+2], 0);
+                    for (int d=0; d<nrDims; d++) positions[p+d] = oldPos[d] + bestDir[d] * multiple;
+                    octTree.addNode(root, i, positions[p], positions[p+1], positions[p+2], 0);
+					double curEnergy = getEnergy(i, positions[p], positions[p+1], positions[p+2], root, false);
 					if (curEnergy < bestEnergy) {
 						bestEnergy = curEnergy;
 						bestMultiple = multiple;
 					}
 				}
-                for (int multiple = 64; 
-                     multiple <= 128 && bestMultiple == multiple/2; 
+                for (int multiple = 64;
+                     multiple <= 128 && bestMultiple == multiple/2;
                      multiple *= 2) {
-                    octTree.removeNode(node, pos, 0);
-                    for (int d=0; d<nrDims; d++) pos[d] = oldPos[d] + bestDir[d] * multiple;
-                    octTree.addNode(node, pos, 0);
-                    double curEnergy = getEnergy(node, octTree);
+                    octTree.removeNode(root, i, positions[p], positions[p+1], positions[p+2], 0);
+                    for (int d=0; d<nrDims; d++) positions[p+d] = oldPos[d] + bestDir[d] * multiple;
+                    octTree.addNode(root, i, positions[p], positions[p+1], positions[p+2], 0);
+                    double curEnergy = getEnergy(i, positions[p], positions[p+1], positions[p+2], root, false);
                     if (curEnergy < bestEnergy) {
                         bestEnergy = curEnergy;
                         bestMultiple = multiple;
                     }
                 }
 
-                octTree.removeNode(node, pos, 0);
-                for (int d=0; d<nrDims; d++) pos[d] = oldPos[d] + bestDir[d] * bestMultiple;
-                octTree.addNode(node, pos, 0);
+                octTree.removeNode(root, i, positions[p], positions[p+1], positions[p+2], 0);
+                for (int d=0; d<nrDims; d++) positions[p+d] = oldPos[d] + bestDir[d] * bestMultiple;
+                octTree.addNode(root, i, positions[p], positions[p+1], positions[p+2], 0);
 				energySum += bestEnergy;
 			}
-			System.out.println("iteration " + step 
+			System.out.println("iteration " + step
 			  + "   energy " + energySum
 			  + "   repulsion " + repuExponent);
 		}
-		printStatistics(octTree);
-        if (octTree.getHeight() >= OctTree.MAX_DEPTH) {
+		printStatistics(root);
+        if (octTree.getHeight(root) >= OctTree.MAX_DEPTH) {
             System.err.println(
-                  "The node distances in the layout are extremely nonuniform.\n" 
+                  "The node distances in the layout are extremely nonuniform.\n"
                 + " The graph likely has unconnected or very sparsely connected components.\n"
                 + " Set random layout to recover, and increase gravitation factor.");
         }
@@ -215,27 +331,23 @@ public class MinimizerBarnesHut {
 
 
 	/**
-	 * Computes values for the factors of the repulsion and gravitation energy, 
+	 * Computes values for the factors of the repulsion and gravitation energy,
 	 * <code>repuFactor</code> and <code>gravFactor</code>.
-	 * Chooses <code>repuFactor</code> such that the maximum distances 
-	 * in the resulting layout approximate (very) roughly the square root 
-	 * of the sum of the repuWeights, which is appropriate when each graph node 
+	 * Chooses <code>repuFactor</code> such that the maximum distances
+	 * in the resulting layout approximate (very) roughly the square root
+	 * of the sum of the repuWeights, which is appropriate when each graph node
 	 * is visualized as a geometric object whose area is the node's repuWeight.
 	 */
     private void initEnergyFactors() {
         double attrSum = 0.0;
-        for (Node node : nodes) {
-            for (Edge edge : attrEdges.get(node)) {
-                attrSum += edge.weight;
-            }
-        }
+        for (int k = 0; k < attrWeight.length; k++) attrSum += attrWeight[k];
 		double repuSum = 0.0;
-		for (Node node : nodes) repuSum += node.weight;
+		for (int i = 0; i < nrNodes; i++) repuSum += nodeWeight[i];
 
 		if (repuSum > 0.0 && attrSum > 0.0) {
-			final double density = attrSum / repuSum / repuSum; 
+			final double density = attrSum / repuSum / repuSum;
 			repuFactor = density * Math.pow(repuSum, 0.5*(attrExponent-repuExponent));
-			gravFactor = density * repuSum * Math.pow(gravFactor, attrExponent-repuExponent); 
+			gravFactor = density * repuSum * Math.pow(gravFactor, attrExponent-repuExponent);
 		} else {
 			repuFactor = 1.0;
 		}
@@ -243,144 +355,195 @@ public class MinimizerBarnesHut {
 
 
 	/**
-	 * Returns the Euclidean distance between the positions pos1 and pos2.
-	 * @return Euclidean distance between the positions pos1 and pos2
+	 * Returns the Euclidean distance between two positions.
+	 * @return Euclidean distance between (x1,y1,z1) and (x2,y2,z2)
 	 */
-    private final double getDist(final double[] pos1, final double[] pos2) {
-        double dist = 0.0;
-        for (int d = 0; d < nrDims; d++) {
-            double diff = pos1[d] - pos2[d];
-            dist += diff * diff;
-        }
-        return Math.sqrt(dist);
+    private static double getDist(final double x1, final double y1, final double z1,
+            final double x2, final double y2, final double z2) {
+        final double dx = x1 - x2, dy = y1 - y2, dz = z1 - z2;
+        return Math.sqrt(dx*dx + dy*dy + dz*dz);
     }
 
 
-	/** 
+	/**
 	 * Returns the repulsion energy between a node and the nodes in an octtree.
 	 * @param node  repulsing node
-	 * @param tree  octtree containing repulsing nodes
+	 * @param x  first coordinate of the repulsing node
+	 * @param y  second coordinate of the repulsing node
+	 * @param z  third coordinate of the repulsing node
+	 * @param cell  octtree cell containing repulsing nodes
+	 * @param own  if <code>true</code>, <code>cell</code> still contains
+	 *   the node at its old position in <code>positions</code>;
+	 *   the node is then left out of the approximated cells
 	 * @return repulsion energy between the specified node
 	 * 		   and the nodes in the specified octtree
 	 */
-	private double getRepulsionEnergy(final Node node, final OctTree tree) {
-		if (tree == null || tree.node == node) return 0.0;
-        if (node.weight == 0.0) return 0.0; 
-		
-		final double dist = getDist(positions.get(node), tree.position);
-		if (tree.childCount > 0 && dist < 2.0 * tree.width()) {
+	private double getRepulsionEnergy(final int node, final double x, final double y, final double z,
+	        final int cell, final boolean own) {
+		final OctTree tree = octTree;
+		if (cell < 0 || tree.node[cell] == node) return 0.0;
+        final double weight = nodeWeight[node];
+        if (weight == 0.0) return 0.0;
+
+		final int c3 = 3*cell;
+		double dist = getDist(x, y, z, tree.position[c3], tree.position[c3+1], tree.position[c3+2]);
+		if (tree.childCount[cell] > 0 && dist < 2.0 * tree.width[cell]) {
+			final int ownIndex = own ? tree.getChildIndex(cell,
+					positions[3*node], positions[3*node+1], positions[3*node+2]) : -1;
 			double energy = 0.0;
-			for (int i = 0; i < tree.children.length; i++) {
-				energy += getRepulsionEnergy(node, tree.children[i]);
+			for (int i = 0; i < 8; i++) {
+				final int child = tree.children[8*cell+i];
+				if (child >= 0) energy += getRepulsionEnergy(node, x, y, z, child, i == ownIndex);
+			}
+			for (int child = tree.firstChild[cell]; child >= 0; child = tree.nextChild[child]) {
+				energy += getRepulsionEnergy(node, x, y, z, child, false);
 			}
 			return energy;
-		} 
-		
+		}
+
+		double cellWeight = tree.weight[cell];
+		if (own && tree.node[cell] < 0) {
+			// remove the node at its old position from the barycenter
+			cellWeight -= weight;
+			if (cellWeight <= 0.0) return 0.0;
+			final int p = 3*node;
+			final double w = tree.weight[cell];
+			dist = getDist(x, y, z,
+					(w*tree.position[c3]   - weight*positions[p])   / cellWeight,
+					(w*tree.position[c3+1] - weight*positions[p+1]) / cellWeight,
+					(w*tree.position[c3+2] - weight*positions[p+2]) / cellWeight);
+		}
         if (dist == 0.0) return 0.0;
 
 		if (repuExponent == 0.0) {
-			return -repuFactor * node.weight * tree.weight * Math.log(dist);
+			return -repuFactor * weight * cellWeight * Math.log(dist);
 		} else {
-			return -repuFactor * node.weight * tree.weight
+			return -repuFactor * weight * cellWeight
 				* Math.pow(dist, repuExponent) / repuExponent;
 		}
 	}
 
-	/** 
+	/**
 	 * Returns the attraction energy of a node.
 	 * @param node  attracting node
+	 * @param x  first coordinate of the attracting node
+	 * @param y  second coordinate of the attracting node
+	 * @param z  third coordinate of the attracting node
 	 * @return attraction energy of the specified node
 	 */
-	private double getAttractionEnergy(final Node node) {
+	private double getAttractionEnergy(final int node, final double x, final double y, final double z) {
 		double energy = 0.0;
-        final double[] position = positions.get(node);
-		for (Edge edge : attrEdges.get(node)) {
-			final double dist = getDist(position, positions.get(edge.endNode));
+		for (int k = attrStart[node]; k < attrStart[node+1]; k++) {
+			final int p = 3*attrEnd[k];
+			final double dist = getDist(x, y, z, positions[p], positions[p+1], positions[p+2]);
 			if (attrExponent == 0.0) {
-				energy += edge.weight * Math.log(dist);
+				energy += attrWeight[k] * Math.log(dist);
 			} else {
-				energy += edge.weight * Math.pow(dist, attrExponent) / attrExponent;
+				energy += attrWeight[k] * Math.pow(dist, attrExponent) / attrExponent;
 			}
 		}
 		return energy;
 	}
-	
-	/** 
+
+	/**
 	 * Returns the gravitation energy of a node.
 	 * @param node  gravitating node
+	 * @param x  first coordinate of the gravitating node
+	 * @param y  second coordinate of the gravitating node
+	 * @param z  third coordinate of the gravitating node
 	 * @return gravitation energy of the specified node
 	 */
-	private double getGravitationEnergy(final Node node) {
-        final double dist = getDist(positions.get(node), baryCenter);
+	private double getGravitationEnergy(final int node, final double x, final double y, final double z) {
+        final double dist = getDist(x, y, z, baryCenter[0], baryCenter[1], baryCenter[2]);
 		if (attrExponent == 0.0) {
-			return gravFactor * node.weight * Math.log(dist);
+			return gravFactor * nodeWeight[node] * Math.log(dist);
 		} else {
-			return gravFactor * node.weight * Math.pow(dist, attrExponent) / attrExponent;
+			return gravFactor * nodeWeight[node] * Math.pow(dist, attrExponent) / attrExponent;
 		}
 	}
 
 	/**
 	 * Returns the total energy of a node.
 	 * @param node  node
+	 * @param x  first coordinate of the node
+	 * @param y  second coordinate of the node
+	 * @param z  third coordinate of the node
+	 * @param root  root cell of the octtree
+	 * @param own  whether the octtree contains the node at its old position
+	 *   in <code>positions</code> instead of (x,y,z)
 	 * @return total energy of the specified node
  	 */
-    private double getEnergy(final Node node, final OctTree octTree) {
-		return getRepulsionEnergy(node, octTree)
-			+ getAttractionEnergy(node) + getGravitationEnergy(node);
+    private double getEnergy(final int node, final double x, final double y, final double z,
+            final int root, final boolean own) {
+		return getRepulsionEnergy(node, x, y, z, root, own)
+			+ getAttractionEnergy(node, x, y, z) + getGravitationEnergy(node, x, y, z);
     }
 
 
 	/**
 	 * Computes the direction of the repulsion force of an octtree on a node.
 	 * @param  node  repulsing node
-	 * @param  tree  repulsing octtree
+	 * @param  x  first coordinate of the repulsing node
+	 * @param  y  second coordinate of the repulsing node
+	 * @param  z  third coordinate of the repulsing node
+	 * @param  cell  repulsing octtree cell
 	 * @param  dir   direction of the repulsion force acting on the node
 	 * 				 is added to this variable (output parameter)
 	 * @return approximate second derivation of the repulsion energy
 	 */
-	private double addRepulsionDir(final Node node, final OctTree tree, final double[] dir) {
-        if (tree == null || tree.node == node) return 0.0;
-        if (node.weight == 0.0) return 0.0; 
-		
-        final double[] position = positions.get(node);
-        final double dist = getDist(position, tree.position);
-		if (tree.childCount > 0 && dist < 2.0 * tree.width()) {
+	private double addRepulsionDir(final int node, final double x, final double y, final double z,
+	        final int cell, final double[] dir) {
+		final OctTree tree = octTree;
+        if (cell < 0 || tree.node[cell] == node) return 0.0;
+        final double weight = nodeWeight[node];
+        if (weight == 0.0) return 0.0;
+
+		final int c3 = 3*cell;
+        final double dist = getDist(x, y, z, tree.position[c3], tree.position[c3+1], tree.position[c3+2]);
+		if (tree.childCount[cell] > 0 && dist < 2.0 * tree.width[cell]) {
 			double dir2 = 0.0;
-			for (int i = 0; i < tree.children.length; i++) {
-				dir2 += addRepulsionDir(node, tree.children[i], dir);
+			for (int i = 0; i < 8; i++) {
+				final int child = tree.children[8*cell+i];
+				if (child >= 0) dir2 += addRepulsionDir(node, x, y, z, child, dir);
+			}
+			for (int child = tree.firstChild[cell]; child >= 0; child = tree.nextChild[child]) {
+				dir2 += addRepulsionDir(node, x, y, z, child, dir);
 			}
 			return dir2;
-		} 
+		}
 
 		if (dist == 0.0) return 0.0;
 
-		double tmp =   repuFactor * node.weight * tree.weight 
+		double tmp =   repuFactor * weight * tree.weight[cell]
 				     * Math.pow(dist, repuExponent-2);
-		for (int d = 0; d < nrDims; d++) {
-			dir[d] -= (tree.position[d] - position[d]) * tmp;
-		}
+		dir[0] -= (tree.position[c3]   - x) * tmp;
+		dir[1] -= (tree.position[c3+1] - y) * tmp;
+		dir[2] -= (tree.position[c3+2] - z) * tmp;
 		return tmp * Math.abs(repuExponent-1);
 	}
 
 	/**
 	 * Computes the direction of the attraction force on the a node.
 	 * @param  node  attracting node
+	 * @param  x  first coordinate of the attracting node
+	 * @param  y  second coordinate of the attracting node
+	 * @param  z  third coordinate of the attracting node
 	 * @param  dir   direction of the attraction force acting on the node
 	 * 				 is added to this variable (output parameter)
 	 * @return approximate second derivation of the attraction energy
 	 */
-	private double addAttractionDir(final Node node, final double[] dir) {
+	private double addAttractionDir(final int node, final double x, final double y, final double z,
+	        final double[] dir) {
 		double dir2 = 0.0;
-        final double[] position = positions.get(node);
-		for (Edge edge : attrEdges.get(node)) {
-            final double[] position2 = positions.get(edge.endNode);
-			final double dist = getDist(position, position2);
+		for (int k = attrStart[node]; k < attrStart[node+1]; k++) {
+			final int p = 3*attrEnd[k];
+			final double dist = getDist(x, y, z, positions[p], positions[p+1], positions[p+2]);
 			if (dist == 0.0) continue;
-			double tmp = edge.weight * Math.pow(dist, attrExponent-2);
+			double tmp = attrWeight[k] * Math.pow(dist, attrExponent-2);
 			dir2 += tmp * Math.abs(attrExponent-1);
-			for (int d = 0; d < nrDims; d++) {
-				dir[d] += (position2[d] - position[d]) * tmp;
-			}
+			dir[0] += (positions[p]   - x) * tmp;
+			dir[1] += (positions[p+1] - y) * tmp;
+			dir[2] += (positions[p+2] - z) * tmp;
 		}
 		return dir2;
 	}
@@ -388,65 +551,180 @@ public class MinimizerBarnesHut {
 	/**
 	 * Computes the direction of the gravitation force on the a node.
 	 * @param  node  gravitating node
+	 * @param  x  first coordinate of the gravitating node
+	 * @param  y  second coordinate of the gravitating node
+	 * @param  z  third coordinate of the gravitating node
 	 * @param  dir   direction of the gravitation force acting on the node
 	 * 				 is added to this variable (output parameter)
 	 * @return approximate second derivation of the gravitation energy
 	 */
-	private double addGravitationDir(final Node node, final double[] dir) {
-        final double[] position = positions.get(node);
-        final double dist = getDist(position, baryCenter);
-		double tmp = gravFactor * repuFactor * node.weight * Math.pow(dist, attrExponent-2);
-        for (int d = 0; d < nrDims; d++) {
-            dir[d] += (baryCenter[d] - position[d]) * tmp;
-        }
+	private double addGravitationDir(final int node, final double x, final double y, final double z,
+	        final double[] dir) {
+        final double dist = getDist(x, y, z, baryCenter[0], baryCenter[1], baryCenter[2]);
+		double tmp = gravFactor * repuFactor * nodeWeight[node] * Math.pow(dist, attrExponent-2);
+        dir[0] += (baryCenter[0] - x) * tmp;
+        dir[1] += (baryCenter[1] - y) * tmp;
+        dir[2] += (baryCenter[2] - z) * tmp;
 		return tmp * Math.abs(attrExponent-1);
 	}
-		
+
 	/**
 	 * Computes the direction of the total force acting on a node.
 	 * @param  node  node
+	 * @param  x  first coordinate of the node
+	 * @param  y  second coordinate of the node
+	 * @param  z  third coordinate of the node
+	 * @param  root  root cell of the octtree
 	 * @param  dir   direction of the total force acting on the node
 	 *               (output parameter)
 	 */
-    private void getDirection(final Node node, final OctTree octTree, final double[] dir) {
+    private void getDirection(final int node, final double x, final double y, final double z,
+            final int root, final double[] dir) {
         for (int d=0; d<nrDims; d++) dir[d] = 0.0;
 
-		double dir2 = addRepulsionDir(node, octTree, dir);
-		dir2 += addAttractionDir(node, dir);
-		dir2 += addGravitationDir(node, dir);
+		double dir2 = addRepulsionDir(node, x, y, z, root, dir);
+		dir2 += addAttractionDir(node, x, y, z, dir);
+		dir2 += addGravitationDir(node, x, y, z, dir);
 
 		if (dir2 != 0.0) {
 			// normalize force vector with second derivation of energy
             for (int d=0; d<nrDims; d++) dir[d] /= dir2;
-         
+
 			// ensure that the length of dir is not greater
 			// than 1/16 of the octtree width,
             // to prevent the node from leaving the octtree region
             double scale = 1.0;
             for (int d = 0; d < nrDims; d++) {
-                double width = octTree.maxPos[d] - octTree.minPos[d];
+                double width = octTree.maxPos[3*root+d] - octTree.minPos[3*root+d];
                 if (width > 0.0) scale = Math.min(scale, Math.abs(width/16/dir[d]));
             }
             for (int d=0; d<nrDims; d++) dir[d] *= scale;
 		} else {
             for (int d=0; d<nrDims; d++) dir[d] = 0.0;
 		}
-    }    
+    }
+
+
+	/**
+	 * Moves all nodes at once, for the parallel minimization.
+	 * The new positions are computed by the worker threads from the
+	 * unchanged octtree and positions, and are stored only after
+	 * all nodes are processed.  The tasks take the nodes in the order
+	 * of the octtree leafs, so that each task moves nearby nodes,
+	 * which traverse mostly the same cells.  The energies are summed in the order
+	 * of the nodes, thus the result does not depend on the number of threads.
+	 * @param root  root cell of the octtree containing all nodes
+	 *   at their current positions
+	 * @return sum of the energies of the nodes at their new positions
+	 */
+	private double moveNodesParallel(final int root) {
+		final double[] newPositions = new double[nrDims*nrNodes];
+		final double[] energies = new double[nrNodes];
+		final int chunkSize = Math.max(1, nrNodes / (4 * nrThreads));
+		if (moveOrder == null) moveOrder = new int[nrNodes];
+		int count = octTree.getNodes(root, moveOrder, 0);
+		for (int i = 0; i < nrNodes; i++) {
+			if (nodeWeight[i] == 0.0) moveOrder[count++] = i;
+		}
+		final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int start = 0; start < nrNodes; start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(nrNodes, start + chunkSize);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					final double[] dir = new double[nrDims];
+					for (int k = from; k < to; k++) {
+						final int i = moveOrder[k];
+						energies[i] = computeMove(i, root, dir, newPositions);
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+
+		System.arraycopy(newPositions, 0, positions, 0, newPositions.length);
+		double energySum = 0.0;
+		for (int i = 0; i < nrNodes; i++) energySum += energies[i];
+		return energySum;
+	}
+
+	/**
+	 * Computes the new position of a node for the parallel minimization,
+	 * without changing the octtree or the positions.
+	 * Performs the same line search as the sequential minimization;
+	 * the energies of the candidate positions are computed as if the node
+	 * were removed from its old position in the octtree.
+	 * @param node  node
+	 * @param root  root cell of the octtree containing all nodes
+	 *   at their current positions
+	 * @param dir  buffer for the direction of the move
+	 * @param newPositions  coordinates of the new positions (output parameter)
+	 * @return energy of the node at its new position
+	 */
+	private double computeMove(final int node, final int root,
+			final double[] dir, final double[] newPositions) {
+		final int p = 3*node;
+		final double x = positions[p], y = positions[p+1], z = positions[p+2];
+		double bestEnergy = getEnergy(node, x, y, z, root, true);
+		getDirection(node, x, y, z, root, dir);
+
+		int bestMultiple = 0;
+		for (int d=0; d<nrDims; d++) dir[d] /= 32;
+		for (int multiple = 32;
+			 multiple >= 1 && (bestMultiple==0 || bestMultiple/2==multiple);
+			 multiple /= 2) {
+			double curEnergy = getEnergy(node,
+					x + dir[0] * multiple, y + dir[1] * multiple, z + dir[2] * multiple, root, true);
+			if (curEnergy < bestEnergy) {
+				bestEnergy = curEnergy;
+				bestMultiple = multiple;
+			}
+		}
+		for (int multiple = 64;
+			 multiple <= 128 && bestMultiple == multiple/2;
+			 multiple *= 2) {
+			double curEnergy = getEnergy(node,
+					x + dir[0] * multiple, y + dir[1] * multiple, z + dir[2] * multiple, root, true);
+			if (curEnergy < bestEnergy) {
+				bestEnergy = curEnergy;
+				bestMultiple = multiple;
+			}
+		}
+
+		for (int d=0; d<nrDims; d++) newPositions[p+d] = positions[p+d] + dir[d] * bestMultiple;
+		return bestEnergy;
+	}
+
+	/**
+	 * Runs tasks on the worker threads and waits for their completion.
+	 * @param tasks  tasks to run
+	 */
+	private void invokeAll(final List<Callable<Object>> tasks) {
+		try {
+			for (Future<Object> future : executor.invokeAll(tasks)) future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
 
 
 	/**
 	 * Builds the octtree.
+	 * @return root cell of the octtree
 	 */
-	private OctTree buildOctTree() {
+	private int buildOctTree() {
 		// compute mimima and maxima of positions in each dimension
 		double[] minPos = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
 		double[] maxPos = {-Double.MAX_VALUE,-Double.MAX_VALUE,-Double.MAX_VALUE };
-		for (Node node : nodes) {
-			if (node.weight == 0.0) continue;
-            double[] position = positions.get(node);
+		for (int i = 0; i < nrNodes; i++) {
+			if (nodeWeight[i] == 0.0) continue;
 			for (int d = 0; d < nrDims; d++) {
-				minPos[d] = Math.min(position[d], minPos[d]);
-				maxPos[d] = Math.max(position[d], maxPos[d]);
+				minPos[d] = Math.min(positions[3*i+d], minPos[d]);
+				maxPos[d] = Math.max(positions[3*i+d], maxPos[d]);
 			}
 		}
 		// provide additional space for moving nodes
@@ -455,24 +733,121 @@ public class MinimizerBarnesHut {
             maxPos[d] += posDiff / 2;
             minPos[d] -= posDiff / 2;
         }
-		
+
+		if (executor != null) return buildOctTreeParallel(minPos, maxPos);
+
 		// add nodes with non-zero weight to the octtree
-		OctTree result = new OctTree(null, new double[nrDims], minPos, maxPos);
-		for (Node node : nodes) result.addNode(node, positions.get(node), 0);
-		return result;
+		octTree.reset(nodeWeight);
+		final int root = octTree.addCell(-1, 0.0, 0.0, 0.0, 0.0, minPos, maxPos);
+		for (int i = 0; i < nrNodes; i++) {
+			octTree.addNode(root, i, positions[3*i], positions[3*i+1], positions[3*i+2], 0);
+		}
+		return root;
+	}
+
+	/**
+	 * Builds the octtree using the worker threads.
+	 * Distributes the nodes over the 64 cuboids of the second level
+	 * of the octtree, builds the subtrees of these cuboids in parallel,
+	 * and joins them.  The result has the same structure as the octtree
+	 * built sequentially.
+	 * @param minPos  minimum coordinates of the octtree
+	 * @param maxPos  maximum coordinates of the octtree
+	 * @return root cell of the octtree
+	 */
+	private int buildOctTreeParallel(final double[] minPos, final double[] maxPos) {
+		final double[] minPos1 = new double[3*8];
+		final double[] maxPos1 = new double[3*8];
+		final double[] minPos2 = new double[3*64];
+		final double[] maxPos2 = new double[3*64];
+		for (int i = 0; i < 8; i++) {
+			OctTree.getChildBounds(minPos, maxPos, 0, i, minPos1, maxPos1, 3*i);
+			for (int j = 0; j < 8; j++) {
+				OctTree.getChildBounds(minPos1, maxPos1, 3*i, j, minPos2, maxPos2, 3*(8*i+j));
+			}
+		}
+
+		// distribute nodes with non-zero weight over the cuboids,
+		// keeping the node order within each cuboid
+		final int[] cellOf = new int[nrNodes];
+		final int[] cellStart = new int[64+1];
+		final int[] counts = new int[8];
+		for (int n = 0; n < nrNodes; n++) {
+			cellOf[n] = -1;
+			if (nodeWeight[n] == 0.0) continue;
+			final double x = positions[3*n], y = positions[3*n+1], z = positions[3*n+2];
+			final int i = OctTree.getChildIndex(minPos, maxPos, 0, x, y, z);
+			final int j = OctTree.getChildIndex(minPos1, maxPos1, 3*i, x, y, z);
+			cellOf[n] = 8*i+j;
+			cellStart[8*i+j+1]++;
+			counts[i]++;
+		}
+		for (int c = 0; c < 64; c++) cellStart[c+1] += cellStart[c];
+		final int[] cellNodes = new int[cellStart[64]];
+		final int[] next = new int[64];
+		System.arraycopy(cellStart, 0, next, 0, 64);
+		for (int n = 0; n < nrNodes; n++) {
+			if (cellOf[n] >= 0) cellNodes[next[cellOf[n]]++] = n;
+		}
+
+		// build the subtrees of the second level
+		final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int cell = 0; cell < 64; cell++) {
+			if (counts[cell/8] < 2 || cellStart[cell] == cellStart[cell+1]) continue;
+			final int c = cell;
+			if (cellTrees[c] == null) cellTrees[c] = new OctTree();
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					final OctTree tree = cellTrees[c];
+					tree.reset(nodeWeight);
+					final int first = cellNodes[cellStart[c]];
+					final int root = tree.addCell(first, nodeWeight[first],
+							positions[3*first], positions[3*first+1], positions[3*first+2],
+							minPos2, 3*c, maxPos2, 3*c);
+					for (int k = cellStart[c]+1; k < cellStart[c+1]; k++) {
+						final int n = cellNodes[k];
+						tree.addNode(root, n, positions[3*n], positions[3*n+1], positions[3*n+2], 2);
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+
+		// join the first two levels
+		octTree.reset(nodeWeight);
+		final int root = octTree.addCell(-1, 0.0, 0.0, 0.0, 0.0, minPos, maxPos);
+		for (int i = 0; i < 8; i++) {
+			if (counts[i] == 0) continue;
+			int child;
+			if (counts[i] == 1) {
+				final int n = cellNodes[cellStart[8*i]];
+				child = octTree.addCell(n, nodeWeight[n],
+						positions[3*n], positions[3*n+1], positions[3*n+2],
+						minPos1, 3*i, maxPos1, 3*i);
+			} else {
+				child = octTree.addCell(-1, 0.0, 0.0, 0.0, 0.0, minPos1, 3*i, maxPos1, 3*i);
+				for (int j = 0; j < 8; j++) {
+					final int c = 8*i+j;
+					if (cellStart[c] == cellStart[c+1]) continue;
+					octTree.addChild(child, j, octTree.append(cellTrees[c]));
+				}
+			}
+			octTree.addChild(root, i, child);
+		}
+		return root;
 	}
 
-    /** 
+    /**
      * Computes the position of the barycenter of all nodes
      * and stores it in the attribute <code>baryCenter</code>.
      */
     private void computeBaryCenter() {
         for (int d=0; d<nrDims; d++) baryCenter[d] = 0.0;
 		double weightSum = 0.0;
-        for (Node node : nodes) {
-			weightSum += node.weight;
-			double[] position = positions.get(node);
-            for (int d=0; d<nrDims; d++) baryCenter[d] += node.weight * position[d];
+        for (int i = 0; i < nrNodes; i++) {
+			weightSum += nodeWeight[i];
+            for (int d=0; d<nrDims; d++) baryCenter[d] += nodeWeight[i] * positions[3*i+d];
         }
 		if (weightSum > 0.0) {
             for (int d=0; d<nrDims; d++) baryCenter[d] /= weightSum;
@@ -480,227 +855,493 @@ public class MinimizerBarnesHut {
     }
 
 	/**
-	 * Computes and outputs some statistics. 
+	 * Computes and outputs some statistics.
+	 * @param root  root cell of the octtree
 	 */
-	private void printStatistics(final OctTree octTree) {
-        System.out.println("Number of nodes: " + nodes.size());
+	private void printStatistics(final int root) {
+        System.out.println("Number of nodes: " + nrNodes);
 		double attrSum = 0.0;
-		for (Node node : nodes) {
-			for (Edge edge : attrEdges.get(node)) {
-				attrSum += edge.weight;
-			}
-		}
+        for (int k = 0; k < attrWeight.length; k++) attrSum += attrWeight[k];
 		System.out.println("Overall attraction: " + attrSum);
 		double meanAttrEnergy = 0.0;
-		for (Node node : nodes) meanAttrEnergy += getAttractionEnergy(node);
+		for (int i = 0; i < nrNodes; i++) {
+			meanAttrEnergy += getAttractionEnergy(i, positions[3*i], positions[3*i+1], positions[3*i+2]);
+		}
 		meanAttrEnergy = (attrExponent == 0.0)
 			? Math.exp(meanAttrEnergy / attrSum)
-			: Math.pow(meanAttrEnergy * attrExponent / attrSum, 1.0 / attrExponent); 
+			: Math.pow(meanAttrEnergy * attrExponent / attrSum, 1.0 / attrExponent);
 		System.out.println("Weighted mean of attraction energy: " + meanAttrEnergy);
-		
+
 		double repuSum = 0.0, repuSquareSum = 0.0;
-		for (Node node : nodes) {
-			repuSum += node.weight;
-			repuSquareSum += node.weight * node.weight;
+		for (int i = 0; i < nrNodes; i++) {
+			repuSum += nodeWeight[i];
+			repuSquareSum += nodeWeight[i] * nodeWeight[i];
 		}
 		repuSum = repuSum*repuSum - repuSquareSum;
 		System.out.println("Overall repulsion: " + repuSum);
 		double meanRepuEnergy = 0.0;
-		for (Node node : nodes) meanRepuEnergy += getRepulsionEnergy(node, octTree);
-		meanRepuEnergy /= repuFactor; 
-		meanRepuEnergy = (repuExponent == 0.0) 
+		for (int i = 0; i < nrNodes; i++) {
+			meanRepuEnergy += getRepulsionEnergy(i, positions[3*i], positions[3*i+1], positions[3*i+2], root, false);
+		}
+		meanRepuEnergy /= repuFactor;
+		meanRepuEnergy = (repuExponent == 0.0)
 			? Math.exp(-meanRepuEnergy / repuSum)
-			: Math.pow(-meanRepuEnergy * repuExponent / repuSum, 1.0 / repuExponent); 
+			: Math.pow(-meanRepuEnergy * repuExponent / repuSum, 1.0 / repuExponent);
 		System.out.println("Weighted mean of repulsion energy: " + meanRepuEnergy);
-		
+
 		System.out.println("Mean attraction / mean repulsion: " + meanAttrEnergy / meanRepuEnergy);
 	}
 
 
 	/**
-	 * Octtree for graph nodes with positions in 3D space.
-	 * Contains all graph nodes that are located in a given cuboid in 3D space.
-	 * 
+	 * Octtree for graph nodes with positions in 3D space,
+	 * stored in arrays that are reused when the octtree is rebuilt.
+	 * Each tree node is a cell, identified by its index in the arrays,
+	 * and contains all graph nodes that are located in a given cuboid.
+	 * The children of cells at <code>MAX_DEPTH</code> are kept
+	 * in a linked list instead of the 8 child slots.
+	 *
 	 * @author Andreas Noack
 	 */
 	static class OctTree {
         /** Maximum depth of tree nodes. */
         protected static final int MAX_DEPTH = 18;
-		/** For leafs, the corresponding graph node; for non-leafs <code>null</code>. */
-		protected Node node;
-		/** Children of this tree node. */
-		protected OctTree[] children = new OctTree[8];
-        /** Number of children of this tree node. */
-        protected int childCount = 0;
-		/** Barycenter of the contained graph nodes. */
-		protected double[] position;
+        /** Weight of each graph node. */
+        protected double[] nodeWeight;
+        /** Number of used cells. */
+        protected int size;
+        /** First cell of the list of free cells, or -1. */
+        protected int freeCell = -1;
+		/** For leafs, the index of the graph node; for non-leafs -1. */
+		protected int[] node = new int[0];
+		/** 8 child slots per cell, -1 for no child. */
+		protected int[] children = new int[0];
+        /** Number of children of each cell. */
+        protected int[] childCount = new int[0];
+        /** First child of each cell at <code>MAX_DEPTH</code>, or -1. */
+        protected int[] firstChild = new int[0];
+        /** Last child of each cell at <code>MAX_DEPTH</code>, or -1. */
+        protected int[] lastChild = new int[0];
+        /** Next sibling in the list of children or of free cells, or -1. */
+        protected int[] nextChild = new int[0];
+		/** Barycenter of the contained graph nodes, 3 coordinates per cell. */
+		protected double[] position = new double[0];
 		/** Total weight of the contained graph nodes. */
-		protected double weight;
-		/** Minimum coordinates of the cuboid in each of the 3 dimensions. */
-		protected double[] minPos;
-		/** Maximum coordinates of the cuboid in each of the 3 dimensions. */
-		protected double[] maxPos;
-		
+		protected double[] weight = new double[0];
+		/** Minimum coordinates of the cuboid, 3 per cell. */
+		protected double[] minPos = new double[0];
+		/** Maximum coordinates of the cuboid, 3 per cell. */
+		protected double[] maxPos = new double[0];
+		/** Maximum extension of the cuboid of each cell. */
+		protected double[] width = new double[0];
+
 		/**
-		 * Creates an octtree containing exactly one graph node.
-		 *  
-		 * @param node     graph node
-		 * @param position position of the graph node
-		 * @param minPos   minimum coordinates of the cuboid
-		 * @param maxPos   maximum coordinates of the cuboid
+		 * Removes all cells.
+		 *
+		 * @param nodeWeight  weight of each graph node
 		 */
-		public OctTree(Node node, double[] position, double[] minPos, double[] maxPos) {
-			this.node = node;
-			this.position = new double[] { position[0], position[1], position[2] };
-			this.weight = node != null ? node.weight : 0.0;
-			this.minPos = minPos;
-			this.maxPos = maxPos;
-		}
-		
+		public void reset(double[] nodeWeight) {
+			this.nodeWeight = nodeWeight;
+			size = 0;
+			freeCell = -1;
+		}
+
 		/**
-		 * Adds a graph node to the octtree.
-		 * 
-		 * @param newNode  graph node
-		 * @param newPos   position of the graph node
-		 * @param depth    depth of this tree node in the octtree
+		 * Ensures that the arrays have room for a number of cells.
+		 *
+		 * @param capacity  number of cells
 		 */
-		public void addNode(Node newNode, double[] newPos, int depth) {
-			if (newNode.weight == 0.0) return;
+		private void ensureCapacity(int capacity) {
+			if (capacity <= node.length) return;
+			int newLength = Math.max(capacity, 2*node.length + 16);
+			node = Arrays.copyOf(node, newLength);
+			children = Arrays.copyOf(children, 8*newLength);
+			childCount = Arrays.copyOf(childCount, newLength);
+			firstChild = Arrays.copyOf(firstChild, newLength);
+			lastChild = Arrays.copyOf(lastChild, newLength);
+			nextChild = Arrays.copyOf(nextChild, newLength);
+			position = Arrays.copyOf(position, 3*newLength);
+			weight = Arrays.copyOf(weight, newLength);
+			minPos = Arrays.copyOf(minPos, 3*newLength);
+			maxPos = Arrays.copyOf(maxPos, 3*newLength);
+			width = Arrays.copyOf(width, newLength);
+		}
 
-			if (node != null) {
-				addNode2(node, position, depth);
-				node = null;
+		/**
+		 * Creates a cell without children.
+		 *
+		 * @param n  graph node for a leaf, or -1
+		 * @param w  weight of the cell
+		 * @param x  first coordinate of the barycenter
+		 * @param y  second coordinate of the barycenter
+		 * @param z  third coordinate of the barycenter
+		 * @return index of the new cell
+		 */
+		private int newCell(int n, double w, double x, double y, double z) {
+			int cell;
+			if (freeCell >= 0) {
+				cell = freeCell;
+				freeCell = nextChild[cell];
+			} else {
+				ensureCapacity(size+1);
+				cell = size++;
 			}
+			node[cell] = n;
+			weight[cell] = w;
+			position[3*cell] = x;
+			position[3*cell+1] = y;
+			position[3*cell+2] = z;
+			Arrays.fill(children, 8*cell, 8*cell+8, -1);
+			childCount[cell] = 0;
+			firstChild[cell] = -1;
+			lastChild[cell] = -1;
+			nextChild[cell] = -1;
+			return cell;
+		}
 
+		/**
+		 * Sets the cuboid of a cell.
+		 *
+		 * @param cell  cell
+		 * @param min   array with the minimum coordinates
+		 * @param minOffset  offset of the coordinates in <code>min</code>
+		 * @param max   array with the maximum coordinates
+		 * @param maxOffset  offset of the coordinates in <code>max</code>
+		 */
+		private void setBounds(int cell, double[] min, int minOffset, double[] max, int maxOffset) {
+			double w = 0.0;
 			for (int d = 0; d < 3; d++) {
-				position[d] = (weight*position[d] + newNode.weight*newPos[d]) / (weight+newNode.weight);
+				minPos[3*cell+d] = min[minOffset+d];
+				maxPos[3*cell+d] = max[maxOffset+d];
+				if (max[maxOffset+d] - min[minOffset+d] > w) {
+					w = max[maxOffset+d] - min[minOffset+d];
+				}
+			}
+			width[cell] = w;
+		}
+
+		/**
+		 * Creates a cell for a given cuboid.
+		 *
+		 * @param n  graph node for a leaf, or -1
+		 * @param w  weight of the cell
+		 * @param x  first coordinate of the barycenter
+		 * @param y  second coordinate of the barycenter
+		 * @param z  third coordinate of the barycenter
+		 * @param min  minimum coordinates of the cuboid
+		 * @param max  maximum coordinates of the cuboid
+		 * @return index of the new cell
+		 */
+		public int addCell(int n, double w, double x, double y, double z, double[] min, double[] max) {
+			return addCell(n, w, x, y, z, min, 0, max, 0);
+		}
+
+		/**
+		 * Creates a cell for a given cuboid.
+		 *
+		 * @param n  graph node for a leaf, or -1
+		 * @param w  weight of the cell
+		 * @param x  first coordinate of the barycenter
+		 * @param y  second coordinate of the barycenter
+		 * @param z  third coordinate of the barycenter
+		 * @param min   array with the minimum coordinates of the cuboid
+		 * @param minOffset  offset of the coordinates in <code>min</code>
+		 * @param max   array with the maximum coordinates of the cuboid
+		 * @param maxOffset  offset of the coordinates in <code>max</code>
+		 * @return index of the new cell
+		 */
+		public int addCell(int n, double w, double x, double y, double z,
+				double[] min, int minOffset, double[] max, int maxOffset) {
+			int cell = newCell(n, w, x, y, z);
+			setBounds(cell, min, minOffset, max, maxOffset);
+			return cell;
+		}
+
+		/**
+		 * Adds a graph node to the octtree.
+		 *
+		 * @param cell     cell
+		 * @param newNode  graph node
+		 * @param x        first coordinate of the graph node
+		 * @param y        second coordinate of the graph node
+		 * @param z        third coordinate of the graph node
+		 * @param depth    depth of the cell in the octtree
+		 */
+		public void addNode(int cell, int newNode, double x, double y, double z, int depth) {
+			final double newWeight = nodeWeight[newNode];
+			if (newWeight == 0.0) return;
+
+			final int c3 = 3*cell;
+			if (node[cell] >= 0) {
+				addNode2(cell, node[cell], position[c3], position[c3+1], position[c3+2], depth);
+				node[cell] = -1;
 			}
-			weight += newNode.weight;
-			
-			addNode2(newNode, newPos, depth);
+
+			final double w = weight[cell];
+			position[c3]   = (w*position[c3]   + newWeight*x) / (w+newWeight);
+			position[c3+1] = (w*position[c3+1] + newWeight*y) / (w+newWeight);
+			position[c3+2] = (w*position[c3+2] + newWeight*z) / (w+newWeight);
+			weight[cell] = w + newWeight;
+
+			addNode2(cell, newNode, x, y, z, depth);
 		}
-		
+
 		/**
-		 * Adds a graph node to the octtree, 
-		 * without changing the position and weight of the root.
-		 * 
+		 * Adds a graph node to the octtree,
+		 * without changing the position and weight of the cell.
+		 *
+		 * @param cell     cell
 		 * @param newNode  graph node
-		 * @param newPos   position of the graph node
-		 * @param depth    depth of this tree node in the octtree
+		 * @param x        first coordinate of the graph node
+		 * @param y        second coordinate of the graph node
+		 * @param z        third coordinate of the graph node
+		 * @param depth    depth of the cell in the octtree
 		 */
-		protected void addNode2(Node newNode, double[] newPos, int depth) {
+		protected void addNode2(int cell, int newNode, double x, double y, double z, int depth) {
             if (depth == MAX_DEPTH) {
-                if (children.length == childCount) {
-                    OctTree[] oldChildren = children;
-                    children = new OctTree[2*children.length];
-                    System.arraycopy(oldChildren, 0, children, 0, oldChildren.length);
+                final double[] pos = { x, y, z };
+                final int child = addCell(newNode, nodeWeight[newNode], x, y, z, pos, pos);
+                if (lastChild[cell] < 0) {
+                    firstChild[cell] = child;
+                } else {
+                    nextChild[lastChild[cell]] = child;
                 }
-                children[childCount++] = new OctTree(newNode, newPos, newPos, newPos);
+                lastChild[cell] = child;
+                childCount[cell]++;
                 return;
             }
-            
-			int childIndex = 0;
-			for (int d = 0; d < 3; d++) {
-				if (newPos[d] > (minPos[d]+maxPos[d])/2) {
-					childIndex += 1 << d;
-				}
-			}
-			
-			if (children[childIndex] == null) {
-				double[] newMinPos = new double[3]; 			
-				double[] newMaxPos = new double[3];
-				for (int d = 0; d < 3; d++) {
-					if ((childIndex & 1<<d) == 0) {
-						newMinPos[d] = minPos[d];
-						newMaxPos[d] = (minPos[d] + maxPos[d]) / 2;
-					} else {
-						newMinPos[d] = (minPos[d] + maxPos[d]) / 2;
-						newMaxPos[d] = maxPos[d];
-					}
-				}
-                
-                childCount++;
-				children[childIndex] = new OctTree(newNode, newPos, newMinPos, newMaxPos);
+
+			final int childIndex = getChildIndex(minPos, maxPos, 3*cell, x, y, z);
+			final int child = children[8*cell+childIndex];
+			if (child < 0) {
+				final int newChild = newCell(newNode, nodeWeight[newNode], x, y, z);
+				final double[] newMinPos = new double[3];
+				final double[] newMaxPos = new double[3];
+				getChildBounds(minPos, maxPos, 3*cell, childIndex, newMinPos, newMaxPos, 0);
+				setBounds(newChild, newMinPos, 0, newMaxPos, 0);
+
+                childCount[cell]++;
+				children[8*cell+childIndex] = newChild;
 			} else {
-				children[childIndex].addNode(newNode, newPos, depth+1);
+				addNode(child, newNode, x, y, z, depth+1);
 			}
 		}
 
 		/**
-		 * Removes a graph node from the octtree. 
-		 * 
+		 * Removes a graph node from the octtree.
+		 *
+		 * @param cell     cell
 		 * @param oldNode  graph node
-		 * @param oldPos   position of the graph node
-		 * @param depth    current depth
+		 * @param x        first coordinate of the graph node
+		 * @param y        second coordinate of the graph node
+		 * @param z        third coordinate of the graph node
+		 * @param depth    depth of the cell in the octtree
 		 */
-        public void removeNode(Node oldNode, double[] oldPos, int depth) {
-            if (oldNode.weight == 0.0) return;
-
-            if (weight <= oldNode.weight) {
-                weight = 0.0;
-                node = null;
-                for (int i = 0; i < children.length; i++) children[i] = null;
-                childCount = 0;
+        public void removeNode(int cell, int oldNode, double x, double y, double z, int depth) {
+			final double oldWeight = nodeWeight[oldNode];
+            if (oldWeight == 0.0) return;
+
+            final double w = weight[cell];
+            if (w <= oldWeight) {
+                weight[cell] = 0.0;
+                node[cell] = -1;
+                Arrays.fill(children, 8*cell, 8*cell+8, -1);
+                firstChild[cell] = -1;
+                lastChild[cell] = -1;
+                childCount[cell] = 0;
                 return;
             }
-            
-            for (int d = 0; d < 3; d++) {
-                position[d] = (weight*position[d] - oldNode.weight*oldPos[d]) / (weight-oldNode.weight);
-            }
-            weight -= oldNode.weight;
+
+			final int c3 = 3*cell;
+            position[c3]   = (w*position[c3]   - oldWeight*x) / (w-oldWeight);
+            position[c3+1] = (w*position[c3+1] - oldWeight*y) / (w-oldWeight);
+            position[c3+2] = (w*position[c3+2] - oldWeight*z) / (w-oldWeight);
+            weight[cell] = w - oldWeight;
 
             if (depth == MAX_DEPTH) {
-                int childIndex = 0;
-                while (children[childIndex].node != oldNode) childIndex++; 
-                childCount--;
-                for (int i = childIndex; i < childCount; i++) {
-                    children[i] = children[i+1];
+                int prev = -1;
+                int child = firstChild[cell];
+                while (node[child] != oldNode) {
+                    prev = child;
+                    child = nextChild[child];
                 }
-                children[childCount] = null;
-            } else {
-                int childIndex = 0;
-                for (int d = 0; d < 3; d++) {
-                    if (oldPos[d] > (minPos[d]+maxPos[d])/2) {
-                        childIndex += 1 << d;
-                    }
+                if (prev < 0) {
+                    firstChild[cell] = nextChild[child];
+                } else {
+                    nextChild[prev] = nextChild[child];
                 }
-                children[childIndex].removeNode(oldNode, oldPos, depth+1);
-                if (children[childIndex].weight == 0.0) {
-                    children[childIndex] = null;
-                    childCount--;
+                if (lastChild[cell] == child) lastChild[cell] = prev;
+                childCount[cell]--;
+                freeCell(child);
+            } else {
+                final int childIndex = getChildIndex(minPos, maxPos, c3, x, y, z);
+                final int child = children[8*cell+childIndex];
+                removeNode(child, oldNode, x, y, z, depth+1);
+                if (weight[child] == 0.0) {
+                    children[8*cell+childIndex] = -1;
+                    childCount[cell]--;
+                    freeCell(child);
                 }
             }
         }
 
-        /**
-		 * Returns the maximum extension of the octtree.
-		 * 
-		 * @return maximum over all dimensions of the extension of the octtree
+		/**
+		 * Makes a removed cell available for reuse.
+		 *
+		 * @param cell  cell that is no longer part of the octtree
+		 */
+		private void freeCell(int cell) {
+			nextChild[cell] = freeCell;
+			freeCell = cell;
+		}
+
+		/**
+		 * Adds a cell as child, and updates the position and weight of the parent.
+		 *
+		 * @param cell        parent cell
+		 * @param childIndex  index of the child slot, which must be empty
+		 * @param child       child cell for the corresponding cuboid
 		 */
-		public double width() {
-			double width = 0.0;
+		public void addChild(int cell, int childIndex, int child) {
+			final double w = weight[cell], childWeight = weight[child];
 			for (int d = 0; d < 3; d++) {
-				if (maxPos[d] - minPos[d] > width) {
-					width = maxPos[d] - minPos[d];
+				position[3*cell+d] = (w*position[3*cell+d] + childWeight*position[3*child+d])
+					/ (w+childWeight);
+			}
+			weight[cell] = w + childWeight;
+			children[8*cell+childIndex] = child;
+			childCount[cell]++;
+		}
+
+		/**
+		 * Copies the cells of another octtree, whose root is its first cell,
+		 * to the end of this octtree.
+		 *
+		 * @param tree  octtree without free cells
+		 * @return index of the copied root
+		 */
+		public int append(OctTree tree) {
+			final int offset = size;
+			final int n = tree.size;
+			ensureCapacity(offset+n);
+			System.arraycopy(tree.node, 0, node, offset, n);
+			System.arraycopy(tree.childCount, 0, childCount, offset, n);
+			System.arraycopy(tree.position, 0, position, 3*offset, 3*n);
+			System.arraycopy(tree.weight, 0, weight, offset, n);
+			System.arraycopy(tree.minPos, 0, minPos, 3*offset, 3*n);
+			System.arraycopy(tree.maxPos, 0, maxPos, 3*offset, 3*n);
+			System.arraycopy(tree.width, 0, width, offset, n);
+			for (int i = 0; i < 8*n; i++) {
+				final int child = tree.children[i];
+				children[8*offset+i] = child < 0 ? -1 : child + offset;
+			}
+			for (int i = 0; i < n; i++) {
+				firstChild[offset+i] = tree.firstChild[i] < 0 ? -1 : tree.firstChild[i] + offset;
+				lastChild[offset+i] = tree.lastChild[i] < 0 ? -1 : tree.lastChild[i] + offset;
+				nextChild[offset+i] = tree.nextChild[i] < 0 ? -1 : tree.nextChild[i] + offset;
+			}
+			size = offset+n;
+			return offset;
+		}
+
+		/**
+		 * Returns the index of the child cuboid containing a position.
+		 *
+		 * @param cell  cell
+		 * @param x     first coordinate of the position
+		 * @param y     second coordinate of the position
+		 * @param z     third coordinate of the position
+		 * @return index of the child cuboid containing the position
+		 */
+		public int getChildIndex(int cell, double x, double y, double z) {
+			return getChildIndex(minPos, maxPos, 3*cell, x, y, z);
+		}
+
+		/**
+		 * Returns the index of the child cuboid containing a position.
+		 *
+		 * @param min     array with the minimum coordinates of the cuboid
+		 * @param max     array with the maximum coordinates of the cuboid
+		 * @param offset  offset of the coordinates in the arrays
+		 * @param x       first coordinate of the position
+		 * @param y       second coordinate of the position
+		 * @param z       third coordinate of the position
+		 * @return index of the child cuboid containing the position
+		 */
+		protected static int getChildIndex(double[] min, double[] max, int offset,
+				double x, double y, double z) {
+			int childIndex = 0;
+			if (x > (min[offset]   + max[offset])  /2) childIndex += 1;
+			if (y > (min[offset+1] + max[offset+1])/2) childIndex += 2;
+			if (z > (min[offset+2] + max[offset+2])/2) childIndex += 4;
+			return childIndex;
+		}
+
+		/**
+		 * Computes the coordinates of a child cuboid.
+		 *
+		 * @param min         array with the minimum coordinates of the cuboid
+		 * @param max         array with the maximum coordinates of the cuboid
+		 * @param offset      offset of the coordinates in <code>min</code> and <code>max</code>
+		 * @param childIndex  index of the child cuboid
+		 * @param newMin      minimum coordinates of the child (output parameter)
+		 * @param newMax      maximum coordinates of the child (output parameter)
+		 * @param newOffset   offset of the coordinates in <code>newMin</code> and <code>newMax</code>
+		 */
+		protected static void getChildBounds(double[] min, double[] max, int offset,
+				int childIndex, double[] newMin, double[] newMax, int newOffset) {
+			for (int d = 0; d < 3; d++) {
+				if ((childIndex & 1<<d) == 0) {
+					newMin[newOffset+d] = min[offset+d];
+					newMax[newOffset+d] = (min[offset+d] + max[offset+d]) / 2;
+				} else {
+					newMin[newOffset+d] = (min[offset+d] + max[offset+d]) / 2;
+					newMax[newOffset+d] = max[offset+d];
 				}
 			}
-			return width;
 		}
 
+        /**
+         * Stores the graph nodes of a subtree in the order of its leafs.
+         *
+         * @param cell  root cell of the subtree
+         * @param nodes  array receiving the graph nodes (output parameter)
+         * @param count  index in <code>nodes</code> of the first node to store
+         * @return index following the last stored node
+         */
+        public int getNodes(int cell, int[] nodes, int count) {
+            if (node[cell] >= 0) {
+                nodes[count++] = node[cell];
+            }
+            for (int i = 0; i < 8; i++) {
+                if (children[8*cell+i] >= 0) {
+                    count = getNodes(children[8*cell+i], nodes, count);
+                }
+            }
+            for (int child = firstChild[cell]; child >= 0; child = nextChild[child]) {
+                count = getNodes(child, nodes, count);
+            }
+            return count;
+        }
+
         /**
          * Returns the height of the octtree.
-         * 
+         *
+         * @param cell  root cell
          * @return height of the octtree
          */
-        public int getHeight() {
+        public int getHeight(int cell) {
             int height = -1;
-            for (OctTree child : children) {
-                if (child != null) { 
-                    height = Math.max(height, child.getHeight());
+            for (int i = 0; i < 8; i++) {
+                if (children[8*cell+i] >= 0) {
+                    height = Math.max(height, getHeight(children[8*cell+i]));
                 }
             }
+            for (int child = firstChild[cell]; child >= 0; child = nextChild[child]) {
+                height = Math.max(height, getHeight(child));
+            }
             return height+1;
         }
 	}
 
-}
\ No newline at end of file
+}
@@ -26,20 +26,33 @@ import java.util.*;
  *   Andreas Noack: <a href="http://jgaa.info/volume11.html">
  *   "Energy Models for Graph Clustering"</a>,
  *   Journal of Graph Algorithms and Applications 11(2):453-480, 2007.
+ * The minimizer works on an <code>IndexedGraph</code>,
+ *   with the positions stored in one array of <code>nrDims</code> 
+ *   coordinates per node; the methods with <code>Node</code> objects 
+ *   and position maps convert from and to this form.
  *
  * @author Andreas Noack (an@informatik.tu-cottbus.de)
  * @version 14.11.2008
  */
 public class MinimizerClassic {
-    /** Nodes with weights specifying their repulsion strength. */
-    private final List<Node> nodes;
+    /** Graph with node weights specifying their repulsion strength,
+        and with the attraction edges. */
+    private final IndexedGraph graph;
+    /** Number of nodes. */
+    private final int nrNodes;
+    /** Weight of each node. */
+    private final double[] nodeWeight;
     /** Factor for repulsion energy. */
     private double repuFactor;
     /** Exponent of the Euclidean distance in the repulsion energy. */
     private double repuExponent;
     
-	/** Attraction edges for each node. */ 
-	private final Map<Node,Collection<Edge>> attrEdges;
+	/** Index of the first attraction edge of each node. */
+	private final int[] attrStart;
+	/** End node of each attraction edge. */
+	private final int[] attrEnd;
+	/** Weight of each attraction edge. */
+	private final double[] attrWeight;
 	/** Exponent of the Euclidean distance in the attraction energy. */
 	private double attrExponent;
 	
@@ -51,8 +64,9 @@ public class MinimizerClassic {
 	
     /** Number of coordinates of each node. */
     private final int nrDims;
-    /** Position in <code>nrDims</code>-dimensional space for each node. */
-    private Map<Node,double[]> positions;
+    /** Coordinates of the nodes in <code>nrDims</code>-dimensional space,
+        node <code>i</code> at <code>nrDims*i</code> to <code>nrDims*i+nrDims-1</code>. */
+    private double[] positions;
 
 
 	/**
@@ -91,13 +105,29 @@ public class MinimizerClassic {
             final Collection<Node> nodes, final Collection<Edge> attrEdges, 
             final double repuExponent, final double attrExponent, final double gravFactor,
 			final int nrDims) {
-        this.nodes = new ArrayList<Node>(nodes);
-        this.attrEdges = new HashMap<Node,Collection<Edge>>();
-        for (Node node : nodes) this.attrEdges.put(node, new ArrayList<Edge>());
-        for (Edge edge : attrEdges) {
-            if (edge.startNode == edge.endNode) continue;
-            this.attrEdges.get(edge.startNode).add(edge);
-        }
+		this(new IndexedGraph(nodes, attrEdges, false), 
+				repuExponent, attrExponent, gravFactor, nrDims);
+	}
+
+	/**
+	 * Initializes the attributes from a graph in index-based form.
+	 * @param graph  graph whose node weights specify the repulsion strengths
+	 *   and whose edges are the attraction edges, see the other constructor.
+	 *   Loops are ignored.
+	 * @param repuExponent exponent of the distance in the repulsion energy.
+	 * @param attrExponent exponent of the distance in the attraction energy.
+	 * @param gravFactor  factor for the gravitation energy.
+	 * @param nrDims  number of coordinates of each node.
+	 */
+	public MinimizerClassic(final IndexedGraph graph,
+            final double repuExponent, final double attrExponent, final double gravFactor,
+			final int nrDims) {
+		this.graph = graph;
+		this.nrNodes = graph.nrNodes;
+		this.nodeWeight = graph.nodeWeight;
+		this.attrStart = graph.edgeStart;
+		this.attrEnd = graph.edgeEnd;
+		this.attrWeight = graph.edgeWeight;
         this.repuExponent = repuExponent;
 		this.attrExponent = attrExponent;
         this.baryCenter = new double[nrDims];
@@ -121,7 +151,26 @@ public class MinimizerClassic {
 	 *   by observing the convergence of energy.  A typical value is 100.
 	 */
 	public void minimizeEnergy(final Map<Node,double[]> positions, final int nrIterations) {
-		if (nodes.size() <= 1) return;
+		if (nrNodes <= 1) return;
+		final double[] array = graph.toArray(positions, nrDims);
+		minimizeEnergy(array, nrIterations);
+		graph.fromArray(array, positions, nrDims);
+	}
+
+	/**
+	 * Iteratively minimizes energy, for positions in index-based form.
+     * @param positions  coordinates of the nodes in <code>nrDims</code>-dimensional 
+     *   space, node <code>i</code> at <code>nrDims*i</code> to <code>nrDims*i+nrDims-1</code>.
+     *   Is not copied and serves as input and output parameter;
+     *   see the other <code>minimizeEnergy</code> for the requirements.
+	 * @param nrIterations  number of iterations.
+	 */
+	public void minimizeEnergy(final double[] positions, final int nrIterations) {
+		if (nrNodes <= 1) return;
+		if (positions.length != nrDims*nrNodes) {
+			throw new IllegalArgumentException("Expected " + nrDims*nrNodes
+					+ " coordinates, got " + positions.length);
+		}
         this.positions = positions;
 
 		initEnergyFactors();
@@ -132,7 +181,7 @@ public class MinimizerClassic {
 		computeBaryCenter();
 		printStatistics();
 		double energySum = 0.0;
-		for (Node node : nodes) energySum += getEnergy(node);
+		for (int i = 0; i < nrNodes; i++) energySum += getEnergy(i);
 		System.out.println("initial energy " + energySum);
 
 		// minimize energy
@@ -159,23 +208,23 @@ public class MinimizerClassic {
 
 			// move each node
 			energySum = 0.0;
-			for (Node node : nodes) {
-				final double oldEnergy = getEnergy(node);
+			for (int i = 0; i < nrNodes; i++) {
+				final double oldEnergy = getEnergy(i);
 
 				// compute direction of the move of the node
-				getDirection(node, bestDir);
+				getDirection(i, bestDir);
 
 				// line search: compute length of the move
-                double[] pos = positions.get(node);
-				for (int d=0; d<nrDims; d++) oldPos[d] = pos[d]; 
+				final int p = nrDims*i;
+				for (int d=0; d<nrDims; d++) oldPos[d] = positions[p+d]; 
 				double bestEnergy = oldEnergy;
 				int bestMultiple = 0;
                 for (int d=0; d<nrDims; d++) bestDir[d] /= 32;
 				for (int multiple = 32;
 					 multiple >= 1 && (bestMultiple==0 || bestMultiple/2==multiple);
 					 multiple /= 2) {
-                    for (int d=0; d<nrDims; d++) pos[d] = oldPos[d] + bestDir[d] * multiple;
-					double curEnergy = getEnergy(node);
+                    for (int d=0; d<nrDims; d++) positions[p+d] = oldPos[d] + bestDir[d] * multiple;
+					double curEnergy = getEnergy(i);
 					if (curEnergy < bestEnergy) {
 						bestEnergy = curEnergy;
 						bestMultiple = multiple;
@@ -184,15 +233,15 @@ public class MinimizerClassic {
                 for (int multiple = 64; 
                      multiple <= 128 && bestMultiple == multiple/2; 
                      multiple *= 2) {
-                    for (int d=0; d<nrDims; d++) pos[d] = oldPos[d] + bestDir[d] * multiple;
-                    double curEnergy = getEnergy(node);
+                    for (int d=0; d<nrDims; d++) positions[p+d] = oldPos[d] + bestDir[d] * multiple;
+                    double curEnergy = getEnergy(i);
                     if (curEnergy < bestEnergy) {
                         bestEnergy = curEnergy;
                         bestMultiple = multiple;
                     }
                 }
 
-                for (int d=0; d<nrDims; d++) pos[d] = oldPos[d] + bestDir[d] * bestMultiple;
+                for (int d=0; d<nrDims; d++) positions[p+d] = oldPos[d] + bestDir[d] * bestMultiple;
 				energySum += bestEnergy;
 			}
 			System.out.println("iteration " + step 
@@ -203,12 +252,11 @@ public class MinimizerClassic {
 		// print statistics and warnings
 		printStatistics();
         double minDistance = Double.MAX_VALUE, maxDistance = 0.0;
-        for (Node node1 : nodes) {
-        	if (node1.weight == 0.0) continue;
-        	final double[] position1 = positions.get(node1);
-            for (Node node2 : nodes) {
-                if (node2.weight != 0.0 && node1 != node2) {
-                    double dist = getDist(position1, positions.get(node2));
+        for (int i = 0; i < nrNodes; i++) {
+        	if (nodeWeight[i] == 0.0) continue;
+            for (int j = 0; j < nrNodes; j++) {
+                if (nodeWeight[j] != 0.0 && i != j) {
+                    double dist = getDist(nrDims*i, nrDims*j);
                     minDistance = Math.min(minDistance, dist);
                     maxDistance = Math.max(maxDistance, dist);
                 }
@@ -233,13 +281,9 @@ public class MinimizerClassic {
 	 */
     private void initEnergyFactors() {
         double attrSum = 0.0;
-        for (Node node : nodes) {
-            for (Edge edge : attrEdges.get(node)) {
-                attrSum += edge.weight;
-            }
-        }
+        for (int k = 0; k < attrWeight.length; k++) attrSum += attrWeight[k];
 		double repuSum = 0.0;
-		for (Node node : nodes) repuSum += node.weight;
+		for (int i = 0; i < nrNodes; i++) repuSum += nodeWeight[i];
 
 		if (repuSum > 0.0 && attrSum > 0.0) {
 			final double density = attrSum / repuSum / repuSum; 
@@ -252,13 +296,30 @@ public class MinimizerClassic {
 
 
 	/**
-	 * Returns the Euclidean distance between the positions pos1 and pos2.
-	 * @return Euclidean distance between the positions pos1 and pos2
+	 * Returns the Euclidean distance between two positions in <code>positions</code>.
+	 * @param p1  offset of the first position
+	 * @param p2  offset of the second position
+	 * @return Euclidean distance between the two positions
 	 */
-    private final double getDist(final double[] pos1, final double[] pos2) {
+    private final double getDist(final int p1, final int p2) {
         double dist = 0.0;
         for (int d = 0; d < nrDims; d++) {
-            double diff = pos1[d] - pos2[d];
+            double diff = positions[p1+d] - positions[p2+d];
+            dist += diff * diff;
+        }
+        return Math.sqrt(dist);
+    }
+
+	/**
+	 * Returns the Euclidean distance between a position in <code>positions</code>
+	 * and the barycenter.
+	 * @param p  offset of the position
+	 * @return Euclidean distance between the position and the barycenter
+	 */
+    private final double getDistToBaryCenter(final int p) {
+        double dist = 0.0;
+        for (int d = 0; d < nrDims; d++) {
+            double diff = positions[p+d] - baryCenter[d];
             dist += diff * diff;
         }
         return Math.sqrt(dist);
@@ -270,18 +331,18 @@ public class MinimizerClassic {
 	 * @param node  repulsing node
 	 * @return repulsion energy of the specified node
 	 */
-	private double getRepulsionEnergy(final Node node) {
-        if (node.weight == 0.0) return 0.0; 
-        final double[] position = positions.get(node);
+	private double getRepulsionEnergy(final int node) {
+        if (nodeWeight[node] == 0.0) return 0.0; 
+        final int p = nrDims*node;
 		double energy = 0.0;
-		for (Node node2 : nodes) {
-			if (node2 == node || node2.weight == 0.0) continue;
-			final double dist = getDist(position, positions.get(node2));
+		for (int node2 = 0; node2 < nrNodes; node2++) {
+			if (node2 == node || nodeWeight[node2] == 0.0) continue;
+			final double dist = getDist(p, nrDims*node2);
 			if (repuExponent == 0.0) {
-				energy -= repuFactor * node.weight * node2.weight 
+				energy -= repuFactor * nodeWeight[node] * nodeWeight[node2] 
 				        * Math.log(dist);
 			} else {
-				energy -= repuFactor * node.weight * node2.weight 
+				energy -= repuFactor * nodeWeight[node] * nodeWeight[node2] 
 				        * Math.pow(dist, repuExponent) / repuExponent;
 			}
 		}
@@ -293,15 +354,15 @@ public class MinimizerClassic {
 	 * @param node  attracting node
 	 * @return attraction energy of the specified node
 	 */
-	private double getAttractionEnergy(final Node node) {
+	private double getAttractionEnergy(final int node) {
 		double energy = 0.0;
-        final double[] position = positions.get(node);
-		for (Edge edge : attrEdges.get(node)) {
-			final double dist = getDist(position, positions.get(edge.endNode));
+        final int p = nrDims*node;
+		for (int k = attrStart[node]; k < attrStart[node+1]; k++) {
+			final double dist = getDist(p, nrDims*attrEnd[k]);
 			if (attrExponent == 0.0) {
-				energy += edge.weight * Math.log(dist);
+				energy += attrWeight[k] * Math.log(dist);
 			} else {
-				energy += edge.weight * Math.pow(dist, attrExponent) / attrExponent;
+				energy += attrWeight[k] * Math.pow(dist, attrExponent) / attrExponent;
 			}
 		}
 		return energy;
@@ -312,12 +373,12 @@ public class MinimizerClassic {
 	 * @param node  gravitating node
 	 * @return gravitation energy of the specified node
 	 */
-	private double getGravitationEnergy(final Node node) {
-        final double dist = getDist(positions.get(node), baryCenter);
+	private double getGravitationEnergy(final int node) {
+        final double dist = getDistToBaryCenter(nrDims*node);
 		if (attrExponent == 0.0) {
-			return gravFactor * node.weight * Math.log(dist);
+			return gravFactor * nodeWeight[node] * Math.log(dist);
 		} else {
-			return gravFactor * node.weight * Math.pow(dist, attrExponent) / attrExponent;
+			return gravFactor * nodeWeight[node] * Math.pow(dist, attrExponent) / attrExponent;
 		}
 	}
 
@@ -326,7 +387,7 @@ public class MinimizerClassic {
 	 * @param node  node
 	 * @return total energy of the specified node
  	 */
-    private double getEnergy(final Node node) {
+    private double getEnergy(final int node) {
 		return getRepulsionEnergy(node)
 			+ getAttractionEnergy(node) + getGravitationEnergy(node);
     }
@@ -339,20 +400,20 @@ public class MinimizerClassic {
 	 * 				 is added to this variable (output parameter)
 	 * @return approximate second derivation of the repulsion energy
 	 */
-	private double addRepulsionDir(final Node node, final double[] dir) {
-        if (node.weight == 0.0) return 0.0;
-        final double[] position = positions.get(node);
+	private double addRepulsionDir(final int node, final double[] dir) {
+        if (nodeWeight[node] == 0.0) return 0.0;
+        final int p = nrDims*node;
 		double dir2 = 0.0;
-		for (Node node2 : nodes) {
-			if (node2 == node || node2.weight == 0.0) continue;
-            final double[] position2 = positions.get(node2);
-			final double dist = getDist(position, position2);
+		for (int node2 = 0; node2 < nrNodes; node2++) {
+			if (node2 == node || nodeWeight[node2] == 0.0) continue;
+            final int p2 = nrDims*node2;
+			final double dist = getDist(p, p2);
 			if (dist == 0.0) continue;
-			double tmp = repuFactor * node.weight * node2.weight 
+			double tmp = repuFactor * nodeWeight[node] * nodeWeight[node2] 
 			          * Math.pow(dist, repuExponent-2);
 			dir2 += tmp * Math.abs(repuExponent-1);
 			for (int d = 0; d < nrDims; d++) {
-				dir[d] -= (position2[d] - position[d]) * tmp;
+				dir[d] -= (positions[p2+d] - positions[p+d]) * tmp;
 			}
 		}
 		return dir2;
@@ -365,17 +426,17 @@ public class MinimizerClassic {
 	 * 				 is added to this variable (output parameter)
 	 * @return approximate second derivation of the attraction energy
 	 */
-	private double addAttractionDir(final Node node, final double[] dir) {
+	private double addAttractionDir(final int node, final double[] dir) {
 		double dir2 = 0.0;
-        final double[] position = positions.get(node);
-		for (Edge edge : attrEdges.get(node)) {
-            final double[] position2 = positions.get(edge.endNode);
-			final double dist = getDist(position, position2);
+        final int p = nrDims*node;
+		for (int k = attrStart[node]; k < attrStart[node+1]; k++) {
+            final int p2 = nrDims*attrEnd[k];
+			final double dist = getDist(p, p2);
 			if (dist == 0.0) continue;
-			double tmp = edge.weight * Math.pow(dist, attrExponent-2);
+			double tmp = attrWeight[k] * Math.pow(dist, attrExponent-2);
 			dir2 += tmp * Math.abs(attrExponent-1);
 			for (int d = 0; d < nrDims; d++) {
-				dir[d] += (position2[d] - position[d]) * tmp;
+				dir[d] += (positions[p2+d] - positions[p+d]) * tmp;
 			}
 		}
 		return dir2;
@@ -388,12 +449,12 @@ public class MinimizerClassic {
 	 * 				 is added to this variable (output parameter)
 	 * @return approximate second derivation of the gravitation energy
 	 */
-	private double addGravitationDir(final Node node, final double[] dir) {
-        final double[] position = positions.get(node);
-        final double dist = getDist(position, baryCenter);
-		double tmp = gravFactor * repuFactor * node.weight * Math.pow(dist, attrExponent-2);
+	private double addGravitationDir(final int node, final double[] dir) {
+        final int p = nrDims*node;
+        final double dist = getDistToBaryCenter(p);
+		double tmp = gravFactor * repuFactor * nodeWeight[node] * Math.pow(dist, attrExponent-2);
         for (int d = 0; d < nrDims; d++) {
-            dir[d] += (baryCenter[d] - position[d]) * tmp;
+            dir[d] += (baryCenter[d] - positions[p+d]) * tmp;
         }
 		return tmp * Math.abs(attrExponent-1);
 	}
@@ -404,7 +465,7 @@ public class MinimizerClassic {
 	 * @param  dir   direction of the total force acting on the node
 	 *               (output parameter)
 	 */
-    private void getDirection(final Node node, final double[] dir) {
+    private void getDirection(final int node, final double[] dir) {
         for (int d=0; d<nrDims; d++) dir[d] = 0.0;
 
 		double dir2 = addRepulsionDir(node, dir);
@@ -413,10 +474,10 @@ public class MinimizerClassic {
 
 		// compute average Euclidean distance to other nodes
 		double avgDist = 0.0;
-		for (Node node2 : nodes) { 
-            avgDist += getDist(positions.get(node), positions.get(node2));
+		for (int node2 = 0; node2 < nrNodes; node2++) { 
+            avgDist += getDist(nrDims*node, nrDims*node2);
         }
-		avgDist /= nodes.size()-1;
+		avgDist /= nrNodes-1;
 
 		if (dir2 != 0.0) {
 			// normalize force vector with second derivation of energy
@@ -424,7 +485,9 @@ public class MinimizerClassic {
          
 			// ensure that the length of dir is not greater
 			// than average Euclidean distance to other nodes
-            double length = getDist(dir, new double[nrDims]);
+            double length = 0.0;
+            for (int d=0; d<nrDims; d++) length += dir[d] * dir[d];
+            length = Math.sqrt(length);
 			if (avgDist > 0.0 && length > avgDist) {
 				length /= avgDist;
                 for (int d=0; d<nrDims; d++) dir[d] /= length;
@@ -442,10 +505,9 @@ public class MinimizerClassic {
     private void computeBaryCenter() {
         for (int d=0; d<nrDims; d++) baryCenter[d] = 0.0;
 		double weightSum = 0.0;
-        for (Node node : nodes) {
-			weightSum += node.weight;
-			double[] position = positions.get(node);
-            for (int d=0; d<nrDims; d++) baryCenter[d] += node.weight * position[d];
+        for (int i = 0; i < nrNodes; i++) {
+			weightSum += nodeWeight[i];
+            for (int d=0; d<nrDims; d++) baryCenter[d] += nodeWeight[i] * positions[nrDims*i+d];
         }
 		if (weightSum > 0.0) {
             for (int d=0; d<nrDims; d++) baryCenter[d] /= weightSum;
@@ -456,30 +518,26 @@ public class MinimizerClassic {
 	 * Computes and outputs some statistics. 
 	 */
 	private void printStatistics() {
-        System.out.println("Number of nodes: " + nodes.size());
+        System.out.println("Number of nodes: " + nrNodes);
 		double attrSum = 0.0;
-		for (Node node : nodes) {
-			for (Edge edge : attrEdges.get(node)) {
-				attrSum += edge.weight;
-			}
-		}
+        for (int k = 0; k < attrWeight.length; k++) attrSum += attrWeight[k];
 		System.out.println("Overall attraction: " + attrSum);
 		double meanAttrEnergy = 0.0;
-		for (Node node : nodes) meanAttrEnergy += getAttractionEnergy(node);
+		for (int i = 0; i < nrNodes; i++) meanAttrEnergy += getAttractionEnergy(i);
 		meanAttrEnergy = (attrExponent == 0.0)
 			? Math.exp(meanAttrEnergy / attrSum)
 			: Math.pow(meanAttrEnergy * attrExponent / attrSum, 1.0 / attrExponent); 
 		System.out.println("Weighted mean of attraction energy: " + meanAttrEnergy);
 		
 		double repuSum = 0.0, repuSquareSum = 0.0;
-		for (Node node : nodes) {
-			repuSum += node.weight;
-			repuSquareSum += node.weight * node.weight;
+		for (int i = 0; i < nrNodes; i++) {
+			repuSum += nodeWeight[i];
+			repuSquareSum += nodeWeight[i] * nodeWeight[i];
 		}
 		repuSum = repuSum*repuSum - repuSquareSum;
 		System.out.println("Overall repulsion: " + repuSum);
 		double meanRepuEnergy = 0.0;
-		for (Node node : nodes) meanRepuEnergy += getRepulsionEnergy(node);
+		for (int i = 0; i < nrNodes; i++) meanRepuEnergy += getRepulsionEnergy(i);
 		meanRepuEnergy /= repuFactor; 
 		meanRepuEnergy = (repuExponent == 0.0) 
 			? Math.exp(-meanRepuEnergy / repuSum)
@@ -489,4 +547,4 @@ public class MinimizerClassic {
 		System.out.println("Mean attraction / mean repulsion: " + meanAttrEnergy / meanRepuEnergy);
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -60,7 +60,7 @@ public class NoackListener implements GraphListener {
       System.out.println(nodes.size() + " : " + edges.size());
       new MinimizerBarnesHut(nodes, edges, 0.0, 1.0, 0.05).
       minimizeEnergy(layout.getNodePositions(), 10);
-      layout.setNodeCluster(new OptimizerModularity().execute(nodes, edges, false));      
+      layout.setNodeCluster(new OptimizerModularity().executeMultiLevel(nodes, edges, false));      
     }
   }
 
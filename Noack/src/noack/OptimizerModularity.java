@@ -16,6 +16,7 @@ package noack;
 //Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA 
 
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -32,10 +33,64 @@ import java.util.*;
  *   "Modularity clustering is force-directed layout"</a>,
  *   Preprint arXiv:0807.4052, 2008.
  *   
+ * Besides the original algorithm in <code>execute</code>, 
+ *   <code>executeMultiLevel</code> provides a faster multi-level algorithm
+ *   in the style of Blondel et al. ("Louvain" method), 
+ *   which works on an <code>IndexedGraph</code> 
+ *   and can compute the node moves with several threads.
+ *   
  * @author Andreas Noack (an@informatik.tu-cottbus.de)
  * @version 13.11.2008
  */
 public class OptimizerModularity {
+    /** Minimum decrease of the negative modularity for a node move 
+        in <code>executeMultiLevel</code>. */
+    private static final double MIN_GAIN = 1e-12;
+    /** Sentinel for a move to an empty cluster. */
+    private static final int EMPTY_CLUSTER = -2;
+
+    /** Number of threads for the node moves of <code>executeMultiLevel</code>, 
+        0 for sequential node moves. */
+    private int nrThreads = 0;
+    /** Worker threads during <code>executeMultiLevel</code>, otherwise <code>null</code>. */
+    private ExecutorService executor;
+    /** Modularity of the clustering computed last. */
+    private double modularity = Double.NaN;
+
+    /**
+     * Sets the number of threads used by <code>executeMultiLevel</code>.
+     * With the default value 0, the nodes are moved one after the other.
+     * With a positive value, the best move of each node is computed in parallel 
+     * from the clustering at the beginning of a pass, and the moves are then 
+     * checked and applied in node order; the resulting clustering does not 
+     * depend on the number of threads.
+     * @param nrThreads  number of threads, 0 for sequential node moves.
+     *   Must not be negative.
+     */
+    public void setNrThreads(final int nrThreads) {
+        if (nrThreads < 0) {
+            throw new IllegalArgumentException("Negative number of threads: " + nrThreads);
+        }
+        this.nrThreads = nrThreads;
+    }
+
+    /**
+     * Returns the number of threads used by <code>executeMultiLevel</code>.
+     * @return number of threads, 0 for sequential node moves
+     */
+    public int getNrThreads() {
+        return nrThreads;
+    }
+
+    /**
+     * Returns the modularity of the clustering computed last 
+     * by <code>execute</code> or <code>executeMultiLevel</code>.
+     * @return modularity, or <code>Double.NaN</code> if no clustering 
+     *   was computed yet
+     */
+    public double getModularity() {
+        return modularity;
+    }
 
     /**
      * Returns the negative modularity.
@@ -266,7 +321,455 @@ public class OptimizerModularity {
         }
         
         // compute clustering
-        return cluster(nodes, edges, atedgeCnt, atpairCnt);
+        final Map<Node,Integer> result = cluster(nodes, edges, atedgeCnt, atpairCnt);
+        
+        final IndexedGraph graph = new IndexedGraph(nodes, edges, !ignoreLoops);
+        final int[] clusters = new int[graph.nrNodes];
+        for (int i = 0; i < graph.nrNodes; i++) clusters[i] = result.get(graph.nodes.get(i));
+        modularity = -quality(graph, clusters, atedgeCnt, atpairCnt);
+        System.out.println("Modularity " + modularity);
+        return result;
+    }
+    
+    
+    /**
+     * Computes a clustering of a given graph by maximizing the Modularity,
+     * with the multi-level algorithm.  Scales to much larger graphs 
+     * than <code>execute</code>, and usually achieves a similar modularity. 
+     * @param nodes  weighted nodes of the graph, see <code>execute</code>.
+     * @param edges  weighted edges of the graph, see <code>execute</code>.
+     * @param ignoreLoops  set to <code>true</code> to use an adapted version
+     *   of Modularity for graphs without loops, see <code>execute</code>.
+     * @return clustering with large Modularity,
+     *   as map from graph nodes to cluster IDs. 
+     */
+    public Map<Node,Integer> executeMultiLevel(
+            final List<Node> nodes, final List<Edge> edges, 
+            final boolean ignoreLoops) {
+        final IndexedGraph graph = new IndexedGraph(nodes, edges, !ignoreLoops);
+        final int[] clusters = executeMultiLevel(graph, ignoreLoops);
+        final Map<Node,Integer> result = new HashMap<Node,Integer>();
+        for (int i = 0; i < graph.nrNodes; i++) result.put(graph.nodes.get(i), clusters[i]);
+        return result;
+    }
+    
+    /**
+     * Computes a clustering of a graph in index-based form 
+     * by maximizing the Modularity, with the multi-level algorithm.
+     * @param graph  weighted graph, see <code>execute</code> for the 
+     *   requirements on the weights.
+     * @param ignoreLoops  set to <code>true</code> to use an adapted version
+     *   of Modularity for graphs without loops; the loops of 
+     *   <code>graph</code> are then ignored.
+     * @return cluster of each node, numbered from 0
+     */
+    public int[] executeMultiLevel(final IndexedGraph graph, final boolean ignoreLoops) {
+        double atedgeCnt = 0.0;
+        double atpairCnt = 0.0;
+        for (int i = 0; i < graph.nrNodes; i++) {
+            for (int k = graph.edgeStart[i]; k < graph.edgeStart[i+1]; k++) {
+                if (!ignoreLoops || graph.edgeEnd[k] != i) atedgeCnt += graph.edgeWeight[k];
+            }
+            atpairCnt += graph.nodeWeight[i];
+        }
+        atpairCnt *= atpairCnt;
+        if (ignoreLoops) {
+            for (int i = 0; i < graph.nrNodes; i++) atpairCnt -= graph.nodeWeight[i]*graph.nodeWeight[i];
+        }
+        
+        if (nrThreads > 0) executor = Executors.newFixedThreadPool(nrThreads);
+        final int[] clusters;
+        try {
+            clusters = clusterMultiLevel(graph, atedgeCnt, atpairCnt);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+        modularity = -quality(graph, clusters, atedgeCnt, atpairCnt);
+        System.out.println("Modularity " + modularity);
+        return clusters;
+    }
+    
+    
+    /**
+     * Returns the negative modularity of a clustering.
+     * Loops are always within a cluster and thus do not contribute.
+     * @param graph  graph in index-based form
+     * @param clusters  cluster of each node, smaller than the number of nodes
+     * @param atedges  total edge weight of the graph
+     * @param atpairs  total weighted node pairs of the graph
+     * @return negative modularity
+     */
+    private double quality(final IndexedGraph graph, final int[] clusters, 
+            final double atedges, final double atpairs) {
+        double interAtedges = 0.0;
+        double atnodes = 0.0;
+        final double[] clusterToAtnodes = new double[graph.nrNodes];
+        for (int i = 0; i < graph.nrNodes; i++) {
+            for (int k = graph.edgeStart[i]; k < graph.edgeStart[i+1]; k++) {
+                if (clusters[graph.edgeEnd[k]] != clusters[i]) interAtedges += graph.edgeWeight[k];
+            }
+            atnodes += graph.nodeWeight[i];
+            clusterToAtnodes[clusters[i]] += graph.nodeWeight[i];
+        }
+        double interAtpairs = atnodes * atnodes;
+        for (double clusterAtnodes : clusterToAtnodes) interAtpairs -= clusterAtnodes * clusterAtnodes;
+        return quality(interAtedges, interAtpairs, atedges, atpairs);
+    }
+    
+    
+    /**
+     * Computes a clustering with the multi-level algorithm:
+     * moves nodes between clusters until no move improves the modularity,
+     * contracts each cluster to a node, clusters the contracted graph, 
+     * and refines the decontracted clustering by moving nodes again.
+     * @param graph  graph in index-based form
+     * @param atedges  total edge weight of the original graph
+     * @param atpairs  total weighted node pairs of the original graph
+     * @return cluster of each node, numbered from 0
+     */
+    private int[] clusterMultiLevel(final IndexedGraph graph, 
+            final double atedges, final double atpairs) {
+        final int[] clusters = new int[graph.nrNodes];
+        for (int i = 0; i < graph.nrNodes; i++) clusters[i] = i;
+        moveNodes(graph, clusters, atedges, atpairs);
+        final int nrClusters = renumber(clusters);
+        System.out.println("Contracting " + graph.nrNodes + " nodes to " + nrClusters + " clusters");
+        // terminal case: no nodes to contract
+        if (nrClusters == graph.nrNodes) return clusters;
+        
+        final int[] contrClusters = clusterMultiLevel(
+                contract(graph, clusters, nrClusters), atedges, atpairs);
+        for (int i = 0; i < graph.nrNodes; i++) clusters[i] = contrClusters[clusters[i]];
+        moveNodes(graph, clusters, atedges, atpairs);
+        renumber(clusters);
+        return clusters;
+    }
+    
+    /**
+     * Renumbers clusters consecutively from 0, in the order of their first node.
+     * @param clusters  cluster of each node, smaller than the number of nodes
+     *   (input and output parameter)
+     * @return number of clusters
+     */
+    private int renumber(final int[] clusters) {
+        final int[] newCluster = new int[clusters.length];
+        Arrays.fill(newCluster, -1);
+        int nrClusters = 0;
+        for (int i = 0; i < clusters.length; i++) {
+            if (newCluster[clusters[i]] < 0) newCluster[clusters[i]] = nrClusters++;
+            clusters[i] = newCluster[clusters[i]];
+        }
+        return nrClusters;
+    }
+    
+    /**
+     * Contracts each cluster to a node.  The edges between two clusters
+     * are combined into one edge, and the edges within a cluster into a loop.
+     * @param graph  graph in index-based form
+     * @param clusters  cluster of each node, numbered from 0
+     * @param nrClusters  number of clusters
+     * @return contracted graph
+     */
+    private IndexedGraph contract(final IndexedGraph graph, final int[] clusters, final int nrClusters) {
+        // list the nodes of each cluster
+        final int[] memberStart = new int[nrClusters+1];
+        for (int i = 0; i < graph.nrNodes; i++) memberStart[clusters[i]+1]++;
+        for (int c = 0; c < nrClusters; c++) memberStart[c+1] += memberStart[c];
+        final int[] members = new int[graph.nrNodes];
+        final int[] next = Arrays.copyOf(memberStart, nrClusters);
+        for (int i = 0; i < graph.nrNodes; i++) members[next[clusters[i]]++] = i;
+        
+        final double[] contrNodeWeight = new double[nrClusters];
+        final int[] contrEdgeStart = new int[nrClusters+1];
+        int[] contrEdgeEnd = new int[graph.getNrEdges()];
+        double[] contrEdgeWeight = new double[graph.getNrEdges()];
+        final double[] clusterToAtedges = new double[nrClusters];
+        final boolean[] seen = new boolean[nrClusters];
+        final int[] touched = new int[nrClusters];
+        int nrEdges = 0;
+        for (int c = 0; c < nrClusters; c++) {
+            int nrTouched = 0;
+            for (int m = memberStart[c]; m < memberStart[c+1]; m++) {
+                final int i = members[m];
+                contrNodeWeight[c] += graph.nodeWeight[i];
+                for (int k = graph.edgeStart[i]; k < graph.edgeStart[i+1]; k++) {
+                    final int c2 = clusters[graph.edgeEnd[k]];
+                    if (!seen[c2]) {
+                        seen[c2] = true;
+                        touched[nrTouched++] = c2;
+                    }
+                    clusterToAtedges[c2] += graph.edgeWeight[k];
+                }
+            }
+            for (int t = 0; t < nrTouched; t++) {
+                final int c2 = touched[t];
+                contrEdgeEnd[nrEdges] = c2;
+                contrEdgeWeight[nrEdges] = clusterToAtedges[c2];
+                nrEdges++;
+                clusterToAtedges[c2] = 0.0;
+                seen[c2] = false;
+            }
+            contrEdgeStart[c+1] = nrEdges;
+        }
+        return new IndexedGraph(contrNodeWeight, contrEdgeStart, 
+                Arrays.copyOf(contrEdgeEnd, nrEdges), Arrays.copyOf(contrEdgeWeight, nrEdges));
+    }
+    
+    
+    /**
+     * Improves a graph clustering by repeatedly moving each node 
+     * to the cluster that improves the modularity most,
+     * until no move improves the modularity.
+     * Uses the worker threads if <code>executor</code> is set.
+     * @param graph  graph in index-based form
+     * @param clusters  cluster of each node, smaller than the number of nodes
+     *   (input and output parameter)
+     * @param atedges  total edge weight of the original graph
+     * @param atpairs  total weighted node pairs of the original graph
+     */
+    private void moveNodes(final IndexedGraph graph, final int[] clusters, 
+            final double atedges, final double atpairs) {
+        final Clustering clustering = new Clustering(graph, clusters, atedges, atpairs);
+        if (executor == null) {
+            final MoveBuffer buffer = new MoveBuffer(graph.nrNodes);
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                for (int i = 0; i < graph.nrNodes; i++) {
+                    final int target = clustering.getBestMove(i, buffer);
+                    if (target != clusters[i]) {
+                        clustering.move(i, target);
+                        moved = true;
+                    }
+                }
+            }
+            return;
+        }
+        
+        // after the first pass, only nodes with a moved neighbor are reconsidered 
+        final int[] targets = new int[graph.nrNodes];
+        final boolean[] active = new boolean[graph.nrNodes];
+        Arrays.fill(active, true);
+        final int chunkSize = Math.max(1, graph.nrNodes / (4 * nrThreads));
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int start = 0; start < graph.nrNodes; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(graph.nrNodes, start + chunkSize);
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    final MoveBuffer buffer = new MoveBuffer(graph.nrNodes);
+                    for (int i = from; i < to; i++) {
+                        targets[i] = active[i] ? clustering.getBestMove(i, buffer) : clusters[i];
+                    }
+                    return null;
+                }
+            });
+        }
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            // compute the best moves from the current clustering ...
+            try {
+                for (Future<Object> future : executor.invokeAll(tasks)) future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            // ... and apply those that still improve the modularity
+            Arrays.fill(active, false);
+            for (int i = 0; i < graph.nrNodes; i++) {
+                if (targets[i] != clusters[i] && clustering.getGain(i, targets[i]) > MIN_GAIN) {
+                    clustering.move(i, targets[i]);
+                    moved = true;
+                    for (int k = graph.edgeStart[i]; k < graph.edgeStart[i+1]; k++) {
+                        active[graph.edgeEnd[k]] = true;
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Buffers for finding the best move of a node, one per thread.
+     */
+    private static class MoveBuffer {
+        /** Edge weight from the node to each cluster. */
+        final double[] clusterToAtedges;
+        /** Whether each cluster is in <code>touched</code>. */
+        final boolean[] seen;
+        /** Clusters of the neighbors of the node. */
+        final int[] touched;
+        
+        /**
+         * Creates buffers for a graph.
+         * @param nrNodes  number of nodes of the graph
+         */
+        MoveBuffer(final int nrNodes) {
+            clusterToAtedges = new double[nrNodes];
+            seen = new boolean[nrNodes];
+            touched = new int[nrNodes];
+        }
+    }
+    
+    
+    /**
+     * Clustering of a graph in index-based form, with the weight of each cluster
+     * and the empty clusters, for computing and applying node moves.
+     */
+    private static class Clustering {
+        /** Graph in index-based form. */
+        final IndexedGraph graph;
+        /** Cluster of each node. */
+        final int[] clusters;
+        /** Total node weight of each cluster. */
+        final double[] clusterToAtnodes;
+        /** Number of nodes of each cluster. */
+        final int[] clusterSize;
+        /** Stack of the empty clusters. */
+        final int[] emptyClusters;
+        /** Number of empty clusters. */
+        int nrEmptyClusters;
+        /** Total edge weight of the original graph. */
+        final double atedges;
+        /** Total weighted node pairs of the original graph. */
+        final double atpairs;
+        
+        /**
+         * Initializes the cluster weights and empty clusters.
+         * @param graph  graph in index-based form
+         * @param clusters  cluster of each node, smaller than the number of nodes;
+         *   is changed by <code>move</code>
+         * @param atedges  total edge weight of the original graph
+         * @param atpairs  total weighted node pairs of the original graph
+         */
+        Clustering(final IndexedGraph graph, final int[] clusters, 
+                final double atedges, final double atpairs) {
+            this.graph = graph;
+            this.clusters = clusters;
+            this.atedges = atedges;
+            this.atpairs = atpairs;
+            clusterToAtnodes = new double[graph.nrNodes];
+            clusterSize = new int[graph.nrNodes];
+            for (int i = 0; i < graph.nrNodes; i++) {
+                clusterToAtnodes[clusters[i]] += graph.nodeWeight[i];
+                clusterSize[clusters[i]]++;
+            }
+            emptyClusters = new int[graph.nrNodes];
+            for (int c = graph.nrNodes-1; c >= 0; c--) {
+                if (clusterSize[c] == 0) emptyClusters[nrEmptyClusters++] = c;
+            }
+        }
+        
+        /**
+         * Returns the decrease of the negative modularity 
+         * when a node moves to another cluster.
+         * @param node  node
+         * @param cluster  target cluster, or <code>EMPTY_CLUSTER</code>
+         * @param atedgesToOwn  edge weight between the node and the other nodes
+         *   of its cluster 
+         * @param atedgesToTarget  edge weight between the node and the target cluster
+         * @return decrease of the negative modularity
+         */
+        double getGain(final int node, final int cluster, 
+                final double atedgesToOwn, final double atedgesToTarget) {
+            final double nodeAtnodes = graph.nodeWeight[node];
+            final double ownAtnodes = clusterToAtnodes[clusters[node]];
+            final double targetAtnodes = (cluster == EMPTY_CLUSTER) ? 0.0 : clusterToAtnodes[cluster];
+            // count edge weights twice to include reverse edges
+            return 2 * (atedgesToTarget - atedgesToOwn) / atedges
+                + 2 * nodeAtnodes * (ownAtnodes - targetAtnodes - nodeAtnodes) / atpairs;
+        }
+        
+        /**
+         * Returns the decrease of the negative modularity 
+         * when a node moves to another cluster.
+         * @param node  node
+         * @param cluster  target cluster, or <code>EMPTY_CLUSTER</code>
+         * @return decrease of the negative modularity
+         */
+        double getGain(final int node, final int cluster) {
+            final int own = clusters[node];
+            if (cluster == EMPTY_CLUSTER && clusterSize[own] == 1) return 0.0;
+            double atedgesToOwn = 0.0, atedgesToTarget = 0.0;
+            for (int k = graph.edgeStart[node]; k < graph.edgeStart[node+1]; k++) {
+                final int end = graph.edgeEnd[k];
+                if (end == node) continue;
+                if (clusters[end] == own) atedgesToOwn += graph.edgeWeight[k];
+                else if (clusters[end] == cluster) atedgesToTarget += graph.edgeWeight[k];
+            }
+            return getGain(node, cluster, atedgesToOwn, atedgesToTarget);
+        }
+        
+        /**
+         * Returns the cluster to which moving a node improves 
+         * the modularity most.  Considers the clusters of the neighbors
+         * and an empty cluster.
+         * @param node  node
+         * @param buffer  buffers of the calling thread
+         * @return best cluster, <code>EMPTY_CLUSTER</code>, 
+         *   or the current cluster of the node if no move improves the modularity
+         */
+        int getBestMove(final int node, final MoveBuffer buffer) {
+            final int own = clusters[node];
+            int nrTouched = 0;
+            for (int k = graph.edgeStart[node]; k < graph.edgeStart[node+1]; k++) {
+                final int end = graph.edgeEnd[k];
+                if (end == node) continue;
+                final int cluster = clusters[end];
+                if (!buffer.seen[cluster]) {
+                    buffer.seen[cluster] = true;
+                    buffer.touched[nrTouched++] = cluster;
+                }
+                buffer.clusterToAtedges[cluster] += graph.edgeWeight[k];
+            }
+            final double atedgesToOwn = buffer.clusterToAtedges[own];
+            
+            int bestCluster = own;
+            double bestGain = MIN_GAIN;
+            for (int t = 0; t < nrTouched; t++) {
+                final int cluster = buffer.touched[t];
+                if (cluster != own) {
+                    final double gain = getGain(node, cluster, 
+                            atedgesToOwn, buffer.clusterToAtedges[cluster]);
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        bestCluster = cluster;
+                    }
+                }
+                buffer.clusterToAtedges[cluster] = 0.0;
+                buffer.seen[cluster] = false;
+            }
+            buffer.clusterToAtedges[own] = 0.0;
+            buffer.seen[own] = false;
+            if (clusterSize[own] > 1 && getGain(node, EMPTY_CLUSTER, atedgesToOwn, 0.0) > bestGain) {
+                bestCluster = EMPTY_CLUSTER;
+            }
+            return bestCluster;
+        }
+        
+        /**
+         * Moves a node to another cluster.
+         * @param node  node
+         * @param cluster  target cluster, or <code>EMPTY_CLUSTER</code>
+         */
+        void move(final int node, int cluster) {
+            final int own = clusters[node];
+            if (cluster == EMPTY_CLUSTER) cluster = emptyClusters[--nrEmptyClusters];
+            clusterToAtnodes[own] -= graph.nodeWeight[node];
+            if (--clusterSize[own] == 0) {
+                clusterToAtnodes[own] = 0.0;
+                emptyClusters[nrEmptyClusters++] = own;
+            }
+            clusterToAtnodes[cluster] += graph.nodeWeight[node];
+            clusterSize[cluster]++;
+            clusters[node] = cluster;
+        }
     }
     
 }
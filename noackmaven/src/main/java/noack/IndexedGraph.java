@@ -0,0 +1,159 @@
+package noack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Weighted graph in index-based form, for the minimizers and optimizers
+ *   that avoid <code>Node</code> and <code>Edge</code> objects and hash maps
+ *   in their inner loops.
+ * The nodes are numbered from 0 to <code>nrNodes-1</code>.
+ * The edges are stored in compressed sparse row form: the edges starting
+ *   at node <code>i</code> have the indices
+ *   <code>edgeStart[i]</code> to <code>edgeStart[i+1]-1</code>,
+ *   and edge <code>k</code> ends at node <code>edgeEnd[k]</code>
+ *   and has the weight <code>edgeWeight[k]</code>.
+ *
+ * @author obvious
+ */
+public class IndexedGraph {
+    /** Number of nodes. */
+    public final int nrNodes;
+    /** Nodes in index order, or <code>null</code> if the graph was not
+        created from <code>Node</code> objects. */
+    public final List<Node> nodes;
+    /** Weight of each node. */
+    public final double[] nodeWeight;
+    /** Index of the first edge of each node, and the number of edges at the end. */
+    public final int[] edgeStart;
+    /** End node of each edge. */
+    public final int[] edgeEnd;
+    /** Weight of each edge. */
+    public final double[] edgeWeight;
+
+    /**
+     * Creates the index-based form of a graph.
+     * The edges of each node keep the order of the given collection.
+     * @param nodes  weighted nodes; the index of a node is its position
+     *   in the iteration order of the collection.
+     * @param edges  weighted edges between the given nodes.
+     * @param withLoops  set to <code>false</code> to omit the edges
+     *   whose start node equals the end node.
+     * @throws IllegalArgumentException if an edge has a node
+     *   that is not in <code>nodes</code>.
+     */
+    public IndexedGraph(final Collection<Node> nodes, final Collection<Edge> edges,
+            final boolean withLoops) {
+        this.nodes = new ArrayList<Node>(nodes);
+        this.nrNodes = this.nodes.size();
+        this.nodeWeight = new double[nrNodes];
+        final Map<Node,Integer> nodeToIndex = new HashMap<Node,Integer>();
+        for (int i = 0; i < nrNodes; i++) {
+            final Node node = this.nodes.get(i);
+            nodeToIndex.put(node, i);
+            nodeWeight[i] = node.weight;
+        }
+
+        // count the edges of each node, then place them
+        final int[] start = new int[edges.size()];
+        final int[] end = new int[edges.size()];
+        int nrEdges = 0;
+        this.edgeStart = new int[nrNodes+1];
+        for (Edge edge : edges) {
+            if (!withLoops && edge.startNode == edge.endNode) continue;
+            final Integer startIndex = nodeToIndex.get(edge.startNode);
+            final Integer endIndex = nodeToIndex.get(edge.endNode);
+            if (startIndex == null || endIndex == null) {
+                throw new IllegalArgumentException("Edge with unknown node: " + edge);
+            }
+            start[nrEdges] = startIndex;
+            end[nrEdges] = endIndex;
+            nrEdges++;
+            edgeStart[startIndex+1]++;
+        }
+        for (int i = 0; i < nrNodes; i++) edgeStart[i+1] += edgeStart[i];
+
+        this.edgeEnd = new int[nrEdges];
+        this.edgeWeight = new double[nrEdges];
+        final int[] next = new int[nrNodes];
+        System.arraycopy(edgeStart, 0, next, 0, nrNodes);
+        int k = 0;
+        for (Edge edge : edges) {
+            if (!withLoops && edge.startNode == edge.endNode) continue;
+            final int pos = next[start[k]]++;
+            edgeEnd[pos] = end[k];
+            edgeWeight[pos] = edge.weight;
+            k++;
+        }
+    }
+
+    /**
+     * Creates a graph from arrays, which are not copied.
+     * @param nodeWeight  weight of each node.
+     * @param edgeStart  index of the first edge of each node,
+     *   followed by the number of edges; must be non-decreasing.
+     * @param edgeEnd  end node of each edge.
+     * @param edgeWeight  weight of each edge.
+     * @throws IllegalArgumentException if the array lengths do not match.
+     */
+    public IndexedGraph(final double[] nodeWeight, final int[] edgeStart,
+            final int[] edgeEnd, final double[] edgeWeight) {
+        if (edgeStart.length != nodeWeight.length+1
+                || edgeEnd.length != edgeWeight.length
+                || edgeStart[nodeWeight.length] != edgeEnd.length) {
+            throw new IllegalArgumentException("Inconsistent array lengths");
+        }
+        this.nrNodes = nodeWeight.length;
+        this.nodes = null;
+        this.nodeWeight = nodeWeight;
+        this.edgeStart = edgeStart;
+        this.edgeEnd = edgeEnd;
+        this.edgeWeight = edgeWeight;
+    }
+
+    /**
+     * Returns the number of edges.
+     * @return number of edges
+     */
+    public int getNrEdges() {
+        return edgeEnd.length;
+    }
+
+    /**
+     * Copies positions from a map into an array with
+     * <code>nrDims</code> coordinates per node, in index order.
+     * @param positions  position of each node
+     * @param nrDims  number of coordinates of each node
+     * @return array of coordinates
+     * @throws IllegalStateException if the graph was not created
+     *   from <code>Node</code> objects.
+     */
+    public double[] toArray(final Map<Node,double[]> positions, final int nrDims) {
+        if (nodes == null) {
+            throw new IllegalStateException("Graph without Node objects");
+        }
+        final double[] result = new double[nrNodes*nrDims];
+        for (int i = 0; i < nrNodes; i++) {
+            System.arraycopy(positions.get(nodes.get(i)), 0, result, i*nrDims, nrDims);
+        }
+        return result;
+    }
+
+    /**
+     * Copies positions from an array with <code>nrDims</code> coordinates
+     * per node back into the position arrays of a map.
+     * @param array  array of coordinates, in index order
+     * @param positions  position of each node (output parameter)
+     * @param nrDims  number of coordinates of each node
+     */
+    public void fromArray(final double[] array, final Map<Node,double[]> positions,
+            final int nrDims) {
+        for (int i = 0; i < nrNodes; i++) {
+            System.arraycopy(array, i*nrDims, positions.get(nodes.get(i)), 0, nrDims);
+        }
+    }
+}
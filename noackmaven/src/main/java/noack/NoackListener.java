@@ -53,7 +53,7 @@ public class NoackListener implements GraphListener {
       Map<Node, double[]> position = layout.makeInitialPositions(nodes, false);
       new MinimizerBarnesHut(nodes, edges, 0.0, 1.0, 0.05).
       minimizeEnergy(position, 10);
-      Map<Node, Integer> cluster = new OptimizerModularity().execute(nodes, edges, false);
+      Map<Node, Integer> cluster = new OptimizerModularity().executeMultiLevel(nodes, edges, false);
       ((GraphFrame) layout.getFrame()).getCanvas().setPositionAndCluster(position, cluster);
       
     }
@@ -12,17 +12,25 @@ public interface TableListener {
     int BEGIN_EDIT = -0;
     int END_EDIT = -0;
     
+    /** Indicates a data delete operation. */
+    int DELETE = -1;
+    /** Indicates a data update operation. */
+    int UPDATE = 0;
+    /** Indicates a data insert operation. */
+    int INSERT = 1;
+    
     /**
      * Notification that a table has changed.
      * @param t the table that has changed
-     * @param start the starting row index of the changed table region
+     * @param start the starting row index of the changed table region, or
+     * -1 if the structure or metadata of the table has changed
      * @param end the ending row index of the changed table region
      * @param col the column that has changed, or
-     * {@link EventConstants#ALL_COLUMNS} if the operation affects all
+     * {@link #ALL_COLUMN} if the operation affects all
      * columns
      * @param type the type of modification, one of
-     * {@link EventConstants#INSERT}, {@link EventConstants#DELETE}, or
-     * {@link EventConstants#UPDATE}.
+     * {@link #INSERT}, {@link #DELETE}, or
+     * {@link #UPDATE}.
      */
     public void tableChanged(Table t, int start, int end, int col, int type);
     
@@ -0,0 +1,179 @@
+package obvious.query;
+
+import obvious.Schema;
+
+/**
+ * Description of an aggregate computed by {@link GroupBy} over the rows of
+ * each group: the aggregate operation, the expression it is computed on,
+ * and the name of the result column. Supported operations are the row
+ * count, the sum, minimum, maximum, average and variance of a numeric
+ * expression, the number of distinct values of an expression, and
+ * approximate quantiles of a numeric expression.
+ *
+ * @author obvious
+ */
+public class Aggregate {
+
+    /** Indicates the number of rows of the group. */
+    public static final int COUNT          = 0;
+    /** Indicates the sum of a numeric expression. */
+    public static final int SUM            = 1;
+    /** Indicates the minimum of a numeric expression. */
+    public static final int MIN            = 2;
+    /** Indicates the maximum of a numeric expression. */
+    public static final int MAX            = 3;
+    /** Indicates the average of a numeric expression. */
+    public static final int AVG            = 4;
+    /** Indicates the population variance of a numeric expression. */
+    public static final int VARIANCE       = 5;
+    /** Indicates the number of distinct values of an expression. */
+    public static final int DISTINCT_COUNT = 6;
+    /** Indicates an approximate quantile of a numeric expression. */
+    public static final int QUANTILE       = 7;
+
+    private static final String[] NAMES = {
+        "COUNT", "SUM", "MIN", "MAX", "AVG", "VARIANCE", "COUNT_DISTINCT",
+        "QUANTILE"
+    };
+
+    private final int m_op;
+    private final Expression m_expr;
+    private final double m_quantile;
+    private final String m_name;
+
+    /**
+     * Create a new Aggregate.
+     * @param operation the aggregate operation, one of {@link #COUNT},
+     * {@link #SUM}, {@link #MIN}, {@link #MAX}, {@link #AVG},
+     * {@link #VARIANCE} or {@link #DISTINCT_COUNT}. Quantiles are created
+     * with {@link #Aggregate(Expression, double, String)}.
+     * @param expr the expression to aggregate; ignored, and may be null, for
+     * {@link #COUNT}
+     * @param name the name of the result column, or null to use the string
+     * representation of this aggregate
+     */
+    public Aggregate(int operation, Expression expr, String name) {
+        if ( operation < COUNT || operation > DISTINCT_COUNT )
+            throw new IllegalArgumentException("Unknown operation.");
+        if ( expr == null && operation != COUNT )
+            throw new IllegalArgumentException("Missing expression.");
+        m_op = operation;
+        m_expr = expr;
+        m_quantile = Double.NaN;
+        m_name = name;
+    }
+
+    /**
+     * Create a new Aggregate computing an approximate {@link #QUANTILE}.
+     * The quantile of a group is the smallest value whose rank is at least
+     * <code>quantile</code> times the number of rows; it is exact for the
+     * minimum, the maximum, and groups of up to a few hundred rows.
+     * @param expr the numeric expression to aggregate
+     * @param quantile the quantile, between 0 and 1, e.g. 0.5 for the median
+     * @param name the name of the result column, or null to use the string
+     * representation of this aggregate
+     */
+    public Aggregate(Expression expr, double quantile, String name) {
+        if ( expr == null )
+            throw new IllegalArgumentException("Missing expression.");
+        if ( !(quantile >= 0 && quantile <= 1) )
+            throw new IllegalArgumentException(
+                "Quantile must be between 0 and 1: "+quantile);
+        m_op = QUANTILE;
+        m_expr = expr;
+        m_quantile = quantile;
+        m_name = name;
+    }
+
+    /**
+     * Get the aggregate operation.
+     * @return the operation
+     */
+    public int getOperation() {
+        return m_op;
+    }
+
+    /**
+     * Get the aggregated expression.
+     * @return the expression, possibly null for {@link #COUNT}
+     */
+    public Expression getExpression() {
+        return m_expr;
+    }
+
+    /**
+     * Get the computed quantile.
+     * @return the quantile, or NaN if this aggregate is not a
+     * {@link #QUANTILE}
+     */
+    public double getQuantile() {
+        return m_quantile;
+    }
+
+    /**
+     * Get the name of the result column.
+     * @return the result column name
+     */
+    public String getName() {
+        return ( m_name != null ? m_name : toString() );
+    }
+
+    /**
+     * Indicates if this aggregate requires a numeric expression.
+     * @return true unless the operation is {@link #COUNT} or
+     * {@link #DISTINCT_COUNT}
+     */
+    public boolean isNumeric() {
+        return m_op != COUNT && m_op != DISTINCT_COUNT;
+    }
+
+    /**
+     * Get the type of the result column: int for counts, the type of the
+     * expression for the minimum and maximum of integers, long for sums
+     * of integers, and double otherwise.
+     * @param s the schema of the aggregated table
+     * @return the result column type
+     */
+    public Class<?> getType(Schema s) {
+        switch ( m_op ) {
+        case COUNT:
+        case DISTINCT_COUNT:
+            return int.class;
+        case SUM:
+            return ( isIntegerType(m_expr.getType(s)) ?
+                    long.class : double.class );
+        case MIN:
+        case MAX:
+            Class<?> type = m_expr.getType(s);
+            if ( type == long.class )
+                return long.class;
+            else if ( isIntegerType(type) )
+                return int.class;
+            else
+                return double.class;
+        default:
+            return double.class;
+        }
+    }
+
+    /**
+     * Indicates if a type is a primitive integer type.
+     */
+    static boolean isIntegerType(Class<?> type) {
+        return ( type == byte.class || type == short.class ||
+                 type == int.class  || type == long.class );
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        if ( m_op == COUNT )
+            return NAMES[m_op]+"()";
+        else if ( m_op == QUANTILE )
+            return NAMES[m_op]+"("+m_expr+", "+m_quantile+")";
+        else
+            return NAMES[m_op]+"("+m_expr+")";
+    }
+
+} // end of class Aggregate
@@ -0,0 +1,50 @@
+package obvious.query;
+
+import obvious.Table;
+
+/**
+ * Optional interface for tables able to copy the values of a column
+ * for many rows at once, without boxing. The batch evaluation methods of
+ * {@link CompiledExpression} use it to read columns in bulk.
+ *
+ * @author obvious
+ */
+public interface BatchTable extends Table {
+
+    /**
+     * Copy the values of a numeric column for a batch of rows.
+     * @param col the column index
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param result the array receiving the values, as ints
+     */
+    public void getInt(int col, int[] rows, int n, int[] result);
+
+    /**
+     * Copy the values of a numeric column for a batch of rows.
+     * @param col the column index
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param result the array receiving the values, as longs
+     */
+    public void getLong(int col, int[] rows, int n, long[] result);
+
+    /**
+     * Copy the values of a numeric column for a batch of rows.
+     * @param col the column index
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param result the array receiving the values, as doubles
+     */
+    public void getDouble(int col, int[] rows, int n, double[] result);
+
+    /**
+     * Copy the values of a boolean column for a batch of rows.
+     * @param col the column index
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param result the array receiving the values
+     */
+    public void getBoolean(int col, int[] rows, int n, boolean[] result);
+
+} // end of interface BatchTable
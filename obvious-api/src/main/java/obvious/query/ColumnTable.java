@@ -0,0 +1,519 @@
+package obvious.query;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+import obvious.IntIterator;
+import obvious.Schema;
+import obvious.Table;
+import obvious.TableListener;
+
+/**
+ * Read-only table storing each column in an array, with rows numbered
+ * from 0 to <code>getRowCount()-1</code>. Columns of type int, long,
+ * float, double and boolean are stored in primitive arrays and can be read
+ * in bulk through the {@link BatchTable} methods; columns of any other
+ * type are stored in Object arrays. The arrays are not copied.
+ *
+ * <p>ColumnTable holds the results of query operators such as
+ * {@link GroupBy}.</p>
+ *
+ * @author obvious
+ */
+public class ColumnTable implements BatchTable {
+
+    private final ColumnSchema m_schema;
+    private final Object[] m_columns;
+    private final int m_rows;
+
+    /**
+     * Create a new ColumnTable.
+     * @param names the column names
+     * @param types the column types
+     * @param columns the column arrays, one per column: an array of the
+     * primitive column type for int, long, float, double and boolean
+     * columns, an Object array otherwise
+     * @param rowCount the number of rows; each column array must have at
+     * least that many elements
+     */
+    public ColumnTable(String[] names, Class<?>[] types, Object[] columns,
+            int rowCount)
+    {
+        if ( names.length != types.length || names.length != columns.length )
+            throw new IllegalArgumentException(
+                "Inconsistent number of columns.");
+        for ( int i=0; i<columns.length; ++i ) {
+            Class<?> atype = storageClass(types[i]);
+            if ( columns[i] == null || !atype.isInstance(columns[i]) )
+                throw new IllegalArgumentException(
+                    "Column "+names[i]+" must be stored in a "
+                    + atype.getComponentType().getName()+" array.");
+            if ( Array.getLength(columns[i]) < rowCount )
+                throw new IllegalArgumentException(
+                    "Column "+names[i]+" has less than "+rowCount+" rows.");
+        }
+        m_schema = new ColumnSchema(names, types);
+        m_columns = columns;
+        m_rows = rowCount;
+    }
+
+    /**
+     * Returns the array class used to store a column of the given type.
+     */
+    private static Class<?> storageClass(Class<?> type) {
+        if ( type == int.class )
+            return int[].class;
+        else if ( type == long.class )
+            return long[].class;
+        else if ( type == float.class )
+            return float[].class;
+        else if ( type == double.class )
+            return double[].class;
+        else if ( type == boolean.class )
+            return boolean[].class;
+        else
+            return Object[].class;
+    }
+
+    // ------------------------------------------------------------------------
+    // Table Interface
+
+    /**
+     * @see obvious.Table#getSchema()
+     */
+    public Schema getSchema() {
+        return m_schema;
+    }
+
+    /**
+     * @see obvious.Table#getRowCount()
+     */
+    public int getRowCount() {
+        return m_rows;
+    }
+
+    /**
+     * @see obvious.Table#rowIterator()
+     */
+    public IntIterator rowIterator() {
+        return new RangeIterator(m_rows);
+    }
+
+    /**
+     * @see obvious.Table#isValidRow(int)
+     */
+    public boolean isValidRow(int rowId) {
+        return rowId >= 0 && rowId < m_rows;
+    }
+
+    /**
+     * @see obvious.Table#getValue(int, java.lang.String)
+     */
+    public Object getValue(int rowId, String field) {
+        int col = m_schema.getColumnIndex(field);
+        if ( col < 0 )
+            throw new IllegalArgumentException("Unknown column: "+field);
+        return getValue(rowId, col);
+    }
+
+    /**
+     * @see obvious.Table#getValue(int, int)
+     */
+    public Object getValue(int rowId, int col) {
+        if ( !isValidRow(rowId) )
+            throw new IndexOutOfBoundsException("Invalid row: "+rowId);
+        Object a = m_columns[col];
+        if ( a instanceof int[] )
+            return Integer.valueOf(((int[])a)[rowId]);
+        else if ( a instanceof long[] )
+            return Long.valueOf(((long[])a)[rowId]);
+        else if ( a instanceof float[] )
+            return Float.valueOf(((float[])a)[rowId]);
+        else if ( a instanceof double[] )
+            return Double.valueOf(((double[])a)[rowId]);
+        else if ( a instanceof boolean[] )
+            return Boolean.valueOf(((boolean[])a)[rowId]);
+        else
+            return ((Object[])a)[rowId];
+    }
+
+    /**
+     * @see obvious.Table#isValueValid(int, int)
+     */
+    public boolean isValueValid(int rowId, int col) {
+        return isValidRow(rowId) && col >= 0 && col < m_columns.length;
+    }
+
+    /**
+     * Does nothing, a ColumnTable is never edited.
+     * @see obvious.Table#beginEdit(int)
+     */
+    public void beginEdit(int col) {
+    }
+
+    /**
+     * Does nothing, a ColumnTable is never edited.
+     * @see obvious.Table#endEdit(int)
+     */
+    public void endEdit(int col) {
+    }
+
+    /**
+     * @see obvious.Table#isEditing(int)
+     */
+    public boolean isEditing(int col) {
+        return false;
+    }
+
+    /**
+     * Does nothing, a ColumnTable never changes.
+     * @see obvious.Table#addTableListener(obvious.TableListener)
+     */
+    public void addTableListener(TableListener listnr) {
+    }
+
+    /**
+     * Does nothing, a ColumnTable never changes.
+     * @see obvious.Table#removeTableListener(obvious.TableListener)
+     */
+    public void removeTableListener(TableListener listnr) {
+    }
+
+    /**
+     * @see obvious.Table#getTableListeners()
+     */
+    public Collection<TableListener> getTableListeners() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @see obvious.Table#canAddRow()
+     */
+    public boolean canAddRow() {
+        return false;
+    }
+
+    /**
+     * @see obvious.Table#canRemoveRow()
+     */
+    public boolean canRemoveRow() {
+        return false;
+    }
+
+    /**
+     * Unsupported, a ColumnTable is read-only.
+     * @see obvious.Table#addRow()
+     */
+    public int addRow() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Unsupported, a ColumnTable is read-only.
+     * @see obvious.Table#removeRow(int)
+     */
+    public boolean removeRow(int row) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Unsupported, a ColumnTable is read-only.
+     * @see obvious.Table#removeAllRows()
+     */
+    public void removeAllRows() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Unsupported, a ColumnTable is read-only.
+     * @see obvious.Table#set(int, java.lang.String, java.lang.Object)
+     */
+    public void set(int rowId, String field, Object val) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Unsupported, a ColumnTable is read-only.
+     * @see obvious.Table#set(int, int, java.lang.Object)
+     */
+    public void set(int rowId, int col, Object val) {
+        throw new UnsupportedOperationException();
+    }
+
+    // ------------------------------------------------------------------------
+    // BatchTable Interface
+
+    /**
+     * @see obvious.query.BatchTable#getInt(int, int[], int, int[])
+     */
+    public void getInt(int col, int[] rows, int n, int[] result) {
+        Object a = m_columns[col];
+        if ( a instanceof int[] ) {
+            int[] v = (int[])a;
+            for ( int i=0; i<n; ++i ) result[i] = v[rows[i]];
+        } else if ( a instanceof long[] ) {
+            long[] v = (long[])a;
+            for ( int i=0; i<n; ++i ) result[i] = (int)v[rows[i]];
+        } else if ( a instanceof float[] ) {
+            float[] v = (float[])a;
+            for ( int i=0; i<n; ++i ) result[i] = (int)v[rows[i]];
+        } else if ( a instanceof double[] ) {
+            double[] v = (double[])a;
+            for ( int i=0; i<n; ++i ) result[i] = (int)v[rows[i]];
+        } else {
+            for ( int i=0; i<n; ++i )
+                result[i] = ((Number)getValue(rows[i], col)).intValue();
+        }
+    }
+
+    /**
+     * @see obvious.query.BatchTable#getLong(int, int[], int, long[])
+     */
+    public void getLong(int col, int[] rows, int n, long[] result) {
+        Object a = m_columns[col];
+        if ( a instanceof int[] ) {
+            int[] v = (int[])a;
+            for ( int i=0; i<n; ++i ) result[i] = v[rows[i]];
+        } else if ( a instanceof long[] ) {
+            long[] v = (long[])a;
+            for ( int i=0; i<n; ++i ) result[i] = v[rows[i]];
+        } else if ( a instanceof float[] ) {
+            float[] v = (float[])a;
+            for ( int i=0; i<n; ++i ) result[i] = (long)v[rows[i]];
+        } else if ( a instanceof double[] ) {
+            double[] v = (double[])a;
+            for ( int i=0; i<n; ++i ) result[i] = (long)v[rows[i]];
+        } else {
+            for ( int i=0; i<n; ++i )
+                result[i] = ((Number)getValue(rows[i], col)).longValue();
+        }
+    }
+
+    /**
+     * @see obvious.query.BatchTable#getDouble(int, int[], int, double[])
+     */
+    public void getDouble(int col, int[] rows, int n, double[] result) {
+        Object a = m_columns[col];
+        if ( a instanceof int[] ) {
+            int[] v = (int[])a;
+            for ( int i=0; i<n; ++i ) result[i] = v[rows[i]];
+        } else if ( a instanceof long[] ) {
+            long[] v = (long[])a;
+            for ( int i=0; i<n; ++i ) result[i] = v[rows[i]];
+        } else if ( a instanceof float[] ) {
+            float[] v = (float[])a;
+            for ( int i=0; i<n; ++i ) result[i] = v[rows[i]];
+        } else if ( a instanceof double[] ) {
+            double[] v = (double[])a;
+            for ( int i=0; i<n; ++i ) result[i] = v[rows[i]];
+        } else {
+            for ( int i=0; i<n; ++i )
+                result[i] = ((Number)getValue(rows[i], col)).doubleValue();
+        }
+    }
+
+    /**
+     * @see obvious.query.BatchTable#getBoolean(int, int[], int, boolean[])
+     */
+    public void getBoolean(int col, int[] rows, int n, boolean[] result) {
+        Object a = m_columns[col];
+        if ( a instanceof boolean[] ) {
+            boolean[] v = (boolean[])a;
+            for ( int i=0; i<n; ++i ) result[i] = v[rows[i]];
+        } else {
+            for ( int i=0; i<n; ++i )
+                result[i] = ((Boolean)getValue(rows[i], col)).booleanValue();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Helper Classes
+
+    /**
+     * Iterates over the row ids from 0 to a row count.
+     */
+    private static class RangeIterator implements IntIterator {
+        private final int m_end;
+        private int m_next;
+        RangeIterator(int end) {
+            m_end = end;
+        }
+        public boolean hasNext() {
+            return m_next < m_end;
+        }
+        public int nextInt() {
+            if ( m_next >= m_end )
+                throw new NoSuchElementException();
+            return m_next++;
+        }
+        public Integer next() {
+            return Integer.valueOf(nextInt());
+        }
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Read-only schema of a ColumnTable. As a table, it has one row per
+     * column, with the {@link Schema#NAME}, {@link Schema#TYPE} and
+     * {@link Schema#DEFAULT_VALUE} columns.
+     */
+    private static class ColumnSchema implements Schema {
+        private static final String[] FIELDS =
+            { NAME, TYPE, DEFAULT_VALUE };
+
+        private final String[] m_names;
+        private final Class<?>[] m_types;
+        private final HashMap<String,Integer> m_index =
+            new HashMap<String,Integer>();
+
+        ColumnSchema(String[] names, Class<?>[] types) {
+            m_names = names;
+            m_types = types;
+            for ( int i=0; i<names.length; ++i ) {
+                if ( m_index.put(names[i], Integer.valueOf(i)) != null )
+                    throw new IllegalArgumentException(
+                        "Duplicate column name: "+names[i]);
+            }
+        }
+
+        // -- Schema interface --
+
+        public int getColumnCount() {
+            return m_names.length;
+        }
+        public Class<?> getColumnType(int col) {
+            return m_types[col];
+        }
+        public Object getColumnDefault(int col) {
+            Class<?> type = m_types[col];
+            if ( type == int.class )
+                return Integer.valueOf(0);
+            else if ( type == long.class )
+                return Long.valueOf(0);
+            else if ( type == float.class )
+                return Float.valueOf(0);
+            else if ( type == double.class )
+                return Double.valueOf(0);
+            else if ( type == boolean.class )
+                return Boolean.FALSE;
+            else
+                return null;
+        }
+        public boolean canGet(int col, Class type) {
+            Class<?> ctype = m_types[col];
+            Class<?> target = type;
+            if ( AbstractExpression.isNumericType(ctype) )
+                return AbstractExpression.isNumericType(target)
+                    || target.isAssignableFrom(Number.class);
+            else if ( ctype == boolean.class )
+                return target == boolean.class
+                    || target.isAssignableFrom(Boolean.class);
+            else
+                return target.isAssignableFrom(ctype);
+        }
+        public boolean canSet(int col, Class type) {
+            return false;
+        }
+        public Class<?> getColumnType(String field) {
+            int col = getColumnIndex(field);
+            return ( col < 0 ? null : m_types[col] );
+        }
+        public boolean hasColumn(String name) {
+            return m_index.containsKey(name);
+        }
+        public String getColumnName(int col) {
+            return m_names[col];
+        }
+        public int getColumnIndex(String field) {
+            Integer col = m_index.get(field);
+            return ( col == null ? -1 : col.intValue() );
+        }
+        public int addColumn(String name, Class type, Object defaultValue) {
+            throw new UnsupportedOperationException();
+        }
+        public boolean removeColumn(String field) {
+            throw new UnsupportedOperationException();
+        }
+        public boolean removeColumn(int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        // -- Table interface, with one row per column --
+
+        public Schema getSchema() {
+            throw new UnsupportedOperationException();
+        }
+        public int getRowCount() {
+            return m_names.length;
+        }
+        public IntIterator rowIterator() {
+            return new RangeIterator(m_names.length);
+        }
+        public boolean isValidRow(int rowId) {
+            return rowId >= 0 && rowId < m_names.length;
+        }
+        public Object getValue(int rowId, String field) {
+            for ( int i=0; i<FIELDS.length; ++i ) {
+                if ( FIELDS[i].equals(field) )
+                    return getValue(rowId, i);
+            }
+            throw new IllegalArgumentException("Unknown column: "+field);
+        }
+        public Object getValue(int rowId, int col) {
+            switch ( col ) {
+            case 0:
+                return m_names[rowId];
+            case 1:
+                return m_types[rowId];
+            case 2:
+                return getColumnDefault(rowId);
+            default:
+                throw new IndexOutOfBoundsException("Invalid column: "+col);
+            }
+        }
+        public boolean isValueValid(int rowId, int col) {
+            return isValidRow(rowId) && col >= 0 && col < FIELDS.length;
+        }
+        public void beginEdit(int col) {
+        }
+        public void endEdit(int col) {
+        }
+        public boolean isEditing(int col) {
+            return false;
+        }
+        public void addTableListener(TableListener listnr) {
+        }
+        public void removeTableListener(TableListener listnr) {
+        }
+        public Collection<TableListener> getTableListeners() {
+            return Collections.emptyList();
+        }
+        public boolean canAddRow() {
+            return false;
+        }
+        public boolean canRemoveRow() {
+            return false;
+        }
+        public int addRow() {
+            throw new UnsupportedOperationException();
+        }
+        public boolean removeRow(int row) {
+            throw new UnsupportedOperationException();
+        }
+        public void removeAllRows() {
+            throw new UnsupportedOperationException();
+        }
+        public void set(int rowId, String field, Object val) {
+            throw new UnsupportedOperationException();
+        }
+        public void set(int rowId, int col, Object val) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+} // end of class ColumnTable
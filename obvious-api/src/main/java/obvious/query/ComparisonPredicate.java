@@ -83,36 +83,47 @@ public class ComparisonPredicate extends BinaryExpression implements Predicate {
         Class rType = m_right.getType(t.getSchema());
         
         int c = 0;
-//        if ( TypeLib.isNumericType(lType) && TypeLib.isNumericType(rType) ) {
-//            Class type = TypeLib.getNumericType(lType, rType);
-//            if ( type == int.class || type == byte.class ) {
-//                int x = m_left.getInt(t);
-//                int y = m_right.getInt(t);
-//                c = ((LiteralComparator)m_cmp).compare(x,y);
-//            } else if ( type == long.class ) {
-//                long x = m_left.getLong(t);
-//                long y = m_right.getLong(t);
-//                c = ((LiteralComparator)m_cmp).compare(x,y);
-//            } else if ( type == float.class ) {
-//                float x = m_left.getFloat(t);
-//                float y = m_right.getFloat(t);
-//                c = ((LiteralComparator)m_cmp).compare(x,y);
-//            } else if ( type == double.class ) {
-//                double x = m_left.getDouble(t);
-//                double y = m_right.getDouble(t);
-//                c = ((LiteralComparator)m_cmp).compare(x,y);
-//            } else {
-//                throw new IllegalStateException();
-//            }
-//        } else {
-//            c = m_cmp.compare(m_left.get(t), m_right.get(t));
-//        }
-       //FIXME JDF for compilation
-        switch ( m_op ) {
+        if ( isNumericType(lType) && isNumericType(rType) ) {
+            Class<?> type = getNumericType(lType, rType);
+            if ( type == int.class || type == byte.class ) {
+                int x = m_left.getInt(t);
+                int y = m_right.getInt(t);
+                c = ( x < y ? -1 : ( x > y ? 1 : 0 ) );
+            } else if ( type == long.class ) {
+                long x = m_left.getLong(t);
+                long y = m_right.getLong(t);
+                c = ( x < y ? -1 : ( x > y ? 1 : 0 ) );
+            } else if ( type == float.class ) {
+                float x = m_left.getFloat(t);
+                float y = m_right.getFloat(t);
+                c = ( x < y ? -1 : ( x > y ? 1 : 0 ) );
+            } else if ( type == double.class ) {
+                double x = m_left.getDouble(t);
+                double y = m_right.getDouble(t);
+                c = ( x < y ? -1 : ( x > y ? 1 : 0 ) );
+            } else {
+                throw new IllegalStateException();
+            }
+        } else {
+            c = compare(m_cmp, m_left.get(t), m_right.get(t));
+        }
+        return test(m_op, c);
+    }
+    
+    /**
+     * Indicates if the result of a comparison satisfies a comparison
+     * operation.
+     * @param op the comparison operation, one of {@link #LT}, {@link #GT},
+     * {@link #EQ}, {@link #NEQ}, {@link #LTEQ}, or {@link #GTEQ}
+     * @param c the comparison result, negative, zero or positive
+     * @return true if the comparison result satisfies the operation
+     */
+    static boolean test(int op, int c) {
+        switch ( op ) {
         case LT:
-            return ( c == -1 );
+            return ( c < 0 );
         case GT:
-            return ( c == 1 );
+            return ( c > 0 );
         case EQ:
             return ( c == 0 );
         case NEQ:
@@ -125,6 +136,29 @@ public class ComparisonPredicate extends BinaryExpression implements Predicate {
             throw new IllegalStateException("Unknown operation.");
         }
     }
+    
+    /**
+     * Compare two values using a comparator, or using their natural
+     * ordering if the comparator is null. With the natural ordering,
+     * null values are smaller than any other value.
+     * @param cmp the comparator, or null
+     * @param o1 the first value
+     * @param o2 the second value
+     * @return a negative, zero or positive integer as the first value is
+     * smaller than, equal to, or greater than the second
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Comparator<?> cmp, Object o1, Object o2) {
+        if ( cmp != null ) {
+            return ((Comparator<Object>)cmp).compare(o1, o2);
+        } else if ( o1 == null ) {
+            return ( o2 == null ? 0 : -1 );
+        } else if ( o2 == null ) {
+            return 1;
+        } else {
+            return ((Comparable<Object>)o1).compareTo(o2);
+        }
+    }
 
     /**
      * @see prefuse.data.expression.Expression#get(prefuse.data.Tuple)
@@ -0,0 +1,216 @@
+package obvious.query;
+
+import obvious.IntIterator;
+import obvious.Table;
+
+/**
+ * Compiled form of an {@link Expression}, created by
+ * {@link ExpressionCompiler}. Column indices and operand types are resolved
+ * once at compilation time against a Schema, so evaluation works directly on
+ * a table and a row id, without Tuple instances or column name lookups.
+ * A compiled expression evaluated on a table with another schema gives
+ * undefined results.
+ *
+ * <p>As with Expression, the appropriate evaluation method depends on the
+ * {@link #getType() type} of the expression; unsupported methods throw an
+ * UnsupportedOperationException. Compiled boolean expressions can be used
+ * directly as row {@link obvious.Predicate predicates}.</p>
+ *
+ * <p>Besides the per-row methods, compiled expressions can be evaluated on
+ * a batch of rows at once, into an array of values or a selection of rows.
+ * Batch evaluation computes each sub-expression over the whole batch with
+ * a tight loop, and reads column values in bulk from tables implementing
+ * {@link BatchTable}; batches of about {@link #BATCH_SIZE} rows work well.
+ * The result of the batch methods does not depend on the batch size.</p>
+ *
+ * @author obvious
+ */
+public abstract class CompiledExpression implements obvious.Predicate {
+
+    /** Recommended number of rows for the batch evaluation methods. */
+    public static final int BATCH_SIZE = 1024;
+
+    private final Class<?> m_type;
+
+    /**
+     * Create a new CompiledExpression.
+     * @param type the type the expression evaluates to
+     */
+    protected CompiledExpression(Class<?> type) {
+        m_type = type;
+    }
+
+    /**
+     * Returns the type this expression evaluates to, as returned by
+     * {@link Expression#getType(obvious.Schema)} for the compilation schema.
+     * @return the type of the expression
+     */
+    public Class<?> getType() {
+        return m_type;
+    }
+
+    /**
+     * Evaluate the expression on the given table row.
+     * @param t the table
+     * @param row the row id
+     * @return the expression value, as an Object
+     */
+    public Object get(Table t, int row) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Evaluate the expression on the given table row.
+     * @param t the table
+     * @param row the row id
+     * @return the expression value, as an int
+     */
+    public int getInt(Table t, int row) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Evaluate the expression on the given table row.
+     * @param t the table
+     * @param row the row id
+     * @return the expression value, as a long
+     */
+    public long getLong(Table t, int row) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Evaluate the expression on the given table row.
+     * @param t the table
+     * @param row the row id
+     * @return the expression value, as a float
+     */
+    public float getFloat(Table t, int row) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Evaluate the expression on the given table row.
+     * @param t the table
+     * @param row the row id
+     * @return the expression value, as a double
+     */
+    public double getDouble(Table t, int row) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Evaluate the expression on the given table row.
+     * @param t the table
+     * @param row the row id
+     * @return the expression value, as a boolean
+     */
+    public boolean getBoolean(Table t, int row) {
+        throw new UnsupportedOperationException();
+    }
+
+    // ------------------------------------------------------------------------
+    // Batch Evaluation
+    
+    /**
+     * Evaluate the expression on a batch of table rows.
+     * @param t the table
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param result the array receiving the expression values, as ints
+     */
+    public void getInt(Table t, int[] rows, int n, int[] result) {
+        for ( int i=0; i<n; ++i ) result[i] = getInt(t, rows[i]);
+    }
+
+    /**
+     * Evaluate the expression on a batch of table rows.
+     * @param t the table
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param result the array receiving the expression values, as longs
+     */
+    public void getLong(Table t, int[] rows, int n, long[] result) {
+        for ( int i=0; i<n; ++i ) result[i] = getLong(t, rows[i]);
+    }
+
+    /**
+     * Evaluate the expression on a batch of table rows.
+     * @param t the table
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param result the array receiving the expression values, as doubles
+     */
+    public void getDouble(Table t, int[] rows, int n, double[] result) {
+        for ( int i=0; i<n; ++i ) result[i] = getDouble(t, rows[i]);
+    }
+
+    /**
+     * Evaluate the expression on a batch of table rows.
+     * @param t the table
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param result the array receiving the expression values, as booleans
+     */
+    public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+        for ( int i=0; i<n; ++i ) result[i] = getBoolean(t, rows[i]);
+    }
+
+    /**
+     * Select the rows of a batch for which this boolean expression is true.
+     * @param t the table
+     * @param rows the row ids
+     * @param n the number of rows, from the start of <code>rows</code>
+     * @param selected the array receiving the selected row ids, in order;
+     * may be <code>rows</code> itself
+     * @return the number of selected rows
+     */
+    public int select(Table t, int[] rows, int n, int[] selected) {
+        boolean[] mask = new boolean[n];
+        getBoolean(t, rows, n, mask);
+        int count = 0;
+        for ( int i=0; i<n; ++i ) {
+            if ( mask[i] ) selected[count++] = rows[i];
+        }
+        return count;
+    }
+
+    /**
+     * Select the rows of a table for which this boolean expression is true,
+     * evaluating the expression on batches of {@link #BATCH_SIZE} rows.
+     * @param t the table
+     * @return the selected row ids, in the order of the table row iterator
+     */
+    public int[] select(Table t) {
+        int[] selected = new int[BATCH_SIZE];
+        int[] rows = new int[BATCH_SIZE];
+        int count = 0;
+        IntIterator iter = t.rowIterator();
+        while ( iter.hasNext() ) {
+            int n = 0;
+            while ( n < BATCH_SIZE && iter.hasNext() ) {
+                rows[n++] = iter.nextInt();
+            }
+            if ( count + n > selected.length ) {
+                int[] a = new int[Math.max(2*selected.length, count+n)];
+                System.arraycopy(selected, 0, a, 0, count);
+                selected = a;
+            }
+            int k = select(t, rows, n, rows);
+            System.arraycopy(rows, 0, selected, count, k);
+            count += k;
+        }
+        int[] result = new int[count];
+        System.arraycopy(selected, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Evaluates this expression as a boolean.
+     * @see obvious.Predicate#apply(obvious.Table, int)
+     */
+    public boolean apply(Table table, int rowId) {
+        return getBoolean(table, rowId);
+    }
+
+} // end of abstract class CompiledExpression
@@ -0,0 +1,395 @@
+package obvious.query;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+import obvious.IntIterator;
+import obvious.Schema;
+import obvious.Table;
+import obvious.TableListener;
+
+/**
+ * Column whose values are computed by an {@link Expression} over the rows
+ * of a table. The expression is {@link ExpressionCompiler compiled}
+ * against the table schema.
+ *
+ * <p>A virtual derived column evaluates the expression each time a value
+ * is read. A materialized derived column stores the value of every row
+ * and keeps it up to date incrementally: it listens to the table and only
+ * recomputes the rows of the changed region when an inserted row or one of
+ * the columns referenced by the expression, as reported by
+ * {@link ExpressionAnalyzer#getReferencedColumns(Expression)}, changes.
+ * Updates of the other columns are ignored. Changes of the table structure
+ * or of the expression itself, reported to the {@link ExpressionListener},
+ * lead to a full recomputation.</p>
+ *
+ * <p>A derived column stays attached to its table and expression until
+ * {@link #dispose()} is called.</p>
+ *
+ * @author obvious
+ */
+public class DerivedColumn implements TableListener, ExpressionListener {
+
+    private final Table m_table;
+    private final Expression m_expr;
+    private final boolean m_materialized;
+
+    private CompiledExpression m_compiled;
+    /** Referenced columns, by column index. */
+    private boolean[] m_referenced;
+
+    /**
+     * Values of a materialized column, indexed by row id, in an array of
+     * the primitive column type for int, long, float, double and boolean
+     * values, an Object array otherwise.
+     */
+    private Object m_values;
+
+    /**
+     * Create a new DerivedColumn.
+     * @param table the table providing the rows
+     * @param expr the expression computing the column values
+     * @param materialized true to store the values and update them as
+     * the table changes, false to evaluate the expression on each read
+     * @throws IllegalArgumentException if the expression cannot be compiled
+     * against the table schema
+     */
+    public DerivedColumn(Table table, Expression expr, boolean materialized) {
+        m_table = table;
+        m_expr = expr;
+        m_materialized = materialized;
+        compile();
+        if ( m_materialized )
+            computeAll();
+        m_table.addTableListener(this);
+        m_expr.addExpressionListener(this);
+    }
+
+    /**
+     * Detach this column from its table and expression. A disposed
+     * materialized column keeps its values but is no longer updated.
+     */
+    public void dispose() {
+        m_table.removeTableListener(this);
+        m_expr.removeExpressionListener(this);
+    }
+
+    /**
+     * Get the table providing the rows of this column.
+     * @return the table
+     */
+    public Table getTable() {
+        return m_table;
+    }
+
+    /**
+     * Get the expression computing the values of this column.
+     * @return the expression
+     */
+    public Expression getExpression() {
+        return m_expr;
+    }
+
+    /**
+     * Indicates if the values of this column are stored.
+     * @return true for a materialized column, false for a virtual one
+     */
+    public boolean isMaterialized() {
+        return m_materialized;
+    }
+
+    /**
+     * Get the type of the column values.
+     * @return the type of the expression for the table schema
+     */
+    public Class<?> getType() {
+        return m_compiled.getType();
+    }
+
+    /**
+     * Resolves the expression against the current schema of the table.
+     */
+    private void compile() {
+        Schema s = m_table.getSchema();
+        m_compiled = ExpressionCompiler.compile(m_expr, s);
+        m_referenced = new boolean[s.getColumnCount()];
+        Set<?> cols = ExpressionAnalyzer.getReferencedColumns(m_expr);
+        for ( Iterator<?> iter = cols.iterator(); iter.hasNext(); ) {
+            int col = s.getColumnIndex((String)iter.next());
+            if ( col >= 0 ) m_referenced[col] = true;
+        }
+        m_values = null;
+    }
+
+    /**
+     * Indicates if a column change can modify the values of this column.
+     */
+    private boolean isReferenced(int col) {
+        return col == ALL_COLUMN
+            || ( col >= 0 && col < m_referenced.length && m_referenced[col] );
+    }
+
+    // ------------------------------------------------------------------------
+    // Value Access
+
+    /**
+     * Get the value of the given row.
+     * @param row the row id
+     * @return the column value, as an Object
+     */
+    public Object get(int row) {
+        if ( !m_materialized )
+            return m_compiled.get(m_table, row);
+        Object a = m_values;
+        if ( a instanceof int[] )
+            return Integer.valueOf(((int[])a)[row]);
+        else if ( a instanceof long[] )
+            return Long.valueOf(((long[])a)[row]);
+        else if ( a instanceof float[] )
+            return Float.valueOf(((float[])a)[row]);
+        else if ( a instanceof double[] )
+            return Double.valueOf(((double[])a)[row]);
+        else if ( a instanceof boolean[] )
+            return Boolean.valueOf(((boolean[])a)[row]);
+        else
+            return ((Object[])a)[row];
+    }
+
+    /**
+     * Get the value of the given row.
+     * @param row the row id
+     * @return the column value, as an int
+     */
+    public int getInt(int row) {
+        if ( !m_materialized )
+            return m_compiled.getInt(m_table, row);
+        else if ( m_values instanceof int[] )
+            return ((int[])m_values)[row];
+        else if ( m_values instanceof Object[] )
+            return ((Number)((Object[])m_values)[row]).intValue();
+        else
+            return (int)getDouble(row);
+    }
+
+    /**
+     * Get the value of the given row.
+     * @param row the row id
+     * @return the column value, as a long
+     */
+    public long getLong(int row) {
+        if ( !m_materialized )
+            return m_compiled.getLong(m_table, row);
+        else if ( m_values instanceof long[] )
+            return ((long[])m_values)[row];
+        else if ( m_values instanceof int[] )
+            return ((int[])m_values)[row];
+        else if ( m_values instanceof Object[] )
+            return ((Number)((Object[])m_values)[row]).longValue();
+        else
+            return (long)getDouble(row);
+    }
+
+    /**
+     * Get the value of the given row.
+     * @param row the row id
+     * @return the column value, as a float
+     */
+    public float getFloat(int row) {
+        if ( !m_materialized )
+            return m_compiled.getFloat(m_table, row);
+        else if ( m_values instanceof float[] )
+            return ((float[])m_values)[row];
+        else if ( m_values instanceof Object[] )
+            return ((Number)((Object[])m_values)[row]).floatValue();
+        else
+            return (float)getDouble(row);
+    }
+
+    /**
+     * Get the value of the given row.
+     * @param row the row id
+     * @return the column value, as a double
+     */
+    public double getDouble(int row) {
+        if ( !m_materialized )
+            return m_compiled.getDouble(m_table, row);
+        Object a = m_values;
+        if ( a instanceof double[] )
+            return ((double[])a)[row];
+        else if ( a instanceof int[] )
+            return ((int[])a)[row];
+        else if ( a instanceof long[] )
+            return ((long[])a)[row];
+        else if ( a instanceof float[] )
+            return ((float[])a)[row];
+        else if ( a instanceof Object[] )
+            return ((Number)((Object[])a)[row]).doubleValue();
+        else
+            throw new UnsupportedOperationException(
+                "Cannot read a boolean column as a double.");
+    }
+
+    /**
+     * Get the value of the given row.
+     * @param row the row id
+     * @return the column value, as a boolean
+     */
+    public boolean getBoolean(int row) {
+        if ( !m_materialized )
+            return m_compiled.getBoolean(m_table, row);
+        else if ( m_values instanceof boolean[] )
+            return ((boolean[])m_values)[row];
+        else if ( m_values instanceof Object[] )
+            return ((Boolean)((Object[])m_values)[row]).booleanValue();
+        else
+            throw new UnsupportedOperationException(
+                "Cannot read a numeric column as a boolean.");
+    }
+
+    // ------------------------------------------------------------------------
+    // Materialization
+
+    /**
+     * Recomputes the values of all the rows.
+     */
+    private void computeAll() {
+        int[] rows = new int[CompiledExpression.BATCH_SIZE];
+        int n = 0;
+        allocate(0);
+        for ( IntIterator iter = m_table.rowIterator(); iter.hasNext(); ) {
+            rows[n++] = iter.nextInt();
+            if ( n == rows.length ) {
+                compute(rows, n);
+                n = 0;
+            }
+        }
+        compute(rows, n);
+    }
+
+    /**
+     * Recomputes the values of the valid rows from start to end.
+     */
+    private void compute(int start, int end) {
+        int[] rows = new int[Math.min(end-start+1, CompiledExpression.BATCH_SIZE)];
+        int n = 0;
+        for ( int r=start; r<=end; ++r ) {
+            if ( !m_table.isValidRow(r) )
+                continue;
+            rows[n++] = r;
+            if ( n == rows.length ) {
+                compute(rows, n);
+                n = 0;
+            }
+        }
+        compute(rows, n);
+    }
+
+    /**
+     * Recomputes the values of a batch of rows.
+     */
+    private void compute(int[] rows, int n) {
+        if ( n == 0 )
+            return;
+        int max = 0;
+        for ( int i=0; i<n; ++i ) max = Math.max(max, rows[i]);
+        allocate(max+1);
+        Object a = m_values;
+        if ( a instanceof int[] ) {
+            int[] v = new int[n];
+            m_compiled.getInt(m_table, rows, n, v);
+            for ( int i=0; i<n; ++i ) ((int[])a)[rows[i]] = v[i];
+        } else if ( a instanceof long[] ) {
+            long[] v = new long[n];
+            m_compiled.getLong(m_table, rows, n, v);
+            for ( int i=0; i<n; ++i ) ((long[])a)[rows[i]] = v[i];
+        } else if ( a instanceof float[] ) {
+            for ( int i=0; i<n; ++i )
+                ((float[])a)[rows[i]] = m_compiled.getFloat(m_table, rows[i]);
+        } else if ( a instanceof double[] ) {
+            double[] v = new double[n];
+            m_compiled.getDouble(m_table, rows, n, v);
+            for ( int i=0; i<n; ++i ) ((double[])a)[rows[i]] = v[i];
+        } else if ( a instanceof boolean[] ) {
+            boolean[] v = new boolean[n];
+            m_compiled.getBoolean(m_table, rows, n, v);
+            for ( int i=0; i<n; ++i ) ((boolean[])a)[rows[i]] = v[i];
+        } else {
+            for ( int i=0; i<n; ++i )
+                ((Object[])a)[rows[i]] = m_compiled.get(m_table, rows[i]);
+        }
+    }
+
+    /**
+     * Makes room for the values of the rows below the given row id.
+     */
+    private void allocate(int size) {
+        int length = ( m_values == null ? 0 : Array.getLength(m_values) );
+        if ( m_values != null && length >= size )
+            return;
+        Class<?> type = m_compiled.getType();
+        Class<?> component;
+        if ( type == int.class || type == short.class || type == byte.class )
+            component = int.class;
+        else if ( type == long.class || type == float.class
+                || type == double.class || type == boolean.class )
+            component = type;
+        else
+            component = Object.class;
+        Object a = Array.newInstance(component,
+                Math.max(16, Math.max(size, 2*length)));
+        if ( m_values != null )
+            System.arraycopy(m_values, 0, a, 0, length);
+        m_values = a;
+    }
+
+    // ------------------------------------------------------------------------
+    // Listener Interfaces
+
+    /**
+     * Updates the values of the changed rows of a materialized column.
+     * Events without a row range denote structure changes: the expression
+     * is compiled again, and all the rows are recomputed. This is done for
+     * any column, since adding or removing a column can shift the index
+     * of the referenced ones.
+     * @see obvious.TableListener#tableChanged(obvious.Table, int, int, int, int)
+     */
+    public void tableChanged(Table t, int start, int end, int col, int type) {
+        if ( start < 0 || end < start ) {
+            compile();
+            if ( m_materialized )
+                computeAll();
+            return;
+        }
+        if ( !m_materialized )
+            return;
+        switch ( type ) {
+        case INSERT:
+            compute(start, end);
+            break;
+        case DELETE:
+            if ( m_values instanceof Object[] ) {
+                Object[] a = (Object[])m_values;
+                Arrays.fill(a, Math.min(start, a.length),
+                        Math.min(end+1, a.length), null);
+            }
+            break;
+        default:
+            if ( isReferenced(col) )
+                compute(start, end);
+        }
+    }
+
+    /**
+     * Compiles the modified expression, and recomputes all the rows of a
+     * materialized column.
+     * @see obvious.query.ExpressionListener#expressionChanged(obvious.query.Expression)
+     */
+    public void expressionChanged(Expression expr) {
+        compile();
+        if ( m_materialized )
+            computeAll();
+    }
+
+} // end of class DerivedColumn
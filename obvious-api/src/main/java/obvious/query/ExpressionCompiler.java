@@ -0,0 +1,1482 @@
+package obvious.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import obvious.Schema;
+import obvious.Table;
+
+/**
+ * Compiles Expression trees into {@link CompiledExpression} instances for a
+ * given Schema. Column names are resolved to column indices, operand types
+ * of arithmetic, comparison and range expressions are resolved once, and
+ * each node of the tree is replaced by an evaluator specialized for its
+ * operation, so that filters and derived columns over large tables avoid
+ * the per-row lookups of the interpreted Expression methods.
+ *
+ * <p>Each node also provides batch kernels, which evaluate the node over a
+ * batch of rows with primitive arrays; the And, Or and If nodes evaluate
+ * their sub-expressions only on the rows that need them.</p>
+ *
+ * <p>Compiled expressions evaluate like their source expressions. They do
+ * not track later modifications of the source tree; clients should listen
+ * to the expression and recompile it when it changes.</p>
+ *
+ * <p>Column and literal expressions, arithmetic, comparison and range
+ * expressions, the And, Or, Xor and Not predicates, if expressions, and
+ * the numeric functions of the {@link FunctionTable} are supported, as
+ * well as the expressions produced by the {@link ExpressionOptimizer},
+ * whose shared sub-expressions are compiled like the others.</p>
+ *
+ * @author obvious
+ */
+public class ExpressionCompiler {
+
+    private ExpressionCompiler() {
+        // prevent instantiation
+    }
+
+    /**
+     * Compile an expression for tables with the given schema.
+     * @param expr the expression to compile
+     * @param s the schema of the tables the expression will be evaluated on
+     * @return the compiled expression
+     * @throws IllegalArgumentException if the expression references an
+     * unknown column or contains an unsupported sub-expression
+     */
+    public static CompiledExpression compile(Expression expr, Schema s) {
+        if ( expr instanceof ColumnExpression ) {
+            String field = ((ColumnExpression)expr).getColumnName();
+            if ( !s.hasColumn(field) ) {
+                throw new IllegalArgumentException("Unknown column: " + field);
+            }
+            int col = s.getColumnIndex(field);
+            return new ColumnNode(col, s.getColumnType(col));
+        } else if ( expr instanceof Literal ) {
+            return new ConstantNode(expr.get(null), expr.getType(s));
+        } else if ( expr instanceof ArithmeticExpression ) {
+            return compileArithmetic((ArithmeticExpression)expr, s);
+        } else if ( expr instanceof ComparisonPredicate ) {
+            return compileComparison((ComparisonPredicate)expr, s);
+        } else if ( expr instanceof RangePredicate ) {
+            return compileRange((RangePredicate)expr, s);
+        } else if ( expr instanceof AndPredicate ) {
+            return new AndNode(compileClauses((CompositePredicate)expr, s));
+        } else if ( expr instanceof OrPredicate ) {
+            return new OrNode(compileClauses((CompositePredicate)expr, s));
+        } else if ( expr instanceof XorPredicate ) {
+            return new XorNode(compileClauses((CompositePredicate)expr, s));
+        } else if ( expr instanceof NotPredicate ) {
+            return new NotNode(compile(((NotPredicate)expr).getPredicate(), s));
+        } else if ( expr instanceof IfExpression ) {
+            IfExpression e = (IfExpression)expr;
+            return new IfNode(e.getType(s),
+                    compile(e.getTestPredicate(), s),
+                    compile(e.getThenExpression(), s),
+                    compile(e.getElseExpression(), s));
+        } else if ( expr instanceof FunctionExpression ) {
+            return compileFunction((FunctionExpression)expr, s);
+        } else if ( expr instanceof ExpressionOptimizer.Wrapper ) {
+            return compile(
+                    ((ExpressionOptimizer.Wrapper)expr).getExpression(), s);
+        }
+        throw new IllegalArgumentException(
+                "Expression cannot be compiled: " + expr);
+    }
+
+    // ------------------------------------------------------------------------
+    // Tree Compilation
+
+    private static CompiledExpression compileArithmetic(
+            ArithmeticExpression e, Schema s)
+    {
+        Class<?> type = e.getType(s);
+        CompiledExpression l = compile(e.getLeftExpression(), s);
+        CompiledExpression r = compile(e.getRightExpression(), s);
+        switch ( e.getOperation() ) {
+        case ArithmeticExpression.ADD:
+            return new AddNode(type, l, r);
+        case ArithmeticExpression.SUB:
+            return new SubNode(type, l, r);
+        case ArithmeticExpression.MUL:
+            return new MulNode(type, l, r);
+        case ArithmeticExpression.DIV:
+            return new DivNode(type, l, r);
+        case ArithmeticExpression.POW:
+            return new PowNode(type, l, r);
+        case ArithmeticExpression.MOD:
+            return new ModNode(type, l, r);
+        default:
+            throw new IllegalStateException("Unknown operation type.");
+        }
+    }
+
+    private static CompiledExpression compileComparison(
+            ComparisonPredicate p, Schema s)
+    {
+        Class<?> lType = p.getLeftExpression().getType(s);
+        Class<?> rType = p.getRightExpression().getType(s);
+        int op = p.getOperation();
+        CompiledExpression l = compile(p.getLeftExpression(), s);
+        CompiledExpression r = compile(p.getRightExpression(), s);
+        if ( AbstractExpression.isNumericType(lType)
+                && AbstractExpression.isNumericType(rType) )
+        {
+            Class<?> type = AbstractExpression.getNumericType(lType, rType);
+            if ( type == int.class || type == byte.class ) {
+                return new IntComparisonNode(op, l, r);
+            } else if ( type == long.class ) {
+                return new LongComparisonNode(op, l, r);
+            } else if ( type == float.class ) {
+                return new FloatComparisonNode(op, l, r);
+            } else if ( type == double.class ) {
+                return new DoubleComparisonNode(op, l, r);
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+        return new ObjectComparisonNode(op, l, r, p.getComparator());
+    }
+
+    private static CompiledExpression compileRange(RangePredicate p, Schema s) {
+        Class<?> lType = p.getLeftExpression().getType(s);
+        Class<?> rType = p.getRightExpression().getType(s);
+        Class<?> mType = p.getMiddleExpression().getType(s);
+        Class<?> sType = null;
+        if ( lType.isAssignableFrom(rType) ) {
+            sType = lType;
+        } else if ( rType.isAssignableFrom(lType) ) {
+            sType = rType;
+        }
+        int op = p.getOperation();
+        CompiledExpression lo = compile(p.getLeftExpression(), s);
+        CompiledExpression x = compile(p.getMiddleExpression(), s);
+        CompiledExpression hi = compile(p.getRightExpression(), s);
+        if ( sType != null && AbstractExpression.isNumericType(sType)
+                && AbstractExpression.isNumericType(mType) )
+        {
+            Class<?> type = AbstractExpression.getNumericType(sType, mType);
+            if ( type == int.class ) {
+                return new IntRangeNode(op, x, lo, hi);
+            } else if ( type == long.class ) {
+                return new LongRangeNode(op, x, lo, hi);
+            } else if ( type == float.class ) {
+                return new FloatRangeNode(op, x, lo, hi);
+            } else if ( type == double.class ) {
+                return new DoubleRangeNode(op, x, lo, hi);
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+        return new ObjectRangeNode(op, x, lo, hi, p.getComparator());
+    }
+
+    private static CompiledExpression[] compileClauses(
+            CompositePredicate p, Schema s)
+    {
+        CompiledExpression[] clauses = new CompiledExpression[p.size()];
+        for ( int i=0; i<clauses.length; ++i ) {
+            clauses[i] = compile(p.get(i), s);
+        }
+        return clauses;
+    }
+
+    private static CompiledExpression compileFunction(
+            FunctionExpression f, Schema s)
+    {
+        int pc = f.paramCount();
+        CompiledExpression[] args = new CompiledExpression[pc];
+        for ( int i=0; i<pc; ++i ) {
+            args[i] = compile(f.param(i), s);
+        }
+        if ( !FunctionTable.isBuiltIn(f) ) {
+            throw new IllegalArgumentException(
+                    "Function cannot be compiled: " + f.getName());
+        }
+        String name = f.getName();
+
+        // functions without parameters
+        if ( name.equals("ROW") ) {
+            return new RowNode();
+        } else if ( name.equals("E") ) {
+            return new ConstantNode(Double.valueOf(Math.E), double.class);
+        } else if ( name.equals("PI") ) {
+            return new ConstantNode(Double.valueOf(Math.PI), double.class);
+        } else if ( name.equals("RAND") ) {
+            return new DoubleNode(double.class) {
+                public double getDouble(Table t, int row) {
+                    return Math.random();
+                }
+            };
+        }
+
+        // functions with a variable number of parameters
+        if ( name.equals("MAX") || name.equals("MIN")
+                || name.equals("SUM") )
+        {
+            if ( pc == 0 ) f.missingParams();
+            if ( name.equals("MAX") ) {
+                return new VarargsNode(args) {
+                    double apply(double v, double x) {
+                        return ( x > v ? x : v );
+                    }
+                };
+            } else if ( name.equals("MIN") ) {
+                return new VarargsNode(args) {
+                    double apply(double v, double x) {
+                        return ( x < v ? x : v );
+                    }
+                };
+            } else {
+                return new VarargsNode(args) {
+                    double apply(double v, double x) {
+                        return v + x;
+                    }
+                };
+            }
+        }
+
+        // functions with two parameters
+        if ( name.equals("LOG") && pc == 2 ) {
+            return new BinaryNode(args[0], args[1]) {
+                double apply(double b, double x) {
+                    return Math.log(x)/Math.log(b);
+                }
+            };
+        } else if ( name.equals("ATAN2") || name.equals("POW")
+                || name.equals("MOD") )
+        {
+            if ( pc != 2 ) f.missingParams();
+            if ( name.equals("ATAN2") ) {
+                return new BinaryNode(args[0], args[1]) {
+                    double apply(double y, double x) {
+                        return Math.atan2(y, x);
+                    }
+                };
+            } else if ( name.equals("POW") ) {
+                return new BinaryNode(args[0], args[1]) {
+                    double apply(double x, double y) {
+                        return Math.pow(x, y);
+                    }
+                };
+            } else {
+                return new BinaryNode(args[0], args[1]) {
+                    double apply(double x, double y) {
+                        return x % y;
+                    }
+                };
+            }
+        }
+
+        // functions with one parameter
+        if ( f.getType(s) == double.class && pc != 1 ) {
+            f.missingParams();
+        }
+        if ( name.equals("ABS") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.abs(x);
+                }
+            };
+        } else if ( name.equals("ACOS") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.acos(x);
+                }
+            };
+        } else if ( name.equals("ASIN") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.asin(x);
+                }
+            };
+        } else if ( name.equals("ATAN") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.atan(x);
+                }
+            };
+        } else if ( name.equals("CEIL") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.ceil(x);
+                }
+            };
+        } else if ( name.equals("COS") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.cos(x);
+                }
+            };
+        } else if ( name.equals("COT") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return 1/Math.tan(x);
+                }
+            };
+        } else if ( name.equals("DEGREES") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.toDegrees(x);
+                }
+            };
+        } else if ( name.equals("EXP") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.exp(x);
+                }
+            };
+        } else if ( name.equals("FLOOR") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.floor(x);
+                }
+            };
+        } else if ( name.equals("LOG") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.log(x);
+                }
+            };
+        } else if ( name.equals("RADIANS") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.toRadians(x);
+                }
+            };
+        } else if ( name.equals("ROUND") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.round(x);
+                }
+            };
+        } else if ( name.equals("SIGN") ) {
+            return new SignNode(args[0]);
+        } else if ( name.equals("SIN") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.sin(x);
+                }
+            };
+        } else if ( name.equals("SQRT") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.sqrt(x);
+                }
+            };
+        } else if ( name.equals("TAN") ) {
+            return new UnaryNode(args[0]) {
+                double apply(double x) {
+                    return Math.tan(x);
+                }
+            };
+        }
+        throw new IllegalArgumentException(
+                "Function cannot be compiled: " + f.getName());
+    }
+
+    // ------------------------------------------------------------------------
+    // Leaf Nodes
+
+    /**
+     * Reads a column value of the evaluated row.
+     */
+    private static class ColumnNode extends CompiledExpression {
+        private final int m_col;
+        ColumnNode(int col, Class<?> type) {
+            super(type);
+            m_col = col;
+        }
+        public Object get(Table t, int row) {
+            return t.getValue(row, m_col);
+        }
+        public int getInt(Table t, int row) {
+            return ((Number)t.getValue(row, m_col)).intValue();
+        }
+        public long getLong(Table t, int row) {
+            return ((Number)t.getValue(row, m_col)).longValue();
+        }
+        public float getFloat(Table t, int row) {
+            return ((Number)t.getValue(row, m_col)).floatValue();
+        }
+        public double getDouble(Table t, int row) {
+            return ((Number)t.getValue(row, m_col)).doubleValue();
+        }
+        public boolean getBoolean(Table t, int row) {
+            return ((Boolean)t.getValue(row, m_col)).booleanValue();
+        }
+        public void getInt(Table t, int[] rows, int n, int[] result) {
+            if ( t instanceof BatchTable ) {
+                ((BatchTable)t).getInt(m_col, rows, n, result);
+            } else {
+                super.getInt(t, rows, n, result);
+            }
+        }
+        public void getLong(Table t, int[] rows, int n, long[] result) {
+            if ( t instanceof BatchTable ) {
+                ((BatchTable)t).getLong(m_col, rows, n, result);
+            } else {
+                super.getLong(t, rows, n, result);
+            }
+        }
+        public void getDouble(Table t, int[] rows, int n, double[] result) {
+            if ( t instanceof BatchTable ) {
+                ((BatchTable)t).getDouble(m_col, rows, n, result);
+            } else {
+                super.getDouble(t, rows, n, result);
+            }
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            if ( t instanceof BatchTable ) {
+                ((BatchTable)t).getBoolean(m_col, rows, n, result);
+            } else {
+                super.getBoolean(t, rows, n, result);
+            }
+        }
+    }
+
+    /**
+     * Returns a constant value, unboxed once at compilation time.
+     */
+    private static class ConstantNode extends CompiledExpression {
+        private final Object m_value;
+        private final int m_int;
+        private final long m_long;
+        private final float m_float;
+        private final double m_double;
+        ConstantNode(Object value, Class<?> type) {
+            super(type);
+            m_value = value;
+            if ( value instanceof Number ) {
+                Number n = (Number)value;
+                m_int = n.intValue();
+                m_long = n.longValue();
+                m_float = n.floatValue();
+                m_double = n.doubleValue();
+            } else {
+                m_int = 0;
+                m_long = 0;
+                m_float = 0;
+                m_double = 0;
+            }
+        }
+        public Object get(Table t, int row) {
+            return m_value;
+        }
+        public int getInt(Table t, int row) {
+            if ( !(m_value instanceof Number) )
+                throw new UnsupportedOperationException();
+            return m_int;
+        }
+        public long getLong(Table t, int row) {
+            if ( !(m_value instanceof Number) )
+                throw new UnsupportedOperationException();
+            return m_long;
+        }
+        public float getFloat(Table t, int row) {
+            if ( !(m_value instanceof Number) )
+                throw new UnsupportedOperationException();
+            return m_float;
+        }
+        public double getDouble(Table t, int row) {
+            if ( !(m_value instanceof Number) )
+                throw new UnsupportedOperationException();
+            return m_double;
+        }
+        public boolean getBoolean(Table t, int row) {
+            if ( !(m_value instanceof Boolean) )
+                throw new UnsupportedOperationException();
+            return ((Boolean)m_value).booleanValue();
+        }
+        public void getInt(Table t, int[] rows, int n, int[] result) {
+            Arrays.fill(result, 0, n, getInt(t, -1));
+        }
+        public void getLong(Table t, int[] rows, int n, long[] result) {
+            Arrays.fill(result, 0, n, getLong(t, -1));
+        }
+        public void getDouble(Table t, int[] rows, int n, double[] result) {
+            Arrays.fill(result, 0, n, getDouble(t, -1));
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            Arrays.fill(result, 0, n, getBoolean(t, -1));
+        }
+    }
+
+    /**
+     * Returns the evaluated row id.
+     */
+    private static class RowNode extends CompiledExpression {
+        RowNode() {
+            super(int.class);
+        }
+        public Object get(Table t, int row) {
+            return Integer.valueOf(row);
+        }
+        public int getInt(Table t, int row) {
+            return row;
+        }
+        public long getLong(Table t, int row) {
+            return row;
+        }
+        public float getFloat(Table t, int row) {
+            return row;
+        }
+        public double getDouble(Table t, int row) {
+            return row;
+        }
+        public void getInt(Table t, int[] rows, int n, int[] result) {
+            System.arraycopy(rows, 0, result, 0, n);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Arithmetic Nodes
+
+    /**
+     * Base class of the arithmetic operations; as in ArithmeticExpression,
+     * each evaluation method evaluates the operands with the same method.
+     * The batch methods evaluate the left operand into the result array,
+     * the right operand into a temporary array, and combine them.
+     */
+    private abstract static class ArithmeticNode extends CompiledExpression {
+        protected final CompiledExpression m_left;
+        protected final CompiledExpression m_right;
+        ArithmeticNode(Class<?> type, CompiledExpression left,
+                CompiledExpression right)
+        {
+            super(type);
+            m_left = left;
+            m_right = right;
+        }
+        public Object get(Table t, int row) {
+            Class<?> type = getType();
+            if ( int.class == type || byte.class == type ) {
+                return Integer.valueOf(getInt(t, row));
+            } else if ( long.class == type ) {
+                return Long.valueOf(getLong(t, row));
+            } else if ( float.class == type ) {
+                return Float.valueOf(getFloat(t, row));
+            } else if ( double.class == type ) {
+                return Double.valueOf(getDouble(t, row));
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+        public void getInt(Table t, int[] rows, int n, int[] result) {
+            int[] y = new int[n];
+            m_left.getInt(t, rows, n, result);
+            m_right.getInt(t, rows, n, y);
+            combine(result, y, n);
+        }
+        public void getLong(Table t, int[] rows, int n, long[] result) {
+            long[] y = new long[n];
+            m_left.getLong(t, rows, n, result);
+            m_right.getLong(t, rows, n, y);
+            combine(result, y, n);
+        }
+        public void getDouble(Table t, int[] rows, int n, double[] result) {
+            double[] y = new double[n];
+            m_left.getDouble(t, rows, n, result);
+            m_right.getDouble(t, rows, n, y);
+            combine(result, y, n);
+        }
+        abstract void combine(int[] x, int[] y, int n);
+        abstract void combine(long[] x, long[] y, int n);
+        abstract void combine(double[] x, double[] y, int n);
+    }
+
+    private static class AddNode extends ArithmeticNode {
+        AddNode(Class<?> type, CompiledExpression l, CompiledExpression r) {
+            super(type, l, r);
+        }
+        public int getInt(Table t, int row) {
+            return m_left.getInt(t, row) + m_right.getInt(t, row);
+        }
+        public long getLong(Table t, int row) {
+            return m_left.getLong(t, row) + m_right.getLong(t, row);
+        }
+        public float getFloat(Table t, int row) {
+            return m_left.getFloat(t, row) + m_right.getFloat(t, row);
+        }
+        public double getDouble(Table t, int row) {
+            return m_left.getDouble(t, row) + m_right.getDouble(t, row);
+        }
+        void combine(int[] x, int[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] += y[i];
+        }
+        void combine(long[] x, long[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] += y[i];
+        }
+        void combine(double[] x, double[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] += y[i];
+        }
+    }
+
+    private static class SubNode extends ArithmeticNode {
+        SubNode(Class<?> type, CompiledExpression l, CompiledExpression r) {
+            super(type, l, r);
+        }
+        public int getInt(Table t, int row) {
+            return m_left.getInt(t, row) - m_right.getInt(t, row);
+        }
+        public long getLong(Table t, int row) {
+            return m_left.getLong(t, row) - m_right.getLong(t, row);
+        }
+        public float getFloat(Table t, int row) {
+            return m_left.getFloat(t, row) - m_right.getFloat(t, row);
+        }
+        public double getDouble(Table t, int row) {
+            return m_left.getDouble(t, row) - m_right.getDouble(t, row);
+        }
+        void combine(int[] x, int[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] -= y[i];
+        }
+        void combine(long[] x, long[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] -= y[i];
+        }
+        void combine(double[] x, double[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] -= y[i];
+        }
+    }
+
+    private static class MulNode extends ArithmeticNode {
+        MulNode(Class<?> type, CompiledExpression l, CompiledExpression r) {
+            super(type, l, r);
+        }
+        public int getInt(Table t, int row) {
+            return m_left.getInt(t, row) * m_right.getInt(t, row);
+        }
+        public long getLong(Table t, int row) {
+            return m_left.getLong(t, row) * m_right.getLong(t, row);
+        }
+        public float getFloat(Table t, int row) {
+            return m_left.getFloat(t, row) * m_right.getFloat(t, row);
+        }
+        public double getDouble(Table t, int row) {
+            return m_left.getDouble(t, row) * m_right.getDouble(t, row);
+        }
+        void combine(int[] x, int[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] *= y[i];
+        }
+        void combine(long[] x, long[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] *= y[i];
+        }
+        void combine(double[] x, double[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] *= y[i];
+        }
+    }
+
+    private static class DivNode extends ArithmeticNode {
+        DivNode(Class<?> type, CompiledExpression l, CompiledExpression r) {
+            super(type, l, r);
+        }
+        public int getInt(Table t, int row) {
+            return m_left.getInt(t, row) / m_right.getInt(t, row);
+        }
+        public long getLong(Table t, int row) {
+            return m_left.getLong(t, row) / m_right.getLong(t, row);
+        }
+        public float getFloat(Table t, int row) {
+            return m_left.getFloat(t, row) / m_right.getFloat(t, row);
+        }
+        public double getDouble(Table t, int row) {
+            return m_left.getDouble(t, row) / m_right.getDouble(t, row);
+        }
+        void combine(int[] x, int[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] /= y[i];
+        }
+        void combine(long[] x, long[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] /= y[i];
+        }
+        void combine(double[] x, double[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] /= y[i];
+        }
+    }
+
+    private static class PowNode extends ArithmeticNode {
+        PowNode(Class<?> type, CompiledExpression l, CompiledExpression r) {
+            super(type, l, r);
+        }
+        public int getInt(Table t, int row) {
+            return (int)Math.pow(m_left.getInt(t, row), m_right.getInt(t, row));
+        }
+        public long getLong(Table t, int row) {
+            return (long)Math.pow(m_left.getLong(t, row),
+                                  m_right.getLong(t, row));
+        }
+        public float getFloat(Table t, int row) {
+            return (float)Math.pow(m_left.getFloat(t, row),
+                                   m_right.getFloat(t, row));
+        }
+        public double getDouble(Table t, int row) {
+            return Math.pow(m_left.getDouble(t, row), m_right.getDouble(t, row));
+        }
+        void combine(int[] x, int[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] = (int)Math.pow(x[i], y[i]);
+        }
+        void combine(long[] x, long[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] = (long)Math.pow(x[i], y[i]);
+        }
+        void combine(double[] x, double[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] = Math.pow(x[i], y[i]);
+        }
+    }
+
+    private static class ModNode extends ArithmeticNode {
+        ModNode(Class<?> type, CompiledExpression l, CompiledExpression r) {
+            super(type, l, r);
+        }
+        public int getInt(Table t, int row) {
+            return m_left.getInt(t, row) % m_right.getInt(t, row);
+        }
+        public long getLong(Table t, int row) {
+            return m_left.getLong(t, row) % m_right.getLong(t, row);
+        }
+        public float getFloat(Table t, int row) {
+            return (float)Math.IEEEremainder(m_left.getFloat(t, row),
+                                             m_right.getFloat(t, row));
+        }
+        public double getDouble(Table t, int row) {
+            return Math.IEEEremainder(m_left.getDouble(t, row),
+                                      m_right.getDouble(t, row));
+        }
+        void combine(int[] x, int[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] %= y[i];
+        }
+        void combine(long[] x, long[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] %= y[i];
+        }
+        void combine(double[] x, double[] y, int n) {
+            for ( int i=0; i<n; ++i ) x[i] = Math.IEEEremainder(x[i], y[i]);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Predicate Nodes
+
+    /**
+     * Base class of the boolean-valued nodes.
+     */
+    private abstract static class BooleanNode extends CompiledExpression {
+        BooleanNode() {
+            super(boolean.class);
+        }
+        public Object get(Table t, int row) {
+            return ( getBoolean(t, row) ? Boolean.TRUE : Boolean.FALSE );
+        }
+    }
+
+    /**
+     * Base class of the comparisons, which compare the operands with the
+     * type resolved at compilation time.
+     */
+    private abstract static class ComparisonNode extends BooleanNode {
+        protected final int m_op;
+        protected final CompiledExpression m_left;
+        protected final CompiledExpression m_right;
+        ComparisonNode(int op, CompiledExpression left,
+                CompiledExpression right)
+        {
+            m_op = op;
+            m_left = left;
+            m_right = right;
+        }
+        public boolean getBoolean(Table t, int row) {
+            return ComparisonPredicate.test(m_op, compare(t, row));
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            int[] c = new int[n];
+            compare(t, rows, n, c);
+            switch ( m_op ) {
+            case ComparisonPredicate.LT:
+                for ( int i=0; i<n; ++i ) result[i] = ( c[i] < 0 );
+                break;
+            case ComparisonPredicate.GT:
+                for ( int i=0; i<n; ++i ) result[i] = ( c[i] > 0 );
+                break;
+            case ComparisonPredicate.EQ:
+                for ( int i=0; i<n; ++i ) result[i] = ( c[i] == 0 );
+                break;
+            case ComparisonPredicate.NEQ:
+                for ( int i=0; i<n; ++i ) result[i] = ( c[i] != 0 );
+                break;
+            case ComparisonPredicate.LTEQ:
+                for ( int i=0; i<n; ++i ) result[i] = ( c[i] <= 0 );
+                break;
+            case ComparisonPredicate.GTEQ:
+                for ( int i=0; i<n; ++i ) result[i] = ( c[i] >= 0 );
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation.");
+            }
+        }
+        abstract int compare(Table t, int row);
+        abstract void compare(Table t, int[] rows, int n, int[] c);
+    }
+
+    private static class IntComparisonNode extends ComparisonNode {
+        IntComparisonNode(int op, CompiledExpression l, CompiledExpression r) {
+            super(op, l, r);
+        }
+        int compare(Table t, int row) {
+            int x = m_left.getInt(t, row);
+            int y = m_right.getInt(t, row);
+            return ( x < y ? -1 : ( x > y ? 1 : 0 ) );
+        }
+        void compare(Table t, int[] rows, int n, int[] c) {
+            int[] x = new int[n];
+            m_left.getInt(t, rows, n, x);
+            m_right.getInt(t, rows, n, c);
+            for ( int i=0; i<n; ++i )
+                c[i] = ( x[i] < c[i] ? -1 : ( x[i] > c[i] ? 1 : 0 ) );
+        }
+    }
+
+    private static class LongComparisonNode extends ComparisonNode {
+        LongComparisonNode(int op, CompiledExpression l, CompiledExpression r) {
+            super(op, l, r);
+        }
+        int compare(Table t, int row) {
+            long x = m_left.getLong(t, row);
+            long y = m_right.getLong(t, row);
+            return ( x < y ? -1 : ( x > y ? 1 : 0 ) );
+        }
+        void compare(Table t, int[] rows, int n, int[] c) {
+            long[] x = new long[n];
+            long[] y = new long[n];
+            m_left.getLong(t, rows, n, x);
+            m_right.getLong(t, rows, n, y);
+            for ( int i=0; i<n; ++i )
+                c[i] = ( x[i] < y[i] ? -1 : ( x[i] > y[i] ? 1 : 0 ) );
+        }
+    }
+
+    private static class FloatComparisonNode extends ComparisonNode {
+        FloatComparisonNode(int op, CompiledExpression l, CompiledExpression r) {
+            super(op, l, r);
+        }
+        int compare(Table t, int row) {
+            float x = m_left.getFloat(t, row);
+            float y = m_right.getFloat(t, row);
+            return ( x < y ? -1 : ( x > y ? 1 : 0 ) );
+        }
+        void compare(Table t, int[] rows, int n, int[] c) {
+            for ( int i=0; i<n; ++i )
+                c[i] = compare(t, rows[i]);
+        }
+    }
+
+    private static class DoubleComparisonNode extends ComparisonNode {
+        DoubleComparisonNode(int op, CompiledExpression l,
+                CompiledExpression r)
+        {
+            super(op, l, r);
+        }
+        int compare(Table t, int row) {
+            double x = m_left.getDouble(t, row);
+            double y = m_right.getDouble(t, row);
+            return ( x < y ? -1 : ( x > y ? 1 : 0 ) );
+        }
+        void compare(Table t, int[] rows, int n, int[] c) {
+            double[] x = new double[n];
+            double[] y = new double[n];
+            m_left.getDouble(t, rows, n, x);
+            m_right.getDouble(t, rows, n, y);
+            for ( int i=0; i<n; ++i )
+                c[i] = ( x[i] < y[i] ? -1 : ( x[i] > y[i] ? 1 : 0 ) );
+        }
+    }
+
+    private static class ObjectComparisonNode extends ComparisonNode {
+        private final Comparator<?> m_cmp;
+        ObjectComparisonNode(int op, CompiledExpression l,
+                CompiledExpression r, Comparator<?> cmp)
+        {
+            super(op, l, r);
+            m_cmp = cmp;
+        }
+        int compare(Table t, int row) {
+            return ComparisonPredicate.compare(m_cmp,
+                    m_left.get(t, row), m_right.get(t, row));
+        }
+        void compare(Table t, int[] rows, int n, int[] c) {
+            for ( int i=0; i<n; ++i )
+                c[i] = compare(t, rows[i]);
+        }
+    }
+
+    /**
+     * Base class of the range tests, which compare the operands with the
+     * type resolved at compilation time.
+     */
+    private abstract static class RangeNode extends BooleanNode {
+        protected final int m_op;
+        protected final CompiledExpression m_middle;
+        protected final CompiledExpression m_left;
+        protected final CompiledExpression m_right;
+        RangeNode(int op, CompiledExpression middle,
+                CompiledExpression left, CompiledExpression right)
+        {
+            m_op = op;
+            m_middle = middle;
+            m_left = left;
+            m_right = right;
+        }
+        /**
+         * Tests the range from the comparisons of the middle values with
+         * the lower and upper bounds.
+         */
+        void test(int[] c1, int[] c2, int n, boolean[] result) {
+            switch ( m_op ) {
+            case RangePredicate.IN_IN:
+                for ( int i=0; i<n; ++i ) result[i] = ( c1[i] >= 0 && c2[i] <= 0 );
+                break;
+            case RangePredicate.IN_EX:
+                for ( int i=0; i<n; ++i ) result[i] = ( c1[i] >= 0 && c2[i] < 0 );
+                break;
+            case RangePredicate.EX_IN:
+                for ( int i=0; i<n; ++i ) result[i] = ( c1[i] > 0 && c2[i] <= 0 );
+                break;
+            case RangePredicate.EX_EX:
+                for ( int i=0; i<n; ++i ) result[i] = ( c1[i] > 0 && c2[i] < 0 );
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation.");
+            }
+        }
+        /**
+         * Tests the range directly on primitive values; NaN values compare
+         * as equal to the bounds, as with the per-row comparison.
+         */
+        void test(double[] x, double[] lo, double[] hi, int n, boolean[] result) {
+            switch ( m_op ) {
+            case RangePredicate.IN_IN:
+                for ( int i=0; i<n; ++i ) result[i] = !(x[i] < lo[i]) & !(x[i] > hi[i]);
+                break;
+            case RangePredicate.IN_EX:
+                for ( int i=0; i<n; ++i ) result[i] = !(x[i] < lo[i]) & x[i] < hi[i];
+                break;
+            case RangePredicate.EX_IN:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] > lo[i] & !(x[i] > hi[i]);
+                break;
+            case RangePredicate.EX_EX:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] > lo[i] & x[i] < hi[i];
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation.");
+            }
+        }
+        void test(long[] x, long[] lo, long[] hi, int n, boolean[] result) {
+            switch ( m_op ) {
+            case RangePredicate.IN_IN:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] >= lo[i] & x[i] <= hi[i];
+                break;
+            case RangePredicate.IN_EX:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] >= lo[i] & x[i] < hi[i];
+                break;
+            case RangePredicate.EX_IN:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] > lo[i] & x[i] <= hi[i];
+                break;
+            case RangePredicate.EX_EX:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] > lo[i] & x[i] < hi[i];
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation.");
+            }
+        }
+        void test(int[] x, int[] lo, int[] hi, int n, boolean[] result) {
+            switch ( m_op ) {
+            case RangePredicate.IN_IN:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] >= lo[i] & x[i] <= hi[i];
+                break;
+            case RangePredicate.IN_EX:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] >= lo[i] & x[i] < hi[i];
+                break;
+            case RangePredicate.EX_IN:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] > lo[i] & x[i] <= hi[i];
+                break;
+            case RangePredicate.EX_EX:
+                for ( int i=0; i<n; ++i ) result[i] = x[i] > lo[i] & x[i] < hi[i];
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation.");
+            }
+        }
+    }
+
+    private static class IntRangeNode extends RangeNode {
+        IntRangeNode(int op, CompiledExpression x,
+                CompiledExpression lo, CompiledExpression hi)
+        {
+            super(op, x, lo, hi);
+        }
+        public boolean getBoolean(Table t, int row) {
+            int lo = m_left.getInt(t, row);
+            int hi = m_right.getInt(t, row);
+            int x  = m_middle.getInt(t, row);
+            return RangePredicate.test(m_op,
+                    ( x < lo ? -1 : ( x > lo ? 1 : 0 ) ),
+                    ( x < hi ? -1 : ( x > hi ? 1 : 0 ) ));
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            int[] lo = new int[n];
+            int[] hi = new int[n];
+            int[] x = new int[n];
+            m_left.getInt(t, rows, n, lo);
+            m_right.getInt(t, rows, n, hi);
+            m_middle.getInt(t, rows, n, x);
+            test(x, lo, hi, n, result);
+        }
+    }
+
+    private static class LongRangeNode extends RangeNode {
+        LongRangeNode(int op, CompiledExpression x,
+                CompiledExpression lo, CompiledExpression hi)
+        {
+            super(op, x, lo, hi);
+        }
+        public boolean getBoolean(Table t, int row) {
+            long lo = m_left.getLong(t, row);
+            long hi = m_right.getLong(t, row);
+            long x  = m_middle.getLong(t, row);
+            return RangePredicate.test(m_op,
+                    ( x < lo ? -1 : ( x > lo ? 1 : 0 ) ),
+                    ( x < hi ? -1 : ( x > hi ? 1 : 0 ) ));
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            long[] lo = new long[n];
+            long[] hi = new long[n];
+            long[] x = new long[n];
+            m_left.getLong(t, rows, n, lo);
+            m_right.getLong(t, rows, n, hi);
+            m_middle.getLong(t, rows, n, x);
+            test(x, lo, hi, n, result);
+        }
+    }
+
+    private static class FloatRangeNode extends RangeNode {
+        FloatRangeNode(int op, CompiledExpression x,
+                CompiledExpression lo, CompiledExpression hi)
+        {
+            super(op, x, lo, hi);
+        }
+        public boolean getBoolean(Table t, int row) {
+            float lo = m_left.getFloat(t, row);
+            float hi = m_right.getFloat(t, row);
+            float x  = m_middle.getFloat(t, row);
+            return RangePredicate.test(m_op,
+                    ( x < lo ? -1 : ( x > lo ? 1 : 0 ) ),
+                    ( x < hi ? -1 : ( x > hi ? 1 : 0 ) ));
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            int[] c1 = new int[n];
+            int[] c2 = new int[n];
+            for ( int i=0; i<n; ++i ) {
+                float lo = m_left.getFloat(t, rows[i]);
+                float hi = m_right.getFloat(t, rows[i]);
+                float x  = m_middle.getFloat(t, rows[i]);
+                c1[i] = ( x < lo ? -1 : ( x > lo ? 1 : 0 ) );
+                c2[i] = ( x < hi ? -1 : ( x > hi ? 1 : 0 ) );
+            }
+            test(c1, c2, n, result);
+        }
+    }
+
+    private static class DoubleRangeNode extends RangeNode {
+        DoubleRangeNode(int op, CompiledExpression x,
+                CompiledExpression lo, CompiledExpression hi)
+        {
+            super(op, x, lo, hi);
+        }
+        public boolean getBoolean(Table t, int row) {
+            double lo = m_left.getDouble(t, row);
+            double hi = m_right.getDouble(t, row);
+            double x  = m_middle.getDouble(t, row);
+            return RangePredicate.test(m_op,
+                    ( x < lo ? -1 : ( x > lo ? 1 : 0 ) ),
+                    ( x < hi ? -1 : ( x > hi ? 1 : 0 ) ));
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            double[] lo = new double[n];
+            double[] hi = new double[n];
+            double[] x = new double[n];
+            m_left.getDouble(t, rows, n, lo);
+            m_right.getDouble(t, rows, n, hi);
+            m_middle.getDouble(t, rows, n, x);
+            test(x, lo, hi, n, result);
+        }
+    }
+
+    private static class ObjectRangeNode extends RangeNode {
+        private final Comparator<?> m_cmp;
+        ObjectRangeNode(int op, CompiledExpression x,
+                CompiledExpression lo, CompiledExpression hi, Comparator<?> cmp)
+        {
+            super(op, x, lo, hi);
+            m_cmp = cmp;
+        }
+        public boolean getBoolean(Table t, int row) {
+            Object lo = m_left.get(t, row);
+            Object hi = m_right.get(t, row);
+            Object x  = m_middle.get(t, row);
+            return RangePredicate.test(m_op,
+                    ComparisonPredicate.compare(m_cmp, x, lo),
+                    ComparisonPredicate.compare(m_cmp, x, hi));
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            int[] c1 = new int[n];
+            int[] c2 = new int[n];
+            for ( int i=0; i<n; ++i ) {
+                Object lo = m_left.get(t, rows[i]);
+                Object hi = m_right.get(t, rows[i]);
+                Object x  = m_middle.get(t, rows[i]);
+                c1[i] = ComparisonPredicate.compare(m_cmp, x, lo);
+                c2[i] = ComparisonPredicate.compare(m_cmp, x, hi);
+            }
+            test(c1, c2, n, result);
+        }
+    }
+
+    /**
+     * Evaluates the clauses in order; the batch method evaluates each
+     * clause only on the rows for which the previous clauses are true.
+     */
+    private static class AndNode extends BooleanNode {
+        private final CompiledExpression[] m_clauses;
+        AndNode(CompiledExpression[] clauses) {
+            m_clauses = clauses;
+        }
+        public boolean getBoolean(Table t, int row) {
+            if ( m_clauses.length == 0 )
+                return false;
+            for ( int i=0; i<m_clauses.length; ++i ) {
+                if ( !m_clauses[i].getBoolean(t, row) )
+                    return false;
+            }
+            return true;
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            if ( m_clauses.length == 0 ) {
+                Arrays.fill(result, 0, n, false);
+                return;
+            }
+            m_clauses[0].getBoolean(t, rows, n, result);
+            Selection sel = new Selection(n);
+            for ( int c=1; c<m_clauses.length; ++c ) {
+                if ( sel.select(rows, result, n, true) == 0 )
+                    return;
+                m_clauses[c].getBoolean(t, sel.m_rows, sel.m_count, sel.m_mask);
+                for ( int i=0; i<sel.m_count; ++i ) {
+                    if ( !sel.m_mask[i] ) result[sel.m_index[i]] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the clauses in order; the batch method evaluates each
+     * clause only on the rows for which the previous clauses are false.
+     */
+    private static class OrNode extends BooleanNode {
+        private final CompiledExpression[] m_clauses;
+        OrNode(CompiledExpression[] clauses) {
+            m_clauses = clauses;
+        }
+        public boolean getBoolean(Table t, int row) {
+            for ( int i=0; i<m_clauses.length; ++i ) {
+                if ( m_clauses[i].getBoolean(t, row) )
+                    return true;
+            }
+            return false;
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            if ( m_clauses.length == 0 ) {
+                Arrays.fill(result, 0, n, false);
+                return;
+            }
+            m_clauses[0].getBoolean(t, rows, n, result);
+            Selection sel = new Selection(n);
+            for ( int c=1; c<m_clauses.length; ++c ) {
+                if ( sel.select(rows, result, n, false) == 0 )
+                    return;
+                m_clauses[c].getBoolean(t, sel.m_rows, sel.m_count, sel.m_mask);
+                for ( int i=0; i<sel.m_count; ++i ) {
+                    if ( sel.m_mask[i] ) result[sel.m_index[i]] = true;
+                }
+            }
+        }
+    }
+
+    private static class XorNode extends BooleanNode {
+        private final CompiledExpression[] m_clauses;
+        XorNode(CompiledExpression[] clauses) {
+            m_clauses = clauses;
+        }
+        public boolean getBoolean(Table t, int row) {
+            boolean val = false;
+            for ( int i=0; i<m_clauses.length; ++i ) {
+                val ^= m_clauses[i].getBoolean(t, row);
+            }
+            return val;
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            Arrays.fill(result, 0, n, false);
+            boolean[] mask = new boolean[n];
+            for ( int c=0; c<m_clauses.length; ++c ) {
+                m_clauses[c].getBoolean(t, rows, n, mask);
+                for ( int i=0; i<n; ++i ) result[i] ^= mask[i];
+            }
+        }
+    }
+
+    private static class NotNode extends BooleanNode {
+        private final CompiledExpression m_predicate;
+        NotNode(CompiledExpression predicate) {
+            m_predicate = predicate;
+        }
+        public boolean getBoolean(Table t, int row) {
+            return !m_predicate.getBoolean(t, row);
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            m_predicate.getBoolean(t, rows, n, result);
+            for ( int i=0; i<n; ++i ) result[i] = !result[i];
+        }
+    }
+
+    /**
+     * Evaluates the then or else node, depending on the test node.
+     * The batch methods evaluate each branch only on its own rows.
+     */
+    private static class IfNode extends CompiledExpression {
+        private final CompiledExpression m_test;
+        private final CompiledExpression m_then;
+        private final CompiledExpression m_else;
+        IfNode(Class<?> type, CompiledExpression test,
+                CompiledExpression thenExpr, CompiledExpression elseExpr)
+        {
+            super(type);
+            m_test = test;
+            m_then = thenExpr;
+            m_else = elseExpr;
+        }
+        public Object get(Table t, int row) {
+            return (m_test.getBoolean(t, row) ? m_then : m_else).get(t, row);
+        }
+        public int getInt(Table t, int row) {
+            return (m_test.getBoolean(t, row) ? m_then : m_else).getInt(t, row);
+        }
+        public long getLong(Table t, int row) {
+            return (m_test.getBoolean(t, row) ? m_then : m_else).getLong(t, row);
+        }
+        public float getFloat(Table t, int row) {
+            return (m_test.getBoolean(t, row) ? m_then : m_else).getFloat(t, row);
+        }
+        public double getDouble(Table t, int row) {
+            return (m_test.getBoolean(t, row) ? m_then : m_else).getDouble(t, row);
+        }
+        public boolean getBoolean(Table t, int row) {
+            return (m_test.getBoolean(t, row) ? m_then : m_else).getBoolean(t, row);
+        }
+        public void getInt(Table t, int[] rows, int n, int[] result) {
+            boolean[] test = new boolean[n];
+            m_test.getBoolean(t, rows, n, test);
+            Selection sel = new Selection(n);
+            int[] v = new int[n];
+            for ( int b=0; b<2; ++b ) {
+                if ( sel.select(rows, test, n, b == 0) == 0 ) continue;
+                (b == 0 ? m_then : m_else).getInt(t, sel.m_rows, sel.m_count, v);
+                for ( int i=0; i<sel.m_count; ++i ) result[sel.m_index[i]] = v[i];
+            }
+        }
+        public void getLong(Table t, int[] rows, int n, long[] result) {
+            boolean[] test = new boolean[n];
+            m_test.getBoolean(t, rows, n, test);
+            Selection sel = new Selection(n);
+            long[] v = new long[n];
+            for ( int b=0; b<2; ++b ) {
+                if ( sel.select(rows, test, n, b == 0) == 0 ) continue;
+                (b == 0 ? m_then : m_else).getLong(t, sel.m_rows, sel.m_count, v);
+                for ( int i=0; i<sel.m_count; ++i ) result[sel.m_index[i]] = v[i];
+            }
+        }
+        public void getDouble(Table t, int[] rows, int n, double[] result) {
+            boolean[] test = new boolean[n];
+            m_test.getBoolean(t, rows, n, test);
+            Selection sel = new Selection(n);
+            double[] v = new double[n];
+            for ( int b=0; b<2; ++b ) {
+                if ( sel.select(rows, test, n, b == 0) == 0 ) continue;
+                (b == 0 ? m_then : m_else).getDouble(t, sel.m_rows, sel.m_count, v);
+                for ( int i=0; i<sel.m_count; ++i ) result[sel.m_index[i]] = v[i];
+            }
+        }
+        public void getBoolean(Table t, int[] rows, int n, boolean[] result) {
+            boolean[] test = new boolean[n];
+            m_test.getBoolean(t, rows, n, test);
+            Selection sel = new Selection(n);
+            for ( int b=0; b<2; ++b ) {
+                if ( sel.select(rows, test, n, b == 0) == 0 ) continue;
+                (b == 0 ? m_then : m_else).getBoolean(t, sel.m_rows, sel.m_count, sel.m_mask);
+                for ( int i=0; i<sel.m_count; ++i ) result[sel.m_index[i]] = sel.m_mask[i];
+            }
+        }
+    }
+
+    /**
+     * Subset of the rows of a batch, with the position of each selected
+     * row in the batch, used to evaluate sub-expressions on some rows only.
+     */
+    private static class Selection {
+        final int[] m_rows;
+        final int[] m_index;
+        final boolean[] m_mask;
+        int m_count;
+        Selection(int n) {
+            m_rows = new int[n];
+            m_index = new int[n];
+            m_mask = new boolean[n];
+        }
+        /**
+         * Selects the rows whose flag has the given value.
+         * @return the number of selected rows
+         */
+        int select(int[] rows, boolean[] flags, int n, boolean value) {
+            m_count = 0;
+            for ( int i=0; i<n; ++i ) {
+                if ( flags[i] == value ) {
+                    m_rows[m_count] = rows[i];
+                    m_index[m_count++] = i;
+                }
+            }
+            return m_count;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Function Nodes
+
+    /**
+     * Base class of the numeric functions, which compute a double value
+     * like the DoubleFunction expressions.
+     */
+    private abstract static class DoubleNode extends CompiledExpression {
+        DoubleNode(Class<?> type) {
+            super(type);
+        }
+        public Object get(Table t, int row) {
+            return Double.valueOf(getDouble(t, row));
+        }
+        public int getInt(Table t, int row) {
+            return (int)getDouble(t, row);
+        }
+        public long getLong(Table t, int row) {
+            return (long)getDouble(t, row);
+        }
+        public float getFloat(Table t, int row) {
+            return (float)getDouble(t, row);
+        }
+        public void getInt(Table t, int[] rows, int n, int[] result) {
+            double[] v = new double[n];
+            getDouble(t, rows, n, v);
+            for ( int i=0; i<n; ++i ) result[i] = (int)v[i];
+        }
+        public void getLong(Table t, int[] rows, int n, long[] result) {
+            double[] v = new double[n];
+            getDouble(t, rows, n, v);
+            for ( int i=0; i<n; ++i ) result[i] = (long)v[i];
+        }
+    }
+
+    /**
+     * Function of one parameter, computed by {@link #apply(double)}.
+     */
+    private abstract static class UnaryNode extends DoubleNode {
+        protected final CompiledExpression m_arg;
+        UnaryNode(CompiledExpression arg) {
+            super(double.class);
+            m_arg = arg;
+        }
+        public double getDouble(Table t, int row) {
+            return apply(m_arg.getDouble(t, row));
+        }
+        public void getDouble(Table t, int[] rows, int n, double[] result) {
+            m_arg.getDouble(t, rows, n, result);
+            for ( int i=0; i<n; ++i ) result[i] = apply(result[i]);
+        }
+        abstract double apply(double x);
+    }
+
+    /**
+     * Function of two parameters, computed by {@link #apply(double, double)}.
+     */
+    private abstract static class BinaryNode extends DoubleNode {
+        protected final CompiledExpression m_left;
+        protected final CompiledExpression m_right;
+        BinaryNode(CompiledExpression left, CompiledExpression right) {
+            super(double.class);
+            m_left = left;
+            m_right = right;
+        }
+        public double getDouble(Table t, int row) {
+            return apply(m_left.getDouble(t, row), m_right.getDouble(t, row));
+        }
+        public void getDouble(Table t, int[] rows, int n, double[] result) {
+            double[] y = new double[n];
+            m_left.getDouble(t, rows, n, result);
+            m_right.getDouble(t, rows, n, y);
+            for ( int i=0; i<n; ++i ) result[i] = apply(result[i], y[i]);
+        }
+        abstract double apply(double x, double y);
+    }
+
+    /**
+     * Function of a variable number of parameters, computed by folding
+     * the parameter values with {@link #apply(double, double)}.
+     */
+    private abstract static class VarargsNode extends DoubleNode {
+        protected final CompiledExpression[] m_args;
+        VarargsNode(CompiledExpression[] args) {
+            super(double.class);
+            m_args = args;
+        }
+        public double getDouble(Table t, int row) {
+            double v = m_args[0].getDouble(t, row);
+            for ( int i=1; i<m_args.length; ++i )
+                v = apply(v, m_args[i].getDouble(t, row));
+            return v;
+        }
+        public void getDouble(Table t, int[] rows, int n, double[] result) {
+            m_args[0].getDouble(t, rows, n, result);
+            if ( m_args.length == 1 ) return;
+            double[] x = new double[n];
+            for ( int a=1; a<m_args.length; ++a ) {
+                m_args[a].getDouble(t, rows, n, x);
+                for ( int i=0; i<n; ++i ) result[i] = apply(result[i], x[i]);
+            }
+        }
+        abstract double apply(double v, double x);
+    }
+
+    private static class SignNode extends DoubleNode {
+        private final CompiledExpression m_arg;
+        SignNode(CompiledExpression arg) {
+            super(int.class);
+            m_arg = arg;
+        }
+        public double getDouble(Table t, int row) {
+            return getInt(t, row);
+        }
+        public int getInt(Table t, int row) {
+            double d = m_arg.getDouble(t, row);
+            return d<0 ? -1 : d==0 ? 0 : 1;
+        }
+        public void getDouble(Table t, int[] rows, int n, double[] result) {
+            m_arg.getDouble(t, rows, n, result);
+            for ( int i=0; i<n; ++i ) {
+                double d = result[i];
+                result[i] = d<0 ? -1 : d==0 ? 0 : 1;
+            }
+        }
+    }
+
+} // end of class ExpressionCompiler
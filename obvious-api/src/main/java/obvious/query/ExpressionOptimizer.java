@@ -0,0 +1,976 @@
+package obvious.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import obvious.Schema;
+import obvious.Tuple;
+
+/**
+ * Library class that rewrites an expression into an equivalent expression
+ * that is cheaper to evaluate. The optimized expression is a standard
+ * Expression, and can be evaluated directly or given to the
+ * {@link ExpressionCompiler}. The source expression is left unchanged.
+ *
+ * <p>The optimizer performs the following rewrites:</p>
+ * <ul>
+ * <li>constant folding: sub-expressions that do not depend on the tuple,
+ * such as <code>PI()*2</code>, are replaced by literals; the ROW and RAND
+ * functions are never folded. A parent expression reads its operands with
+ * its own accessor, so that <code>1/2</code> is 0 when read as an int but
+ * 0.5 when read as a double: numeric sub-expressions are only folded when
+ * the literal has their value for every accessor;</li>
+ * <li>simplification of the Not, And, Or and If expressions: double
+ * negations are removed, nested And and Or predicates are flattened,
+ * duplicated clauses are removed, and constant clauses or tests are used
+ * to short-circuit the expression;</li>
+ * <li>clause ordering: the clauses of And and Or predicates are sorted so
+ * that cheap and selective clauses are evaluated first. The selectivity of
+ * a clause is estimated from its operation, and its cost from the number of
+ * columns and functions it references. The preceding clauses may guard a
+ * clause, as in <code>[i] != 0 AND 100/[i] > 2</code>: a clause that can
+ * raise an error is never moved before a clause that precedes it in the
+ * source expression;</li>
+ * <li>common sub-expression elimination: identical sub-expressions are
+ * shared, and the value of a shared sub-expression used several times is
+ * computed once per evaluation of the optimized expression.</li>
+ * </ul>
+ *
+ * <p>Reordering clauses assumes that evaluating them has no side effect. A
+ * clause is known not to raise errors when it only combines literals,
+ * columns of a primitive type of the schema given to
+ * {@link #optimize(Expression, Schema)}, additions, subtractions,
+ * multiplications and powers, numeric comparisons and boolean operations;
+ * without a schema, the clauses keep their order. Functions that are not
+ * part of the {@link FunctionTable} and unknown expression types are kept
+ * as they are, and are neither folded nor shared.</p>
+ *
+ * @author obvious
+ */
+public class ExpressionOptimizer {
+
+    private ExpressionOptimizer() {
+        // prevent instantiation
+    }
+
+    /**
+     * Optimize an expression. The clauses of And and Or predicates keep
+     * their order, since the column types are unknown.
+     * @param expr the expression to optimize
+     * @return an equivalent optimized expression
+     */
+    public static Expression optimize(Expression expr) {
+        return optimize(expr, null);
+    }
+
+    /**
+     * Optimize an expression that will be evaluated on the tuples of the
+     * given schema.
+     * @param expr the expression to optimize
+     * @param s the schema of the tuples, used to determine which clauses
+     * can be reordered, or null if it is unknown
+     * @return an equivalent optimized expression
+     */
+    public static Expression optimize(Expression expr, Schema s) {
+        Rewriter rw = new Rewriter(s);
+        Expression e = rw.rewrite(expr);
+        return new Sharer().share(e);
+    }
+
+    /**
+     * Estimate the probability that a predicate evaluates to true, from the
+     * operations of the predicate only.
+     * @param expr the predicate
+     * @return the estimated selectivity, between 0 and 1
+     */
+    public static double getSelectivity(Expression expr) {
+        if ( expr instanceof Wrapper ) {
+            return getSelectivity(((Wrapper)expr).getExpression());
+        } else if ( expr instanceof BooleanLiteral ) {
+            return ( expr.getBoolean(null) ? 1 : 0 );
+        } else if ( expr instanceof ComparisonPredicate ) {
+            switch ( ((ComparisonPredicate)expr).getOperation() ) {
+            case ComparisonPredicate.EQ:
+                return 0.1;
+            case ComparisonPredicate.NEQ:
+                return 0.9;
+            default:
+                return 1/3.0;
+            }
+        } else if ( expr instanceof RangePredicate ) {
+            return 0.25;
+        } else if ( expr instanceof NotPredicate ) {
+            return 1 - getSelectivity(((NotPredicate)expr).getPredicate());
+        } else if ( expr instanceof AndPredicate ) {
+            CompositePredicate p = (CompositePredicate)expr;
+            double s = 1;
+            for ( int i=0; i<p.size(); ++i )
+                s *= getSelectivity(p.get(i));
+            return s;
+        } else if ( expr instanceof OrPredicate ) {
+            CompositePredicate p = (CompositePredicate)expr;
+            double s = 1;
+            for ( int i=0; i<p.size(); ++i )
+                s *= 1 - getSelectivity(p.get(i));
+            return 1 - s;
+        }
+        return 0.5;
+    }
+
+    /**
+     * Estimate the relative cost of evaluating an expression.
+     * @param expr the expression
+     * @return the estimated cost
+     */
+    public static double getCost(Expression expr) {
+        CostVisitor cv = new CostVisitor();
+        expr.visit(cv);
+        return cv.m_cost;
+    }
+
+    /**
+     * Indicates if evaluating an expression on the tuples of a schema may
+     * raise an error. Integer divisions, comparisons of objects, columns
+     * of an object type, which may hold null, and functions are assumed to
+     * possibly raise errors.
+     * @param expr the expression
+     * @param s the schema of the tuples, or null if it is unknown
+     * @return false if the expression is known to evaluate without error,
+     * true otherwise
+     */
+    public static boolean canThrow(Expression expr, Schema s) {
+        Class<?> type = getType(expr, s);
+        if ( type == null )
+            return true;
+        else if ( expr instanceof Literal )
+            return false;
+        else if ( expr instanceof ColumnExpression )
+            return !type.isPrimitive();
+
+        Class<?> c = expr.getClass();
+        Expression[] children = getChildren(expr);
+        if ( c == ArithmeticExpression.class ) {
+            int op = ((ArithmeticExpression)expr).getOperation();
+            if ( op == ArithmeticExpression.DIV
+                    || op == ArithmeticExpression.MOD )
+                return true;
+        } else if ( c == ComparisonPredicate.class
+                || c == RangePredicate.class )
+        {
+            for ( int i=0; i<children.length; ++i ) {
+                if ( !AbstractExpression.isNumericType(
+                        getType(children[i], s)) )
+                    return true;
+            }
+        } else if ( c == AndPredicate.class || c == OrPredicate.class
+                || c == XorPredicate.class || c == NotPredicate.class )
+        {
+            for ( int i=0; i<children.length; ++i ) {
+                if ( getType(children[i], s) != boolean.class )
+                    return true;
+            }
+        } else if ( c == IfExpression.class ) {
+            if ( getType(children[0], s) != boolean.class )
+                return true;
+        } else {
+            return true;
+        }
+        for ( int i=0; i<children.length; ++i ) {
+            if ( canThrow(children[i], s) )
+                return true;
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    // Tree Access
+
+    /**
+     * Get the sub-expressions of a rewritable expression.
+     * @return the sub-expressions, or null for leaves and unknown
+     * expression types
+     */
+    static Expression[] getChildren(Expression e) {
+        Class<?> c = e.getClass();
+        if ( c == ArithmeticExpression.class
+                || c == ComparisonPredicate.class )
+        {
+            BinaryExpression b = (BinaryExpression)e;
+            return new Expression[] {
+                b.getLeftExpression(), b.getRightExpression() };
+        } else if ( c == RangePredicate.class ) {
+            RangePredicate r = (RangePredicate)e;
+            return new Expression[] { r.getMiddleExpression(),
+                r.getLeftExpression(), r.getRightExpression() };
+        } else if ( c == AndPredicate.class || c == OrPredicate.class
+                || c == XorPredicate.class )
+        {
+            CompositePredicate p = (CompositePredicate)e;
+            Expression[] children = new Expression[p.size()];
+            for ( int i=0; i<children.length; ++i )
+                children[i] = p.get(i);
+            return children;
+        } else if ( c == NotPredicate.class ) {
+            return new Expression[] { ((NotPredicate)e).getPredicate() };
+        } else if ( c == IfExpression.class ) {
+            IfExpression f = (IfExpression)e;
+            return new Expression[] { f.getTestPredicate(),
+                f.getThenExpression(), f.getElseExpression() };
+        } else if ( isTableFunction(e) ) {
+            FunctionExpression f = (FunctionExpression)e;
+            Expression[] children = new Expression[f.paramCount()];
+            for ( int i=0; i<children.length; ++i )
+                children[i] = f.param(i);
+            return children;
+        }
+        return null;
+    }
+
+    /**
+     * Create a copy of a rewritable expression with new sub-expressions.
+     * @return the copy, or null if the expression cannot be copied
+     */
+    static Expression copy(Expression e, Expression[] children) {
+        Class<?> c = e.getClass();
+        if ( c == ArithmeticExpression.class ) {
+            return new ArithmeticExpression(
+                    ((ArithmeticExpression)e).getOperation(),
+                    children[0], children[1]);
+        } else if ( c == ComparisonPredicate.class ) {
+            ComparisonPredicate p = (ComparisonPredicate)e;
+            return new ComparisonPredicate(p.getOperation(),
+                    children[0], children[1], p.getComparator());
+        } else if ( c == RangePredicate.class ) {
+            RangePredicate p = (RangePredicate)e;
+            return new RangePredicate(p.getOperation(), children[0],
+                    children[1], children[2], p.getComparator());
+        } else if ( c == AndPredicate.class || c == OrPredicate.class
+                || c == XorPredicate.class )
+        {
+            CompositePredicate p = ( c == AndPredicate.class ?
+                    (CompositePredicate)new AndPredicate() :
+                    c == OrPredicate.class ?
+                    (CompositePredicate)new OrPredicate() :
+                    (CompositePredicate)new XorPredicate() );
+            for ( int i=0; i<children.length; ++i )
+                p.add((Predicate)children[i]);
+            return p;
+        } else if ( c == NotPredicate.class ) {
+            return new NotPredicate((Predicate)children[0]);
+        } else if ( c == IfExpression.class ) {
+            return new IfExpression((Predicate)children[0],
+                    children[1], children[2]);
+        } else if ( isTableFunction(e) ) {
+            FunctionExpression f;
+            try {
+                f = (FunctionExpression)c.getDeclaredConstructor()
+                        .newInstance();
+            } catch ( Exception ex ) {
+                return null;
+            }
+            for ( int i=0; i<children.length; ++i )
+                f.addParameter(children[i]);
+            return f;
+        }
+        return null;
+    }
+
+    /**
+     * Indicates if an expression is one of the functions of the
+     * {@link FunctionTable}.
+     */
+    private static boolean isTableFunction(Expression e) {
+        return ( e instanceof FunctionExpression
+              && FunctionTable.isBuiltIn((FunctionExpression)e) );
+    }
+
+    /**
+     * Indicates if an expression is the function of the
+     * {@link FunctionTable} with the given name.
+     */
+    private static boolean isTableFunction(Expression e, String name) {
+        return isTableFunction(e)
+            && ((FunctionExpression)e).getName().equals(name);
+    }
+
+    /**
+     * Indicates if an expression can be replaced by its value when its
+     * sub-expressions are literals.
+     */
+    private static boolean isFoldable(Expression e) {
+        return isDeterministic(e)
+            && !( e instanceof IfExpression || e instanceof Literal );
+    }
+
+    /**
+     * Indicates if two evaluations of an expression on the same tuple
+     * return the same value. Non-deterministic expressions, and the
+     * expressions containing them, are neither merged nor shared.
+     */
+    private static boolean isDeterministic(Expression e) {
+        return !( isTableFunction(e, "ROW") || isTableFunction(e, "RAND") );
+    }
+
+    // ------------------------------------------------------------------------
+    // Rewriting
+
+    /**
+     * Rewrites expression trees bottom-up, folding constants and simplifying
+     * predicates. Identical rewritten sub-expressions are represented by a
+     * single instance, so that the rewritten tree is a directed acyclic
+     * graph.
+     */
+    private static class Rewriter {
+        /** Schema of the tuples, or null if it is unknown. */
+        private final Schema m_schema;
+        /** Canonical expressions, by structural key. */
+        private final Map<List<Object>,Expression> m_canonical =
+            new HashMap<List<Object>,Expression>();
+        /** Identifiers of the canonical expressions. */
+        private final Map<Expression,Integer> m_ids =
+            new IdentityHashMap<Expression,Integer>();
+        /** Canonical rewritten expressions, by source expression. */
+        private final Map<Expression,Expression> m_done =
+            new IdentityHashMap<Expression,Expression>();
+
+        Rewriter(Schema s) {
+            m_schema = s;
+        }
+
+        Expression rewrite(Expression e) {
+            if ( e instanceof Wrapper )
+                return rewrite(((Wrapper)e).getExpression());
+            Expression r = m_done.get(e);
+            if ( r == null ) {
+                r = simplify(e);
+                m_done.put(e, r);
+            }
+            return r;
+        }
+
+        private Expression simplify(Expression e) {
+            Expression[] src = getChildren(e);
+            if ( src == null )
+                return intern(e);
+            Expression[] children = new Expression[src.length];
+            boolean constant = true;
+            for ( int i=0; i<src.length; ++i ) {
+                children[i] = rewrite(src[i]);
+                constant &= children[i] instanceof Literal;
+            }
+
+            Class<?> c = e.getClass();
+            if ( c == NotPredicate.class ) {
+                Expression p = children[0];
+                if ( p instanceof NotPredicate )
+                    return ((NotPredicate)p).getPredicate();
+            } else if ( c == AndPredicate.class || c == OrPredicate.class ) {
+                return composite(c == AndPredicate.class, children);
+            } else if ( c == IfExpression.class ) {
+                Class<?> type = getType(children[1]);
+                if ( children[0] instanceof BooleanLiteral && type != null
+                        && type == getType(children[2]) )
+                {
+                    return children[0].getBoolean(null) ?
+                            children[1] : children[2];
+                }
+                if ( children[1] == children[2] )
+                    return children[1];
+            }
+
+            Expression copy = copy(e, children);
+            if ( copy == null )
+                return intern(e);
+            if ( constant && isFoldable(copy) ) {
+                Literal value = evaluate(copy);
+                if ( value != null )
+                    return intern(value);
+            }
+            return intern(copy);
+        }
+
+        /**
+         * Simplifies an And or Or predicate: nested predicates of the same
+         * kind are flattened, duplicated and neutral clauses are removed,
+         * absorbing clauses short-circuit the predicate, and the remaining
+         * clauses are ordered by increasing cost over rejection rate for an
+         * And predicate, or over acceptance rate for an Or predicate. A
+         * clause that can raise an error stays after the clauses preceding
+         * it in the source predicate, which may guard it.
+         */
+        private Expression composite(boolean and, Expression[] children) {
+            Class<?> c = ( and ? AndPredicate.class : OrPredicate.class );
+            List<Expression> clauses = new ArrayList<Expression>();
+            for ( int i=0; i<children.length; ++i ) {
+                Expression p = children[i];
+                if ( p.getClass() == c ) {
+                    CompositePredicate cp = (CompositePredicate)p;
+                    for ( int j=0; j<cp.size(); ++j )
+                        addClause(clauses, cp.get(j));
+                } else if ( p instanceof BooleanLiteral ) {
+                    if ( p.getBoolean(null) != and )
+                        return p;
+                } else {
+                    addClause(clauses, p);
+                }
+            }
+            if ( clauses.isEmpty() )
+                return intern(and ? BooleanLiteral.TRUE : BooleanLiteral.FALSE);
+            if ( clauses.size() == 1 )
+                return clauses.get(0);
+
+            int n = clauses.size();
+            double[] rank = new double[n];
+            boolean[] safe = new boolean[n];
+            for ( int i=0; i<n; ++i ) {
+                Expression p = clauses.get(i);
+                double s = getSelectivity(p);
+                double r = ( and ? 1-s : s );
+                rank[i] = ( r <= 0 ? Double.MAX_VALUE : getCost(p) / r );
+                safe[i] = !canThrow(p, m_schema);
+            }
+
+            // repeatedly take the clause of lowest rank, the first one on
+            // ties, among the safe clauses and the first remaining clause
+            CompositePredicate p = ( and ?
+                    (CompositePredicate)new AndPredicate() :
+                    (CompositePredicate)new OrPredicate() );
+            boolean[] placed = new boolean[n];
+            int first = 0;
+            for ( int k=0; k<n; ++k ) {
+                while ( placed[first] ) ++first;
+                int best = first;
+                for ( int i=first+1; i<n; ++i ) {
+                    if ( !placed[i] && safe[i] && rank[i] < rank[best] )
+                        best = i;
+                }
+                placed[best] = true;
+                p.add((Predicate)clauses.get(best));
+            }
+            return intern(p);
+        }
+
+        private void addClause(List<Expression> clauses, Expression p) {
+            for ( int i=0; i<clauses.size(); ++i ) {
+                if ( clauses.get(i) == p )
+                    return;
+            }
+            clauses.add(p);
+        }
+
+        /**
+         * Get the canonical instance of an expression, whose sub-expressions
+         * are canonical instances.
+         */
+        private Expression intern(Expression e) {
+            if ( m_ids.containsKey(e) )
+                return e;
+            List<Object> key = getKey(e);
+            if ( key != null ) {
+                Expression c = m_canonical.get(key);
+                if ( c != null )
+                    return c;
+                m_canonical.put(key, e);
+            } else if ( isVolatile(e) ) {
+                // no identifier, so that the ancestors have no key either
+                return e;
+            }
+            m_ids.put(e, Integer.valueOf(m_ids.size()));
+            return e;
+        }
+
+        /**
+         * Indicates if an expression is non-deterministic or has a
+         * non-deterministic sub-expression.
+         */
+        private boolean isVolatile(Expression e) {
+            if ( !isDeterministic(e) )
+                return true;
+            Expression[] children = getChildren(e);
+            if ( children != null ) {
+                for ( int i=0; i<children.length; ++i ) {
+                    if ( !m_ids.containsKey(children[i]) )
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Get a key identifying the structure of a canonical expression.
+         * @return the key, or null for unknown expression types and
+         *  volatile expressions
+         */
+        private List<Object> getKey(Expression e) {
+            if ( isVolatile(e) )
+                return null;
+            List<Object> key = new ArrayList<Object>();
+            key.add(e.getClass());
+            if ( e instanceof ColumnExpression ) {
+                key.add(((ColumnExpression)e).getColumnName());
+                return key;
+            } else if ( e instanceof Literal ) {
+                key.add(e.getType(null));
+                key.add(e.get(null));
+                return key;
+            }
+            Expression[] children = getChildren(e);
+            if ( children == null )
+                return null;
+            if ( e instanceof BinaryExpression )
+                key.add(Integer.valueOf(((BinaryExpression)e).getOperation()));
+            if ( e instanceof ComparisonPredicate )
+                key.add(((ComparisonPredicate)e).getComparator());
+            else if ( e instanceof RangePredicate )
+                key.add(((RangePredicate)e).getComparator());
+            for ( int i=0; i<children.length; ++i ) {
+                Object id = m_ids.get(children[i]);
+                if ( id == null )
+                    return null;
+                key.add(id);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Evaluates a constant expression.
+     * @return the value of the expression as a literal, or null if the
+     * expression cannot be evaluated without a tuple
+     */
+    static Literal evaluate(Expression e) {
+        Class<?> type = getType(e);
+        if ( type == null )
+            return null;
+        CompiledExpression c;
+        try {
+            c = ExpressionCompiler.compile(e, null);
+        } catch ( RuntimeException ex ) {
+            // not supported by the compiler, evaluate the expression itself
+            c = null;
+        }
+        try {
+            if ( AbstractExpression.isNumericType(type) )
+                return evaluateNumber(type, c, e);
+            else if ( type == boolean.class )
+                return ( ( c != null ? c.getBoolean(null, -1)
+                                     : e.getBoolean(null) ) ?
+                        BooleanLiteral.TRUE : BooleanLiteral.FALSE );
+            Object value = ( c != null ? c.get(null, -1) : e.get(null) );
+            return ( value == null ? null : Literal.getLiteral(value, type) );
+        } catch ( RuntimeException ex ) {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates a constant numeric expression with each accessor. The
+     * parent of the expression reads it with its own accessor, so the
+     * literal must have the value of the expression for all of them.
+     * @return the value of the expression as a literal of its type, or
+     * null if the value depends on the accessor
+     */
+    private static Literal evaluateNumber(Class<?> type, CompiledExpression c,
+            Expression e)
+    {
+        int i = ( c != null ? c.getInt(null, -1) : e.getInt(null) );
+        long l = ( c != null ? c.getLong(null, -1) : e.getLong(null) );
+        float f = ( c != null ? c.getFloat(null, -1) : e.getFloat(null) );
+        double d = ( c != null ? c.getDouble(null, -1) : e.getDouble(null) );
+        NumericLiteral value;
+        if ( type == long.class )
+            value = new NumericLiteral(l);
+        else if ( type == float.class )
+            value = new NumericLiteral(f);
+        else if ( type == double.class )
+            value = new NumericLiteral(d);
+        else
+            value = new NumericLiteral(i);
+        if ( value.getInt(null) != i || value.getLong(null) != l
+                || Float.floatToIntBits(value.getFloat(null))
+                    != Float.floatToIntBits(f)
+                || Double.doubleToLongBits(value.getDouble(null))
+                    != Double.doubleToLongBits(d) )
+            return null;
+        return value;
+    }
+
+    /**
+     * Get the type of an expression that does not depend on a schema.
+     * @return the type, or null if it depends on a schema
+     */
+    private static Class<?> getType(Expression e) {
+        return getType(e, null);
+    }
+
+    /**
+     * Get the type of an expression for a schema.
+     * @return the type, or null if it cannot be determined
+     */
+    private static Class<?> getType(Expression e, Schema s) {
+        try {
+            return e.getType(s);
+        } catch ( RuntimeException ex ) {
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Sharing
+
+    /**
+     * Replaces the sub-expressions of a rewritten tree that have several
+     * parents by {@link SharedExpression} instances, and wraps the root of
+     * the tree in a {@link ScopeExpression} delimiting the evaluations.
+     */
+    private static class Sharer {
+        private final Map<Expression,Integer> m_parents =
+            new IdentityHashMap<Expression,Integer>();
+        private final Map<Expression,Expression> m_done =
+            new IdentityHashMap<Expression,Expression>();
+        private final Map<Expression,Boolean> m_volatile =
+            new IdentityHashMap<Expression,Boolean>();
+        private Scope m_scope;
+
+        Expression share(Expression root) {
+            count(root);
+            m_scope = new Scope();
+            Expression e = wrap(root);
+            if ( m_scope.m_size == 0 )
+                return e;
+            return new ScopeExpression(e, m_scope);
+        }
+
+        private void count(Expression e) {
+            Expression[] children = getChildren(e);
+            if ( children == null )
+                return;
+            for ( int i=0; i<children.length; ++i ) {
+                Integer n = m_parents.get(children[i]);
+                if ( n == null ) {
+                    m_parents.put(children[i], Integer.valueOf(1));
+                    count(children[i]);
+                } else {
+                    m_parents.put(children[i],
+                        Integer.valueOf(n.intValue()+1));
+                }
+            }
+        }
+
+        private Expression wrap(Expression e) {
+            Expression r = m_done.get(e);
+            if ( r != null )
+                return r;
+            r = e;
+            boolean varying = !isDeterministic(e);
+            Expression[] children = getChildren(e);
+            if ( children != null ) {
+                Expression[] wrapped = new Expression[children.length];
+                boolean changed = false;
+                for ( int i=0; i<children.length; ++i ) {
+                    wrapped[i] = wrap(children[i]);
+                    changed |= wrapped[i] != children[i];
+                    varying |= m_volatile.containsKey(children[i]);
+                }
+                if ( changed )
+                    r = copy(e, wrapped);
+                // each occurrence of a volatile expression is evaluated
+                Integer n = m_parents.get(e);
+                if ( n != null && n.intValue() > 1 && !varying )
+                    r = new SharedExpression(r, m_scope, m_scope.m_size++);
+            }
+            if ( varying )
+                m_volatile.put(e, Boolean.TRUE);
+            m_done.put(e, r);
+            return r;
+        }
+    }
+
+    /**
+     * Evaluation state of the shared sub-expressions of an optimized
+     * expression, for each thread.
+     */
+    static final class Scope extends ThreadLocal<Frame> {
+        int m_size;
+
+        protected Frame initialValue() {
+            return new Frame(m_size);
+        }
+
+        Frame frame() {
+            return get();
+        }
+    }
+
+    /**
+     * Values of the shared sub-expressions computed during the current
+     * evaluation of an optimized expression. A value is valid if its stamp
+     * is the current pass number.
+     */
+    static final class Frame {
+        static final int INT     = 0;
+        static final int LONG    = 1;
+        static final int FLOAT   = 2;
+        static final int DOUBLE  = 3;
+        static final int BOOLEAN = 4;
+        static final int OBJECT  = 5;
+        static final int KINDS   = 6;
+
+        int m_depth;
+        long m_pass;
+        final long[] m_stamps;
+        final long[] m_bits;
+        final Object[] m_objects;
+
+        Frame(int size) {
+            m_stamps  = new long[size*KINDS];
+            m_bits    = new long[size*KINDS];
+            m_objects = new Object[size];
+        }
+
+        boolean enter() {
+            ++m_pass;
+            return m_depth++ > 0;
+        }
+
+        void exit(boolean nested) {
+            --m_depth;
+            // values computed for a nested evaluation are not valid for
+            // the enclosing one
+            if ( nested ) ++m_pass;
+        }
+    }
+
+    /**
+     * Expression delegating to another expression. Visitors, types and
+     * string representations are those of the delegate, so that wrappers
+     * are transparent to clients of the expression tree.
+     */
+    static abstract class Wrapper extends AbstractExpression
+        implements Predicate
+    {
+        protected final Expression m_expr;
+
+        Wrapper(Expression expr) {
+            m_expr = expr;
+        }
+
+        /**
+         * Get the wrapped expression.
+         * @return the wrapped expression
+         */
+        public Expression getExpression() {
+            return m_expr;
+        }
+
+        /**
+         * @see obvious.query.Expression#getType(obvious.Schema)
+         */
+        public Class<?> getType(Schema s) {
+            return m_expr.getType(s);
+        }
+
+        /**
+         * @see obvious.query.Expression#visit(obvious.query.ExpressionVisitor)
+         */
+        public void visit(ExpressionVisitor v) {
+            m_expr.visit(v);
+        }
+
+        /**
+         * @see obvious.query.AbstractExpression#addChildListeners()
+         */
+        protected void addChildListeners() {
+            m_expr.addExpressionListener(this);
+        }
+
+        /**
+         * @see obvious.query.AbstractExpression#removeChildListeners()
+         */
+        protected void removeChildListeners() {
+            m_expr.removeExpressionListener(this);
+        }
+
+        /**
+         * @see java.lang.Object#toString()
+         */
+        public String toString() {
+            return m_expr.toString();
+        }
+    }
+
+    /**
+     * Root of an optimized expression with shared sub-expressions. Each
+     * evaluation of the root starts a new evaluation pass.
+     */
+    static final class ScopeExpression extends Wrapper {
+        private final Scope m_scope;
+
+        ScopeExpression(Expression expr, Scope scope) {
+            super(expr);
+            m_scope = scope;
+        }
+
+        public Object get(Tuple t) {
+            Frame f = m_scope.frame();
+            boolean nested = f.enter();
+            try { return m_expr.get(t); } finally { f.exit(nested); }
+        }
+
+        public int getInt(Tuple t) {
+            Frame f = m_scope.frame();
+            boolean nested = f.enter();
+            try { return m_expr.getInt(t); } finally { f.exit(nested); }
+        }
+
+        public long getLong(Tuple t) {
+            Frame f = m_scope.frame();
+            boolean nested = f.enter();
+            try { return m_expr.getLong(t); } finally { f.exit(nested); }
+        }
+
+        public float getFloat(Tuple t) {
+            Frame f = m_scope.frame();
+            boolean nested = f.enter();
+            try { return m_expr.getFloat(t); } finally { f.exit(nested); }
+        }
+
+        public double getDouble(Tuple t) {
+            Frame f = m_scope.frame();
+            boolean nested = f.enter();
+            try { return m_expr.getDouble(t); } finally { f.exit(nested); }
+        }
+
+        public boolean getBoolean(Tuple t) {
+            Frame f = m_scope.frame();
+            boolean nested = f.enter();
+            try { return m_expr.getBoolean(t); } finally { f.exit(nested); }
+        }
+    }
+
+    /**
+     * Sub-expression used several times in an optimized expression. Within
+     * an evaluation of the root {@link ScopeExpression}, the value is
+     * computed once for each accessor type; outside of it, each access
+     * evaluates the shared expression.
+     */
+    static final class SharedExpression extends Wrapper {
+        private final Scope m_scope;
+        private final int m_id;
+
+        SharedExpression(Expression expr, Scope scope, int id) {
+            super(expr);
+            m_scope = scope;
+            m_id = id;
+        }
+
+        public Object get(Tuple t) {
+            Frame f = m_scope.frame();
+            if ( f.m_depth == 0 )
+                return m_expr.get(t);
+            int slot = m_id*Frame.KINDS + Frame.OBJECT;
+            if ( f.m_stamps[slot] != f.m_pass ) {
+                f.m_objects[m_id] = m_expr.get(t);
+                f.m_stamps[slot] = f.m_pass;
+            }
+            return f.m_objects[m_id];
+        }
+
+        public int getInt(Tuple t) {
+            Frame f = m_scope.frame();
+            if ( f.m_depth == 0 )
+                return m_expr.getInt(t);
+            int slot = m_id*Frame.KINDS + Frame.INT;
+            if ( f.m_stamps[slot] != f.m_pass ) {
+                f.m_bits[slot] = m_expr.getInt(t);
+                f.m_stamps[slot] = f.m_pass;
+            }
+            return (int)f.m_bits[slot];
+        }
+
+        public long getLong(Tuple t) {
+            Frame f = m_scope.frame();
+            if ( f.m_depth == 0 )
+                return m_expr.getLong(t);
+            int slot = m_id*Frame.KINDS + Frame.LONG;
+            if ( f.m_stamps[slot] != f.m_pass ) {
+                f.m_bits[slot] = m_expr.getLong(t);
+                f.m_stamps[slot] = f.m_pass;
+            }
+            return f.m_bits[slot];
+        }
+
+        public float getFloat(Tuple t) {
+            Frame f = m_scope.frame();
+            if ( f.m_depth == 0 )
+                return m_expr.getFloat(t);
+            int slot = m_id*Frame.KINDS + Frame.FLOAT;
+            if ( f.m_stamps[slot] != f.m_pass ) {
+                f.m_bits[slot] = Float.floatToRawIntBits(m_expr.getFloat(t));
+                f.m_stamps[slot] = f.m_pass;
+            }
+            return Float.intBitsToFloat((int)f.m_bits[slot]);
+        }
+
+        public double getDouble(Tuple t) {
+            Frame f = m_scope.frame();
+            if ( f.m_depth == 0 )
+                return m_expr.getDouble(t);
+            int slot = m_id*Frame.KINDS + Frame.DOUBLE;
+            if ( f.m_stamps[slot] != f.m_pass ) {
+                f.m_bits[slot] =
+                    Double.doubleToRawLongBits(m_expr.getDouble(t));
+                f.m_stamps[slot] = f.m_pass;
+            }
+            return Double.longBitsToDouble(f.m_bits[slot]);
+        }
+
+        public boolean getBoolean(Tuple t) {
+            Frame f = m_scope.frame();
+            if ( f.m_depth == 0 )
+                return m_expr.getBoolean(t);
+            int slot = m_id*Frame.KINDS + Frame.BOOLEAN;
+            if ( f.m_stamps[slot] != f.m_pass ) {
+                f.m_bits[slot] = ( m_expr.getBoolean(t) ? 1 : 0 );
+                f.m_stamps[slot] = f.m_pass;
+            }
+            return f.m_bits[slot] != 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Cost Estimation
+
+    /**
+     * ExpressionVisitor that sums the estimated evaluation costs of the
+     * nodes of an expression.
+     */
+    private static class CostVisitor implements ExpressionVisitor {
+        double m_cost;
+
+        public void visitExpression(Expression expr) {
+            if ( expr instanceof Literal ) {
+                // free
+            } else if ( expr instanceof ColumnExpression ) {
+                m_cost += 2;
+            } else if ( isTableFunction(expr)
+                    && expr.getType(null) == String.class ) {
+                m_cost += 8;
+            } else if ( expr instanceof FunctionExpression ) {
+                m_cost += 4;
+            } else {
+                m_cost += 1;
+            }
+        }
+        public void down() {
+            // do nothing
+        }
+        public void up() {
+            // do nothing
+        }
+    }
+
+} // end of class ExpressionOptimizer
@@ -23,6 +23,7 @@ public class FunctionTable {
     }
     
     private static HashMap s_functionTable;
+    private static HashMap s_builtIn;
     static {
         s_functionTable = new HashMap();
         // tuple functions
@@ -53,8 +54,8 @@ public class FunctionTable {
 //        addFunction("LOG2", Log2Function.class);
 //        addFunction("LOG10", Log10Function.class);
         addFunction("MAX", MaxFunction.class);
-        addFunction("MIN", MaxFunction.class);
-        addFunction("MOD", MaxFunction.class);
+        addFunction("MIN", MinFunction.class);
+        addFunction("MOD", ModFunction.class);
         addFunction("PI", PiFunction.class);
         addFunction("POW", PowFunction.class);
         addFunction("POWER", PowFunction.class);
@@ -110,6 +111,7 @@ public class FunctionTable {
         addFunction("QUERY", QueryExpression.class);
         addFunction("VISIBLE", VisiblePredicate.class);
         addFunction("VALIDATED", ValidatedPredicate.class);*/
+        s_builtIn = new HashMap(s_functionTable);
     }
     
     /**
@@ -122,6 +124,17 @@ public class FunctionTable {
         return s_functionTable.containsKey(name);
     }
     
+    /**
+     * Indicates if a function is one of the functions provided with the
+     * table, as opposed to functions added by applications. The compiler
+     * and the optimizer identify these functions by name.
+     * @param f a function
+     * @return true if the function is the built-in function of its name
+     */
+    static boolean isBuiltIn(FunctionExpression f) {
+        return s_builtIn.get(f.getName()) == f.getClass();
+    }
+
     /**
      * Add a function to the function table. It will then become available
      * for use with compiled statements of the prefuse expression language.
@@ -0,0 +1,1243 @@
+package obvious.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import obvious.IntIterator;
+import obvious.Schema;
+import obvious.Table;
+import obvious.Transform;
+
+/**
+ * Transform grouping the rows of a table by the values of key expressions
+ * and computing {@link Aggregate aggregates} over each group. The result
+ * is a new {@link ColumnTable} with one row per group, in the order in
+ * which the groups first appear in the table, holding the key columns
+ * followed by the aggregate columns. Without key expressions, the whole
+ * table forms a single group; an empty table gives an empty result.
+ *
+ * <p>The key and aggregated expressions are {@link ExpressionCompiler
+ * compiled} against the table schema and evaluated in batches. Groups are
+ * found with a hash table over the primitive encoding of the keys, with
+ * object keys first mapped to integer codes. The rows are split into
+ * chunks of {@link #CHUNK_SIZE} rows aggregated in parallel into partial
+ * results, which are then merged in table order, so the result does not
+ * depend on the number of threads. When more than one thread is used, the
+ * table must support concurrent reads.</p>
+ *
+ * @author obvious
+ */
+public class GroupBy implements Transform {
+
+    /** Number of rows aggregated by each task. */
+    public static final int CHUNK_SIZE = 1 << 16;
+
+    private final Expression[] m_keys;
+    private final String[] m_names;
+    private final Aggregate[] m_aggregates;
+    private int m_threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Create a new GroupBy grouping rows by the values of columns.
+     * @param columns the key column names
+     * @param aggregates the aggregates to compute
+     */
+    public GroupBy(String[] columns, Aggregate[] aggregates) {
+        this(columnExpressions(columns), columns, aggregates);
+    }
+
+    /**
+     * Create a new GroupBy grouping rows by the values of expressions.
+     * @param keys the key expressions
+     * @param names the names of the key columns of the result, or null to
+     * use the column names of column expressions and the string
+     * representation of other expressions
+     * @param aggregates the aggregates to compute
+     */
+    public GroupBy(Expression[] keys, String[] names, Aggregate[] aggregates) {
+        if ( names != null && names.length != keys.length )
+            throw new IllegalArgumentException(
+                "Inconsistent number of key names.");
+        m_keys = keys.clone();
+        m_names = new String[keys.length];
+        for ( int i=0; i<keys.length; ++i ) {
+            if ( names != null && names[i] != null )
+                m_names[i] = names[i];
+            else if ( keys[i] instanceof ColumnExpression )
+                m_names[i] = ((ColumnExpression)keys[i]).getColumnName();
+            else
+                m_names[i] = keys[i].toString();
+        }
+        m_aggregates = aggregates.clone();
+    }
+
+    private static Expression[] columnExpressions(String[] columns) {
+        Expression[] keys = new Expression[columns.length];
+        for ( int i=0; i<columns.length; ++i )
+            keys[i] = new ColumnExpression(columns[i]);
+        return keys;
+    }
+
+    /**
+     * Set the number of threads aggregating the rows.
+     * @param threads the number of threads, 1 to aggregate in the calling
+     * thread; defaults to the number of available processors
+     */
+    public void setThreadCount(int threads) {
+        if ( threads < 1 )
+            throw new IllegalArgumentException(
+                "Invalid number of threads: "+threads);
+        m_threads = threads;
+    }
+
+    /**
+     * Get the number of threads aggregating the rows.
+     * @return the number of threads
+     */
+    public int getThreadCount() {
+        return m_threads;
+    }
+
+    /**
+     * Groups the rows of a table and computes the aggregates of each group.
+     * @param t the table to aggregate
+     * @return a new table with one row per group
+     * @throws IllegalArgumentException if an expression cannot be compiled
+     * against the table schema, or if a numeric aggregate is computed on
+     * a non-numeric expression
+     * @see obvious.Transform#transform(obvious.Table)
+     */
+    public Table transform(final Table t) {
+        Schema s = t.getSchema();
+        final CompiledExpression[] keys =
+            new CompiledExpression[m_keys.length];
+        for ( int i=0; i<keys.length; ++i )
+            keys[i] = ExpressionCompiler.compile(m_keys[i], s);
+        final CompiledExpression[] inputs =
+            new CompiledExpression[m_aggregates.length];
+        for ( int i=0; i<inputs.length; ++i ) {
+            Aggregate a = m_aggregates[i];
+            if ( a.getOperation() == Aggregate.COUNT )
+                continue;
+            inputs[i] = ExpressionCompiler.compile(a.getExpression(), s);
+            if ( a.isNumeric()
+                    && !AbstractExpression.isNumericType(inputs[i].getType()) )
+                throw new IllegalArgumentException(
+                    a+" requires a numeric expression.");
+        }
+
+        final int[] rows = getRows(t);
+        int chunks = (rows.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Partial result;
+        if ( m_threads == 1 || chunks <= 1 ) {
+            result = new Partial(keys, m_aggregates, inputs);
+            result.add(t, rows, 0, Math.min(CHUNK_SIZE, rows.length));
+            for ( int c=1; c<chunks; ++c ) {
+                Partial p = new Partial(keys, m_aggregates, inputs);
+                p.add(t, rows, c*CHUNK_SIZE,
+                        Math.min((c+1)*CHUNK_SIZE, rows.length));
+                result.merge(p);
+            }
+        } else {
+            ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(m_threads, chunks));
+            try {
+                List<Future<Partial>> futures = new ArrayList<Future<Partial>>();
+                for ( int c=0; c<chunks; ++c ) {
+                    final int start = c*CHUNK_SIZE;
+                    final int end = Math.min(start+CHUNK_SIZE, rows.length);
+                    futures.add(executor.submit(new Callable<Partial>() {
+                        public Partial call() {
+                            Partial p = new Partial(keys, m_aggregates, inputs);
+                            p.add(t, rows, start, end);
+                            return p;
+                        }
+                    }));
+                }
+                result = futures.get(0).get();
+                for ( int c=1; c<chunks; ++c ) {
+                    result.merge(futures.get(c).get());
+                    futures.set(c, null);
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch ( ExecutionException e ) {
+                Throwable cause = e.getCause();
+                if ( cause instanceof RuntimeException )
+                    throw (RuntimeException)cause;
+                if ( cause instanceof Error )
+                    throw (Error)cause;
+                throw new RuntimeException(cause);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return result.getTable(m_names, m_aggregates);
+    }
+
+    /**
+     * Returns the row ids of a table, in the order of its row iterator.
+     */
+    private static int[] getRows(Table t) {
+        int[] rows = new int[Math.max(16, t.getRowCount())];
+        int n = 0;
+        for ( IntIterator iter = t.rowIterator(); iter.hasNext(); ) {
+            if ( n == rows.length )
+                rows = grow(rows, 2*n);
+            rows[n++] = iter.nextInt();
+        }
+        if ( n == rows.length )
+            return rows;
+        int[] a = new int[n];
+        System.arraycopy(rows, 0, a, 0, n);
+        return a;
+    }
+
+    // ------------------------------------------------------------------------
+    // Array Helpers
+
+    static int[] grow(int[] a, int n) {
+        int[] b = new int[n];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    static long[] grow(long[] a, int n) {
+        long[] b = new long[n];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    static double[] grow(double[] a, int n) {
+        double[] b = new double[n];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    /**
+     * Returns a capacity of at least n elements for an array of the
+     * given length, doubling the length when it is too small.
+     */
+    static int capacity(int length, int n) {
+        return ( n <= length ? length : Math.max(n, 2*length) );
+    }
+
+    /**
+     * Mixes the bits of a hash code.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // ------------------------------------------------------------------------
+    // Partial Aggregation
+
+    /**
+     * Groups and aggregates of a range of rows.
+     */
+    private static class Partial {
+        private final KeyTable m_keys;
+        private final Accumulator[] m_acc;
+
+        Partial(CompiledExpression[] keys, Aggregate[] aggregates,
+                CompiledExpression[] inputs)
+        {
+            m_keys = new KeyTable(keys);
+            m_acc = new Accumulator[aggregates.length];
+            for ( int i=0; i<m_acc.length; ++i )
+                m_acc[i] = Accumulator.create(aggregates[i], inputs[i]);
+        }
+
+        /**
+         * Aggregates the rows stored from start to end in an array.
+         */
+        void add(Table t, int[] rows, int start, int end) {
+            int[] batch = new int[CompiledExpression.BATCH_SIZE];
+            int[] groups = new int[CompiledExpression.BATCH_SIZE];
+            for ( int s=start; s<end; s+=batch.length ) {
+                int n = Math.min(batch.length, end-s);
+                System.arraycopy(rows, s, batch, 0, n);
+                m_keys.find(t, batch, n, groups);
+                for ( int i=0; i<m_acc.length; ++i ) {
+                    m_acc[i].ensure(m_keys.size());
+                    m_acc[i].add(t, batch, n, groups);
+                }
+            }
+        }
+
+        /**
+         * Merges the groups and aggregates of another partial result, which
+         * must not be used afterwards.
+         */
+        void merge(Partial p) {
+            int[] map = m_keys.merge(p.m_keys);
+            for ( int i=0; i<m_acc.length; ++i ) {
+                m_acc[i].ensure(m_keys.size());
+                m_acc[i].merge(p.m_acc[i], map, p.m_keys.size());
+            }
+        }
+
+        Table getTable(String[] keyNames, Aggregate[] aggregates) {
+            int k = keyNames.length;
+            int groups = m_keys.size();
+            String[] names = new String[k+m_acc.length];
+            Class<?>[] types = new Class<?>[names.length];
+            Object[] columns = new Object[names.length];
+            for ( int i=0; i<k; ++i ) {
+                names[i] = keyNames[i];
+                types[i] = m_keys.getType(i);
+                columns[i] = m_keys.getColumn(i);
+            }
+            for ( int i=0; i<m_acc.length; ++i ) {
+                names[k+i] = aggregates[i].getName();
+                types[k+i] = m_acc[i].getType();
+                columns[k+i] = m_acc[i].getColumn(groups);
+            }
+            return new ColumnTable(names, types, columns, groups);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Group Keys
+
+    /**
+     * Dictionary numbering distinct objects in order of appearance.
+     */
+    private static class Dictionary {
+        private final HashMap<Object,Integer> m_ids =
+            new HashMap<Object,Integer>();
+        private final ArrayList<Object> m_objects = new ArrayList<Object>();
+
+        /**
+         * Returns the index of an object, adding it if it is new.
+         */
+        int id(Object value) {
+            Integer id = m_ids.get(value);
+            if ( id == null ) {
+                id = Integer.valueOf(m_objects.size());
+                m_ids.put(value, id);
+                m_objects.add(value);
+            }
+            return id.intValue();
+        }
+
+        /**
+         * Returns the object of an index.
+         */
+        Object get(int id) {
+            return m_objects.get(id);
+        }
+    }
+
+    /**
+     * Hash table numbering the distinct keys in order of appearance. Each
+     * key value is encoded as a long: integers and booleans directly,
+     * floating point numbers by their bits, and objects by their index in
+     * a dictionary.
+     */
+    private static class KeyTable {
+        private static final int INT     = 0;
+        private static final int LONG    = 1;
+        private static final int FLOAT   = 2;
+        private static final int DOUBLE  = 3;
+        private static final int BOOLEAN = 4;
+        private static final int OBJECT  = 5;
+
+        private final CompiledExpression[] m_exprs;
+        private final int m_width;
+        private final int[] m_kinds;
+        private final Dictionary[] m_dicts;
+
+        /** The keys of the groups, m_width codes per group. */
+        private long[] m_keys;
+        private int m_size;
+        /** Open addressing table of group ids, -1 for free slots. */
+        private int[] m_table;
+
+        private final long[] m_key;
+        private long[][] m_codes;
+        private int[] m_ints;
+        private long[] m_longs;
+        private double[] m_doubles;
+        private boolean[] m_booleans;
+
+        KeyTable(CompiledExpression[] exprs) {
+            m_exprs = exprs;
+            m_width = exprs.length;
+            m_kinds = new int[m_width];
+            m_dicts = new Dictionary[m_width];
+            for ( int k=0; k<m_width; ++k ) {
+                Class<?> type = exprs[k].getType();
+                if ( type == int.class || type == short.class
+                        || type == byte.class )
+                    m_kinds[k] = INT;
+                else if ( type == long.class )
+                    m_kinds[k] = LONG;
+                else if ( type == float.class )
+                    m_kinds[k] = FLOAT;
+                else if ( type == double.class )
+                    m_kinds[k] = DOUBLE;
+                else if ( type == boolean.class )
+                    m_kinds[k] = BOOLEAN;
+                else {
+                    m_kinds[k] = OBJECT;
+                    m_dicts[k] = new Dictionary();
+                }
+            }
+            m_keys = new long[16*Math.max(1, m_width)];
+            m_table = new int[32];
+            Arrays.fill(m_table, -1);
+            m_key = new long[m_width];
+        }
+
+        int size() {
+            return m_size;
+        }
+
+        /**
+         * Finds or adds the groups of a batch of rows.
+         */
+        void find(Table t, int[] rows, int n, int[] groups) {
+            if ( m_codes == null ) {
+                int size = CompiledExpression.BATCH_SIZE;
+                m_codes = new long[m_width][size];
+                m_ints = new int[size];
+                m_longs = new long[size];
+                m_doubles = new double[size];
+                m_booleans = new boolean[size];
+            }
+            for ( int k=0; k<m_width; ++k )
+                encode(k, t, rows, n, m_codes[k]);
+            if ( m_width == 1 ) {
+                long[] code = m_codes[0];
+                for ( int i=0; i<n; ++i ) groups[i] = add(code[i]);
+                return;
+            }
+            for ( int i=0; i<n; ++i ) {
+                for ( int k=0; k<m_width; ++k )
+                    m_key[k] = m_codes[k][i];
+                groups[i] = add(m_key);
+            }
+        }
+
+        private void encode(int k, Table t, int[] rows, int n, long[] code) {
+            CompiledExpression e = m_exprs[k];
+            switch ( m_kinds[k] ) {
+            case INT:
+                e.getInt(t, rows, n, m_ints);
+                for ( int i=0; i<n; ++i ) code[i] = m_ints[i];
+                break;
+            case LONG:
+                e.getLong(t, rows, n, code);
+                break;
+            case FLOAT:
+            case DOUBLE:
+                e.getDouble(t, rows, n, m_doubles);
+                for ( int i=0; i<n; ++i )
+                    code[i] = Double.doubleToLongBits(m_doubles[i]);
+                break;
+            case BOOLEAN:
+                e.getBoolean(t, rows, n, m_booleans);
+                for ( int i=0; i<n; ++i ) code[i] = ( m_booleans[i] ? 1 : 0 );
+                break;
+            default:
+                for ( int i=0; i<n; ++i )
+                    code[i] = m_dicts[k].id(e.get(t, rows[i]));
+            }
+        }
+
+        private int hash(long[] keys, int offset) {
+            long h = 0;
+            for ( int k=0; k<m_width; ++k )
+                h = (h + keys[offset+k]) * 0x9e3779b97f4a7c15L;
+            h = mix(h);
+            return (int)(h ^ (h >>> 32));
+        }
+
+        private static int hash(long key) {
+            long h = mix(key * 0x9e3779b97f4a7c15L);
+            return (int)(h ^ (h >>> 32));
+        }
+
+        /**
+         * Returns the group of a key, adding a new group if needed.
+         */
+        int add(long[] key) {
+            int mask = m_table.length - 1;
+            int slot = hash(key, 0) & mask;
+            for ( ;; slot = (slot+1) & mask ) {
+                int g = m_table[slot];
+                if ( g < 0 )
+                    break;
+                int offset = g*m_width;
+                boolean equal = true;
+                for ( int k=0; k<m_width && equal; ++k )
+                    equal = ( m_keys[offset+k] == key[k] );
+                if ( equal )
+                    return g;
+            }
+            int g = m_size++;
+            if ( m_keys.length < m_size*m_width )
+                m_keys = grow(m_keys, 2*m_keys.length);
+            System.arraycopy(key, 0, m_keys, g*m_width, m_width);
+            m_table[slot] = g;
+            if ( 2*m_size > m_table.length )
+                rehash();
+            return g;
+        }
+
+        /**
+         * Returns the group of a single key, adding a new group if needed.
+         */
+        private int add(long key) {
+            int mask = m_table.length - 1;
+            int slot = hash(key) & mask;
+            for ( ;; slot = (slot+1) & mask ) {
+                int g = m_table[slot];
+                if ( g < 0 )
+                    break;
+                if ( m_keys[g] == key )
+                    return g;
+            }
+            int g = m_size++;
+            if ( m_keys.length < m_size )
+                m_keys = grow(m_keys, 2*m_keys.length);
+            m_keys[g] = key;
+            m_table[slot] = g;
+            if ( 2*m_size > m_table.length )
+                rehash();
+            return g;
+        }
+
+        private void rehash() {
+            m_table = new int[2*m_table.length];
+            Arrays.fill(m_table, -1);
+            int mask = m_table.length - 1;
+            for ( int g=0; g<m_size; ++g ) {
+                int slot = hash(m_keys, g*m_width) & mask;
+                while ( m_table[slot] >= 0 )
+                    slot = (slot+1) & mask;
+                m_table[slot] = g;
+            }
+        }
+
+        /**
+         * Adds the groups of another key table, and returns the group of
+         * each of its groups in this table.
+         */
+        int[] merge(KeyTable o) {
+            int[] map = new int[o.m_size];
+            for ( int g=0; g<o.m_size; ++g ) {
+                for ( int k=0; k<m_width; ++k ) {
+                    long code = o.m_keys[g*m_width+k];
+                    if ( m_kinds[k] == OBJECT )
+                        code = m_dicts[k].id(o.m_dicts[k].get((int)code));
+                    m_key[k] = code;
+                }
+                map[g] = add(m_key);
+            }
+            return map;
+        }
+
+        Class<?> getType(int k) {
+            switch ( m_kinds[k] ) {
+            case INT:
+                return int.class;
+            case LONG:
+                return long.class;
+            case FLOAT:
+                return float.class;
+            case DOUBLE:
+                return double.class;
+            case BOOLEAN:
+                return boolean.class;
+            default:
+                return m_exprs[k].getType();
+            }
+        }
+
+        /**
+         * Returns the values of a key for all the groups.
+         */
+        Object getColumn(int k) {
+            switch ( m_kinds[k] ) {
+            case INT: {
+                int[] a = new int[m_size];
+                for ( int g=0; g<m_size; ++g )
+                    a[g] = (int)m_keys[g*m_width+k];
+                return a;
+            }
+            case LONG: {
+                long[] a = new long[m_size];
+                for ( int g=0; g<m_size; ++g )
+                    a[g] = m_keys[g*m_width+k];
+                return a;
+            }
+            case FLOAT: {
+                float[] a = new float[m_size];
+                for ( int g=0; g<m_size; ++g )
+                    a[g] = (float)Double.longBitsToDouble(m_keys[g*m_width+k]);
+                return a;
+            }
+            case DOUBLE: {
+                double[] a = new double[m_size];
+                for ( int g=0; g<m_size; ++g )
+                    a[g] = Double.longBitsToDouble(m_keys[g*m_width+k]);
+                return a;
+            }
+            case BOOLEAN: {
+                boolean[] a = new boolean[m_size];
+                for ( int g=0; g<m_size; ++g )
+                    a[g] = ( m_keys[g*m_width+k] != 0 );
+                return a;
+            }
+            default: {
+                Object[] a = new Object[m_size];
+                for ( int g=0; g<m_size; ++g )
+                    a[g] = m_dicts[k].get((int)m_keys[g*m_width+k]);
+                return a;
+            }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Accumulators
+
+    /**
+     * Aggregate values of the groups of a partial result.
+     */
+    private abstract static class Accumulator {
+        protected final CompiledExpression m_expr;
+
+        Accumulator(CompiledExpression expr) {
+            m_expr = expr;
+        }
+
+        static Accumulator create(Aggregate a, CompiledExpression expr) {
+            boolean integer = ( expr != null
+                    && Aggregate.isIntegerType(expr.getType()) );
+            switch ( a.getOperation() ) {
+            case Aggregate.COUNT:
+                return new CountAccumulator();
+            case Aggregate.SUM:
+                if ( integer )
+                    return new LongSumAccumulator(expr);
+                else
+                    return new DoubleSumAccumulator(expr);
+            case Aggregate.MIN:
+            case Aggregate.MAX:
+                boolean max = ( a.getOperation() == Aggregate.MAX );
+                if ( integer )
+                    return new LongExtremumAccumulator(expr, max);
+                else
+                    return new DoubleExtremumAccumulator(expr, max);
+            case Aggregate.AVG:
+                return new AverageAccumulator(expr);
+            case Aggregate.VARIANCE:
+                return new VarianceAccumulator(expr);
+            case Aggregate.DISTINCT_COUNT:
+                return new DistinctAccumulator(expr);
+            case Aggregate.QUANTILE:
+                return new QuantileAccumulator(expr, a.getQuantile());
+            default:
+                throw new IllegalStateException("Unknown operation.");
+            }
+        }
+
+        /**
+         * Makes room for the given number of groups.
+         */
+        abstract void ensure(int groups);
+
+        /**
+         * Aggregates a batch of rows, given the group of each row.
+         */
+        abstract void add(Table t, int[] rows, int n, int[] groups);
+
+        /**
+         * Merges the values of an accumulator of the same kind, given the
+         * group in this accumulator of each of its groups.
+         */
+        abstract void merge(Accumulator o, int[] map, int groups);
+
+        abstract Class<?> getType();
+
+        /**
+         * Returns the aggregate values of the groups.
+         */
+        abstract Object getColumn(int groups);
+    }
+
+    private static class CountAccumulator extends Accumulator {
+        private int[] m_count = new int[16];
+        CountAccumulator() {
+            super(null);
+        }
+        void ensure(int groups) {
+            if ( groups > m_count.length )
+                m_count = grow(m_count, capacity(m_count.length, groups));
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            for ( int i=0; i<n; ++i ) m_count[groups[i]]++;
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            int[] count = ((CountAccumulator)o).m_count;
+            for ( int g=0; g<groups; ++g ) m_count[map[g]] += count[g];
+        }
+        Class<?> getType() {
+            return int.class;
+        }
+        Object getColumn(int groups) {
+            return m_count;
+        }
+    }
+
+    private static class LongSumAccumulator extends Accumulator {
+        private long[] m_sum = new long[16];
+        private final long[] m_values = new long[CompiledExpression.BATCH_SIZE];
+        LongSumAccumulator(CompiledExpression expr) {
+            super(expr);
+        }
+        void ensure(int groups) {
+            if ( groups > m_sum.length )
+                m_sum = grow(m_sum, capacity(m_sum.length, groups));
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            m_expr.getLong(t, rows, n, m_values);
+            for ( int i=0; i<n; ++i ) m_sum[groups[i]] += m_values[i];
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            long[] sum = ((LongSumAccumulator)o).m_sum;
+            for ( int g=0; g<groups; ++g ) m_sum[map[g]] += sum[g];
+        }
+        Class<?> getType() {
+            return long.class;
+        }
+        Object getColumn(int groups) {
+            return m_sum;
+        }
+    }
+
+    private static class DoubleSumAccumulator extends Accumulator {
+        private double[] m_sum = new double[16];
+        private final double[] m_values =
+            new double[CompiledExpression.BATCH_SIZE];
+        DoubleSumAccumulator(CompiledExpression expr) {
+            super(expr);
+        }
+        void ensure(int groups) {
+            if ( groups > m_sum.length )
+                m_sum = grow(m_sum, capacity(m_sum.length, groups));
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            m_expr.getDouble(t, rows, n, m_values);
+            for ( int i=0; i<n; ++i ) m_sum[groups[i]] += m_values[i];
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            double[] sum = ((DoubleSumAccumulator)o).m_sum;
+            for ( int g=0; g<groups; ++g ) m_sum[map[g]] += sum[g];
+        }
+        Class<?> getType() {
+            return double.class;
+        }
+        Object getColumn(int groups) {
+            return m_sum;
+        }
+    }
+
+    /**
+     * Minimum or maximum of an integer expression. Every group has at least
+     * one row, so the initial value is always replaced.
+     */
+    private static class LongExtremumAccumulator extends Accumulator {
+        private final boolean m_max;
+        private long[] m_value = new long[0];
+        private final long[] m_values = new long[CompiledExpression.BATCH_SIZE];
+        LongExtremumAccumulator(CompiledExpression expr, boolean max) {
+            super(expr);
+            m_max = max;
+        }
+        void ensure(int groups) {
+            if ( groups > m_value.length ) {
+                int length = m_value.length;
+                m_value = grow(m_value, capacity(Math.max(16, length), groups));
+                Arrays.fill(m_value, length, m_value.length,
+                        m_max ? Long.MIN_VALUE : Long.MAX_VALUE);
+            }
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            m_expr.getLong(t, rows, n, m_values);
+            if ( m_max ) {
+                for ( int i=0; i<n; ++i ) {
+                    if ( m_values[i] > m_value[groups[i]] )
+                        m_value[groups[i]] = m_values[i];
+                }
+            } else {
+                for ( int i=0; i<n; ++i ) {
+                    if ( m_values[i] < m_value[groups[i]] )
+                        m_value[groups[i]] = m_values[i];
+                }
+            }
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            long[] value = ((LongExtremumAccumulator)o).m_value;
+            for ( int g=0; g<groups; ++g ) {
+                long v = value[g];
+                if ( m_max ? v > m_value[map[g]] : v < m_value[map[g]] )
+                    m_value[map[g]] = v;
+            }
+        }
+        Class<?> getType() {
+            return ( m_expr.getType() == long.class ? long.class : int.class );
+        }
+        Object getColumn(int groups) {
+            if ( m_expr.getType() == long.class )
+                return m_value;
+            int[] a = new int[groups];
+            for ( int g=0; g<groups; ++g ) a[g] = (int)m_value[g];
+            return a;
+        }
+    }
+
+    /**
+     * Minimum or maximum of a floating point expression, NaN if one of the
+     * values is NaN, as computed by Math.min and Math.max.
+     */
+    private static class DoubleExtremumAccumulator extends Accumulator {
+        private final boolean m_max;
+        private double[] m_value = new double[0];
+        private final double[] m_values =
+            new double[CompiledExpression.BATCH_SIZE];
+        DoubleExtremumAccumulator(CompiledExpression expr, boolean max) {
+            super(expr);
+            m_max = max;
+        }
+        void ensure(int groups) {
+            if ( groups > m_value.length ) {
+                int length = m_value.length;
+                m_value = grow(m_value, capacity(Math.max(16, length), groups));
+                Arrays.fill(m_value, length, m_value.length, m_max ?
+                        Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+            }
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            m_expr.getDouble(t, rows, n, m_values);
+            if ( m_max ) {
+                for ( int i=0; i<n; ++i )
+                    m_value[groups[i]] = Math.max(m_value[groups[i]], m_values[i]);
+            } else {
+                for ( int i=0; i<n; ++i )
+                    m_value[groups[i]] = Math.min(m_value[groups[i]], m_values[i]);
+            }
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            double[] value = ((DoubleExtremumAccumulator)o).m_value;
+            for ( int g=0; g<groups; ++g ) {
+                int h = map[g];
+                m_value[h] = ( m_max ? Math.max(m_value[h], value[g])
+                                     : Math.min(m_value[h], value[g]) );
+            }
+        }
+        Class<?> getType() {
+            return double.class;
+        }
+        Object getColumn(int groups) {
+            return m_value;
+        }
+    }
+
+    private static class AverageAccumulator extends Accumulator {
+        private double[] m_sum = new double[16];
+        private int[] m_count = new int[16];
+        private final double[] m_values =
+            new double[CompiledExpression.BATCH_SIZE];
+        AverageAccumulator(CompiledExpression expr) {
+            super(expr);
+        }
+        void ensure(int groups) {
+            if ( groups > m_sum.length ) {
+                int length = capacity(m_sum.length, groups);
+                m_sum = grow(m_sum, length);
+                m_count = grow(m_count, length);
+            }
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            m_expr.getDouble(t, rows, n, m_values);
+            for ( int i=0; i<n; ++i ) {
+                m_sum[groups[i]] += m_values[i];
+                m_count[groups[i]]++;
+            }
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            AverageAccumulator a = (AverageAccumulator)o;
+            for ( int g=0; g<groups; ++g ) {
+                m_sum[map[g]] += a.m_sum[g];
+                m_count[map[g]] += a.m_count[g];
+            }
+        }
+        Class<?> getType() {
+            return double.class;
+        }
+        Object getColumn(int groups) {
+            double[] a = new double[groups];
+            for ( int g=0; g<groups; ++g ) a[g] = m_sum[g] / m_count[g];
+            return a;
+        }
+    }
+
+    /**
+     * Population variance, computed with Welford's update within a partial
+     * result and the pairwise combination of Chan et al. when merging.
+     */
+    private static class VarianceAccumulator extends Accumulator {
+        private int[] m_count = new int[16];
+        private double[] m_mean = new double[16];
+        private double[] m_m2 = new double[16];
+        private final double[] m_values =
+            new double[CompiledExpression.BATCH_SIZE];
+        VarianceAccumulator(CompiledExpression expr) {
+            super(expr);
+        }
+        void ensure(int groups) {
+            if ( groups > m_count.length ) {
+                int length = capacity(m_count.length, groups);
+                m_count = grow(m_count, length);
+                m_mean = grow(m_mean, length);
+                m_m2 = grow(m_m2, length);
+            }
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            m_expr.getDouble(t, rows, n, m_values);
+            for ( int i=0; i<n; ++i ) {
+                int g = groups[i];
+                double x = m_values[i];
+                double d = x - m_mean[g];
+                m_mean[g] += d / ++m_count[g];
+                m_m2[g] += d * (x - m_mean[g]);
+            }
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            VarianceAccumulator a = (VarianceAccumulator)o;
+            for ( int g=0; g<groups; ++g ) {
+                int h = map[g];
+                double na = m_count[h], nb = a.m_count[g], n = na + nb;
+                double d = a.m_mean[g] - m_mean[h];
+                m_mean[h] += d * nb / n;
+                m_m2[h] += a.m_m2[g] + d * d * na * nb / n;
+                m_count[h] += a.m_count[g];
+            }
+        }
+        Class<?> getType() {
+            return double.class;
+        }
+        Object getColumn(int groups) {
+            double[] a = new double[groups];
+            for ( int g=0; g<groups; ++g ) a[g] = m_m2[g] / m_count[g];
+            return a;
+        }
+    }
+
+    /**
+     * Number of distinct values, counted with a single hash set of
+     * (group, value code) pairs. Values are encoded like the group keys;
+     * null objects are not counted.
+     */
+    private static class DistinctAccumulator extends Accumulator {
+        private final int m_kind;
+        private int[] m_count = new int[16];
+        private int[] m_group = new int[64];
+        private long[] m_code = new long[64];
+        private int m_size;
+        private final Dictionary m_dict;
+        private long[] m_longs;
+        private double[] m_doubles;
+        private boolean[] m_booleans;
+
+        DistinctAccumulator(CompiledExpression expr) {
+            super(expr);
+            Class<?> type = expr.getType();
+            Arrays.fill(m_group, -1);
+            if ( Aggregate.isIntegerType(type) ) {
+                m_kind = KeyTable.LONG;
+                m_longs = new long[CompiledExpression.BATCH_SIZE];
+            } else if ( type == float.class || type == double.class ) {
+                m_kind = KeyTable.DOUBLE;
+                m_doubles = new double[CompiledExpression.BATCH_SIZE];
+            } else if ( type == boolean.class ) {
+                m_kind = KeyTable.BOOLEAN;
+                m_booleans = new boolean[CompiledExpression.BATCH_SIZE];
+            } else {
+                m_kind = KeyTable.OBJECT;
+            }
+            m_dict = ( m_kind == KeyTable.OBJECT ? new Dictionary() : null );
+        }
+        void ensure(int groups) {
+            if ( groups > m_count.length )
+                m_count = grow(m_count, capacity(m_count.length, groups));
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            switch ( m_kind ) {
+            case KeyTable.LONG:
+                m_expr.getLong(t, rows, n, m_longs);
+                for ( int i=0; i<n; ++i ) insert(groups[i], m_longs[i]);
+                break;
+            case KeyTable.DOUBLE:
+                m_expr.getDouble(t, rows, n, m_doubles);
+                for ( int i=0; i<n; ++i )
+                    insert(groups[i], Double.doubleToLongBits(m_doubles[i]));
+                break;
+            case KeyTable.BOOLEAN:
+                m_expr.getBoolean(t, rows, n, m_booleans);
+                for ( int i=0; i<n; ++i )
+                    insert(groups[i], m_booleans[i] ? 1 : 0);
+                break;
+            default:
+                for ( int i=0; i<n; ++i ) {
+                    Object value = m_expr.get(t, rows[i]);
+                    if ( value != null )
+                        insert(groups[i], m_dict.id(value));
+                }
+            }
+        }
+        private static int hash(int group, long code) {
+            long h = mix(code * 0x9e3779b97f4a7c15L + group);
+            return (int)(h ^ (h >>> 32));
+        }
+        /**
+         * Adds a pair to the set, counting it if it is new.
+         */
+        private void insert(int group, long code) {
+            int mask = m_group.length - 1;
+            int slot = hash(group, code) & mask;
+            for ( ; m_group[slot] >= 0; slot = (slot+1) & mask ) {
+                if ( m_group[slot] == group && m_code[slot] == code )
+                    return;
+            }
+            m_group[slot] = group;
+            m_code[slot] = code;
+            m_count[group]++;
+            if ( 2*++m_size > m_group.length )
+                rehash();
+        }
+        private void rehash() {
+            int[] group = m_group;
+            long[] code = m_code;
+            m_group = new int[2*group.length];
+            m_code = new long[2*group.length];
+            Arrays.fill(m_group, -1);
+            int mask = m_group.length - 1;
+            for ( int i=0; i<group.length; ++i ) {
+                if ( group[i] < 0 )
+                    continue;
+                int slot = hash(group[i], code[i]) & mask;
+                while ( m_group[slot] >= 0 )
+                    slot = (slot+1) & mask;
+                m_group[slot] = group[i];
+                m_code[slot] = code[i];
+            }
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            DistinctAccumulator a = (DistinctAccumulator)o;
+            for ( int i=0; i<a.m_group.length; ++i ) {
+                if ( a.m_group[i] < 0 )
+                    continue;
+                long code = a.m_code[i];
+                if ( m_kind == KeyTable.OBJECT )
+                    code = m_dict.id(a.m_dict.get((int)code));
+                insert(map[a.m_group[i]], code);
+            }
+        }
+        Class<?> getType() {
+            return int.class;
+        }
+        Object getColumn(int groups) {
+            return m_count;
+        }
+    }
+
+    private static class QuantileAccumulator extends Accumulator {
+        private final double m_quantile;
+        private QuantileSketch[] m_sketch = new QuantileSketch[16];
+        private final double[] m_values =
+            new double[CompiledExpression.BATCH_SIZE];
+        QuantileAccumulator(CompiledExpression expr, double quantile) {
+            super(expr);
+            m_quantile = quantile;
+        }
+        void ensure(int groups) {
+            if ( groups > m_sketch.length ) {
+                QuantileSketch[] a = new QuantileSketch[
+                    capacity(m_sketch.length, groups)];
+                System.arraycopy(m_sketch, 0, a, 0, m_sketch.length);
+                m_sketch = a;
+            }
+        }
+        void add(Table t, int[] rows, int n, int[] groups) {
+            m_expr.getDouble(t, rows, n, m_values);
+            for ( int i=0; i<n; ++i ) {
+                QuantileSketch s = m_sketch[groups[i]];
+                if ( s == null )
+                    s = m_sketch[groups[i]] = new QuantileSketch();
+                s.add(m_values[i]);
+            }
+        }
+        void merge(Accumulator o, int[] map, int groups) {
+            QuantileSketch[] sketch = ((QuantileAccumulator)o).m_sketch;
+            for ( int g=0; g<groups; ++g ) {
+                if ( m_sketch[map[g]] == null )
+                    m_sketch[map[g]] = sketch[g];
+                else
+                    m_sketch[map[g]].merge(sketch[g]);
+            }
+        }
+        Class<?> getType() {
+            return double.class;
+        }
+        Object getColumn(int groups) {
+            double[] a = new double[groups];
+            for ( int g=0; g<groups; ++g )
+                a[g] = m_sketch[g].quantile(m_quantile);
+            return a;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Quantile Sketch
+
+    /**
+     * Mergeable quantile summary made of compactors: level l holds up to
+     * {@link #K} sorted samples standing for 2<sup>l</sup> values each.
+     * When a level is full, it is sorted and every other sample, starting
+     * alternately with the first and the second, moves up one level.
+     * The summary is exact until a level is compacted; afterwards the rank
+     * error stays within a small fraction of the number of values, and the
+     * memory grows with the logarithm of that number.
+     */
+    static class QuantileSketch {
+        /** Capacity of each level. */
+        static final int K = 256;
+
+        private double[][] m_levels = new double[1][];
+        private int[] m_sizes = new int[1];
+        private long m_odd;
+        private double m_min = Double.NaN;
+        private double m_max = Double.NaN;
+        private long m_count;
+
+        void add(double x) {
+            if ( m_count++ == 0 ) {
+                m_min = m_max = x;
+            } else {
+                if ( Double.compare(x, m_min) < 0 ) m_min = x;
+                if ( Double.compare(x, m_max) > 0 ) m_max = x;
+            }
+            append(0, x);
+        }
+
+        private void append(int level, double x) {
+            if ( level == m_levels.length ) {
+                double[][] levels = new double[level+1][];
+                System.arraycopy(m_levels, 0, levels, 0, level);
+                m_levels = levels;
+                m_sizes = grow(m_sizes, level+1);
+            }
+            double[] buf = m_levels[level];
+            if ( buf == null ) {
+                buf = m_levels[level] = new double[level == 0 ? 8 : K];
+            } else if ( m_sizes[level] == buf.length ) {
+                if ( buf.length < K )
+                    buf = m_levels[level] = grow(buf, 2*buf.length);
+                else
+                    compact(level);
+            }
+            buf[m_sizes[level]++] = x;
+        }
+
+        /**
+         * Moves every other sample of a full level up one level.
+         */
+        private void compact(int level) {
+            double[] buf = m_levels[level];
+            int size = m_sizes[level];
+            Arrays.sort(buf, 0, size);
+            int offset = (int)((m_odd >>> level) & 1);
+            m_odd ^= 1L << level;
+            m_sizes[level] = 0;
+            for ( int i=offset; i<size; i+=2 )
+                append(level+1, buf[i]);
+        }
+
+        /**
+         * Adds the values summarized by another sketch.
+         */
+        void merge(QuantileSketch o) {
+            if ( o.m_count == 0 )
+                return;
+            if ( m_count == 0 ) {
+                m_min = o.m_min;
+                m_max = o.m_max;
+            } else {
+                if ( Double.compare(o.m_min, m_min) < 0 ) m_min = o.m_min;
+                if ( Double.compare(o.m_max, m_max) > 0 ) m_max = o.m_max;
+            }
+            m_count += o.m_count;
+            for ( int l=0; l<o.m_levels.length; ++l ) {
+                for ( int i=0; i<o.m_sizes[l]; ++i )
+                    append(l, o.m_levels[l][i]);
+            }
+        }
+
+        /**
+         * Returns the smallest sample whose estimated rank is at least
+         * q times the number of values.
+         */
+        double quantile(double q) {
+            if ( m_count == 0 )
+                return Double.NaN;
+            if ( q <= 0 )
+                return m_min;
+            if ( q >= 1 )
+                return m_max;
+            int levels = m_levels.length;
+            int[] next = new int[levels];
+            long total = 0;
+            for ( int l=0; l<levels; ++l ) {
+                if ( m_sizes[l] > 0 )
+                    Arrays.sort(m_levels[l], 0, m_sizes[l]);
+                total += (long)m_sizes[l] << l;
+            }
+            double target = q * total;
+            long rank = 0;
+            for ( ;; ) {
+                int best = -1;
+                for ( int l=0; l<levels; ++l ) {
+                    if ( next[l] < m_sizes[l] && ( best < 0 ||
+                            Double.compare(m_levels[l][next[l]],
+                                    m_levels[best][next[best]]) < 0 ) )
+                        best = l;
+                }
+                if ( best < 0 )
+                    return m_max;
+                double x = m_levels[best][next[best]++];
+                rank += 1L << best;
+                if ( rank >= target )
+                    return x;
+            }
+        }
+    }
+
+} // end of class GroupBy
@@ -150,8 +150,8 @@ public class RangePredicate extends BinaryExpression implements Predicate {
                 int lo = m_left.getInt(t);
                 int hi = m_right.getInt(t);
                 int x  = m_middle.getInt(t);
-                c1 = x-lo;
-                c2 = x-hi;
+                c1 = ( x < lo ? -1 : ( x > lo ? 1 : 0 ) );
+                c2 = ( x < hi ? -1 : ( x > hi ? 1 : 0 ) );
             } else if ( type == long.class ) {
                 long lo = m_left.getLong(t);
                 long hi = m_right.getLong(t);
@@ -177,12 +177,25 @@ public class RangePredicate extends BinaryExpression implements Predicate {
             Object lo = m_left.get(t);
             Object hi = m_right.get(t);
             Object x  = m_middle.get(t);
-            c1 = m_cmp.compare(x, lo);
-            c2 = m_cmp.compare(x, hi);
+            c1 = ComparisonPredicate.compare(m_cmp, x, lo);
+            c2 = ComparisonPredicate.compare(m_cmp, x, hi);
         }
        
         // check the comparison values to see if it is in-range
-        switch ( m_op ) {
+        return test(m_op, c1, c2);
+    }
+    
+    /**
+     * Indicates if the results of comparing a value with the range bounds
+     * place the value within the range.
+     * @param op operation code indicating the inclusiveness /
+     * exclusiveness of the bounds
+     * @param c1 the result of comparing the value with the lower bound
+     * @param c2 the result of comparing the value with the upper bound
+     * @return true if the value is in the range
+     */
+    static boolean test(int op, int c1, int c2) {
+        switch ( op ) {
         case IN_IN:
             return ( c1 >= 0 && c2 <= 0 );
         case IN_EX:
@@ -0,0 +1,141 @@
+package obvious.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+
+import obvious.Table;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the batch methods of compiled expressions evaluate like the
+ * per-row methods, on tables with and without bulk column access.
+ *
+ * @author obvious
+ */
+public class CompiledExpressionTest {
+
+    private static final int ROWS = 3000;
+
+    private ColumnTable m_table;
+
+    @Before
+    public void setUp() {
+        m_table = ExpressionCompilerTest.createTable(ROWS, 2);
+    }
+
+    /**
+     * Get a view of a table that does not implement BatchTable, so that
+     * batches read the columns row by row.
+     * @param t the table
+     * @return the view
+     */
+    public static Table rowView(final Table t) {
+        return (Table)Proxy.newProxyInstance(Table.class.getClassLoader(),
+            new Class<?>[] { Table.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method m, Object[] args)
+                    throws Throwable
+                {
+                    try {
+                        return m.invoke(t, args);
+                    } catch ( InvocationTargetException e ) {
+                        throw e.getCause();
+                    }
+                }
+            });
+    }
+
+    @Test
+    public void testBatchValues() {
+        checkBatches(m_table);
+    }
+
+    @Test
+    public void testRowValues() {
+        checkBatches(rowView(m_table));
+    }
+
+    @Test
+    public void testSelect() {
+        Expression[] exprs = ExpressionCompilerTest.createExpressions();
+        for ( int i=0; i<exprs.length; ++i ) {
+            CompiledExpression c =
+                ExpressionCompiler.compile(exprs[i], m_table.getSchema());
+            if ( c.getType() != boolean.class )
+                continue;
+            int[] rows = new int[ROWS];
+            int n = 0;
+            for ( int row=0; row<ROWS; ++row ) {
+                if ( c.apply(m_table, row) )
+                    rows[n++] = row;
+            }
+            int[] expected = new int[n];
+            System.arraycopy(rows, 0, expected, 0, n);
+            assertArrayEquals(exprs[i].toString(), expected,
+                c.select(m_table));
+        }
+    }
+
+    /**
+     * Evaluates the test expressions on batches of random sizes over
+     * increasing rows with gaps, and compares the results with the per-row
+     * methods.
+     */
+    private void checkBatches(Table t) {
+        Expression[] exprs = ExpressionCompilerTest.createExpressions();
+        Random r = new Random(3);
+        for ( int i=0; i<exprs.length; ++i ) {
+            CompiledExpression c =
+                ExpressionCompiler.compile(exprs[i], m_table.getSchema());
+            Class<?> type = c.getType();
+            for ( int start=0; start<ROWS; ) {
+                int[] rows = new int[1 + r.nextInt(700)];
+                int n = 0;
+                while ( n < rows.length && start < ROWS ) {
+                    rows[n++] = start;
+                    start += 1 + r.nextInt(3);
+                }
+                String msg = exprs[i] + " at row " + rows[0];
+                if ( type == boolean.class ) {
+                    boolean[] values = new boolean[n];
+                    c.getBoolean(t, rows, n, values);
+                    int[] selected = new int[n];
+                    int count = c.select(t, rows, n, selected);
+                    int k = 0;
+                    for ( int j=0; j<n; ++j ) {
+                        assertEquals(msg, c.getBoolean(t, rows[j]),
+                            values[j]);
+                        if ( values[j] )
+                            assertEquals(msg, rows[j], selected[k++]);
+                    }
+                    assertEquals(msg, k, count);
+                    continue;
+                }
+                double[] values = new double[n];
+                c.getDouble(t, rows, n, values);
+                for ( int j=0; j<n; ++j )
+                    assertEquals(msg, c.getDouble(t, rows[j]), values[j], 0);
+                if ( type == int.class || type == double.class ) {
+                    int[] ints = new int[n];
+                    c.getInt(t, rows, n, ints);
+                    for ( int j=0; j<n; ++j )
+                        assertEquals(msg, c.getInt(t, rows[j]), ints[j]);
+                }
+                if ( type == int.class || type == long.class ) {
+                    long[] longs = new long[n];
+                    c.getLong(t, rows, n, longs);
+                    for ( int j=0; j<n; ++j )
+                        assertEquals(msg, c.getLong(t, rows[j]), longs[j]);
+                }
+            }
+        }
+    }
+
+} // end of class CompiledExpressionTest
@@ -0,0 +1,163 @@
+package obvious.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import obvious.IntIterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that materialized derived columns are kept up to date as their
+ * table changes, by comparing them with virtual ones.
+ *
+ * @author obvious
+ */
+public class DerivedColumnTest {
+
+    private static final int ROWS = 200;
+
+    private ListTable m_table;
+    private Random m_random;
+
+    @Before
+    public void setUp() {
+        m_random = new Random(5);
+        m_table = new ListTable();
+        m_table.addColumn("a", int.class);
+        m_table.addColumn("b", int.class);
+        m_table.addColumn("x", double.class);
+        m_table.addColumn("name", String.class);
+        for ( int i=0; i<ROWS; ++i )
+            addRow();
+    }
+
+    private void addRow() {
+        m_table.addRow(Integer.valueOf(m_random.nextInt(100) - 50),
+            Integer.valueOf(m_random.nextInt(7) + 1),
+            Double.valueOf(m_random.nextDouble() * 10 - 5),
+            "s" + m_random.nextInt(20));
+    }
+
+    private static Expression sum() {
+        return new ArithmeticExpression(ArithmeticExpression.ADD,
+            new ColumnExpression("b"), new ColumnExpression("x"));
+    }
+
+    private static Expression test() {
+        return new ComparisonPredicate(ComparisonPredicate.GT,
+            new ColumnExpression("b"), new NumericLiteral(3));
+    }
+
+    /**
+     * Compares the materialized column with a virtual column of the same
+     * expression on every valid row.
+     */
+    private void check(DerivedColumn c) {
+        DerivedColumn virtual =
+            new DerivedColumn(m_table, c.getExpression(), false);
+        Class<?> type = virtual.getType();
+        assertEquals(type, c.getType());
+        for ( IntIterator iter = m_table.rowIterator(); iter.hasNext(); ) {
+            int row = iter.nextInt();
+            String msg = c.getExpression() + " at row " + row;
+            assertEquals(msg, virtual.get(row), c.get(row));
+            if ( type == boolean.class ) {
+                assertEquals(msg, virtual.getBoolean(row), c.getBoolean(row));
+            } else if ( type == int.class ) {
+                assertEquals(msg, virtual.getInt(row), c.getInt(row));
+                assertEquals(msg, virtual.getLong(row), c.getLong(row));
+            } else if ( type == double.class ) {
+                assertEquals(msg, virtual.getDouble(row), c.getDouble(row), 0);
+            }
+        }
+        virtual.dispose();
+    }
+
+    @Test
+    public void testInsert() {
+        DerivedColumn c = new DerivedColumn(m_table, sum(), true);
+        for ( int i=0; i<50; ++i )
+            addRow();
+        check(c);
+    }
+
+    @Test
+    public void testUpdate() {
+        DerivedColumn c = new DerivedColumn(m_table, sum(), true);
+        DerivedColumn p = new DerivedColumn(m_table, test(), true);
+        for ( int i=0; i<100; ++i ) {
+            int row = m_random.nextInt(ROWS);
+            m_table.set(row, "b", Integer.valueOf(m_random.nextInt(7) + 1));
+            m_table.set(row, "a", Integer.valueOf(m_random.nextInt(100)));
+        }
+        check(c);
+        check(p);
+    }
+
+    @Test
+    public void testDelete() {
+        DerivedColumn c = new DerivedColumn(m_table,
+            new ColumnExpression("name"), true);
+        for ( int row=0; row<ROWS; row+=3 )
+            m_table.removeRow(row);
+        addRow();
+        check(c);
+    }
+
+    @Test
+    public void testRemoveColumn() {
+        DerivedColumn c = new DerivedColumn(m_table, sum(), true);
+        DerivedColumn v = new DerivedColumn(m_table, sum(), false);
+        m_table.removeColumn("a");
+        for ( int row=0; row<ROWS; row+=2 )
+            m_table.set(row, "b", Integer.valueOf(m_random.nextInt(7) + 1));
+        check(c);
+        for ( int row=0; row<ROWS; ++row ) {
+            double expected = ((Integer)m_table.getValue(row, "b")).intValue()
+                + ((Double)m_table.getValue(row, "x")).doubleValue();
+            assertEquals(expected, v.getDouble(row), 0);
+        }
+    }
+
+    @Test
+    public void testAddColumn() {
+        DerivedColumn c = new DerivedColumn(m_table, test(), true);
+        m_table.addColumn("y", double.class);
+        m_table.set(0, "b", Integer.valueOf(7));
+        check(c);
+    }
+
+    @Test
+    public void testExpressionChanged() {
+        ArithmeticExpression e = new ArithmeticExpression(
+            ArithmeticExpression.ADD, new ColumnExpression("a"),
+            new ColumnExpression("b"));
+        DerivedColumn c = new DerivedColumn(m_table, e, true);
+        e.setRightExpression(new ColumnExpression("a"));
+        for ( int row=0; row<ROWS; ++row ) {
+            int a = ((Integer)m_table.getValue(row, "a")).intValue();
+            assertEquals(2*a, c.getInt(row));
+        }
+        check(c);
+    }
+
+    @Test
+    public void testObjectValues() {
+        ListTable t = new ListTable();
+        t.addColumn("n", Number.class);
+        t.addColumn("f", Boolean.class);
+        for ( int i=0; i<10; ++i )
+            t.addRow(Long.valueOf(i * 1000000000L), Boolean.valueOf(i % 2 == 0));
+        DerivedColumn n = new DerivedColumn(t, new ColumnExpression("n"), true);
+        DerivedColumn f = new DerivedColumn(t, new ColumnExpression("f"), true);
+        for ( int row=0; row<10; ++row ) {
+            assertEquals(row * 1000000000L, n.getLong(row));
+            assertEquals(row * 1e9, n.getDouble(row), 0);
+            assertEquals(row % 2 == 0, f.getBoolean(row));
+        }
+    }
+
+} // end of class DerivedColumnTest
@@ -0,0 +1,170 @@
+package obvious.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import obvious.Tuple;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that compiled expressions evaluate like the interpreted
+ * Expression methods.
+ *
+ * @author obvious
+ */
+public class ExpressionCompilerTest {
+
+    /** Number of rows of the test table. */
+    protected static final int ROWS = 500;
+
+    protected ColumnTable m_table;
+
+    @Before
+    public void setUp() {
+        m_table = createTable(ROWS, 1);
+    }
+
+    /**
+     * Create a table with random values in the columns a (int), b (int,
+     * never 0), x (double), flag (boolean), name (String) and l (long).
+     * @param rows the number of rows
+     * @param seed the seed of the random values
+     * @return the table
+     */
+    public static ColumnTable createTable(int rows, long seed) {
+        Random r = new Random(seed);
+        int[] a = new int[rows];
+        int[] b = new int[rows];
+        double[] x = new double[rows];
+        boolean[] flag = new boolean[rows];
+        Object[] name = new Object[rows];
+        long[] l = new long[rows];
+        for ( int i=0; i<rows; ++i ) {
+            a[i] = r.nextInt(100) - 50;
+            b[i] = r.nextInt(7) + 1;
+            x[i] = r.nextDouble() * 10 - 5;
+            flag[i] = r.nextBoolean();
+            name[i] = "s" + r.nextInt(20);
+            l[i] = r.nextInt(1000) * 1000000000L;
+        }
+        return new ColumnTable(
+                new String[] { "a", "b", "x", "flag", "name", "l" },
+                new Class<?>[] { int.class, int.class, double.class,
+                        boolean.class, String.class, long.class },
+                new Object[] { a, b, x, flag, name, l }, rows);
+    }
+
+    /**
+     * Create a function expression.
+     * @param name the function name
+     * @param params the parameters
+     * @return the function expression
+     */
+    public static Expression function(String name, Expression... params) {
+        Function f = FunctionTable.createFunction(name);
+        for ( int i=0; i<params.length; ++i )
+            f.addParameter(params[i]);
+        return f;
+    }
+
+    /**
+     * Get expressions covering the supported node types over the columns
+     * of the test table.
+     * @return the expressions
+     */
+    public static Expression[] createExpressions() {
+        Expression a = new ColumnExpression("a");
+        Expression b = new ColumnExpression("b");
+        Expression x = new ColumnExpression("x");
+        Expression l = new ColumnExpression("l");
+        ColumnExpression flag = new ColumnExpression("flag");
+        return new Expression[] {
+            new ArithmeticExpression(ArithmeticExpression.ADD, a, b),
+            new ArithmeticExpression(ArithmeticExpression.DIV, a, b),
+            new ArithmeticExpression(ArithmeticExpression.MOD, a, b),
+            new ArithmeticExpression(ArithmeticExpression.MUL, x,
+                new ArithmeticExpression(ArithmeticExpression.SUB, a,
+                    new NumericLiteral(3))),
+            new ArithmeticExpression(ArithmeticExpression.POW, x,
+                new NumericLiteral(2)),
+            new ArithmeticExpression(ArithmeticExpression.MUL, l, b),
+            new ArithmeticExpression(ArithmeticExpression.MUL,
+                function("PI"), x),
+            function("SQRT", function("ABS", x)),
+            function("MAX", a, x, new NumericLiteral(1.5)),
+            function("MOD", a, b),
+            function("SIGN", x),
+            function("ROW"),
+            new ComparisonPredicate(ComparisonPredicate.LT, a,
+                new NumericLiteral(10)),
+            new ComparisonPredicate(ComparisonPredicate.GTEQ, x, a),
+            new ComparisonPredicate(ComparisonPredicate.EQ,
+                new ColumnExpression("name"), new ObjectLiteral("s3")),
+            new ComparisonPredicate(ComparisonPredicate.NEQ, l,
+                new NumericLiteral(5000000000L)),
+            new RangePredicate(x, new NumericLiteral(-1.0),
+                new NumericLiteral(2.0)),
+            new RangePredicate(RangePredicate.EX_IN, a,
+                new NumericLiteral(-10), new NumericLiteral(20)),
+            new AndPredicate(new ComparisonPredicate(ComparisonPredicate.GT,
+                a, new NumericLiteral(0)), flag),
+            new OrPredicate(new ComparisonPredicate(ComparisonPredicate.GT,
+                a, new NumericLiteral(40)), new NotPredicate(flag)),
+            new XorPredicate(new ComparisonPredicate(ComparisonPredicate.GT,
+                a, new NumericLiteral(0)), flag),
+            new IfExpression(flag, x, new ArithmeticExpression(
+                ArithmeticExpression.MUL, x, new NumericLiteral(-2.0))),
+        };
+    }
+
+    @Test
+    public void testTypes() {
+        Expression[] exprs = createExpressions();
+        for ( int i=0; i<exprs.length; ++i ) {
+            CompiledExpression c =
+                ExpressionCompiler.compile(exprs[i], m_table.getSchema());
+            assertSame(exprs[i].toString(),
+                exprs[i].getType(m_table.getSchema()), c.getType());
+        }
+    }
+
+    @Test
+    public void testValues() {
+        Expression[] exprs = createExpressions();
+        TableTuple tuple = new TableTuple(m_table);
+        for ( int i=0; i<exprs.length; ++i ) {
+            Expression e = exprs[i];
+            CompiledExpression c =
+                ExpressionCompiler.compile(e, m_table.getSchema());
+            Class<?> type = c.getType();
+            for ( int row=0; row<ROWS; ++row ) {
+                Tuple t = tuple.setRow(row);
+                String msg = e + " at row " + row;
+                assertEquals(msg, e.get(t), c.get(m_table, row));
+                if ( type == boolean.class ) {
+                    assertEquals(msg, e.getBoolean(t),
+                        c.getBoolean(m_table, row));
+                } else if ( type == int.class ) {
+                    assertEquals(msg, e.getInt(t), c.getInt(m_table, row));
+                } else if ( type == long.class ) {
+                    assertEquals(msg, e.getLong(t), c.getLong(m_table, row));
+                } else {
+                    assertEquals(msg, e.getDouble(t),
+                        c.getDouble(m_table, row), 0);
+                }
+            }
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownColumn() {
+        ExpressionCompiler.compile(new ArithmeticExpression(
+            ArithmeticExpression.ADD, new ColumnExpression("a"),
+            new ColumnExpression("missing")), m_table.getSchema());
+    }
+
+} // end of class ExpressionCompilerTest
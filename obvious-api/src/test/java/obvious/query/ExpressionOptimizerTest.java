@@ -0,0 +1,217 @@
+package obvious.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import obvious.Schema;
+import obvious.Table;
+import obvious.Tuple;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that optimized expressions evaluate like the source expressions.
+ *
+ * @author obvious
+ */
+public class ExpressionOptimizerTest {
+
+    private static final int ROWS = 500;
+
+    private ColumnTable m_table;
+
+    @Before
+    public void setUp() {
+        m_table = ExpressionCompilerTest.createTable(ROWS, 4);
+    }
+
+    private static Expression arithmetic(int op, Expression l, Expression r) {
+        return new ArithmeticExpression(op, l, r);
+    }
+
+    private static Predicate comparison(int op, Expression l, Expression r) {
+        return new ComparisonPredicate(op, l, r);
+    }
+
+    /**
+     * Get expressions with constant sub-expressions, duplicated clauses and
+     * common sub-expressions over the columns of the test table.
+     */
+    private static Expression[] createExpressions() {
+        Expression a = new ColumnExpression("a");
+        Expression b = new ColumnExpression("b");
+        Expression x = new ColumnExpression("x");
+        ColumnExpression flag = new ColumnExpression("flag");
+        Expression half = arithmetic(ArithmeticExpression.DIV,
+            new NumericLiteral(1), new NumericLiteral(2));
+        Expression third = arithmetic(ArithmeticExpression.DIV,
+            new NumericLiteral(1.0f), new NumericLiteral(3));
+        Expression ab = arithmetic(ArithmeticExpression.MUL, a, b);
+        return new Expression[] {
+            arithmetic(ArithmeticExpression.ADD, x, half),
+            arithmetic(ArithmeticExpression.ADD, a, half),
+            arithmetic(ArithmeticExpression.MUL, x, third),
+            arithmetic(ArithmeticExpression.MUL, x,
+                arithmetic(ArithmeticExpression.DIV,
+                    new NumericLiteral(1.0), new NumericLiteral(3))),
+            arithmetic(ArithmeticExpression.ADD, a,
+                arithmetic(ArithmeticExpression.MUL,
+                    ExpressionCompilerTest.function("PI"),
+                    new NumericLiteral(2))),
+            arithmetic(ArithmeticExpression.ADD, ab,
+                arithmetic(ArithmeticExpression.MUL, ab, ab)),
+            comparison(ComparisonPredicate.GT, x, half),
+            new AndPredicate(flag, new NotPredicate(new NotPredicate(
+                comparison(ComparisonPredicate.LT, a, new NumericLiteral(10))))),
+            new AndPredicate(new AndPredicate(comparison(
+                ComparisonPredicate.NEQ, a, new NumericLiteral(0)),
+                comparison(ComparisonPredicate.GT, x, new NumericLiteral(1.0))),
+                flag),
+            new OrPredicate(comparison(ComparisonPredicate.EQ, b,
+                new NumericLiteral(3)), new OrPredicate(flag,
+                comparison(ComparisonPredicate.EQ, b, new NumericLiteral(3)))),
+            new AndPredicate(BooleanLiteral.TRUE, flag),
+            new IfExpression(comparison(ComparisonPredicate.LT,
+                new NumericLiteral(1), new NumericLiteral(2)), x, a),
+        };
+    }
+
+    @Test
+    public void testValues() {
+        Expression[] exprs = ExpressionCompilerTest.createExpressions();
+        checkValues(exprs, m_table);
+        checkValues(createExpressions(), m_table);
+    }
+
+    @Test
+    public void testFolding() {
+        Expression pi2 = arithmetic(ArithmeticExpression.MUL,
+            ExpressionCompilerTest.function("PI"), new NumericLiteral(2));
+        Expression e = ExpressionOptimizer.optimize(pi2);
+        assertTrue(e instanceof NumericLiteral);
+        assertEquals(2 * Math.PI, e.getDouble(null), 0);
+
+        // 1/2 is 0 as an int but 0.5 as a double
+        Expression half = arithmetic(ArithmeticExpression.DIV,
+            new NumericLiteral(1), new NumericLiteral(2));
+        Expression x = new ColumnExpression("x");
+        e = ExpressionOptimizer.optimize(
+            arithmetic(ArithmeticExpression.ADD, x, half));
+        Tuple t = new TableTuple(m_table).setRow(0);
+        assertEquals(t.getDouble("x") + 0.5, e.getDouble(t), 0);
+    }
+
+    @Test
+    public void testRandom() {
+        // each occurrence of RAND() is evaluated, even the same instance
+        Expression rand = ExpressionCompilerTest.function("RAND");
+        Expression[] exprs = new Expression[] {
+            arithmetic(ArithmeticExpression.SUB,
+                ExpressionCompilerTest.function("RAND"),
+                ExpressionCompilerTest.function("RAND")),
+            arithmetic(ArithmeticExpression.SUB, rand, rand),
+            arithmetic(ArithmeticExpression.SUB,
+                arithmetic(ArithmeticExpression.MUL, rand,
+                    new NumericLiteral(2)),
+                arithmetic(ArithmeticExpression.MUL, rand,
+                    new NumericLiteral(2))),
+        };
+        for ( int i=0; i<exprs.length; ++i ) {
+            Expression e = ExpressionOptimizer.optimize(exprs[i]);
+            boolean zero = true;
+            for ( int j=0; j<10 && zero; ++j )
+                zero = ( e.getDouble(null) == 0 );
+            assertFalse(e.toString(), zero);
+        }
+    }
+
+    @Test
+    public void testOrder() {
+        Schema s = m_table.getSchema();
+        Predicate neq = comparison(ComparisonPredicate.NEQ,
+            new ColumnExpression("a"), new NumericLiteral(0));
+        Predicate gt = comparison(ComparisonPredicate.GT,
+            new ColumnExpression("x"), new NumericLiteral(1.0));
+        Expression p = new AndPredicate(neq, gt);
+
+        // without a schema, the clauses keep their order
+        CompositePredicate e =
+            (CompositePredicate)ExpressionOptimizer.optimize(p);
+        assertEquals(neq.toString(), e.get(0).toString());
+
+        // the selective clause comes first when both are safe
+        e = (CompositePredicate)ExpressionOptimizer.optimize(p, s);
+        assertEquals(gt.toString(), e.get(0).toString());
+        assertFalse(ExpressionOptimizer.canThrow(neq, s));
+        assertTrue(ExpressionOptimizer.canThrow(neq, null));
+    }
+
+    @Test
+    public void testGuards() {
+        int[] k = new int[ROWS];
+        Object[] o = new Object[ROWS];
+        for ( int i=0; i<ROWS; ++i ) {
+            k[i] = i % 3;
+            o[i] = ( k[i] == 0 ? (Object)Integer.valueOf(i) : "s" + i );
+        }
+        ColumnTable t = new ColumnTable(new String[] { "k", "o" },
+            new Class<?>[] { int.class, Object.class },
+            new Object[] { k, o }, ROWS);
+        Expression kk = arithmetic(ArithmeticExpression.MUL,
+            new ColumnExpression("k"), new ColumnExpression("k"));
+        Predicate guard = comparison(ComparisonPredicate.NEQ, kk,
+            new NumericLiteral(0));
+        Expression[] exprs = new Expression[] {
+            new AndPredicate(guard, comparison(ComparisonPredicate.GT,
+                arithmetic(ArithmeticExpression.DIV, new NumericLiteral(100),
+                    new ColumnExpression("k")), new NumericLiteral(60))),
+            new AndPredicate(guard, comparison(ComparisonPredicate.GT,
+                new ColumnExpression("o"), new ObjectLiteral("s3"))),
+            new OrPredicate(new NotPredicate(guard), comparison(
+                ComparisonPredicate.GT, new ColumnExpression("o"),
+                new ObjectLiteral("s3"))),
+        };
+        checkValues(exprs, t);
+    }
+
+    /**
+     * Compares the values of the expressions and of their optimized
+     * versions, interpreted and compiled, on every row of a table.
+     */
+    private static void checkValues(Expression[] exprs, Table table) {
+        Schema s = table.getSchema();
+        TableTuple tuple = new TableTuple(table);
+        for ( int i=0; i<exprs.length; ++i ) {
+            Expression e = exprs[i];
+            Expression[] optimized = {
+                ExpressionOptimizer.optimize(e),
+                ExpressionOptimizer.optimize(e, s) };
+            CompiledExpression c = ExpressionCompiler.compile(e, s);
+            Class<?> type = c.getType();
+            for ( int j=0; j<optimized.length; ++j ) {
+                Expression opt = optimized[j];
+                CompiledExpression oc = ExpressionCompiler.compile(opt, s);
+                assertSame(e + " -> " + opt, type, oc.getType());
+                for ( int row=0; row<table.getRowCount(); ++row ) {
+                    Tuple t = tuple.setRow(row);
+                    String msg = e + " -> " + opt + " at row " + row;
+                    assertEquals(msg, e.get(t), opt.get(t));
+                    assertEquals(msg, c.get(table, row), oc.get(table, row));
+                    if ( type == boolean.class ) {
+                        assertEquals(msg, e.getBoolean(t), opt.getBoolean(t));
+                    } else if ( type == int.class ) {
+                        assertEquals(msg, e.getInt(t), opt.getInt(t));
+                    } else if ( type == long.class ) {
+                        assertEquals(msg, e.getLong(t), opt.getLong(t));
+                    } else {
+                        assertEquals(msg, e.getDouble(t), opt.getDouble(t), 0);
+                    }
+                }
+            }
+        }
+    }
+
+} // end of class ExpressionOptimizerTest
@@ -0,0 +1,254 @@
+package obvious.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import obvious.Table;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the aggregates computed by GroupBy against a naive aggregation
+ * of the rows of each group.
+ *
+ * @author obvious
+ */
+public class GroupByTest {
+
+    /** Rows of the test table, more than one chunk of GroupBy. */
+    private static final int ROWS = GroupBy.CHUNK_SIZE + 4000;
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.0, 1.0 };
+
+    private ColumnTable m_table;
+
+    @Before
+    public void setUp() {
+        Random r = new Random(3);
+        int[] a = new int[ROWS];
+        int[] b = new int[ROWS];
+        double[] x = new double[ROWS];
+        boolean[] flag = new boolean[ROWS];
+        Object[] name = new Object[ROWS];
+        long[] l = new long[ROWS];
+        float[] f = new float[ROWS];
+        for ( int i=0; i<ROWS; ++i ) {
+            a[i] = r.nextInt(100) - 50;
+            b[i] = r.nextInt(7) + 1;
+            x[i] = r.nextGaussian() * 3 + b[i];
+            flag[i] = r.nextBoolean();
+            name[i] = ( r.nextInt(50) == 0 ? null : "s" + r.nextInt(20) );
+            l[i] = r.nextInt(1000) * 1000000000L;
+            f[i] = r.nextInt(10) / 4f;
+        }
+        m_table = new ColumnTable(
+            new String[] { "a", "b", "x", "flag", "name", "l", "f" },
+            new Class<?>[] { int.class, int.class, double.class,
+                boolean.class, String.class, long.class, float.class },
+            new Object[] { a, b, x, flag, name, l, f }, ROWS);
+    }
+
+    private static Aggregate[] createAggregates() {
+        Expression a = new ColumnExpression("a");
+        Expression x = new ColumnExpression("x");
+        Expression l = new ColumnExpression("l");
+        Expression name = new ColumnExpression("name");
+        return new Aggregate[] {
+            new Aggregate(Aggregate.COUNT, null, "count"),
+            new Aggregate(Aggregate.SUM, a, null),
+            new Aggregate(Aggregate.SUM, x, null),
+            new Aggregate(Aggregate.SUM, l, null),
+            new Aggregate(Aggregate.MIN, a, null),
+            new Aggregate(Aggregate.MAX, a, null),
+            new Aggregate(Aggregate.MIN, x, null),
+            new Aggregate(Aggregate.MAX, l, null),
+            new Aggregate(Aggregate.AVG, x, null),
+            new Aggregate(Aggregate.VARIANCE, x, null),
+            new Aggregate(Aggregate.DISTINCT_COUNT, a, null),
+            new Aggregate(Aggregate.DISTINCT_COUNT, name, null),
+            new Aggregate(Aggregate.DISTINCT_COUNT, x, null),
+            new Aggregate(x, QUANTILES[0], "median"),
+            new Aggregate(x, QUANTILES[1], "p90"),
+            new Aggregate(x, QUANTILES[2], "p0"),
+            new Aggregate(x, QUANTILES[3], "p100"),
+        };
+    }
+
+    @Test
+    public void testSingleKey() {
+        check(new String[] { "b" });
+        check(new String[] { "name" });
+    }
+
+    @Test
+    public void testCompositeKey() {
+        check(new String[] { "b", "flag" });
+        check(new String[] { "f", "name" });
+        check(new String[] { "a", "b", "l" });
+    }
+
+    @Test
+    public void testNoKey() {
+        check(new String[0]);
+    }
+
+    @Test
+    public void testThreads() {
+        String[] keys = { "a", "name" };
+        GroupBy single = new GroupBy(keys, createAggregates());
+        single.setThreadCount(1);
+        GroupBy parallel = new GroupBy(keys, createAggregates());
+        parallel.setThreadCount(3);
+        Table expected = single.transform(m_table);
+        Table result = parallel.transform(m_table);
+        assertEquals(expected.getRowCount(), result.getRowCount());
+        int cols = expected.getSchema().getColumnCount();
+        for ( int row=0; row<expected.getRowCount(); ++row ) {
+            for ( int col=0; col<cols; ++col ) {
+                assertEquals(expected.getValue(row, col),
+                    result.getValue(row, col));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyTable() {
+        ColumnTable empty = new ColumnTable(new String[] { "a" },
+            new Class<?>[] { int.class }, new Object[] { new int[0] }, 0);
+        GroupBy gb = new GroupBy(new String[0], new Aggregate[] {
+            new Aggregate(Aggregate.COUNT, null, "count") });
+        assertEquals(0, gb.transform(empty).getRowCount());
+    }
+
+    /**
+     * Groups the test table by the given columns and compares each group
+     * with the values aggregated naively from its rows.
+     */
+    private void check(String[] keys) {
+        Table result = new GroupBy(keys, createAggregates()).transform(m_table);
+
+        Map<List<Object>, List<Integer>> groups =
+            new LinkedHashMap<List<Object>, List<Integer>>();
+        for ( int i=0; i<ROWS; ++i ) {
+            List<Object> key = new ArrayList<Object>();
+            for ( int k=0; k<keys.length; ++k )
+                key.add(m_table.getValue(i, keys[k]));
+            List<Integer> rows = groups.get(key);
+            if ( rows == null ) {
+                rows = new ArrayList<Integer>();
+                groups.put(key, rows);
+            }
+            rows.add(Integer.valueOf(i));
+        }
+        assertEquals(groups.size(), result.getRowCount());
+
+        int row = 0;
+        Iterator<Map.Entry<List<Object>, List<Integer>>> iter =
+            groups.entrySet().iterator();
+        for ( ; iter.hasNext(); ++row ) {
+            Map.Entry<List<Object>, List<Integer>> group = iter.next();
+            String msg = Arrays.asList(keys) + " = " + group.getKey();
+            for ( int k=0; k<keys.length; ++k )
+                assertEquals(msg, group.getKey().get(k),
+                    result.getValue(row, k));
+
+            List<Integer> rows = group.getValue();
+            int n = rows.size();
+            long sumA = 0, sumL = 0;
+            double sumX = 0;
+            int minA = Integer.MAX_VALUE, maxA = Integer.MIN_VALUE;
+            double minX = Double.POSITIVE_INFINITY;
+            long maxL = Long.MIN_VALUE;
+            Set<Object> as = new HashSet<Object>();
+            Set<Object> names = new HashSet<Object>();
+            Set<Object> xs = new HashSet<Object>();
+            double[] sorted = new double[n];
+            for ( int j=0; j<n; ++j ) {
+                int i = rows.get(j).intValue();
+                int a = ((Integer)m_table.getValue(i, "a")).intValue();
+                double x = ((Double)m_table.getValue(i, "x")).doubleValue();
+                long l = ((Long)m_table.getValue(i, "l")).longValue();
+                sumA += a;
+                sumL += l;
+                sumX += x;
+                minA = Math.min(minA, a);
+                maxA = Math.max(maxA, a);
+                minX = Math.min(minX, x);
+                maxL = Math.max(maxL, l);
+                as.add(Integer.valueOf(a));
+                if ( m_table.getValue(i, "name") != null )
+                    names.add(m_table.getValue(i, "name"));
+                xs.add(Double.valueOf(x));
+                sorted[j] = x;
+            }
+            double mean = sumX / n;
+            double var = 0;
+            for ( int j=0; j<n; ++j )
+                var += (sorted[j] - mean) * (sorted[j] - mean);
+            var /= n;
+            Arrays.sort(sorted);
+
+            int c = keys.length;
+            assertEquals(msg, Integer.valueOf(n), result.getValue(row, c));
+            assertEquals(msg, Long.valueOf(sumA), result.getValue(row, c+1));
+            assertClose(msg, sumX, result.getValue(row, c+2));
+            assertEquals(msg, Long.valueOf(sumL), result.getValue(row, c+3));
+            assertEquals(msg, Integer.valueOf(minA), result.getValue(row, c+4));
+            assertEquals(msg, Integer.valueOf(maxA), result.getValue(row, c+5));
+            assertEquals(msg, Double.valueOf(minX), result.getValue(row, c+6));
+            assertEquals(msg, Long.valueOf(maxL), result.getValue(row, c+7));
+            assertClose(msg, mean, result.getValue(row, c+8));
+            assertClose(msg, var, result.getValue(row, c+9));
+            assertEquals(msg, Integer.valueOf(as.size()),
+                result.getValue(row, c+10));
+            assertEquals(msg, Integer.valueOf(names.size()),
+                result.getValue(row, c+11));
+            assertEquals(msg, Integer.valueOf(xs.size()),
+                result.getValue(row, c+12));
+            for ( int q=0; q<QUANTILES.length; ++q ) {
+                double value = ((Double)result.getValue(row, c+13+q))
+                    .doubleValue();
+                checkQuantile(msg, sorted, QUANTILES[q], value);
+            }
+        }
+    }
+
+    private static void assertClose(String msg, double expected, Object v) {
+        double actual = ((Double)v).doubleValue();
+        assertEquals(msg, expected, actual,
+            1e-9 * Math.max(1, Math.abs(expected)));
+    }
+
+    /**
+     * Checks that a quantile value is a value of the group, with a rank
+     * close to the requested one: exact for the minimum, the maximum and
+     * small groups, within 1% of the group size otherwise.
+     */
+    private static void checkQuantile(String msg, double[] sorted,
+            double quantile, double value)
+    {
+        int lo = Arrays.binarySearch(sorted, value);
+        assertTrue(msg, lo >= 0);
+        while ( lo > 0 && sorted[lo-1] == value ) --lo;
+        int hi = lo;
+        while ( hi < sorted.length && sorted[hi] == value ) ++hi;
+        int rank = Math.max(1, (int)Math.ceil(quantile * sorted.length));
+        int error = ( rank <= lo ? lo + 1 - rank : Math.max(0, rank - hi) );
+        if ( quantile == 0 || quantile == 1 || sorted.length <= 256 )
+            assertEquals(msg + " q=" + quantile, 0, error);
+        else
+            assertTrue(msg + " q=" + quantile, error <= sorted.length / 100);
+    }
+
+} // end of class GroupByTest
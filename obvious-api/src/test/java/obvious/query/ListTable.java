@@ -0,0 +1,262 @@
+package obvious.query;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import obvious.IntIterator;
+import obvious.Schema;
+import obvious.Table;
+import obvious.TableListener;
+
+/**
+ * Minimal mutable table storing its rows in a list, used to check the
+ * incremental maintenance of query results in the tests. Removed rows
+ * leave a hole and their ids are never reused. Every change is reported
+ * to the listeners as the table implementations of obvious do: row
+ * changes with their row range, column additions and removals with an
+ * empty row range.
+ *
+ * @author obvious
+ */
+public class ListTable implements Table {
+
+    private final ArrayList<String> m_names = new ArrayList<String>();
+    private final ArrayList<Class<?>> m_types = new ArrayList<Class<?>>();
+    private final ArrayList<Object[]> m_rows = new ArrayList<Object[]>();
+    private final ArrayList<TableListener> m_listeners =
+        new ArrayList<TableListener>();
+    private final Schema m_schema;
+    private int m_rowCount;
+
+    /**
+     * Create a new ListTable without columns nor rows.
+     */
+    public ListTable() {
+        m_schema = (Schema)Proxy.newProxyInstance(
+            Schema.class.getClassLoader(), new Class<?>[] { Schema.class },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method m, Object[] args) {
+                    return invokeSchema(m.getName(), args);
+                }
+            });
+    }
+
+    /**
+     * Answers the read methods of the schema; the others are unsupported.
+     */
+    private Object invokeSchema(String name, Object[] args) {
+        if ( name.equals("getColumnCount") )
+            return Integer.valueOf(m_names.size());
+        else if ( name.equals("getColumnIndex") )
+            return Integer.valueOf(m_names.indexOf(args[0]));
+        else if ( name.equals("hasColumn") )
+            return Boolean.valueOf(m_names.contains(args[0]));
+        else if ( name.equals("getColumnName") )
+            return m_names.get(((Integer)args[0]).intValue());
+        else if ( name.equals("getColumnType") ) {
+            int col = ( args[0] instanceof String
+                ? m_names.indexOf(args[0]) : ((Integer)args[0]).intValue() );
+            return ( col < 0 ? null : m_types.get(col) );
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    /**
+     * Add a column, holding null in the existing rows.
+     * @param name the column name
+     * @param type the column type
+     * @return the column index
+     */
+    public int addColumn(String name, Class<?> type) {
+        int col = m_names.size();
+        m_names.add(name);
+        m_types.add(type);
+        for ( int i=0; i<m_rows.size(); ++i ) {
+            Object[] row = m_rows.get(i);
+            if ( row == null ) continue;
+            Object[] values = new Object[col+1];
+            System.arraycopy(row, 0, values, 0, col);
+            m_rows.set(i, values);
+        }
+        fireTableEvent(-1, -1, col, TableListener.INSERT);
+        return col;
+    }
+
+    /**
+     * Remove a column, shifting the index of the next columns.
+     * @param name the column name
+     * @return true if the column existed
+     */
+    public boolean removeColumn(String name) {
+        int col = m_names.indexOf(name);
+        if ( col < 0 )
+            return false;
+        m_names.remove(col);
+        m_types.remove(col);
+        for ( int i=0; i<m_rows.size(); ++i ) {
+            Object[] row = m_rows.get(i);
+            if ( row == null ) continue;
+            Object[] values = new Object[row.length-1];
+            System.arraycopy(row, 0, values, 0, col);
+            System.arraycopy(row, col+1, values, col, row.length-col-1);
+            m_rows.set(i, values);
+        }
+        fireTableEvent(-1, -1, col, TableListener.DELETE);
+        return true;
+    }
+
+    /**
+     * Add a row holding the given values.
+     * @param values the values, one per column
+     * @return the row id
+     */
+    public int addRow(Object... values) {
+        int row = m_rows.size();
+        m_rows.add(values.clone());
+        ++m_rowCount;
+        fireTableEvent(row, row, TableListener.ALL_COLUMN,
+            TableListener.INSERT);
+        return row;
+    }
+
+    /**
+     * Notifies the listeners of a change.
+     */
+    private void fireTableEvent(int start, int end, int col, int type) {
+        TableListener[] listeners =
+            m_listeners.toArray(new TableListener[m_listeners.size()]);
+        for ( int i=0; i<listeners.length; ++i )
+            listeners[i].tableChanged(this, start, end, col, type);
+    }
+
+    // ------------------------------------------------------------------------
+    // Table Interface
+
+    public Schema getSchema() {
+        return m_schema;
+    }
+
+    public int getRowCount() {
+        return m_rowCount;
+    }
+
+    public IntIterator rowIterator() {
+        return new IntIterator() {
+            private int m_next = advance(0);
+            private int advance(int row) {
+                while ( row < m_rows.size() && m_rows.get(row) == null )
+                    ++row;
+                return row;
+            }
+            public boolean hasNext() {
+                return m_next < m_rows.size();
+            }
+            public int nextInt() {
+                if ( !hasNext() )
+                    throw new NoSuchElementException();
+                int row = m_next;
+                m_next = advance(row+1);
+                return row;
+            }
+            public Integer next() {
+                return Integer.valueOf(nextInt());
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public boolean isValidRow(int rowId) {
+        return rowId >= 0 && rowId < m_rows.size()
+            && m_rows.get(rowId) != null;
+    }
+
+    public Object getValue(int rowId, String field) {
+        int col = m_names.indexOf(field);
+        if ( col < 0 )
+            throw new IllegalArgumentException("Unknown column: "+field);
+        return getValue(rowId, col);
+    }
+
+    public Object getValue(int rowId, int col) {
+        if ( !isValidRow(rowId) )
+            throw new IndexOutOfBoundsException("Invalid row: "+rowId);
+        return m_rows.get(rowId)[col];
+    }
+
+    public boolean isValueValid(int rowId, int col) {
+        return isValidRow(rowId) && col >= 0 && col < m_names.size();
+    }
+
+    public void beginEdit(int col) {
+    }
+
+    public void endEdit(int col) {
+    }
+
+    public boolean isEditing(int col) {
+        return false;
+    }
+
+    public void addTableListener(TableListener listnr) {
+        if ( !m_listeners.contains(listnr) )
+            m_listeners.add(listnr);
+    }
+
+    public void removeTableListener(TableListener listnr) {
+        m_listeners.remove(listnr);
+    }
+
+    public Collection<TableListener> getTableListeners() {
+        return m_listeners;
+    }
+
+    public boolean canAddRow() {
+        return true;
+    }
+
+    public boolean canRemoveRow() {
+        return true;
+    }
+
+    public int addRow() {
+        return addRow(new Object[m_names.size()]);
+    }
+
+    public boolean removeRow(int row) {
+        if ( !isValidRow(row) )
+            return false;
+        m_rows.set(row, null);
+        --m_rowCount;
+        fireTableEvent(row, row, TableListener.ALL_COLUMN,
+            TableListener.DELETE);
+        return true;
+    }
+
+    public void removeAllRows() {
+        int top = m_rows.size();
+        for ( int i=0; i<top; ++i )
+            m_rows.set(i, null);
+        m_rowCount = 0;
+        if ( top > 0 )
+            fireTableEvent(0, top-1, TableListener.ALL_COLUMN,
+                TableListener.DELETE);
+    }
+
+    public void set(int rowId, String field, Object val) {
+        set(rowId, m_names.indexOf(field), val);
+    }
+
+    public void set(int rowId, int col, Object val) {
+        if ( !isValidRow(rowId) )
+            throw new IndexOutOfBoundsException("Invalid row: "+rowId);
+        m_rows.get(rowId)[col] = val;
+        fireTableEvent(rowId, rowId, col, TableListener.UPDATE);
+    }
+
+} // end of class ListTable
@@ -0,0 +1,86 @@
+package obvious.query;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import obvious.Table;
+import obvious.Tuple;
+
+/**
+ * Read-only Tuple view of a table row, used to evaluate expressions with
+ * the interpreted Expression methods in the tests. The view supports the
+ * getters of the Tuple interface; it is moved from row to row with
+ * {@link #setRow(int)}.
+ *
+ * @author obvious
+ */
+public class TableTuple implements InvocationHandler {
+
+    private final Table m_table;
+    private final Tuple m_tuple;
+    private int m_row;
+
+    /**
+     * Create a new TableTuple.
+     * @param table the table providing the values
+     */
+    public TableTuple(Table table) {
+        m_table = table;
+        m_tuple = (Tuple)Proxy.newProxyInstance(Tuple.class.getClassLoader(),
+                new Class<?>[] { Tuple.class }, this);
+    }
+
+    /**
+     * Get the Tuple view.
+     * @return the tuple, pointing to the current row
+     */
+    public Tuple getTuple() {
+        return m_tuple;
+    }
+
+    /**
+     * Move the view to another row.
+     * @param row the row id
+     * @return the tuple, pointing to the given row
+     */
+    public Tuple setRow(int row) {
+        m_row = row;
+        return m_tuple;
+    }
+
+    /**
+     * Answers the Tuple getters from the current row of the table.
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+     */
+    public Object invoke(Object proxy, Method m, Object[] args) {
+        String name = m.getName();
+        if ( name.equals("getSchema") )
+            return m_table.getSchema();
+        else if ( name.equals("getTable") )
+            return m_table;
+        else if ( name.equals("getRow") )
+            return Integer.valueOf(m_row);
+        else if ( name.equals("isValid") )
+            return Boolean.valueOf(m_table.isValidRow(m_row));
+        else if ( name.equals("getColumnType") )
+            return m_table.getSchema().getColumnType((String)args[0]);
+        else if ( !name.startsWith("get") || args == null )
+            throw new UnsupportedOperationException(name);
+
+        Object val = ( args[0] instanceof String
+                ? m_table.getValue(m_row, (String)args[0])
+                : m_table.getValue(m_row, ((Integer)args[0]).intValue()) );
+        if ( name.equals("getInt") )
+            return Integer.valueOf(((Number)val).intValue());
+        else if ( name.equals("getLong") )
+            return Long.valueOf(((Number)val).longValue());
+        else if ( name.equals("getFloat") )
+            return Float.valueOf(((Number)val).floatValue());
+        else if ( name.equals("getDouble") )
+            return Double.valueOf(((Number)val).doubleValue());
+        else
+            return val;
+    }
+
+} // end of class TableTuple
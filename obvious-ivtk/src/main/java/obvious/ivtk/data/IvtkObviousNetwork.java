@@ -35,8 +35,10 @@ import infovis.utils.RowIterator;
 
 import java.text.FieldPosition;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import obvious.ObviousException;
@@ -81,6 +83,30 @@ public class IvtkObviousNetwork implements Network {
    */
   private Map<Edge, Integer> edgeToId = new HashMap<Edge, Integer>();
 
+  /**
+   * Obvious nodes indexed by ivtk node index, null for removed nodes.
+   */
+  private ArrayList<Node> idToNode = new ArrayList<Node>();
+
+  /**
+   * Obvious edges indexed by ivtk edge index, null for removed edges.
+   */
+  private ArrayList<Edge> idToEdge = new ArrayList<Edge>();
+
+  /**
+   * Map linking the attribute values of the added nodes to their ivtk node
+   * index.
+   */
+  private Map<List<Object>, Integer> nodeValuesToId =
+    new HashMap<List<Object>, Integer>();
+
+  /**
+   * Map linking the attribute values of the added edges to their ivtk edge
+   * index.
+   */
+  private Map<List<Object>, Integer> edgeValuesToId =
+    new HashMap<List<Object>, Integer>();
+
   /**
    * Format factory.
    */
@@ -233,6 +259,11 @@ public class IvtkObviousNetwork implements Network {
         }
       }
       edgeToId.put(edge, edgeId);
+      setCached(idToEdge, edgeId, edge);
+      List<Object> values = getEdgeValues(edge);
+      if (getIndexedEdgeId(values) == null) {
+        edgeValuesToId.put(values, edgeId);
+      }
       fireNetworkEvent(edge.getRow(), edge.getRow(), 0,
           NetworkListener.INSERT_EDGE);
       return true;
@@ -261,6 +292,11 @@ public class IvtkObviousNetwork implements Network {
         }
       }
       nodeToId.put(node, rowId);
+      setCached(idToNode, rowId, node);
+      List<Object> values = getNodeValues(node);
+      if (getIndexedNodeId(values) == null) {
+        nodeValuesToId.put(values, rowId);
+      }
       fireNetworkEvent(node.getRow(), node.getRow(), 0,
           NetworkListener.INSERT_NODE);
       return true;
@@ -323,22 +359,16 @@ public class IvtkObviousNetwork implements Network {
    * @return connecting edge
    */
   public Edge getConnectingEdge(Node v1, Node v2) {
-    int id = -1;
-    int edgeId = graph.getEdge(getNodeId(v1), getNodeId(v2));
-    int bisId = graph.getEdge(getNodeId(v2), getNodeId(v1));
-    if (edgeId != -1 || bisId == -1) {
-      id = edgeId;
-    } else if (edgeId == -1 || bisId != -1) {
-      id = bisId;
-    } else if (edgeId == bisId) {
-      id = edgeId;
+    int v1Id = getNodeId(v1);
+    int v2Id = getNodeId(v2);
+    if (v1Id == infovis.Graph.NIL || v2Id == infovis.Graph.NIL) {
+      return null;
     }
-    for (Map.Entry<Edge, Integer> e : edgeToId.entrySet()) {
-      if (e.getValue() == id) {
-        return e.getKey();
-      }
+    int edgeId = graph.getEdge(v1Id, v2Id);
+    if (edgeId == infovis.Graph.NIL) {
+      edgeId = graph.getEdge(v2Id, v1Id);
     }
-    return null;
+    return getEdge(edgeId);
   }
 
   /**
@@ -349,8 +379,24 @@ public class IvtkObviousNetwork implements Network {
    */
   public Collection<Edge> getConnectingEdges(Node v1, Node v2) {
     Collection<Edge> edges = new ArrayList<Edge>();
-    if (this.getConnectingEdge(v1, v2) != null) {
-      edges.add(this.getConnectingEdge(v1, v2));
+    int v1Id = getNodeId(v1);
+    int v2Id = getNodeId(v2);
+    if (v1Id == infovis.Graph.NIL || v2Id == infovis.Graph.NIL) {
+      return edges;
+    }
+    for (RowIterator it = graph.outEdgeIterator(v1Id); it.hasNext();) {
+      int edgeId = it.nextRow();
+      if (graph.getSecondVertex(edgeId) == v2Id) {
+        addEdge(edges, edgeId);
+      }
+    }
+    if (v1Id != v2Id) {
+      for (RowIterator it = graph.inEdgeIterator(v1Id); it.hasNext();) {
+        int edgeId = it.nextRow();
+        if (graph.getFirstVertex(edgeId) == v2Id) {
+          addEdge(edges, edgeId);
+        }
+      }
     }
     return edges;
   }
@@ -392,12 +438,10 @@ public class IvtkObviousNetwork implements Network {
    */
   public Collection<Edge> getInEdges(Node node) {
     Collection<Edge> inEdges = new ArrayList<Edge>();
-    RowIterator it = graph.inEdgeIterator(getNodeId(node));
-    while (it.hasNext()) {
-      for (Map.Entry<Edge, Integer> e : edgeToId.entrySet()) {
-        if (e.getValue() == it.next()) {
-          inEdges.add(e.getKey());
-        }
+    int nodeId = getNodeId(node);
+    if (nodeId != infovis.Graph.NIL) {
+      for (RowIterator it = graph.inEdgeIterator(nodeId); it.hasNext();) {
+        addEdge(inEdges, it.nextRow());
       }
     }
     return inEdges;
@@ -411,19 +455,17 @@ public class IvtkObviousNetwork implements Network {
   public Collection<Edge> getIncidentEdges(Node node) {
     Collection<Edge> edges = new ArrayList<Edge>();
     int nodeId = getNodeId(node);
-    for (Node otherNode : nodeToId.keySet()) {
-      int nil = infovis.Graph.NIL;
-      if (graph.getEdge(nodeId, getNodeId(otherNode)) != nil
-          || graph.getEdge(getNodeId(otherNode), nodeId) != nil) {
-        for (Map.Entry<Edge, Integer> e : edgeToId.entrySet()) {
-          if (e.getValue()
-              == graph.getEdge(nodeId, getNodeId(otherNode))
-              || e.getValue() == graph.getEdge(
-                  getNodeId(otherNode), nodeId)) {
-            edges.add(e.getKey());
-            break;
-          }
-        }
+    if (nodeId == infovis.Graph.NIL) {
+      return edges;
+    }
+    for (RowIterator it = graph.outEdgeIterator(nodeId); it.hasNext();) {
+      addEdge(edges, it.nextRow());
+    }
+    for (RowIterator it = graph.inEdgeIterator(nodeId); it.hasNext();) {
+      int edgeId = it.nextRow();
+      // Loops are already listed as out edges.
+      if (graph.getFirstVertex(edgeId) != nodeId) {
+        addEdge(edges, edgeId);
       }
     }
     return edges;
@@ -436,12 +478,15 @@ public class IvtkObviousNetwork implements Network {
    */
   public Collection<Node> getIncidentNodes(Edge edge) {
     Collection<Node> nodes = new ArrayList<Node>();
-    int first = graph.getFirstVertex(getEdgeId(edge));
-    int second = graph.getSecondVertex(getEdgeId(edge));
-    for (Node node : nodeToId.keySet()) {
-      if (getNodeId(node) == first || getNodeId(node) == second) {
-        nodes.add(node);
-      }
+    int edgeId = getEdgeId(edge);
+    if (edgeId == infovis.Graph.NIL) {
+      return nodes;
+    }
+    int first = graph.getFirstVertex(edgeId);
+    int second = graph.getSecondVertex(edgeId);
+    addNode(nodes, first);
+    if (second != first) {
+      addNode(nodes, second);
     }
     return nodes;
   }
@@ -453,8 +498,18 @@ public class IvtkObviousNetwork implements Network {
    */
   public Collection<Node> getNeighbors(Node node) {
     Collection<Node> neighborhood = new ArrayList<Node>();
-    for (Edge edge : this.getIncidentEdges(node)) {
-      neighborhood.add(this.getOpposite(node, edge));
+    int nodeId = getNodeId(node);
+    if (nodeId == infovis.Graph.NIL) {
+      return neighborhood;
+    }
+    for (RowIterator it = graph.outEdgeIterator(nodeId); it.hasNext();) {
+      addNode(neighborhood, graph.getSecondVertex(it.nextRow()));
+    }
+    for (RowIterator it = graph.inEdgeIterator(nodeId); it.hasNext();) {
+      int edgeId = it.nextRow();
+      if (graph.getFirstVertex(edgeId) != nodeId) {
+        addNode(neighborhood, graph.getFirstVertex(edgeId));
+      }
     }
     return neighborhood;
   }
@@ -480,13 +535,12 @@ public class IvtkObviousNetwork implements Network {
    * @return opposite node
    */
   public Node getOpposite(Node node, Edge edge) {
-    int nodeId = graph.getOtherVertex(getEdgeId(edge), getNodeId(node));
-    for (Map.Entry<Node, Integer> e : nodeToId.entrySet()) {
-      if (e.getValue() == nodeId) {
-        return e.getKey();
-      }
+    int edgeId = getEdgeId(edge);
+    int nodeId = getNodeId(node);
+    if (edgeId == infovis.Graph.NIL || nodeId == infovis.Graph.NIL) {
+      return null;
     }
-    return null;
+    return getNode(graph.getOtherVertex(edgeId, nodeId));
   }
 
   /**
@@ -496,12 +550,10 @@ public class IvtkObviousNetwork implements Network {
    */
   public Collection<Edge> getOutEdges(Node node) {
     Collection<Edge> outEdges = new ArrayList<Edge>();
-    RowIterator it = graph.outEdgeIterator(getNodeId(node));
-    while (it.hasNext()) {
-      for (Map.Entry<Edge, Integer> e : edgeToId.entrySet()) {
-        if (e.getValue() == it.next()) {
-          outEdges.add(e.getKey());
-        }
+    int nodeId = getNodeId(node);
+    if (nodeId != infovis.Graph.NIL) {
+      for (RowIterator it = graph.outEdgeIterator(nodeId); it.hasNext();) {
+        addEdge(outEdges, it.nextRow());
       }
     }
     return outEdges;
@@ -518,15 +570,10 @@ public class IvtkObviousNetwork implements Network {
       return this.getNeighbors(node);
     } else {
       Collection<Node> preds = new ArrayList<Node>();
-      Collection<Edge> edges = this.getIncidentEdges(node);
-      for (Edge edge : edges) {
-        if (graph.getSecondVertex(getEdgeId(edge)) == getNodeId(node)) {
-          for (Map.Entry<Node, Integer> e : nodeToId.entrySet()) {
-            if (e.getValue() == graph.getFirstVertex(getEdgeId(edge))) {
-              preds.add(e.getKey());
-              break;
-            }
-          }
+      int nodeId = getNodeId(node);
+      if (nodeId != infovis.Graph.NIL) {
+        for (RowIterator it = graph.inEdgeIterator(nodeId); it.hasNext();) {
+          addNode(preds, graph.getFirstVertex(it.nextRow()));
         }
       }
       return preds;
@@ -539,19 +586,11 @@ public class IvtkObviousNetwork implements Network {
    * @return source node
    */
   public Node getSource(Edge directedEdge) {
-    if (!graph.isDirected()) {
+    int edgeId = getEdgeId(directedEdge);
+    if (!graph.isDirected() || edgeId == infovis.Graph.NIL) {
       return null;
-    } else {
-        Node source = null;
-        int nodeId = graph.getFirstVertex(getEdgeId(directedEdge));
-        for (Map.Entry<Node, Integer> e : nodeToId.entrySet()) {
-          if (e.getValue() == nodeId) {
-            source = e.getKey();
-            break;
-          }
-        }
-        return source;
     }
+    return getNode(graph.getFirstVertex(edgeId));
   }
 
   /**
@@ -564,15 +603,10 @@ public class IvtkObviousNetwork implements Network {
       return this.getNeighbors(node);
     } else {
       Collection<Node> succs = new ArrayList<Node>();
-      Collection<Edge> edges = this.getIncidentEdges(node);
-      for (Edge edge : edges) {
-        if (graph.getFirstVertex(getEdgeId(edge)) == getNodeId(node)) {
-          for (Map.Entry<Node, Integer> e : nodeToId.entrySet()) {
-            if (e.getValue() == graph.getSecondVertex(getEdgeId(edge))) {
-              succs.add(e.getKey());
-              break;
-            }
-          }
+      int nodeId = getNodeId(node);
+      if (nodeId != infovis.Graph.NIL) {
+        for (RowIterator it = graph.outEdgeIterator(nodeId); it.hasNext();) {
+          addNode(succs, graph.getSecondVertex(it.nextRow()));
         }
       }
       return succs;
@@ -585,19 +619,11 @@ public class IvtkObviousNetwork implements Network {
    * @return target node
    */
   public Node getTarget(Edge directedEdge) {
-    if (!graph.isDirected()) {
+    int edgeId = getEdgeId(directedEdge);
+    if (!graph.isDirected() || edgeId == infovis.Graph.NIL) {
       return null;
-    } else {
-        Node target = null;
-        int nodeId = graph.getSecondVertex(getEdgeId(directedEdge));
-        for (Map.Entry<Node, Integer> e : nodeToId.entrySet()) {
-          if (e.getValue() == nodeId) {
-            target = e.getKey();
-            break;
-          }
-        }
-        return target;
     }
+    return getNode(graph.getSecondVertex(edgeId));
   }
 
   /**
@@ -607,11 +633,12 @@ public class IvtkObviousNetwork implements Network {
    */
   public boolean removeEdge(Edge edge) {
     try {
-      if (!edgeToId.containsKey(edge)) {
+      int edgeId = getEdgeId(edge);
+      if (edgeId == infovis.Graph.NIL) {
         return false;
       }
-      graph.removeEdge(getEdgeId(edge));
-      edgeToId.remove(edge);
+      graph.removeEdge(edgeId);
+      uncacheEdge(edgeId);
       fireNetworkEvent(edge.getRow(), edge.getRow(), 0,
           NetworkListener.DELETE_EDGE);
       return true;
@@ -621,17 +648,34 @@ public class IvtkObviousNetwork implements Network {
   }
 
   /**
-   * Removes a node.
+   * Removes a node and its incident edges.
    * @param node node to remove
    * @return true if removed
    */
   public boolean removeNode(Node node) {
     try {
-      if (!nodeToId.containsValue(node.getRow())) {
+      int nodeId = getNodeId(node);
+      if (nodeId == infovis.Graph.NIL) {
         return false;
       }
-      graph.removeVertex(node.getRow());
-      nodeToId.remove(node);
+      ArrayList<Integer> edgeIds = new ArrayList<Integer>();
+      for (RowIterator it = graph.outEdgeIterator(nodeId); it.hasNext();) {
+        edgeIds.add(it.nextRow());
+      }
+      for (RowIterator it = graph.inEdgeIterator(nodeId); it.hasNext();) {
+        edgeIds.add(it.nextRow());
+      }
+      graph.removeVertex(nodeId);
+      for (int edgeId : edgeIds) {
+        uncacheEdge(edgeId);
+      }
+      Node cached = idToNode.get(nodeId);
+      nodeToId.remove(cached);
+      idToNode.set(nodeId, null);
+      List<Object> values = getNodeValues(cached);
+      if (Integer.valueOf(nodeId).equals(nodeValuesToId.get(values))) {
+        nodeValuesToId.remove(values);
+      }
       fireNetworkEvent(node.getRow(), node.getRow(), 0,
           NetworkListener.DELETE_NODE);
       return true;
@@ -642,53 +686,199 @@ public class IvtkObviousNetwork implements Network {
   }
 
   /**
-   * Gets the id of an input node.
+   * Gets the id of an input node. Nodes are compared with the added ones
+   * by value; the index of values answers without scanning the nodes
+   * unless a node has been modified since it was last indexed, in which
+   * case the node found by the scan is indexed under its new values.
    * @param node a node of the graph
-   * @return id of the node
+   * @return id of the node, infovis.Graph.NIL if the node is not found
    */
-  private Integer getNodeId(Node node) {
-    Integer id = null;
+  private int getNodeId(Node node) {
+    if (node == null || nodeSchema == null) {
+      return infovis.Graph.NIL;
+    }
+    List<Object> values = getNodeValues(node);
+    Integer id = getIndexedNodeId(values);
+    if (id != null) {
+      return id;
+    }
     for (Map.Entry<Node, Integer> e : nodeToId.entrySet()) {
-      boolean nodeEquals = true;
-      for (int i = 0; i < nodeSchema.getColumnCount(); i++) {
-        String colName = nodeSchema.getColumnName(i);
-        if (!node.get(colName).equals(e.getKey().get(colName))) {
-          nodeEquals = false;
-          break;
-        }
-      }
-      if (nodeEquals) {
-        id = e.getValue();
-        break;
+      if (values.equals(getNodeValues(e.getKey()))) {
+        nodeValuesToId.put(values, e.getValue());
+        return e.getValue();
       }
     }
-    return id;
+    return infovis.Graph.NIL;
   }
 
   /**
-   * Gets the id of an input edge.
+   * Gets the id of an input edge. Edges are compared with the added ones
+   * by value, on the columns stored by ivtk. As for nodes, an edge found
+   * by scanning is indexed under its new values.
    * @param edge an edge of the graph
-   * @return id of the edge
+   * @return id of the edge, infovis.Graph.NIL if the edge is not found
    */
-  private Integer getEdgeId(Edge edge) {
-    Integer id = null;
+  private int getEdgeId(Edge edge) {
+    if (edge == null || edgeSchema == null) {
+      return infovis.Graph.NIL;
+    }
+    List<Object> values = getEdgeValues(edge);
+    Integer id = getIndexedEdgeId(values);
+    if (id != null) {
+      return id;
+    }
     for (Map.Entry<Edge, Integer> e : edgeToId.entrySet()) {
-      boolean edgeEquals = true;
-      for (int i = 0; i < edgeSchema.getColumnCount(); i++) {
-        String colName = edgeSchema.getColumnName(i);
-        if (graph.getEdgeTable().getColumn(colName) != null) {
-          if (!edge.get(colName).equals(e.getKey().get(colName))) {
-            edgeEquals = false;
-            break;
-          }
-        }
+      if (values.equals(getEdgeValues(e.getKey()))) {
+        edgeValuesToId.put(values, e.getValue());
+        return e.getValue();
       }
-      if (edgeEquals) {
-        id = e.getValue();
-        break;
+    }
+    return infovis.Graph.NIL;
+  }
+
+  /**
+   * Gets the id indexed under the values of a node, if the node of this id
+   * still has these values. Stale entries, left by nodes modified since
+   * they were indexed, are dropped.
+   * @param values values of a node
+   * @return id of the node, null if the index has no valid entry
+   */
+  private Integer getIndexedNodeId(List<Object> values) {
+    Integer id = nodeValuesToId.get(values);
+    if (id == null) {
+      return null;
+    }
+    Node indexed = getNode(id);
+    if (indexed != null && values.equals(getNodeValues(indexed))) {
+      return id;
+    }
+    nodeValuesToId.remove(values);
+    return null;
+  }
+
+  /**
+   * Gets the id indexed under the values of an edge, if the edge of this id
+   * still has these values. Stale entries are dropped.
+   * @param values values of an edge
+   * @return id of the edge, null if the index has no valid entry
+   */
+  private Integer getIndexedEdgeId(List<Object> values) {
+    Integer id = edgeValuesToId.get(values);
+    if (id == null) {
+      return null;
+    }
+    Edge indexed = getEdge(id);
+    if (indexed != null && values.equals(getEdgeValues(indexed))) {
+      return id;
+    }
+    edgeValuesToId.remove(values);
+    return null;
+  }
+
+  /**
+   * Gets the values identifying a node.
+   * @param node a node
+   * @return its values for the columns of the node schema
+   */
+  private List<Object> getNodeValues(Node node) {
+    Object[] values = new Object[nodeSchema.getColumnCount()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = node.get(nodeSchema.getColumnName(i));
+    }
+    return Arrays.asList(values);
+  }
+
+  /**
+   * Gets the values identifying an edge.
+   * @param edge an edge
+   * @return its values for the columns of the edge schema stored by ivtk
+   */
+  private List<Object> getEdgeValues(Edge edge) {
+    List<Object> values = new ArrayList<Object>();
+    for (int i = 0; i < edgeSchema.getColumnCount(); i++) {
+      String colName = edgeSchema.getColumnName(i);
+      if (graph.getEdgeTable().getColumn(colName) != null) {
+        values.add(edge.get(colName));
       }
     }
-    return id;
+    return values;
+  }
+
+  /**
+   * Gets the Obvious node of an ivtk node index.
+   * @param nodeId ivtk node index
+   * @return the node, null if it is not known
+   */
+  private Node getNode(int nodeId) {
+    return nodeId >= 0 && nodeId < idToNode.size() ? idToNode.get(nodeId)
+        : null;
+  }
+
+  /**
+   * Gets the Obvious edge of an ivtk edge index.
+   * @param edgeId ivtk edge index
+   * @return the edge, null if it is not known
+   */
+  private Edge getEdge(int edgeId) {
+    return edgeId >= 0 && edgeId < idToEdge.size() ? idToEdge.get(edgeId)
+        : null;
+  }
+
+  /**
+   * Adds the Obvious node of an ivtk node index to a collection if it is
+   * known.
+   * @param nodes a collection
+   * @param nodeId ivtk node index
+   */
+  private void addNode(Collection<Node> nodes, int nodeId) {
+    Node node = getNode(nodeId);
+    if (node != null) {
+      nodes.add(node);
+    }
+  }
+
+  /**
+   * Adds the Obvious edge of an ivtk edge index to a collection if it is
+   * known.
+   * @param edges a collection
+   * @param edgeId ivtk edge index
+   */
+  private void addEdge(Collection<Edge> edges, int edgeId) {
+    Edge edge = getEdge(edgeId);
+    if (edge != null) {
+      edges.add(edge);
+    }
+  }
+
+  /**
+   * Removes a deleted ivtk edge from the caches.
+   * @param edgeId ivtk edge index
+   */
+  private void uncacheEdge(int edgeId) {
+    Edge cached = getEdge(edgeId);
+    if (cached == null) {
+      return;
+    }
+    edgeToId.remove(cached);
+    idToEdge.set(edgeId, null);
+    List<Object> values = getEdgeValues(cached);
+    if (Integer.valueOf(edgeId).equals(edgeValuesToId.get(values))) {
+      edgeValuesToId.remove(values);
+    }
+  }
+
+  /**
+   * Stores an element in an id-indexed cache, growing it if needed.
+   * @param <T> type of the elements
+   * @param cache a cache
+   * @param id index of the element
+   * @param element the element
+   */
+  private static <T> void setCached(ArrayList<T> cache, int id, T element) {
+    while (cache.size() <= id) {
+      cache.add(null);
+    }
+    cache.set(id, element);
   }
 
   /**
@@ -29,13 +29,18 @@
 package test.obvious.ivtk;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import obvious.data.Network;
+import obvious.data.Node;
 import obvious.data.Schema;
 import obvious.data.Graph.EdgeType;
 import obvious.impl.EdgeImpl;
 import obvious.impl.NodeImpl;
 import obvious.impl.TupleImpl;
 import obvious.ivtk.data.IvtkObviousNetwork;
+
+import org.junit.Test;
+
 import test.obvious.data.NetworkTest;
 
 /**
@@ -76,4 +81,28 @@ public class IvtkNetworkTest extends NetworkTest {
         new NodeImpl(nodeTable, 0)).size());
   }
 
+  /**
+   * Test method checking that a node modified after its addition is still
+   * found, through the index of values once it has been scanned for, and
+   * that its stale index entry does not hide a node added later with its
+   * former values.
+   */
+  @Test
+  public void testModifiedNode() {
+    Node node = new NodeImpl(nodeTable, 1);
+    nodeTable.set(1, "nodeName", "renamed");
+    assertEquals(3, network.getNeighbors(node).size());
+    assertEquals(3, network.getIncidentEdges(node).size());
+    assertTrue(network.removeNode(node));
+    assertEquals(NODENUMBER - 1, network.getNodes().size());
+    nodeTable.addRow(new TupleImpl(nodeTable.getSchema(),
+        new Object[] {"node_1"}));
+    Node added = new NodeImpl(nodeTable, NODENUMBER);
+    assertTrue(network.addNode(added));
+    assertTrue(network.addEdge(new EdgeImpl(edgeTable, 2), added,
+        new NodeImpl(nodeTable, 0), EdgeType.UNDIRECTED));
+    assertEquals(NODENUMBER, network.getNodes().size());
+    assertEquals(1, network.getNeighbors(added).size());
+  }
+
 }
@@ -0,0 +1,261 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import obvious.data.Table;
+import obvious.data.event.TableListener;
+
+/**
+ * Least recently used cache of column blocks of a JDBC table.
+ * <p>
+ * A block holds the values of one column for a range of BLOCK_SIZE
+ * consecutive row indexes, so reading a column for many rows costs one
+ * query per block and never reads the other columns. The cache is bounded
+ * by a number of blocks. As a TableListener, it drops the blocks holding
+ * the rows notified as changed.
+ * </p>
+ * @author obvious
+ *
+ */
+public class JDBCColumnCache implements TableListener {
+
+  /**
+   * Number of rows of a block.
+   */
+  public static final int BLOCK_SIZE = 256;
+
+  /**
+   * Default maximum number of cached blocks.
+   */
+  public static final int DEFAULT_MAX_BLOCKS = 1024;
+
+  /**
+   * Cached blocks by column and block index, in access order.
+   */
+  private LinkedHashMap<Long, Object[]> blocks =
+    new LinkedHashMap<Long, Object[]>(16, 0.75f, true);
+
+  /**
+   * Maximum number of cached blocks.
+   */
+  private int maxBlocks;
+
+  /**
+   * Number of blocks found in the cache.
+   */
+  private long hitCount;
+
+  /**
+   * Number of blocks not found in the cache.
+   */
+  private long missCount;
+
+  /**
+   * Constructor.
+   * @param maxBlockCount maximum number of cached blocks
+   */
+  public JDBCColumnCache(int maxBlockCount) {
+    setMaxBlocks(maxBlockCount);
+  }
+
+  /**
+   * Constructor with the default bound.
+   */
+  public JDBCColumnCache() {
+    this(DEFAULT_MAX_BLOCKS);
+  }
+
+  /**
+   * Gets the maximum number of cached blocks.
+   * @return the maximum number of cached blocks
+   */
+  public int getMaxBlocks() {
+    return maxBlocks;
+  }
+
+  /**
+   * Sets the maximum number of cached blocks, evicting blocks if needed.
+   * @param maxBlockCount maximum number of cached blocks, at least one
+   */
+  public void setMaxBlocks(int maxBlockCount) {
+    if (maxBlockCount < 1) {
+      throw new IllegalArgumentException("Cache needs at least one block");
+    }
+    this.maxBlocks = maxBlockCount;
+    evict();
+  }
+
+  /**
+   * Gets the block holding a row for a column.
+   * @param col column index
+   * @param row row index
+   * @return the block, null if not cached
+   */
+  public Object[] get(int col, int row) {
+    Object[] block = blocks.get(key(col, row));
+    if (block != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return block;
+  }
+
+  /**
+   * Puts in the cache the block holding a row for a column.
+   * @param col column index
+   * @param row a row index of the block
+   * @param block values of the rows of the block, indexed by row modulo
+   * BLOCK_SIZE
+   */
+  public void put(int col, int row, Object[] block) {
+    blocks.put(key(col, row), block);
+    evict();
+  }
+
+  /**
+   * Drops the blocks holding a range of rows.
+   * @param start first row
+   * @param end last row
+   * @param col column index, ALL_COLUMN for all columns
+   */
+  public void invalidate(int start, int end, int col) {
+    long first = start / BLOCK_SIZE;
+    long last = end / BLOCK_SIZE;
+    for (Iterator<Long> it = blocks.keySet().iterator(); it.hasNext();) {
+      long key = it.next();
+      long block = key & 0xFFFFFFFFL;
+      if (block >= first && block <= last
+          && (col == TableListener.ALL_COLUMN || (key >>> 32) == col)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Drops all the blocks.
+   */
+  public void clear() {
+    blocks.clear();
+  }
+
+  /**
+   * Gets the number of cached blocks.
+   * @return the number of cached blocks
+   */
+  public int size() {
+    return blocks.size();
+  }
+
+  /**
+   * Gets the number of blocks found in the cache.
+   * @return the hit count
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Gets the number of blocks not found in the cache.
+   * @return the miss count
+   */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Gets the key of the block holding a row for a column.
+   * @param col column index
+   * @param row row index
+   * @return the key
+   */
+  private static Long key(int col, int row) {
+    return ((long) col << 32) | (row / BLOCK_SIZE);
+  }
+
+  /**
+   * Evicts the least recently used blocks beyond the bound.
+   */
+  private void evict() {
+    Iterator<Map.Entry<Long, Object[]>> it = blocks.entrySet().iterator();
+    while (blocks.size() > maxBlocks && it.hasNext()) {
+      it.next();
+      it.remove();
+    }
+  }
+
+  /**
+   * Specifies that the following calls to tableChanged belong to the same
+   * transaction.
+   * @param context an integer used, if needed, to identify the edition
+   * context of the edit.
+   */
+  public void beginEdit(int context) {
+  }
+
+  /**
+   * Specifies that the calls to tableChanged belonging to the same
+   * transaction are finished.
+   * @param context an integer used, if needed, to retrieve the edition
+   * context
+   * @return true if transaction succeed
+   */
+  public boolean endEdit(int context) {
+    return true;
+  }
+
+  /**
+   * Checks if the table meets criteria defined by invariant(s).
+   * @return true if the invariant is checked
+   */
+  public boolean checkInvariants() {
+    return true;
+  }
+
+  /**
+   * Notifies that a table has changed. The blocks of the changed rows are
+   * dropped, an event without row range clears the cache.
+   * @param t the table that has changed
+   * @param start the starting row index of the changed table region
+   * @param end the ending row index of the changed table region
+   * @param col the column that has changed, or ALL_COLUMN
+   * @param type the type of modification
+   */
+  public void tableChanged(Table t, int start, int end, int col, int type) {
+    if (start < 0 || end < start) {
+      clear();
+    } else {
+      invalidate(start, end, col);
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Source of JDBC connections for the obvious JDBC binding.
+ * <p>
+ * Classes of the binding borrow a connection for an operation and give it
+ * back with {@link #release(Connection)} instead of opening and closing a
+ * connection each time. {@link SimpleConnectionPool} is the default
+ * implementation; applications can plug in their own pool, for instance
+ * one backed by an application server DataSource.
+ * </p>
+ * @author obvious
+ *
+ */
+public interface JDBCConnectionPool {
+
+  /**
+   * Borrows a connection.
+   * @return an open connection
+   * @throws SQLException if no connection can be opened
+   */
+  Connection getConnection() throws SQLException;
+
+  /**
+   * Gives back a connection obtained from this pool.
+   * @param con a connection, ignored if null
+   */
+  void release(Connection con);
+
+}
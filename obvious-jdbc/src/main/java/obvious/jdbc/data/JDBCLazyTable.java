@@ -0,0 +1,574 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import obvious.ObviousException;
+import obvious.ObviousRuntimeException;
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.data.Tuple;
+import obvious.data.event.TableListener;
+import obvious.data.util.IntIterator;
+import obvious.data.util.Predicate;
+import obvious.impl.FilterIntIterator;
+
+/**
+ * Table view on a database table whose rows are identified by a
+ * {@link JDBCRowIndex}.
+ * <p>
+ * No value is read when the view or a tuple on it is created: values are
+ * read on first access, one column at a time for blocks of
+ * {@link JDBCColumnCache#BLOCK_SIZE} rows, and kept in a bounded column
+ * cache shared by all the tuples. JDBCObviousNetwork uses these views for
+ * its nodes and edges, so that algorithms reading a few columns never read
+ * the others. Rows are added and removed through the owner of the row
+ * index, which notifies the view with {@link #fireTableEvent}, or with
+ * {@link #delayTableEvent} while it buffers its writes in a batch; values
+ * can be modified through the view. Operations pending in the batch of the
+ * statement pool are executed before the view reads or writes the
+ * database, by the {@link BatchOwner batch owner} if one is set, so that
+ * it can notify their events or undo them if they fail.
+ * </p>
+ * @author obvious
+ *
+ */
+public class JDBCLazyTable implements Table {
+
+  /**
+   * Pooled statements of the connection.
+   */
+  private JDBCStatementCache statements;
+
+  /**
+   * Name of the database table.
+   */
+  private String tableName;
+
+  /**
+   * Primary key column of the database table.
+   */
+  private String primaryKey;
+
+  /**
+   * Schema of the view.
+   */
+  private Schema schema;
+
+  /**
+   * Row indexes and primary key values.
+   */
+  private JDBCRowIndex rowIndex;
+
+  /**
+   * Cache of the values read.
+   */
+  private JDBCColumnCache columnCache = new JDBCColumnCache();
+
+  /**
+   * Table listeners.
+   */
+  private Collection<TableListener> listener = new ArrayList<TableListener>();
+
+  /**
+   * Is the table being edited.
+   */
+  private boolean editing = false;
+
+  /**
+   * Delayed events, contiguous ones of the same type coalesced. Each event is
+   * {start, end, col, type}.
+   */
+  private List<int[]> pendingEvents = new ArrayList<int[]>();
+
+  /**
+   * Owner executing the pending batch, null to execute it directly.
+   */
+  private BatchOwner batchOwner;
+
+  /**
+   * Constructor.
+   * @param stmts pooled statements of the connection
+   * @param tName name of the database table
+   * @param keyColumn primary key column of the database table
+   * @param inSchema schema of the view, its columns have to exist in the
+   * database table
+   * @param index row indexes and primary key values of the rows
+   */
+  public JDBCLazyTable(JDBCStatementCache stmts, String tName,
+      String keyColumn, Schema inSchema, JDBCRowIndex index) {
+    this.statements = stmts;
+    this.tableName = tName;
+    this.primaryKey = keyColumn;
+    this.schema = inSchema;
+    this.rowIndex = index;
+  }
+
+  /**
+   * Sets the owner executing the operations pending in the batch of the
+   * statement pool.
+   * @param owner the batch owner, null to execute the batch directly
+   */
+  public void setBatchOwner(BatchOwner owner) {
+    this.batchOwner = owner;
+  }
+
+  /**
+   * Executes the operations pending in the batch of the statement pool.
+   * @throws SQLException if the batch fails
+   */
+  private void executeBatch() throws SQLException {
+    if (batchOwner == null) {
+      statements.executeBatch();
+    } else {
+      try {
+        batchOwner.flushBatch();
+      } catch (ObviousException e) {
+        throw new ObviousRuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Gets the cache of the values read.
+   * @return the column cache
+   */
+  public JDBCColumnCache getColumnCache() {
+    return columnCache;
+  }
+
+  /**
+   * Gets the schema attribute.
+   * @return the Obvious schema of this table
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Gets the number of rows.
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return rowIndex.getRowCount();
+  }
+
+  /**
+   * Gets an iterator over the row numbers of this table.
+   * @return an iterator over the rows of this table
+   */
+  public IntIterator rowIterator() {
+    return rowIndex.rowIterator();
+  }
+
+  /**
+   * Gets an iterator over the row id of this table matching the given
+   * predicate.
+   * @param pred an obvious predicate
+   * @return an iterator over the rows of this table.
+   */
+  public IntIterator rowIterator(Predicate pred) {
+    return new FilterIntIterator(this, pred);
+  }
+
+  /**
+   * Checks if a row is valid.
+   * @param rowId index of the row
+   * @return true if valid
+   */
+  public boolean isValidRow(int rowId) {
+    return rowIndex.isValidRow(rowId);
+  }
+
+  /**
+   * Gets a value, reading its column block if it is not cached.
+   * @param rowId index of the row
+   * @param field name of the column
+   * @return the value, null if the row does not exist
+   */
+  public Object getValue(int rowId, String field) {
+    return getValue(rowId, schema.getColumnIndex(field));
+  }
+
+  /**
+   * Gets a value, reading its column block if it is not cached.
+   * @param rowId index of the row
+   * @param col index of the column
+   * @return the value, null if the row does not exist
+   */
+  public Object getValue(int rowId, int col) {
+    if (!isValueValid(rowId, col)) {
+      return null;
+    }
+    Object[] block = columnCache.get(col, rowId);
+    if (block == null) {
+      block = fetchBlock(col, rowId);
+      columnCache.put(col, rowId, block);
+    }
+    return block[rowId % JDBCColumnCache.BLOCK_SIZE];
+  }
+
+  /**
+   * Reads with a single query the values of a column for the block holding
+   * a row. The key list is padded so that a single statement serves all
+   * blocks.
+   * @param col index of the column
+   * @param rowId a row of the block
+   * @return the values of the block
+   */
+  private Object[] fetchBlock(int col, int rowId) {
+    int first = rowId - rowId % JDBCColumnCache.BLOCK_SIZE;
+    Object[] block = new Object[JDBCColumnCache.BLOCK_SIZE];
+    List<Object> keys = new ArrayList<Object>();
+    for (int row = first; row < first + block.length; row++) {
+      if (rowIndex.isValidRow(row) && rowIndex.getKey(row) != null) {
+        keys.add(rowIndex.getKey(row));
+      }
+    }
+    if (keys.isEmpty()) {
+      return block;
+    }
+    while (keys.size() < block.length) {
+      keys.add(keys.get(keys.size() - 1));
+    }
+    StringBuffer request = new StringBuffer("SELECT ");
+    request.append(schema.getColumnName(col)).append(", ").append(primaryKey)
+      .append(" FROM ").append(tableName).append(" WHERE ").append(primaryKey)
+      .append(" IN (");
+    for (int i = 0; i < keys.size(); i++) {
+      request.append(i == 0 ? "?" : ", ?");
+    }
+    request.append(")");
+    ResultSet result = null;
+    try {
+      executeBatch();
+      PreparedStatement pStatement = statements.prepare(request.toString());
+      for (int i = 0; i < keys.size(); i++) {
+        bindKey(pStatement, i + 1, keys.get(i));
+      }
+      result = pStatement.executeQuery();
+      while (result.next()) {
+        int row = rowIndex.getRow(result.getObject(2));
+        if (row >= first && row < first + block.length) {
+          block[row - first] = result.getObject(1);
+        }
+      }
+      return block;
+    } catch (SQLException e) {
+      throw new ObviousRuntimeException(e);
+    } finally {
+      try {
+        if (result != null) {
+          result.close();
+        }
+      } catch (SQLException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Binds a primary key value to a parameter of a statement.
+   * @param stmt a prepared statement
+   * @param index index of the parameter
+   * @param key primary key value
+   * @throws SQLException if the value cannot be bound
+   */
+  private void bindKey(PreparedStatement stmt, int index, Object key)
+      throws SQLException {
+    Class<?> type = schema.getColumnIndex(primaryKey) >= 0
+        ? schema.getColumnType(primaryKey) : null;
+    JDBCStatementCache.setParameter(stmt, index, key, type);
+  }
+
+  /**
+   * Checks if a given value is valid.
+   * @param rowId index of the row
+   * @param col index of the column
+   * @return true if valid
+   */
+  public boolean isValueValid(int rowId, int col) {
+    return isValidRow(rowId) && col >= 0 && col < schema.getColumnCount();
+  }
+
+  /**
+   * Sets a value in the database.
+   * @param rowId index of the row
+   * @param field name of the column
+   * @param val value to set
+   */
+  public void set(int rowId, String field, Object val) {
+    set(rowId, schema.getColumnIndex(field), val);
+  }
+
+  /**
+   * Sets a value in the database.
+   * @param rowId index of the row
+   * @param col index of the column
+   * @param val value to set
+   */
+  public void set(int rowId, int col, Object val) {
+    if (!isValueValid(rowId, col)) {
+      return;
+    }
+    String field = schema.getColumnName(col);
+    try {
+      executeBatch();
+      PreparedStatement pStatement = statements.prepare("UPDATE " + tableName
+          + " SET " + field + " = ? WHERE " + primaryKey + " = ?");
+      JDBCStatementCache.setParameter(pStatement, 1, val,
+          schema.getColumnType(col));
+      bindKey(pStatement, 2, rowIndex.getKey(rowId));
+      pStatement.executeUpdate();
+      if (field.equals(primaryKey)) {
+        rowIndex.setKey(rowId, val);
+        // Lets the owner record the executed key change.
+        executeBatch();
+      }
+    } catch (SQLException e) {
+      throw new ObviousRuntimeException(e);
+    }
+    fireTableEvent(rowId, rowId, col, TableListener.UPDATE);
+  }
+
+  /**
+   * Indicates if it is possible to add a row in this view.
+   * @return false, rows are added by the owner of the row index
+   */
+  public boolean canAddRow() {
+    return false;
+  }
+
+  /**
+   * Indicates if it is possible to remove a row in this view.
+   * @return false, rows are removed by the owner of the row index
+   */
+  public boolean canRemoveRow() {
+    return false;
+  }
+
+  /**
+   * Does not add a row, see {@link #canAddRow()}.
+   * @return the number of rows
+   */
+  public int addRow() {
+    return getRowCount();
+  }
+
+  /**
+   * Does not add a row, see {@link #canAddRow()}.
+   * @param tuple a tuple
+   * @return the number of rows
+   */
+  public int addRow(Tuple tuple) {
+    return getRowCount();
+  }
+
+  /**
+   * Does not remove a row, see {@link #canRemoveRow()}.
+   * @param row a row index
+   * @return false
+   */
+  public boolean removeRow(int row) {
+    return false;
+  }
+
+  /**
+   * Does not remove rows, see {@link #canRemoveRow()}.
+   */
+  public void removeAllRows() {
+  }
+
+  /**
+   * Indicates the beginning of a column edit.
+   * @param col column index
+   * @throws ObviousException if edition is not supported.
+   */
+  public void beginEdit(int col) throws ObviousException {
+    this.editing = true;
+    for (TableListener listnr : this.getTableListeners()) {
+      listnr.beginEdit(col);
+    }
+  }
+
+  /**
+   * Indicates the end of a column edit.
+   * @param col column index
+   * @return true if transaction succeed
+   * @throws ObviousException if edition is not supported.
+   */
+  public boolean endEdit(int col) throws ObviousException {
+    this.editing = false;
+    boolean success = true;
+    TableListener failedListener = null;
+    for (TableListener listnr : this.getTableListeners()) {
+      if (!listnr.checkInvariants()) {
+        listnr.endEdit(col);
+        failedListener = listnr;
+        success = false;
+        break;
+      }
+    }
+    for (TableListener listnr : this.getTableListeners()) {
+      if (success && !listnr.equals(failedListener)) {
+        listnr.endEdit(col);
+      }
+    }
+    return success;
+  }
+
+  /**
+   * Indicates if a column is being edited.
+   * @param col column index
+   * @return true if edited
+   */
+  public boolean isEditing(int col) {
+    return editing;
+  }
+
+  /**
+   * Adds an indicated table listener.
+   * @param listnr given table listener
+   */
+  public void addTableListener(TableListener listnr) {
+    if (!listener.contains(listnr)) {
+      listener.add(listnr);
+    }
+  }
+
+  /**
+   * Removes a specified TableListener.
+   * @param listnr listener to remove
+   */
+  public void removeTableListener(TableListener listnr) {
+    listener.remove(listnr);
+  }
+
+  /**
+   * Gets all table listener.
+   * @return a collection of table listeners.
+   */
+  public Collection<TableListener> getTableListeners() {
+    return listener;
+  }
+
+  /**
+   * Notifies changes to the column cache and the listeners.
+   * @param start the starting row index of the changed table region
+   * @param end the ending row index of the changed table region
+   * @param col the column that has changed
+   * @param type the type of modification
+   */
+  public void fireTableEvent(int start, int end, int col, int type) {
+    columnCache.tableChanged(this, start, end, col, type);
+    for (TableListener listnr : listener) {
+      listnr.tableChanged(this, start, end, col, type);
+    }
+  }
+
+  /**
+   * Notifies a change whose operation is still pending in a batch. The
+   * column cache is invalidated at once, while the listeners are notified
+   * by {@link #firePendingEvents()}; the event is merged with the previous
+   * pending event if it has the same type and a row range overlapping or
+   * touching this one.
+   * @param start the starting row index of the changed table region
+   * @param end the ending row index of the changed table region
+   * @param col the column that has changed
+   * @param type the type of modification
+   */
+  public void delayTableEvent(int start, int end, int col, int type) {
+    columnCache.tableChanged(this, start, end, col, type);
+    if (!pendingEvents.isEmpty()) {
+      int[] last = pendingEvents.get(pendingEvents.size() - 1);
+      if (last[3] == type && start <= last[1] + 1 && end >= last[0] - 1) {
+        last[0] = Math.min(last[0], start);
+        last[1] = Math.max(last[1], end);
+        if (last[2] != col) {
+          last[2] = TableListener.ALL_COLUMN;
+        }
+        return;
+      }
+    }
+    pendingEvents.add(new int[] {start, end, col, type});
+  }
+
+  /**
+   * Notifies the delayed events, once their operations are executed.
+   */
+  public void firePendingEvents() {
+    List<int[]> events = pendingEvents;
+    pendingEvents = new ArrayList<int[]>();
+    for (int[] event : events) {
+      fireTableEvent(event[0], event[1], event[2], event[3]);
+    }
+  }
+
+  /**
+   * Discards the delayed events, once their operations failed and were
+   * undone, and clears the column cache.
+   */
+  public void discardPendingEvents() {
+    pendingEvents = new ArrayList<int[]>();
+    columnCache.clear();
+  }
+
+  /**
+   * Return the underlying implementation.
+   * @param type targeted class
+   * @return the row index if asked, null otherwise
+   */
+  public Object getUnderlyingImpl(Class<?> type) {
+    if (type.equals(JDBCRowIndex.class)) {
+      return rowIndex;
+    }
+    return null;
+  }
+
+  /**
+   * Owner of the row index of views, buffering its writes in the batch of
+   * the statement pool.
+   */
+  public interface BatchOwner {
+
+    /**
+     * Executes the pending operations of the batch, then notifies their
+     * delayed events, or undoes them if they fail.
+     * @throws ObviousException if the batch fails
+     */
+    void flushBatch() throws ObviousException;
+
+  }
+
+}
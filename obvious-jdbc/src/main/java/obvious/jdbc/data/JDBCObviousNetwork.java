@@ -27,17 +27,14 @@
 
 package obvious.jdbc.data;
 
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import obvious.ObviousException;
 import obvious.ObviousRuntimeException;
@@ -47,9 +44,13 @@ import obvious.data.Network;
 import obvious.data.Node;
 import obvious.data.Schema;
 import obvious.data.Table;
+import obvious.data.Tuple;
 import obvious.data.event.NetworkListener;
+import obvious.data.event.TableListener;
+import obvious.data.util.IntIterator;
 import obvious.impl.EdgeImpl;
 import obvious.impl.NodeImpl;
+import obvious.impl.index.AdjacencyIndex;
 
 /**
  * This class is an implementation of the Obvious
@@ -64,22 +65,18 @@ import obvious.impl.NodeImpl;
  * to implement them through JDBC. This Obvious data structure
  * can be used as a "traditional" Obvious implementation based
  * on an InfoVis toolkit.
+ * In batch mode, insertions and deletions are sent in batches and their
+ * events are delayed until the batch is executed. If a batch fails, its
+ * nodes and edges are restored in the indexes and the structure and its
+ * events are discarded; the failure is thrown by the operation that
+ * triggered the execution, as an ObviousRuntimeException, or by
+ * {@link #endEdit(int) endEdit}.
  * @see obvious.data.Network
  * @author Hemery
  *
  */
 public class JDBCObviousNetwork implements Network {
 
-  /**
-   * Node counter.
-   */
-  private static int nodeCount = 0;
-
-  /**
-   * Edge counter.
-   */
-  private static int edgeCount = 0;
-
   /**
    * JDBC connection.
    */
@@ -106,19 +103,29 @@ public class JDBCObviousNetwork implements Network {
   private String edgeKey;
 
   /**
-   * Map linking node primary key value (in JDBC) to nodeId in obvious.
+   * Index linking node ids in obvious to node primary key values in JDBC.
+   */
+  private JDBCRowIndex nodeIndex;
+
+  /**
+   * Index linking edge ids in obvious to edge primary key values in JDBC.
    */
-  private Map<Object, Integer> nodeKeyToNodeId;
+  private JDBCRowIndex edgeIndex;
 
   /**
-   * Map linking edge primary key value (in JDBC) to edgeId in obvious.
+   * Describe the network structure with node and edge ids.
    */
-  private Map<Object, Integer> edgeKeyToEdgeId;
+  private AdjacencyIndex networkStruct = new AdjacencyIndex();
 
   /**
-   * Describe the network structure.
+   * Lazy view on the node table, node ids are its row indexes.
    */
-  private Map<Integer, Integer[]> networkStruct;
+  private JDBCLazyTable nodeView;
+
+  /**
+   * Lazy view on the edge table, edge ids are its row indexes.
+   */
+  private JDBCLazyTable edgeView;
 
   /**
    * Column describing source node in edge table.
@@ -152,16 +159,29 @@ public class JDBCObviousNetwork implements Network {
   private boolean isInBatchMode = false;
 
   /**
-   * Batch statement (used when user sets the batch mode with the beginEdit
-   * method).
+   * Prepared statements of the network, reused for the lifetime of the
+   * connection.
    */
-  private Statement batchStmt;
+  private JDBCStatementCache statements;
 
   /**
    * Batch mode constant.
    */
   public static final int BATCH_MODE = 1;
 
+  /**
+   * Number of pending operations that triggers the execution of the batch
+   * in batch mode.
+   */
+  private int batchSize = JDBCObviousTable.DEFAULT_BATCH_SIZE;
+
+  /**
+   * Edges added to or removed from the structure since the last execution
+   * of the batch in batch mode. Each change is {edge, source, target,
+   * added}, added being 1 for an addition and 0 for a removal.
+   */
+  private List<int[]> structChanges = new ArrayList<int[]>();
+
   /**
    * Constructor.
    * @param con JDBC connection
@@ -179,6 +199,7 @@ public class JDBCObviousNetwork implements Network {
       String nodeId, String edgeId, String source, String target,
       Schema inNodeSchema, Schema inEdgeSchema) throws SQLException {
     this.con = con;
+    this.statements = new JDBCStatementCache(con);
     this.nodeTable = nodeTable;
     this.edgeTable = edgeTable;
     this.nodeKey = nodeId;
@@ -187,29 +208,50 @@ public class JDBCObviousNetwork implements Network {
     this.targetCol = target;
     this.nodeSchema = inNodeSchema;
     this.edgeSchema = inEdgeSchema;
-    this.nodeKeyToNodeId = new HashMap<Object, Integer>();
-    this.edgeKeyToEdgeId = new HashMap<Object, Integer>();
-    this.networkStruct = new HashMap<Integer, Integer[]>();
-    loadFromJDBC(nodeTable, nodeKey, nodeKeyToNodeId, nodeCount);
+    this.nodeIndex = new JDBCRowIndex(isIntegral(nodeSchema, nodeKey));
+    this.edgeIndex = new JDBCRowIndex(isIntegral(edgeSchema, edgeKey));
+    this.nodeView = new JDBCLazyTable(statements, nodeTable, nodeKey,
+        nodeSchema, nodeIndex);
+    this.edgeView = new JDBCLazyTable(statements, edgeTable, edgeKey,
+        edgeSchema, edgeIndex);
+    this.edgeView.addTableListener(new EndpointListener());
+    JDBCLazyTable.BatchOwner owner = new JDBCLazyTable.BatchOwner() {
+      public void flushBatch() throws ObviousException {
+        JDBCObviousNetwork.this.flushBatch();
+      }
+    };
+    this.nodeView.setBatchOwner(owner);
+    this.edgeView.setBatchOwner(owner);
+    loadFromJDBC(nodeTable, nodeKey, nodeIndex);
     loadStructure();
   }
 
+  /**
+   * Indicates if a key column holds integral numbers.
+   * @param schema a schema
+   * @param col a column name
+   * @return true if the column is known and integral
+   */
+  private static boolean isIntegral(Schema schema, String col) {
+    int index = schema.getColumnIndex(col);
+    return index >= 0 && JDBCRowIndex.isIntegral(schema.getColumnType(index));
+  }
+
   /**
    * Load the node id into the memory.
    * @param tableName name of the node table
    * @param colId column id for the node table
-   * @param map map containing nodes
-   * @param counter node counter
+   * @param index index receiving the node ids
    * @throws SQLException if something bad happens
    */
   private void loadFromJDBC(String tableName, String colId,
-      Map<Object, Integer> map, int counter) throws SQLException {
+      JDBCRowIndex index) throws SQLException {
     String request = "SELECT " + colId + " FROM " + tableName;
     Statement stmt = con.createStatement();
+    stmt.setFetchSize(JDBCObviousTable.DEFAULT_FETCH_SIZE);
     ResultSet rs = stmt.executeQuery(request);
     while (rs.next()) {
-      map.put(rs.getObject(colId), counter);
-      counter++;
+      index.addRow(rs.getObject(1));
     }
     rs.close();
     stmt.close();
@@ -217,24 +259,53 @@ public class JDBCObviousNetwork implements Network {
 
   /**
    * Loads the graph structure into the memory (only ids are loaded).
+   * Edges whose source or target is not a known node get an id but are not
+   * part of the structure.
    * @throws SQLException if something bad happens
    */
   private void loadStructure() throws SQLException {
-    String request = "SELECT " + edgeKey + ", " + sourceCol + "," + targetCol
-        + " FROM " + edgeTable + " WHERE EDGE_ID < 123000 ORDER BY " + edgeKey;
+    String request = "SELECT " + edgeKey + ", " + sourceCol + ", " + targetCol
+        + " FROM " + edgeTable + " ORDER BY " + edgeKey;
     Statement stmt = con.createStatement();
+    stmt.setFetchSize(JDBCObviousTable.DEFAULT_FETCH_SIZE);
     ResultSet rslt = stmt.executeQuery(request);
     while (rslt.next()) {
-      Object edgeKeyVal = rslt.getObject(edgeKey);
-      Object sourceNode = rslt.getObject(sourceCol);
-      Object targetNode = rslt.getObject(targetCol);
-      edgeKeyToEdgeId.put(edgeKeyVal, edgeCount);
-      networkStruct.put(edgeCount, new Integer[] {
-          nodeKeyToNodeId.get(sourceNode), nodeKeyToNodeId.get(targetNode)});
-      edgeCount++;
+      int edgeId = edgeIndex.addRow(rslt.getObject(1));
+      int sourceId = nodeIndex.getRow(rslt.getObject(2));
+      int targetId = nodeIndex.getRow(rslt.getObject(3));
+      if (sourceId >= 0 && targetId >= 0) {
+        networkStruct.addEdge(edgeId, sourceId, targetId);
+      }
     }
     rslt.close();
     stmt.close();
+    networkStruct.rebuild();
+  }
+
+  /**
+   * Gets the id of a node. Nodes returned by this network give their id
+   * without reading their key.
+   * @param node a node
+   * @return the node id, -1 if the node is not in the network
+   */
+  private int getNodeId(Node node) {
+    if (node.getTable() == nodeView) {
+      return nodeView.isValidRow(node.getRow()) ? node.getRow() : -1;
+    }
+    return nodeIndex.getRow(node.get(nodeKey));
+  }
+
+  /**
+   * Gets the id of an edge. Edges returned by this network give their id
+   * without reading their key.
+   * @param edge an edge
+   * @return the edge id, -1 if the edge is not in the network
+   */
+  private int getEdgeId(Edge edge) {
+    if (edge.getTable() == edgeView) {
+      return edgeView.isValidRow(edge.getRow()) ? edge.getRow() : -1;
+    }
+    return edgeIndex.getRow(edge.get(edgeKey));
   }
 
   @Override
@@ -266,39 +337,22 @@ public class JDBCObviousNetwork implements Network {
       return false;
     } else {
       try {
-        Object edgeKeyVal = edge.get(edgeKey);
-        Object sourceKeyVal = source.get(nodeKey);
-        Object targetKeyVal = target.get(nodeKey);
-        if (!nodeKeyToNodeId.containsKey(sourceKeyVal)) {
+        if (getNodeId(source) < 0) {
           addNode(source);
         }
-        if (!nodeKeyToNodeId.containsKey(targetKeyVal)) {
+        if (getNodeId(target) < 0) {
           addNode(target);
         }
-        edgeKeyToEdgeId.put(edgeKeyVal, edgeCount);
-        edgeCount++;
-        String request = "INSERT INTO " + edgeTable + " ";
-        String colNames = "(";
-        String values = "(";
-        for (int i = 0; i < edgeSchema.getColumnCount(); i++) {
-          colNames += edgeSchema.getColumnName(i);
-          values += "'" + edge.get(i).toString() + "'";
-          if (i != edgeSchema.getColumnCount() - 1) {
-            colNames += ", ";
-            values += ", ";
-          } else {
-            colNames += ")";
-            values += ")";
-          }
-        }
-        request = request + colNames + " VALUES " + values;
-        if (!isInBatchMode) {
-          Statement stmt = con.createStatement();
-          stmt.executeUpdate(request);
-          stmt.close();
-        } else {
-          batchStmt.addBatch(request);
+        insert(edgeTable, edgeSchema, edge);
+        int edgeId = edgeIndex.addRow(edge.get(edgeKey));
+        int sourceId = getNodeId(source);
+        int targetId = getNodeId(target);
+        networkStruct.addEdge(edgeId, sourceId, targetId);
+        if (isInBatchMode) {
+          structChanges.add(new int[] {edgeId, sourceId, targetId, 1});
         }
+        notifyChange(edgeView, edgeId, edgeId, TableListener.ALL_COLUMN,
+            TableListener.INSERT);
         return true;
       } catch (Exception e) {
         try {
@@ -319,31 +373,10 @@ public class JDBCObviousNetwork implements Network {
       return false;
     } else {
         try {
-          Object nodeKeyVal = node.get(nodeKey);
-          nodeKeyToNodeId.put(nodeKeyVal, nodeCount);
-          nodeCount++;
-          String request = "INSERT INTO " + nodeTable + " ";
-          String colNames = "(";
-          String values = "(";
-          for (int i = 0; i < nodeSchema.getColumnCount(); i++) {
-            colNames += nodeSchema.getColumnName(i);
-            values += "'" + node.get(i).toString() + "'";
-            if (i != nodeSchema.getColumnCount() - 1) {
-              colNames += ", ";
-              values += ", ";
-            } else {
-              colNames += ")";
-              values += ")";
-            }
-          }
-          request = request + colNames + " VALUES " + values;
-          if (!isInBatchMode) {
-            Statement stmt = con.createStatement();
-            stmt.executeUpdate(request);
-            stmt.close();
-          } else {
-            batchStmt.addBatch(request);
-          }
+          insert(nodeTable, nodeSchema, node);
+          int nodeId = nodeIndex.addRow(node.get(nodeKey));
+          notifyChange(nodeView, nodeId, nodeId, TableListener.ALL_COLUMN,
+              TableListener.INSERT);
           return true;
         } catch (Exception e) {
           try {
@@ -372,12 +405,9 @@ public class JDBCObviousNetwork implements Network {
   public void beginEdit(int col) throws ObviousException {
     if (col == BATCH_MODE) {
       this.isInBatchMode = true;
-      try {
-        this.batchStmt = con.createStatement();
-        this.batchStmt.clearBatch();
-      } catch (SQLException e) {
-        e.printStackTrace();
-      }
+      nodeIndex.mark();
+      edgeIndex.mark();
+      structChanges.clear();
     }
     for (NetworkListener listnr : this.getNetworkListeners()) {
       listnr.beginEdit(col);
@@ -391,19 +421,30 @@ public class JDBCObviousNetwork implements Network {
    * are enabled. It could also call a mechanism to replay the sequence of
    * ignored events if wanted.
    * </p>
+   * <p>
+   * Ending the batch mode executes the pending operations; if they fail,
+   * they are undone in the network, the listeners end their edit as usual,
+   * then the failure is thrown.
+   * </p>
    * @param col column index
    * @return true if transaction succeed
-   * @throws ObviousException if edition is not supported.
+   * @throws ObviousException if edition is not supported, or if the
+   * pending operations of the batch mode fail.
    */
   public boolean endEdit(int col) throws ObviousException {
+    ObviousException failure = null;
     if (isInBatchMode) {
       this.isInBatchMode = false;
       try {
-        this.batchStmt.executeBatch();
-        this.batchStmt.close();
-      } catch (SQLException e) {
-        e.printStackTrace();
+        flushBatch();
+      } catch (ObviousException e) {
+        failure = e;
       }
+      nodeIndex.unmark();
+      edgeIndex.unmark();
+      // Values may have been read while the operations were pending.
+      nodeView.getColumnCache().clear();
+      edgeView.getColumnCache().clear();
     }
     boolean success = true;
     NetworkListener failedListener = null;
@@ -420,28 +461,41 @@ public class JDBCObviousNetwork implements Network {
         listnr.endEdit(col);
       }
     }
+    if (failure != null) {
+      throw failure;
+    }
     return success;
   }
 
   @Override
   public Edge getConnectingEdge(Node v1, Node v2) {
-    int v1Id = nodeKeyToNodeId.get(v1.get(nodeKey));
-    int v2Id = nodeKeyToNodeId.get(v2.get(nodeKey));
-    for (Map.Entry<Integer, Integer[]> entry : networkStruct.entrySet()) {
-      if ((entry.getValue()[0] == v1Id && entry.getValue()[1] == v2Id)
-          || (entry.getValue()[0] == v2Id && entry.getValue()[1] == v1Id)) {
-        return getEdge(entry.getKey());
-      }
+    int v1Id = getNodeId(v1);
+    int v2Id = getNodeId(v2);
+    int edgeId = networkStruct.getEdge(v1Id, v2Id);
+    if (edgeId < 0) {
+      edgeId = networkStruct.getEdge(v2Id, v1Id);
     }
-    return null;
+    return edgeId >= 0 ? getEdge(edgeId) : null;
   }
 
   @Override
   public Collection<Edge> getConnectingEdges(Node v1, Node v2) {
-    Edge edge = getConnectingEdge(v1, v2);
-    ArrayList<Edge> edges = new ArrayList<Edge>();
-    edges.add(edge);
-    return edges;
+    int v1Id = getNodeId(v1);
+    int v2Id = getNodeId(v2);
+    IntList edgeIds = new IntList();
+    for (int edgeId : networkStruct.getOutEdges(v1Id)) {
+      if (networkStruct.getTarget(edgeId) == v2Id) {
+        edgeIds.add(edgeId);
+      }
+    }
+    if (v1Id != v2Id) {
+      for (int edgeId : networkStruct.getOutEdges(v2Id)) {
+        if (networkStruct.getTarget(edgeId) == v1Id) {
+          edgeIds.add(edgeId);
+        }
+      }
+    }
+    return getEdges(edgeIds.toArray());
   }
 
   @Override
@@ -449,221 +503,136 @@ public class JDBCObviousNetwork implements Network {
     return Graph.EdgeType.DIRECTED;
   }
 
+  /**
+   * Gets all the edges. No value is read until an attribute of an edge is.
+   * @return the edges
+   */
   @Override
   public Collection<Edge> getEdges() {
-    try {
-      ArrayList<Edge> edges = new ArrayList<Edge>();
-      String request = "SELECT ";
-      String colNames = "";
-      for (int i = 0; i < edgeSchema.getColumnCount(); i++) {
-        colNames += edgeSchema.getColumnName(i);
-        if (i != edgeSchema.getColumnCount() - 1) {
-          colNames += ", ";
-        } else {
-          colNames += " ";
-        }
-      }
-      request = request + colNames + " FROM " + edgeTable;
-      Statement stmt = con.createStatement();
-      ResultSet rslt = stmt.executeQuery(request);
-      while (rslt.next()) {
-        Object[] values = new Object[edgeSchema.getColumnCount()];
-        for (int i = 1; i <= edgeSchema.getColumnCount(); i++) {
-          values[i - 1] = rslt.getString(i);
-        }
-        edges.add(new EdgeImpl(edgeSchema, values));
-      }
-      rslt.close();
-      stmt.close();
-      return edges;
-    } catch (Exception e) {
-      throw new ObviousRuntimeException(e);
+    ArrayList<Edge> edges = new ArrayList<Edge>(edgeIndex.getRowCount());
+    for (IntIterator it = edgeIndex.rowIterator(); it.hasNext();) {
+      edges.add(new EdgeImpl(edgeView, it.nextInt()));
     }
+    return edges;
   }
 
   @Override
   public Collection<Edge> getInEdges(Node node) {
-    ArrayList<Edge> inEdges = new ArrayList<Edge>();
-    Object nodeKeyVal = node.get(nodeKey);
-    for (Map.Entry<Integer, Integer[]> entry : networkStruct.entrySet()) {
-      Edge currentEdge = getEdge(entry.getKey());
-      if (entry.getValue()[0].equals(nodeKeyToNodeId.get(nodeKeyVal))
-          && getEdgeType(currentEdge).equals(Graph.EdgeType.UNDIRECTED)) {
-        inEdges.add(currentEdge);
-      } else if (entry.getValue()[1].equals(nodeKeyToNodeId.get(nodeKeyVal))) {
-        inEdges.add(currentEdge);
-      }
-    }
-    return inEdges;
+    return getEdges(networkStruct.getInEdges(getNodeId(node)));
   }
 
   @Override
   public Collection<Edge> getIncidentEdges(Node node) {
-    ArrayList<Edge> incidentEdges = new ArrayList<Edge>();
-    if (nodeKeyToNodeId.containsKey(node.get(nodeKey))) {
-      int nodeId = nodeKeyToNodeId.get(node.get(nodeKey));
-      for (Map.Entry<Integer, Integer[]> entry : networkStruct.entrySet()) {
-        if (entry.getValue()[0] == nodeId || entry.getValue()[1] == nodeId) {
-          incidentEdges.add(getEdge(entry.getKey()));
-        }
+    int nodeId = getNodeId(node);
+    IntList edgeIds = new IntList();
+    edgeIds.addAll(networkStruct.getOutEdges(nodeId));
+    for (int edgeId : networkStruct.getInEdges(nodeId)) {
+      if (networkStruct.getSource(edgeId) != nodeId) {
+        edgeIds.add(edgeId);
       }
     }
-    return incidentEdges;
+    return getEdges(edgeIds.toArray());
   }
 
   @Override
   public Collection<Node> getIncidentNodes(Edge edge) {
-    ArrayList<Node> incidentNodes = new ArrayList<Node>();
-    if (edgeKeyToEdgeId.containsKey(edge.get(edgeKey))) {
-      int edgeId = edgeKeyToEdgeId.get(edge.get(edgeKey));
-      if (networkStruct.containsKey(edgeId)) {
-        Integer[] nodes = networkStruct.get(edgeId);
-        incidentNodes.add(getNode(nodes[0]));
-        incidentNodes.add(getNode(nodes[1]));
-      }
+    int edgeId = getEdgeId(edge);
+    if (!networkStruct.isValidEdge(edgeId)) {
+      return new ArrayList<Node>();
     }
-    return incidentNodes;
+    return getNodes(new int[] {networkStruct.getSource(edgeId),
+        networkStruct.getTarget(edgeId)});
   }
 
   @Override
   public Collection<Node> getNeighbors(Node node) {
-    Object nodeKeyVal = node.get(nodeKey);
-    ArrayList<Node> neighbors = new ArrayList<Node>();
-    for (Map.Entry<Integer, Integer[]> entry : networkStruct.entrySet()) {
-      if (entry.getValue()[0].equals(nodeKeyToNodeId.get(nodeKeyVal))) {
-        neighbors.add(getNode(entry.getValue()[1]));
-      } else if (entry.getValue()[1].equals(nodeKeyToNodeId.get(nodeKeyVal))) {
-        neighbors.add(getNode(entry.getValue()[0]));
+    int nodeId = getNodeId(node);
+    IntList nodeIds = new IntList();
+    for (int edgeId : networkStruct.getOutEdges(nodeId)) {
+      nodeIds.add(networkStruct.getTarget(edgeId));
+    }
+    for (int edgeId : networkStruct.getInEdges(nodeId)) {
+      if (networkStruct.getSource(edgeId) != nodeId) {
+        nodeIds.add(networkStruct.getSource(edgeId));
       }
     }
-    return neighbors;
+    return getNodes(nodeIds.toArray());
   }
 
+  /**
+   * Gets all the nodes. No value is read until an attribute of a node is.
+   * @return the nodes
+   */
   @Override
   public Collection<Node> getNodes() {
-    try {
-      ArrayList<Node> nodes = new ArrayList<Node>();
-      String request = "SELECT ";
-      String colNames = "";
-      for (int i = 0; i < nodeSchema.getColumnCount(); i++) {
-        colNames += nodeSchema.getColumnName(i);
-        if (i != nodeSchema.getColumnCount() - 1) {
-          colNames += ", ";
-        } else {
-          colNames += " ";
-        }
-      }
-      request = request + colNames + " FROM " + nodeTable;
-      Statement stmt = con.createStatement();
-      ResultSet rslt = stmt.executeQuery(request);
-      while (rslt.next()) {
-        Object[] values = new Object[nodeSchema.getColumnCount()];
-        for (int i = 1; i <= nodeSchema.getColumnCount(); i++) {
-          values[i - 1] = rslt.getObject(i);
-        }
-        nodes.add(new NodeImpl(nodeSchema, values));
-      }
-      rslt.close();
-      stmt.close();
-      return nodes;
-    } catch (Exception e) {
-      throw new ObviousRuntimeException(e);
+    ArrayList<Node> nodes = new ArrayList<Node>(nodeIndex.getRowCount());
+    for (IntIterator it = nodeIndex.rowIterator(); it.hasNext();) {
+      nodes.add(new NodeImpl(nodeView, it.nextInt()));
     }
+    return nodes;
   }
 
   @Override
   public Node getOpposite(Node node, Edge edge) {
-    int edgeId = edgeKeyToEdgeId.get(edge.get(edgeKey));
-    int nodeId = nodeKeyToNodeId.get(node.get(nodeKey));
-    if (nodeId == networkStruct.get(edgeId)[0]) {
-      return getNode(networkStruct.get(edgeId)[1]);
-    } else if (nodeId == networkStruct.get(edgeId)[1]) {
-      return getNode(networkStruct.get(edgeId)[0]);
+    int edgeId = getEdgeId(edge);
+    int nodeId = getNodeId(node);
+    if (!networkStruct.isValidEdge(edgeId)) {
+      return null;
+    } else if (nodeId == networkStruct.getSource(edgeId)) {
+      return getNode(networkStruct.getTarget(edgeId));
+    } else if (nodeId == networkStruct.getTarget(edgeId)) {
+      return getNode(networkStruct.getSource(edgeId));
     }
     return null;
   }
 
   @Override
   public Collection<Edge> getOutEdges(Node node) {
-    ArrayList<Edge> outEdges = new ArrayList<Edge>();
-    Object nodeKeyVal = node.get(nodeKey);
-    for (Map.Entry<Integer, Integer[]> entry : networkStruct.entrySet()) {
-      Edge currentEdge = getEdge(entry.getKey());
-      if (entry.getValue()[0].equals(nodeKeyToNodeId.get(nodeKeyVal))) {
-        outEdges.add(currentEdge);
-      } else if (entry.getValue()[1].equals(nodeKeyToNodeId.get(nodeKeyVal))
-          && getEdgeType(currentEdge).equals(Graph.EdgeType.UNDIRECTED)) {
-        outEdges.add(currentEdge);
-      }
-    }
-    return outEdges;
+    return getEdges(networkStruct.getOutEdges(getNodeId(node)));
   }
 
   @Override
   public Collection<Node> getPredecessors(Node node) {
-    Object nodeKeyVal = node.get(nodeKey);
-    ArrayList<Node> predecessors = new ArrayList<Node>();
-    for (Map.Entry<Integer, Integer[]> entry : networkStruct.entrySet()) {
-      Edge currentEdge = getEdge(entry.getKey());
-      if (entry.getValue()[0].equals(nodeKeyToNodeId.get(nodeKeyVal))
-          && getEdgeType(currentEdge).equals(Graph.EdgeType.UNDIRECTED)) {
-        predecessors.add(getNode(entry.getValue()[1]));
-      } else if (entry.getValue()[1].equals(nodeKeyToNodeId.get(nodeKeyVal))) {
-        predecessors.add(getNode(entry.getValue()[0]));
-      }
+    int[] edgeIds = networkStruct.getInEdges(getNodeId(node));
+    int[] nodeIds = new int[edgeIds.length];
+    for (int i = 0; i < edgeIds.length; i++) {
+      nodeIds[i] = networkStruct.getSource(edgeIds[i]);
     }
-    return predecessors;
+    return getNodes(nodeIds);
   }
 
   @Override
   public Node getSource(Edge directedEdge) {
-    int edgeId = edgeKeyToEdgeId.get(new BigDecimal(
-        directedEdge.get(edgeKey).toString()));
-    return getNode(networkStruct.get(edgeId)[0]);
+    int edgeId = getEdgeId(directedEdge);
+    return networkStruct.isValidEdge(edgeId)
+        ? getNode(networkStruct.getSource(edgeId)) : null;
   }
 
   @Override
   public Collection<Node> getSuccessors(Node node) {
-    Object nodeKeyVal = node.get(nodeKey);
-    ArrayList<Node> successors = new ArrayList<Node>();
-    for (Map.Entry<Integer, Integer[]> entry : networkStruct.entrySet()) {
-      Edge currentEdge = getEdge(entry.getKey());
-      if (entry.getValue()[0].equals(nodeKeyToNodeId.get(nodeKeyVal))) {
-        successors.add(getNode(entry.getValue()[1]));
-      } else if (entry.getValue()[1].equals(nodeKeyToNodeId.get(nodeKeyVal))
-          && getEdgeType(currentEdge).equals(Graph.EdgeType.UNDIRECTED)) {
-        successors.add(getNode(entry.getValue()[0]));
-      }
+    int[] edgeIds = networkStruct.getOutEdges(getNodeId(node));
+    int[] nodeIds = new int[edgeIds.length];
+    for (int i = 0; i < edgeIds.length; i++) {
+      nodeIds[i] = networkStruct.getTarget(edgeIds[i]);
     }
-    return successors;
+    return getNodes(nodeIds);
   }
 
   @Override
   public Node getTarget(Edge directedEdge) {
-    int edgeId = edgeKeyToEdgeId.get(new BigDecimal(
-        directedEdge.get(edgeKey).toString()));
-    return getNode(networkStruct.get(edgeId)[1]);
+    int edgeId = getEdgeId(directedEdge);
+    return networkStruct.isValidEdge(edgeId)
+        ? getNode(networkStruct.getTarget(edgeId)) : null;
   }
 
   @Override
   public boolean removeEdge(Edge edge) {
-    Object edgeKeyVal = edge.get(edgeKey);
-    if (!edgeKeyToEdgeId.containsKey(edgeKeyVal)) {
+    int edgeId = getEdgeId(edge);
+    if (edgeId < 0) {
       return false;
     } else {
       try {
-        String request = "DELETE FROM " + edgeTable + "WHERE " + edgeKey
-            + " = '" + edgeKeyVal.toString();
-        if (!isInBatchMode) {
-          Statement stmt = con.createStatement();
-          stmt.executeUpdate(request);
-          stmt.close();
-        } else {
-          batchStmt.addBatch(request);
-        }
-        int edgeId = edgeKeyToEdgeId.get(edgeKeyVal);
-        networkStruct.remove(edgeId);
-        edgeKeyToEdgeId.remove(edgeKeyVal);
+        removeEdge(edgeId);
         return true;
       } catch (Exception e) {
         try {
@@ -678,33 +647,41 @@ public class JDBCObviousNetwork implements Network {
     }
   }
 
+  /**
+   * Removes an edge given its id.
+   * @param edgeId a valid edge id
+   * @throws SQLException if the deletion fails
+   * @throws ObviousException if the pending operations of the batch fail
+   */
+  private void removeEdge(int edgeId) throws SQLException, ObviousException {
+    delete(edgeTable, edgeSchema, edgeKey, edgeIndex.getKey(edgeId));
+    if (isInBatchMode && networkStruct.isValidEdge(edgeId)) {
+      structChanges.add(new int[] {edgeId, networkStruct.getSource(edgeId),
+          networkStruct.getTarget(edgeId), 0});
+    }
+    networkStruct.removeEdge(edgeId);
+    edgeIndex.removeRow(edgeId);
+    notifyChange(edgeView, edgeId, edgeId, TableListener.ALL_COLUMN,
+        TableListener.DELETE);
+  }
+
   @Override
   public boolean removeNode(Node node) {
-    Object nodeKeyVal = node.get(nodeKey);
-    if (!nodeKeyToNodeId.containsKey(nodeKeyVal)) {
+    int nodeId = getNodeId(node);
+    if (nodeId < 0) {
       return false;
     } else {
       try {
-        int nodeId = nodeKeyToNodeId.get(nodeKeyVal);
-        ArrayList<Integer> relativeEdges = new ArrayList<Integer>();
-        for (Map.Entry<Integer, Integer[]> entry : networkStruct.entrySet()) {
-          if (entry.getValue()[0] == nodeId || entry.getValue()[1] == nodeId) {
-            relativeEdges.add(entry.getKey());
-          }
-        }
-        for (Integer i : relativeEdges) {
-          removeEdge(getEdge(i));
+        for (int edgeId : networkStruct.getOutEdges(nodeId)) {
+          removeEdge(edgeId);
         }
-        String request = "DELETE FROM " + nodeTable + "WHERE " + nodeKey
-        + " = '" + nodeKeyVal.toString();
-        if (!isInBatchMode) {
-          Statement stmt = con.createStatement();
-          stmt.executeUpdate(request);
-          stmt.close();
-        } else {
-          batchStmt.addBatch(request);
+        for (int edgeId : networkStruct.getInEdges(nodeId)) {
+          removeEdge(edgeId);
         }
-        edgeKeyToEdgeId.remove(nodeId);
+        delete(nodeTable, nodeSchema, nodeKey, nodeIndex.getKey(nodeId));
+        nodeIndex.removeRow(nodeId);
+        notifyChange(nodeView, nodeId, nodeId, TableListener.ALL_COLUMN,
+            TableListener.DELETE);
         return true;
       } catch (Exception e) {
         try {
@@ -728,86 +705,216 @@ public class JDBCObviousNetwork implements Network {
   }
 
   /**
-   * Gets a specific node.
+   * Gets a specific node, whose values are read on first access.
    * @param nodeId a node id
    * @return a node
    */
   private Node getNode(int nodeId) {
-    try {
-      String request = "SELECT * FROM " + nodeTable + " WHERE " + nodeKey
-      + " = ?";
-      PreparedStatement stmt = con.prepareStatement(request);
-      String value = retrieveKey(nodeKeyToNodeId, nodeId).toString();
-      stmt.setString(1, value);
-      ResultSet rslt = stmt.executeQuery();
-      ResultSetMetaData metadata = rslt.getMetaData();
-      while (rslt.next()) {
-        Object[] values = new Object[nodeSchema.getColumnCount()];
-        for (int i = 1; i <= metadata.getColumnCount(); i++) {
-          for (int j = 0; j < nodeSchema.getColumnCount(); j++) {
-            if (metadata.getColumnName(i).equals(
-                nodeSchema.getColumnName(j))) {
-              values[j] = rslt.getObject(i);
-            }
-          }
-        }
-        rslt.close();
-        stmt.close();
-        return new NodeImpl(nodeSchema, values);
-      }
-    } catch (Exception e) {
-      throw new ObviousRuntimeException(e);
+    return nodeIndex.isValidRow(nodeId) ? new NodeImpl(nodeView, nodeId)
+        : null;
+  }
+
+  /**
+   * Gets some nodes, whose values are read on first access.
+   * @param nodeIds node ids, possibly repeated
+   * @return the nodes in the same order
+   */
+  private Collection<Node> getNodes(int[] nodeIds) {
+    ArrayList<Node> nodes = new ArrayList<Node>(nodeIds.length);
+    for (int nodeId : nodeIds) {
+      nodes.add(new NodeImpl(nodeView, nodeId));
     }
-    return null;
+    return nodes;
   }
 
   /**
-   * Gets a specific edge.
+   * Gets a specific edge, whose values are read on first access.
    * @param edgeId an edge id
    * @return an edge
    */
   private Edge getEdge(int edgeId) {
+    return edgeIndex.isValidRow(edgeId) ? new EdgeImpl(edgeView, edgeId)
+        : null;
+  }
+
+  /**
+   * Gets some edges, whose values are read on first access.
+   * @param edgeIds edge ids, possibly repeated
+   * @return the edges in the same order
+   */
+  private Collection<Edge> getEdges(int[] edgeIds) {
+    ArrayList<Edge> edges = new ArrayList<Edge>(edgeIds.length);
+    for (int edgeId : edgeIds) {
+      edges.add(new EdgeImpl(edgeView, edgeId));
+    }
+    return edges;
+  }
+
+  /**
+   * Inserts a node or an edge in its table, or adds the insertion to the
+   * batch in batch mode.
+   * @param table name of the table
+   * @param schema schema of the table
+   * @param tuple the inserted node or edge
+   * @throws SQLException if the insertion fails
+   * @throws ObviousException if the pending operations of the batch fail
+   */
+  private void insert(String table, Schema schema, Tuple tuple)
+      throws SQLException, ObviousException {
+    StringBuffer request = new StringBuffer("INSERT INTO " + table + " (");
+    for (int i = 0; i < schema.getColumnCount(); i++) {
+      request.append(i == 0 ? "" : ", ").append(schema.getColumnName(i));
+    }
+    request.append(") VALUES (");
+    for (int i = 0; i < schema.getColumnCount(); i++) {
+      request.append(i == 0 ? "?" : ", ?");
+    }
+    request.append(")");
+    PreparedStatement stmt = statements.prepare(request.toString());
+    for (int i = 0; i < schema.getColumnCount(); i++) {
+      JDBCStatementCache.setParameter(stmt, i + 1, tuple.get(i),
+          schema.getColumnType(i));
+    }
+    if (!isInBatchMode) {
+      stmt.executeUpdate();
+    } else {
+      addToBatch(stmt);
+    }
+  }
+
+  /**
+   * Deletes a node or an edge from its table, or adds the deletion to the
+   * batch in batch mode.
+   * @param table name of the table
+   * @param schema schema of the table
+   * @param keyCol primary key column of the table
+   * @param keyVal primary key value of the deleted row
+   * @throws SQLException if the deletion fails
+   * @throws ObviousException if the pending operations of the batch fail
+   */
+  private void delete(String table, Schema schema, String keyCol,
+      Object keyVal) throws SQLException, ObviousException {
+    PreparedStatement stmt = statements.prepare("DELETE FROM " + table
+        + " WHERE " + keyCol + " = ?");
+    int keyIndex = schema.getColumnIndex(keyCol);
+    JDBCStatementCache.setParameter(stmt, 1, keyVal,
+        keyIndex >= 0 ? schema.getColumnType(keyIndex) : null);
+    if (!isInBatchMode) {
+      stmt.executeUpdate();
+    } else {
+      addToBatch(stmt);
+    }
+  }
+
+  /**
+   * Adds an operation to the batch. The pending operations are executed
+   * first when the batch is full or when the operation cannot be batched
+   * with them, so that an operation is only executed once the network has
+   * recorded it.
+   * @param stmt a pooled statement with its parameters bound
+   * @throws SQLException if the operation cannot be added
+   * @throws ObviousException if the pending operations fail
+   */
+  private void addToBatch(PreparedStatement stmt) throws SQLException,
+      ObviousException {
+    if (statements.getPendingCount() >= batchSize
+        || !statements.canAddBatch(stmt)) {
+      flushBatch();
+    }
+    statements.addBatch(stmt);
+  }
+
+  /**
+   * Executes the pending operations of the batch mode, then notifies the
+   * coalesced events of the node and edge views. If the execution fails,
+   * the operations are undone in the network: the node and edge indexes
+   * and the structure are rolled back to the previous execution, and the
+   * delayed events are discarded. The connection is rolled back too when
+   * it is not in auto-commit mode.
+   * @throws ObviousException if the batch execution fails
+   */
+  private void flushBatch() throws ObviousException {
     try {
-      String request = "SELECT * FROM " + edgeTable + " WHERE " + edgeKey
-      + " = ?";
-      PreparedStatement stmt = con.prepareStatement(request);
-      String value = retrieveKey(edgeKeyToEdgeId, edgeId).toString();
-      stmt.setString(1, value);
-      ResultSet rslt = stmt.executeQuery();
-      ResultSetMetaData metadata = rslt.getMetaData();
-      while (rslt.next()) {
-        Object[] values = new Object[edgeSchema.getColumnCount()];
-        for (int i = 1; i <= metadata.getColumnCount(); i++) {
-          for (int j = 0; j < edgeSchema.getColumnCount(); j++) {
-            if (metadata.getColumnName(i).equals(
-                edgeSchema.getColumnName(j))) {
-              values[j] = rslt.getObject(i);
-            }
-          }
+      statements.executeBatch();
+    } catch (SQLException e) {
+      nodeIndex.rollback();
+      edgeIndex.rollback();
+      for (int i = structChanges.size() - 1; i >= 0; i--) {
+        int[] change = structChanges.get(i);
+        if (change[3] == 1) {
+          networkStruct.removeEdge(change[0]);
+        } else {
+          networkStruct.addEdge(change[0], change[1], change[2]);
         }
-        rslt.close();
-        stmt.close();
-        return new EdgeImpl(edgeSchema, values);
       }
-    } catch (Exception e) {
-      throw new ObviousRuntimeException(e);
+      structChanges.clear();
+      nodeView.discardPendingEvents();
+      edgeView.discardPendingEvents();
+      try {
+        if (!con.getAutoCommit()) {
+          con.rollback();
+        }
+      } catch (SQLException e1) {
+        e1.printStackTrace();
+      }
+      throw new ObviousException(e);
     }
-    return null;
+    if (isInBatchMode) {
+      nodeIndex.mark();
+      edgeIndex.mark();
+    }
+    structChanges.clear();
+    nodeView.firePendingEvents();
+    edgeView.firePendingEvents();
   }
 
   /**
-   * Retrieves a key in the map.
-   * @param map a map
-   * @param id associated value to the wanted key
-   * @return a key
+   * Notifies a change of the node or edge table. In batch mode, the event
+   * is delayed until the batch is executed and merged with the previous
+   * pending event of the same type when their row ranges are contiguous.
+   * @param view the node or edge view
+   * @param start the starting row index of the changed table region
+   * @param end the ending row index of the changed table region
+   * @param col the column that has changed
+   * @param type the type of modification
    */
-  private Object retrieveKey(Map<Object, Integer> map, int id) {
-    for (Map.Entry<Object, Integer> entry : map.entrySet()) {
-      if (entry.getValue() == id) {
-        return entry.getKey();
-      }
+  private void notifyChange(JDBCLazyTable view, int start, int end, int col,
+      int type) {
+    if (isInBatchMode) {
+      view.delayTableEvent(start, end, col, type);
+    } else {
+      view.fireTableEvent(start, end, col, type);
     }
-    return null;
+  }
+
+  /**
+   * Gets the number of pending operations that triggers the execution of
+   * the batch in batch mode.
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the number of pending operations that triggers the execution of
+   * the batch in batch mode.
+   * @param size the batch size, at least one
+   */
+  public void setBatchSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+    this.batchSize = size;
+  }
+
+  /**
+   * Closes the prepared statements of the network. This method should be
+   * called before closing the connection; statements are prepared again if
+   * the network is used afterwards.
+   */
+  public void closeStatements() {
+    statements.close();
   }
 
   /**
@@ -834,16 +941,22 @@ public class JDBCObviousNetwork implements Network {
     listeners.add(l);
   }
 
+  /**
+   * Gets a lazy view on the edge table, whose row indexes are the edge ids.
+   * @return the edge table
+   */
   @Override
   public Table getEdgeTable() {
-    // TODO Auto-generated method stub
-    return null;
+    return edgeView;
   }
 
+  /**
+   * Gets a lazy view on the node table, whose row indexes are the node ids.
+   * @return the node table
+   */
   @Override
   public Table getNodeTable() {
-    // TODO Auto-generated method stub
-    return null;
+    return nodeView;
   }
 
   @Override
@@ -872,4 +985,126 @@ public class JDBCObviousNetwork implements Network {
     }
   }
 
+  /**
+   * Reads again the source and target of an edge modified through the edge
+   * view, and moves the edge in the structure accordingly. Edges whose
+   * source or target is not a known node are left out of the structure,
+   * like when the structure is loaded.
+   * @param edgeId an edge id
+   */
+  private void updateEndpoints(int edgeId) {
+    if (!edgeIndex.isValidRow(edgeId)) {
+      return;
+    }
+    networkStruct.removeEdge(edgeId);
+    int sourceId = nodeIndex.getRow(edgeView.getValue(edgeId, sourceCol));
+    int targetId = nodeIndex.getRow(edgeView.getValue(edgeId, targetCol));
+    if (sourceId >= 0 && targetId >= 0) {
+      networkStruct.addEdge(edgeId, sourceId, targetId);
+    }
+  }
+
+  /**
+   * Listener of the edge view keeping the structure in sync when the
+   * source or target column of edges is set through the view.
+   */
+  private final class EndpointListener implements TableListener {
+
+    /**
+     * Indicates the beginning of a column edit.
+     * @param context edit context
+     */
+    public void beginEdit(int context) {
+    }
+
+    /**
+     * Indicates the end of a column edit.
+     * @param context edit context
+     * @return true
+     */
+    public boolean endEdit(int context) {
+      return true;
+    }
+
+    /**
+     * Checks the invariants of the listener.
+     * @return true
+     */
+    public boolean checkInvariants() {
+      return true;
+    }
+
+    /**
+     * Updates the structure for the edges whose source or target changed.
+     * @param t the edge view
+     * @param start the starting row index of the changed table region
+     * @param end the ending row index of the changed table region
+     * @param col the column that has changed
+     * @param type the type of modification
+     */
+    public void tableChanged(Table t, int start, int end, int col,
+        int type) {
+      if (type != TableListener.UPDATE || col < 0) {
+        return;
+      }
+      String column = edgeSchema.getColumnName(col);
+      if (column.equals(sourceCol) || column.equals(targetCol)) {
+        for (int edgeId = start; edgeId <= end; edgeId++) {
+          updateEndpoints(edgeId);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Growable list of ids.
+   */
+  private static final class IntList {
+
+    /**
+     * Elements.
+     */
+    private int[] elements = new int[8];
+
+    /**
+     * Number of elements.
+     */
+    private int size;
+
+    /**
+     * Adds an element.
+     * @param value the element
+     */
+    void add(int value) {
+      if (size == elements.length) {
+        int[] copy = new int[size * 2];
+        System.arraycopy(elements, 0, copy, 0, size);
+        elements = copy;
+      }
+      elements[size++] = value;
+    }
+
+    /**
+     * Adds some elements.
+     * @param values the elements
+     */
+    void addAll(int[] values) {
+      for (int value : values) {
+        add(value);
+      }
+    }
+
+    /**
+     * Copies the elements in an array.
+     * @return the elements
+     */
+    int[] toArray() {
+      int[] copy = new int[size];
+      System.arraycopy(elements, 0, copy, 0, size);
+      return copy;
+    }
+
+  }
+
 }
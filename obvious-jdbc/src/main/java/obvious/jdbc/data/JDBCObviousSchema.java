@@ -29,7 +29,6 @@ package obvious.jdbc.data;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -37,6 +36,7 @@ import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 
@@ -70,19 +70,14 @@ import obvious.jdbc.utils.FormatFactorySQL;
 public class JDBCObviousSchema implements Schema {
 
   /**
-   * URL for the database.
+   * Pool providing the connections to the database.
    */
-  private String url;
+  private JDBCConnectionPool pool;
 
   /**
-   * Username for the database.
+   * Snapshot of the column metadata, null when it has to be read again.
    */
-  private String username;
-
-  /**
-   * Password for the database.
-   */
-  private String password;
+  private volatile Metadata metadata;
 
   /**
    * SQL Format Factory.
@@ -129,12 +124,7 @@ public class JDBCObviousSchema implements Schema {
    */
   public JDBCObviousSchema(String driver, String inUrl, String inUsername,
       String inPswd, String tName) {
-    this.url = inUrl;
-    this.username = inUsername;
-    this.password = inPswd;
-    this.tableName = tName;
-    this.formatFactory = new FormatFactorySQL();
-    this.defaultValues = new HashMap<String, Object>();
+    this(SimpleConnectionPool.getPool(inUrl, inUsername, inPswd), tName);
     try {
       Class.forName(driver);
     } catch (ClassNotFoundException e) {
@@ -143,6 +133,26 @@ public class JDBCObviousSchema implements Schema {
     }
   }
 
+  /**
+   * Constructor.
+   * @param connectionPool pool providing the connections to the database
+   * @param tName of the table associated to this schema
+   */
+  public JDBCObviousSchema(JDBCConnectionPool connectionPool, String tName) {
+    this.pool = connectionPool;
+    this.tableName = tName;
+    this.formatFactory = new FormatFactorySQL();
+    this.defaultValues = new HashMap<String, Object>();
+  }
+
+  /**
+   * Gets the pool providing the connections to the database.
+   * @return the connection pool
+   */
+  public JDBCConnectionPool getConnectionPool() {
+    return pool;
+  }
+
   /**
    * Checks if the table already exist in the database.
    * @return true if already created
@@ -150,24 +160,91 @@ public class JDBCObviousSchema implements Schema {
   public boolean tableExist() {
     Connection con = null;
     try {
-      con = DriverManager.getConnection(url, username, password);
-      DatabaseMetaData  metadata = con.getMetaData();
-      String[] myTables = {"TABLE"};
-      ResultSet tables = metadata.getTables(null,
-      null, "%", myTables);
-      boolean existingTable = false;
+      con = pool.getConnection();
+      return tableExist(con);
+    } catch (SQLException e) {
+      System.err.println("SQLException: " + e.getMessage());
+      return false;
+    } finally {
+      pool.release(con);
+    }
+  }
+
+  /**
+   * Checks if the table already exist in the database.
+   * @param con connection to the database
+   * @return true if already created
+   * @throws SQLException if the database metadata cannot be read
+   */
+  private boolean tableExist(Connection con) throws SQLException {
+    DatabaseMetaData  dbMetadata = con.getMetaData();
+    String[] myTables = {"TABLE"};
+    ResultSet tables = dbMetadata.getTables(null,
+    null, "%", myTables);
+    try {
       while (tables.next()) {
         if (tables.getString("TABLE_NAME").equalsIgnoreCase(tableName)) {
-          existingTable = true;
-          break;
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      tables.close();
+    }
+  }
+
+  /**
+   * Drops the metadata snapshot, so that it is read again on next access.
+   * It is called after addColumn and removeColumn, and should be called if
+   * the table is altered by other means.
+   */
+  public void refresh() {
+    metadata = null;
+  }
+
+  /**
+   * Gets the metadata snapshot, reading it with a single query if needed.
+   * @return the snapshot, null if it cannot be read
+   */
+  private Metadata getMetadata() {
+    Metadata current = metadata;
+    if (current != null) {
+      return current;
+    }
+    Connection con = null;
+    PreparedStatement pStatement = null;
+    try {
+      con = pool.getConnection();
+      if (!tableExist(con)) {
+        current = new Metadata(new String[0], new Class<?>[0]);
+      } else {
+        // Only the metadata is needed, so no row is read.
+        pStatement = con.prepareStatement("SELECT * FROM " + this.tableName
+            + " WHERE 1 = 0");
+        ResultSetMetaData setMetadata = pStatement.executeQuery()
+          .getMetaData();
+        String[] names = new String[setMetadata.getColumnCount()];
+        Class<?>[] types = new Class<?>[names.length];
+        for (int i = 0; i < names.length; i++) {
+          names[i] = setMetadata.getColumnName(i + 1);
+          types[i] = Class.forName(setMetadata.getColumnClassName(i + 1));
         }
+        current = new Metadata(names, types);
       }
-      return existingTable;
+      metadata = current;
+      return current;
     } catch (SQLException e) {
       System.err.println("SQLException: " + e.getMessage());
-      return false;
+      return null;
+    } catch (ClassNotFoundException e) {
+      throw new ObviousRuntimeException(e);
     } finally {
-      try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+      try {
+        if (pStatement != null) {
+          pStatement.close();
+        }
+      } catch (Exception e) { e.printStackTrace(); }
+      pool.release(con);
     }
   }
 
@@ -182,11 +259,11 @@ public class JDBCObviousSchema implements Schema {
     Connection con = null;
     PreparedStatement pStatement = null;
     try {
-      con = DriverManager.getConnection(url, username, password);
+      con = pool.getConnection();
       String typeSQL = this.formatFactory.getSQLType(type);
       String request = "";
       // creating the table if not existing
-      if (!tableExist()) {
+      if (!tableExist(con)) {
         request = "CREATE TABLE " + this.tableName + " (" + name + " "
           + typeSQL + ")";
       } else {
@@ -196,6 +273,7 @@ public class JDBCObviousSchema implements Schema {
       pStatement = con.prepareStatement(request);
       pStatement.executeUpdate(request);
       defaultValues.put(name, defaultValue);
+      refresh();
       return this.getColumnCount();
     } catch (SQLException e) {
       System.err.println("SQLException: " + e.getMessage());
@@ -204,7 +282,7 @@ public class JDBCObviousSchema implements Schema {
       throw new ObviousRuntimeException(e);
     } finally {
       try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+      pool.release(con);
     }
   }
 
@@ -270,26 +348,8 @@ public class JDBCObviousSchema implements Schema {
    * @return number of columns
    */
   public int getColumnCount() {
-    if (!tableExist()) {
-      return 0;
-    }
-    Connection con = null;
-    PreparedStatement pStatement = null;
-    ResultSet result = null;
-    try {
-      con = DriverManager.getConnection(url, username, password);
-      String request = "SELECT * FROM " + this.tableName;
-      pStatement = con.prepareStatement(request);
-      result = pStatement.executeQuery(request);
-      return result.getMetaData().getColumnCount();
-    } catch (SQLException e) {
-      System.err.println("SQLException: " + e.getMessage());
-      return -1;
-    } finally {
-      try { result.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { con.close(); } catch (Exception e) { e.printStackTrace(); }
-    }
+    Metadata current = getMetadata();
+    return current != null ? current.names.length : -1;
   }
 
   /**
@@ -313,29 +373,12 @@ public class JDBCObviousSchema implements Schema {
    *
    */
   public int getColumnIndex(String field) {
-    Connection con = null;
-    PreparedStatement pStatement = null;
-    ResultSet result = null;
-    try {
-      con = DriverManager.getConnection(url, username, password);
-      String request = "SELECT * FROM " + this.tableName;
-      pStatement = con.prepareStatement(request);
-      result = pStatement.executeQuery(request);
-      ResultSetMetaData setMetadata = result.getMetaData();
-      for (int i = 1; i < setMetadata.getColumnCount() + 1; i++) {
-        if (setMetadata.getColumnName(i).equalsIgnoreCase(field)) {
-          return i - 1; // Obvious begins indexation with 0, JDBC with 1
-        }
-      }
-      return -1;
-    } catch (SQLException e) {
-      System.err.println("SQLException: " + e.getMessage());
+    Metadata current = getMetadata();
+    if (current == null || field == null) {
       return -1;
-    } finally {
-      try { result.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { con.close(); } catch (Exception e) { e.printStackTrace(); }
     }
+    Integer col = current.indexes.get(field.toUpperCase(Locale.ENGLISH));
+    return col != null ? col : -1;
   }
 
   /**
@@ -344,27 +387,11 @@ public class JDBCObviousSchema implements Schema {
    * @return the name of the column
    */
   public String getColumnName(int col) {
-    Connection con = null;
-    PreparedStatement pStatement = null;
-    ResultSet result = null;
-    if (col > this.getColumnCount() || !tableExist()) {
+    Metadata current = getMetadata();
+    if (current == null || col < 0 || col >= current.names.length) {
       return null;
     }
-    try {
-      con = DriverManager.getConnection(url, username, password);
-      String request = "SELECT * FROM " + this.tableName;
-      pStatement = con.prepareStatement(request);
-      result = pStatement.executeQuery(request);
-      ResultSetMetaData setMetadata = result.getMetaData();
-      return setMetadata.getColumnName(col + 1);
-    } catch (SQLException e) {
-      System.err.println("SQLException: " + e.getMessage());
-      return null;
-    } finally {
-      try { result.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { con.close(); } catch (Exception e) { e.printStackTrace(); }
-    }
+    return current.names[col];
   }
 
   /**
@@ -373,27 +400,11 @@ public class JDBCObviousSchema implements Schema {
    * @return a Java class
    */
   public Class<?> getColumnType(int col) {
-    Connection con = null;
-    PreparedStatement pStatement = null;
-    ResultSet result = null;
-    try {
-      con = DriverManager.getConnection(url, username, password);
-      String request = "SELECT * FROM " + this.tableName;
-      pStatement = con.prepareStatement(request);
-      result = pStatement.executeQuery(request);
-      ResultSetMetaData setMetadata = result.getMetaData();
-      String className =  setMetadata.getColumnClassName(col + 1);
-      return Class.forName(className);
-    } catch (SQLException e) {
-      System.err.println("SQLException: " + e.getMessage());
+    Metadata current = getMetadata();
+    if (current == null || col < 0 || col >= current.types.length) {
       return null;
-    } catch (Exception e) {
-      throw new ObviousRuntimeException(e);
-    } finally {
-      try { result.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { con.close(); } catch (Exception e) { e.printStackTrace(); }
     }
+    return current.types[col];
   }
 
   /**
@@ -413,21 +424,7 @@ public class JDBCObviousSchema implements Schema {
    * @return true if the name exists.
    */
   public boolean hasColumn(String name) {
-    Connection con = null;
-    ResultSet result = null;
-    try {
-       con = DriverManager.getConnection(url, username, password);
-       DatabaseMetaData metadata = con.getMetaData();
-       result = metadata.getColumns(null, null, this.tableName, name);
-       return result == null;
-    } catch (SQLException e) {
-      System.err.println("SQLException: " + e.getMessage());
-      return false;
-    } finally {
-      try { result.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { con.close(); } catch (Exception e) { e.printStackTrace(); }
-    }
-
+    return getColumnIndex(name) >= 0;
   }
 
   /**
@@ -442,7 +439,7 @@ public class JDBCObviousSchema implements Schema {
     Connection con = null;
     PreparedStatement pStatement = null;
     try {
-      con = DriverManager.getConnection(url, username, password);
+      con = pool.getConnection();
       String request = "";
       if (this.getColumnCount() > 1) {
         request = "ALTER TABLE " + this.tableName + " DROP COLUMN " + field;
@@ -452,13 +449,14 @@ public class JDBCObviousSchema implements Schema {
         pStatement = con.prepareStatement(request);
         pStatement.executeUpdate(request);
         defaultValues.remove(field);
+        refresh();
         return true;
     } catch (SQLException e) {
       System.err.println("SQLException: " + e.getMessage());
       return false;
     } finally {
       try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+      pool.release(con);
     }
   }
 
@@ -662,4 +660,40 @@ public class JDBCObviousSchema implements Schema {
    }
   }
 
+  /**
+   * Immutable snapshot of the column metadata of the table.
+   */
+  private static final class Metadata {
+
+    /**
+     * Column names.
+     */
+    private final String[] names;
+
+    /**
+     * Column types.
+     */
+    private final Class<?>[] types;
+
+    /**
+     * Column indexes by upper case name.
+     */
+    private final Map<String, Integer> indexes;
+
+    /**
+     * Constructor.
+     * @param columnNames column names
+     * @param columnTypes column types
+     */
+    Metadata(String[] columnNames, Class<?>[] columnTypes) {
+      this.names = columnNames;
+      this.types = columnTypes;
+      this.indexes = new HashMap<String, Integer>();
+      for (int i = columnNames.length - 1; i >= 0; i--) {
+        indexes.put(columnNames[i].toUpperCase(Locale.ENGLISH), i);
+      }
+    }
+
+  }
+
 }
@@ -29,17 +29,14 @@ package obvious.jdbc.data;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.text.FieldPosition;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import obvious.ObviousException;
 import obvious.ObviousRuntimeException;
@@ -49,11 +46,12 @@ import obvious.data.Tuple;
 import obvious.data.event.TableListener;
 import obvious.data.util.IntIterator;
 import obvious.data.util.Predicate;
+import obvious.data.util.ScannableTable;
+import obvious.data.util.TupleCursor;
+import obvious.impl.BitSetIntIterator;
 import obvious.impl.FilterIntIterator;
-import obvious.impl.IntIteratorImpl;
 import obvious.impl.SchemaImpl;
 import obvious.jdbc.utils.FormatFactorySQL;
-import obviousx.text.TypedFormat;
 
 /**
  * This class is an implementation of the Obvious
@@ -66,11 +64,19 @@ import obviousx.text.TypedFormat;
  * to implement them through JDBC. This Obvious data structure
  * can be used as a "traditional" Obvious implementation based
  * on an InfoVis toolkit.
+ * Values are read a whole block of rows at a time and kept in a
+ * {@link JDBCRowCache row cache}, invalidated when the table notifies
+ * changes.
+ * In batch mode, operations are sent in batches and their events are
+ * delayed until the batch is executed. If a batch fails, its operations
+ * are undone in the table and its events are discarded; the failure is
+ * thrown by the operation that triggered the execution, as an
+ * ObviousRuntimeException, or by {@link #endEdit(int) endEdit}.
  * @see obvious.data.Table
  * @author Pierre-Luc Hemery
  *
  */
-public class JDBCObviousTable implements Table {
+public class JDBCObviousTable implements Table, ScannableTable {
 
   /**
    * JDBC Table name.
@@ -116,9 +122,15 @@ public class JDBCObviousTable implements Table {
   private String primaryKey;
 
   /**
-   * Map that links row Index to the value of their primary key.
+   * Index that links row indexes to the value of their primary key. It is
+   * loaded once from the database and then maintained by this table.
    */
-  private Map<Integer, Object> rowIndexMap = new HashMap<Integer, Object>();
+  private JDBCRowIndex rowIndex;
+
+  /**
+   * Cached result of canAddRow, null if not computed yet.
+   */
+  private Boolean addable;
 
 
   /**
@@ -131,22 +143,68 @@ public class JDBCObviousTable implements Table {
    */
   private Connection con;
 
+  /**
+   * Pool the connection was borrowed from, null if the connection was given
+   * by the caller.
+   */
+  private JDBCConnectionPool pool;
+
   /**
    * Is the table in batch mode.
    */
   private boolean isInBatchMode = false;
 
   /**
-   * Batch statement (used when user sets the batch mode with the beginEdit
-   * method).
+   * Prepared statements of the table, reused for the lifetime of the
+   * connection.
    */
-  private Statement batchStmt;
+  private JDBCStatementCache statements;
 
   /**
    * Batch mode constant.
    */
   public static final int BATCH_MODE = 1;
 
+  /**
+   * Default number of rows read by a single query when a row misses the
+   * cache.
+   */
+  public static final int DEFAULT_PREFETCH_SIZE = 256;
+
+  /**
+   * Default number of pending operations that triggers the execution of
+   * the batch in batch mode.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /**
+   * Number of pending operations that triggers the execution of the batch
+   * in batch mode.
+   */
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * Events of the pending operations in batch mode, contiguous ones of the
+   * same type being coalesced.
+   * Each event is {start, end, col, type}.
+   */
+  private List<int[]> pendingEvents = new ArrayList<int[]>();
+
+  /**
+   * Default number of rows fetched from the server at once by a scan.
+   */
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  /**
+   * Cache of the rows read from the database.
+   */
+  private JDBCRowCache rowCache = new JDBCRowCache();
+
+  /**
+   * Number of rows read by a single query when a row misses the cache.
+   */
+  private int prefetchSize = DEFAULT_PREFETCH_SIZE;
+
   /**
    * Constructor for an Obvious table based on JDBC.
    * @param inSchema an Obvious schema
@@ -157,19 +215,44 @@ public class JDBCObviousTable implements Table {
    * @exception ObviousException when the table cannot be created
    */
   public JDBCObviousTable(Schema inSchema, Connection con, String tName, String inKeyColumn) throws ObviousException {
-    // Initialize attributes.
-    this.schema = inSchema;
     this.con = con;
-    this.tableName = tName;
-    // If the table needs to be created, it has to know the primary key to use
-    this.primaryKey = inKeyColumn;
-    maybeCreateTable(); 
-    if (inKeyColumn == null)
-        this.primaryKey = getPrimaryKey(con, tName);     
+    initialize(inSchema, tName, inKeyColumn);
   }
-  
+
+  /**
+   * Constructor for an Obvious table based on JDBC, using a connection
+   * borrowed from a pool. The connection is given back by {@link #close()},
+   * or at once if the table cannot be created.
+   * @param inSchema an Obvious schema
+   * @param connectionPool pool providing the connection to the database
+   * @param tName table name
+   * @param inKeyColumn name of column used as a primary key
+   *
+   * @exception ObviousException when the table cannot be created
+   */
+  public JDBCObviousTable(Schema inSchema, JDBCConnectionPool connectionPool,
+      String tName, String inKeyColumn) throws ObviousException {
+    try {
+      this.con = connectionPool.getConnection();
+    } catch (SQLException e) {
+      throw new ObviousException(e);
+    }
+    this.pool = connectionPool;
+    boolean created = false;
+    try {
+      initialize(inSchema, tName, inKeyColumn);
+      created = true;
+    } finally {
+      if (!created) {
+        close();
+      }
+    }
+  }
+
   /**
    * Constructor for an Obvious table based on JDBC.
+   * The connection comes from the {@link SimpleConnectionPool} shared by
+   * the users of the database account.
    * @param inSchema an Obvious schema
    * @param driver driver for the database (JDBC)
    * @param url URL to access to the database
@@ -183,26 +266,8 @@ public class JDBCObviousTable implements Table {
   public JDBCObviousTable(Schema inSchema, 
           String driver, String url, String username, String password, 
           String tName, String inKeyColumn) throws ObviousException {
-      // Load the JDBC driver.
-      if (driver != null) try {
-        Class.forName(driver);
-      } catch (ClassNotFoundException e) {
-          throw new ObviousException(e);
-      }
-      // Creating table
-      try {
-        this.con = DriverManager.getConnection(url, username, password);
-      } catch (SQLException e) {
-          
-      }
-      // Initialize attributes.
-      this.tableName = tName;
-      this.schema = inSchema;
-      // If the table needs to be created, it has to know the primary key to use
-      this.primaryKey = inKeyColumn;
-      maybeCreateTable();
-      if (inKeyColumn == null)
-          this.primaryKey= getPrimaryKey(con, tName);      
+    this(inSchema, getPool(driver, url, username, password), tName,
+        inKeyColumn);
   }
   
 
@@ -222,6 +287,50 @@ public class JDBCObviousTable implements Table {
     this(inSchema, driver, inUrl, inUsername, inPswd, tName, null);
   }
 
+  /**
+   * Loads a JDBC driver and gets the pool shared by the users of a database
+   * account.
+   * @param driver driver for the database, null if already loaded
+   * @param url URL to access to the database
+   * @param username user name to access to the database
+   * @param password password to access to the database
+   * @return the shared pool
+   * @throws ObviousException if the driver cannot be loaded
+   */
+  private static JDBCConnectionPool getPool(String driver, String url,
+      String username, String password) throws ObviousException {
+    if (driver != null) {
+      try {
+        Class.forName(driver);
+      } catch (ClassNotFoundException e) {
+        throw new ObviousException(e);
+      }
+    }
+    return SimpleConnectionPool.getPool(url, username, password);
+  }
+
+  /**
+   * Initializes the table over its connection, creating the database table
+   * if needed and loading the row index.
+   * @param inSchema an Obvious schema
+   * @param tName table name
+   * @param inKeyColumn name of column used as a primary key
+   * @throws ObviousException when the table cannot be created
+   */
+  private void initialize(Schema inSchema, String tName, String inKeyColumn)
+      throws ObviousException {
+    this.schema = inSchema;
+    this.statements = new JDBCStatementCache(con);
+    this.tableName = tName;
+    // If the table needs to be created, it has to know the primary key to use
+    this.primaryKey = inKeyColumn;
+    maybeCreateTable();
+    if (inKeyColumn == null) {
+      this.primaryKey = getPrimaryKey(con, tName);
+    }
+    loadRowIndex();
+  }
+
   protected void maybeCreateTable() throws ObviousException {
       if (!tableExist()) {
           if (primaryKey == null) {
@@ -261,6 +370,104 @@ public class JDBCObviousTable implements Table {
       }
   }
 
+  /**
+   * Builds the row index from the primary keys stored in the database.
+   * @throws ObviousException when the keys cannot be read
+   */
+  private void loadRowIndex() throws ObviousException {
+    int keyCol = schema.getColumnIndex(primaryKey);
+    rowIndex = new JDBCRowIndex(keyCol >= 0
+        && JDBCRowIndex.isIntegral(schema.getColumnType(keyCol)));
+    try {
+      for (Object key : readKeys()) {
+        rowIndex.addRow(key);
+      }
+    } catch (SQLException e) {
+      throw new ObviousException(e);
+    }
+  }
+
+  /**
+   * Reads all the primary key values of the table with a single query.
+   * @return the keys, in ascending order
+   * @throws SQLException when the query fails
+   */
+  private List<Object> readKeys() throws SQLException {
+    List<Object> keys = new ArrayList<Object>();
+    PreparedStatement pStatement = con.prepareStatement("SELECT "
+        + primaryKey + " FROM " + tableName + " ORDER BY " + primaryKey);
+    try {
+      pStatement.setFetchSize(DEFAULT_FETCH_SIZE);
+      ResultSet result = pStatement.executeQuery();
+      while (result.next()) {
+        keys.add(result.getObject(1));
+      }
+      result.close();
+    } finally {
+      pStatement.close();
+    }
+    return keys;
+  }
+
+  /**
+   * Synchronizes the row index with the database, for tables also modified
+   * by other clients. Rows whose key disappeared are removed, new keys get
+   * new rows, and the row cache is cleared so that modified values are read
+   * again. This method can be called periodically, e.g. from a
+   * javax.swing.Timer; listeners receive the deletions and insertions, then
+   * an update event covering all the rows.
+   * @return true if rows were inserted or removed
+   * @throws ObviousException when the keys cannot be read
+   */
+  public boolean refresh() throws ObviousException {
+    List<Object> keys;
+    if (isInBatchMode) {
+      flushBatch();
+    }
+    try {
+      keys = readKeys();
+    } catch (SQLException e) {
+      throw new ObviousException(e);
+    }
+    BitSet present = new BitSet();
+    List<Integer> inserted = new ArrayList<Integer>();
+    for (Object key : keys) {
+      int row = rowIndex.getRow(key);
+      if (row < 0) {
+        row = rowIndex.addRow(key);
+        inserted.add(row);
+      }
+      present.set(row);
+    }
+    List<Integer> removed = new ArrayList<Integer>();
+    for (IntIterator it = rowIndex.rowIterator(); it.hasNext();) {
+      int row = it.nextInt();
+      if (!present.get(row)) {
+        removed.add(row);
+      }
+    }
+    for (int row : removed) {
+      rowIndex.removeRow(row);
+    }
+    if (isInBatchMode) {
+      // The rows read are not undone if a later batch fails.
+      rowIndex.mark();
+    }
+    addable = null;
+    rowCache.clear();
+    for (int row : removed) {
+      fireTableEvent(row, row, TableListener.ALL_COLUMN, TableListener.DELETE);
+    }
+    for (int row : inserted) {
+      fireTableEvent(row, row, TableListener.ALL_COLUMN, TableListener.INSERT);
+    }
+    if (rowIndex.getRowTop() > 0) {
+      fireTableEvent(0, rowIndex.getRowTop() - 1, TableListener.ALL_COLUMN,
+          TableListener.UPDATE);
+    }
+    return !removed.isEmpty() || !inserted.isEmpty();
+  }
+
   /**
    * Checks if the table already exist in the database.
    * @return true if table already created
@@ -356,12 +563,7 @@ public class JDBCObviousTable implements Table {
     this.editing = true;
     if (col == BATCH_MODE) {
       this.isInBatchMode = true;
-      try {
-        this.batchStmt = con.createStatement();
-        this.batchStmt.clearBatch();
-      } catch (SQLException e) {
-        e.printStackTrace();
-      }
+      rowIndex.mark();
     }
     for (TableListener listnr : this.getTableListeners()) {
       listnr.beginEdit(col);
@@ -371,30 +573,36 @@ public class JDBCObviousTable implements Table {
   /**
    * Indicates if it is possible to add a row in this table.
    * If a column or the database is readOnly, the implementation assumes
-   * it is impossible to add a row.
+   * it is impossible to add a row. The answer is computed once, then
+   * reset by {@link #refresh()}.
    * @return true if possible
    */
   public boolean canAddRow() {
-    Boolean addable = true;
+    if (addable != null) {
+      return addable;
+    }
     //con = null;
     PreparedStatement pStatement = null;
     ResultSet result = null;
     try {
       //con = DriverManager.getConnection(url, username, password);
+      boolean canAdd = true;
       DatabaseMetaData metadata = con.getMetaData();
       if (metadata.isReadOnly()) {
-        addable = false;
+        canAdd = false;
       } else {
-        String request = "SELECT * FROM " + this.tableName;
+        // Only the metadata is needed, so no row is read.
+        String request = "SELECT * FROM " + this.tableName + " WHERE 1 = 0";
         pStatement = con.prepareStatement(request);
-        result = pStatement.executeQuery(request);
+        result = pStatement.executeQuery();
         ResultSetMetaData setMetadata = result.getMetaData();
         for (int i = 1; i <= setMetadata.getColumnCount(); i++) {
          if (setMetadata.isReadOnly(i)) {
-           addable = false;
+           canAdd = false;
          }
         }
       }
+      addable = canAdd;
       return addable;
     }  catch (SQLException e) {
       System.err.println("SQLException: " + e.getMessage());
@@ -416,21 +624,25 @@ public class JDBCObviousTable implements Table {
   }
 
   /**
-   * Indicates the end of a column edit.
+   * Indicates the end of a column edit. Ending the batch mode executes the
+   * pending operations; if they fail, they are undone in the table, the
+   * listeners end their edit as usual, then the failure is thrown.
    * @param col column index
    * @return true if transaction succeed
-   * @throws ObviousException if edition is not supported.
+   * @throws ObviousException if edition is not supported, or if the
+   * pending operations of the batch mode fail.
    */
   public boolean endEdit(int col) throws ObviousException {
     this.editing = false;
+    ObviousException failure = null;
     if (isInBatchMode) {
-      this.isInBatchMode = false;
       try {
-        this.batchStmt.executeBatch();
-        this.batchStmt.close();
-      } catch (SQLException e) {
-        e.printStackTrace();
+        flushBatch();
+      } catch (ObviousException e) {
+        failure = e;
       }
+      this.isInBatchMode = false;
+      rowIndex.unmark();
     }
     boolean success = true;
     TableListener failedListener = null;
@@ -447,35 +659,137 @@ public class JDBCObviousTable implements Table {
         listnr.endEdit(col);
       }
     }
+    if (failure != null) {
+      throw failure;
+    }
     return success;
   }
 
   /**
-   * Gets the number of line in the table.
-   * @return number of line in the table
+   * Gets the number of pending operations that triggers the execution of
+   * the batch in batch mode.
+   * @return the batch size
    */
-  public int getRowCount() {
-    //con = null;
-    PreparedStatement pStatement = null;
-    ResultSet result = null;
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the number of pending operations that triggers the execution of
+   * the batch in batch mode.
+   * @param size the batch size, at least one
+   */
+  public void setBatchSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Batch size must be positive");
+    }
+    this.batchSize = size;
+  }
+
+  /**
+   * Adds an operation to the batch. The pending operations are executed
+   * first when the batch is full or when the operation cannot be batched
+   * with them, so that an operation is only executed once the table has
+   * recorded it.
+   * @param stmt a pooled statement with its parameters bound
+   * @throws SQLException if the operation cannot be added
+   * @throws ObviousException if the pending operations fail
+   */
+  private void addToBatch(PreparedStatement stmt) throws SQLException,
+      ObviousException {
+    if (statements.getPendingCount() >= batchSize
+        || !statements.canAddBatch(stmt)) {
+      flushBatch();
+    }
+    statements.addBatch(stmt);
+  }
+
+  /**
+   * Executes the pending operations of the batch mode, then notifies their
+   * coalesced events. If the execution fails, the operations are undone in
+   * the table: the row index is rolled back to the previous execution, the
+   * row cache is cleared and the pending events are discarded. The
+   * connection is rolled back too when it is not in auto-commit mode; in
+   * auto-commit mode, the operations executed before the failure stay in
+   * the database and {@link #refresh()} shows them.
+   * @throws ObviousException if the batch execution fails
+   */
+  private void flushBatch() throws ObviousException {
     try {
-      //con = DriverManager.getConnection(url, username, password);
-      String request = "SELECT * FROM " + this.tableName;
-      pStatement = con.prepareStatement(request);
-      result = pStatement.executeQuery(request);
-      int rowCount = 0;
-      while (result.next()) {
-        rowCount++;
+      statements.executeBatch();
+    } catch (SQLException e) {
+      rowIndex.rollback();
+      rowCache.clear();
+      pendingEvents = new ArrayList<int[]>();
+      try {
+        if (!con.getAutoCommit()) {
+          con.rollback();
+        }
+      } catch (SQLException e1) {
+        e1.printStackTrace();
       }
-      return rowCount;
-    } catch (Exception e) {
-      System.err.println("SQLException: " + e.getMessage());
-      return 0;
-    } finally {
-      try { result.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      //try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+      throw new ObviousException(e);
+    }
+    rowIndex.mark();
+    List<int[]> events = pendingEvents;
+    pendingEvents = new ArrayList<int[]>();
+    for (int[] event : events) {
+      fireTableEvent(event[0], event[1], event[2], event[3]);
+    }
+  }
+
+  /**
+   * Executes the pending operations of the batch mode before the database
+   * is read, so that reads see the buffered writes.
+   * @throws ObviousRuntimeException if the batch execution fails
+   */
+  private void flushBeforeRead() {
+    if (isInBatchMode && statements.getPendingCount() > 0) {
+      try {
+        flushBatch();
+      } catch (ObviousException e) {
+        throw new ObviousRuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Notifies a change. In batch mode, the event is delayed until the batch
+   * is executed and merged with the previous pending event if it has the
+   * same type and a row range overlapping or touching this one.
+   * @param start the starting row index of the changed table region
+   * @param end the ending row index of the changed table region
+   * @param col the column that has changed
+   * @param type the type of modification
+   */
+  private void notifyChange(int start, int end, int col, int type) {
+    if (!isInBatchMode) {
+      fireTableEvent(start, end, col, type);
+      return;
     }
+    rowCache.tableChanged(this, start, end, col, type);
+    if (!pendingEvents.isEmpty()) {
+      int[] last = pendingEvents.get(pendingEvents.size() - 1);
+      if (last[3] == type && start <= last[1] + 1 && end >= last[0] - 1) {
+        last[0] = Math.min(last[0], start);
+        last[1] = Math.max(last[1], end);
+        if (last[2] != col) {
+          last[2] = TableListener.ALL_COLUMN;
+        }
+        return;
+      }
+    }
+    pendingEvents.add(new int[] {start, end, col, type});
+  }
+
+  /**
+   * Gets the number of line in the table. It is maintained by the row
+   * index, so rows modified by other clients are only counted after
+   * {@link #refresh()}.
+   * @return number of line in the table
+   */
+  public int getRowCount() {
+    return rowIndex.getRowCount();
   }
 
   /**
@@ -494,27 +808,61 @@ public class JDBCObviousTable implements Table {
     return listener;
   }
 
+  /**
+   * Gets the cache of the rows read from the database. It can be used to
+   * bound the cache or to read its hit and miss counters.
+   * @return the row cache
+   */
+  public JDBCRowCache getRowCache() {
+    return rowCache;
+  }
+
+  /**
+   * Gets the number of rows read by a single query when a row misses the
+   * cache.
+   * @return the number of prefetched rows
+   */
+  public int getPrefetchSize() {
+    return prefetchSize;
+  }
+
+  /**
+   * Sets the number of rows read by a single query when a row misses the
+   * cache. The following rows are read along with the missing one.
+   * @param size number of rows, at least one
+   */
+  public void setPrefetchSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Prefetch size must be positive");
+    }
+    this.prefetchSize = size;
+  }
+
   /**
    * Gets a specified value in the database.
+   * The row is read through the row cache when it is enabled. On a cache
+   * miss in batch mode, the pending operations are executed before the
+   * database is read.
    * @param rowId JDBC index of the row
    * @param field name of the column
    * @return the value described by rowId and field
    */
   public Object getValue(int rowId, String field) {
-    //con = null;
-    PreparedStatement pStatement = null;
+    int col = schema.getColumnIndex(field);
+    if (col >= 0 && rowCache.isEnabled() && rowIndex.isValidRow(rowId)) {
+      Object[] values = rowCache.get(rowId);
+      if (values == null) {
+        values = fetchRows(rowId);
+      }
+      return values != null ? values[col] : null;
+    }
     ResultSet result = null;
     try {
-      //con = DriverManager.getConnection(url, username, password);
-      String request = "SELECT " + field + " FROM " + tableName + " WHERE "
-        + primaryKey + " = ";
-      TypedFormat formatSQL = formatFactory.
-        getFormat(getColumnSQLType(schema.getColumnIndex(primaryKey)));
-      StringBuffer tupleSQL = formatSQL.format(rowIndexMap.get(rowId),
-          new StringBuffer(), new FieldPosition(0));
-      request += tupleSQL;
-      pStatement = con.prepareStatement(request);
-      result = pStatement.executeQuery(request);
+      flushBeforeRead();
+      PreparedStatement pStatement = statements.prepare("SELECT " + field
+          + " FROM " + tableName + " WHERE " + primaryKey + " = ?");
+      bindKey(pStatement, 1, rowIndex.getKey(rowId));
+      result = pStatement.executeQuery();
       // result must have an unique row, cause it has been built with a primary
       // key as parameter.
       result.next();
@@ -523,11 +871,129 @@ public class JDBCObviousTable implements Table {
       System.err.println("SQLException: " + e.getMessage());
       return null;
     } finally {
-      try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      //try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+      try {
+        if (result != null) {
+          result.close();
+        }
+      } catch (Exception e) { e.printStackTrace(); }
+    }
+  }
+
+
+  /**
+   * Reads from the database a block of rows starting at a given row with a
+   * single query, and puts them in the row cache. Following rows already
+   * cached are not read again.
+   * @param rowId first row to read, it has to be valid
+   * @return the values of the row rowId, null if it cannot be read
+   */
+  private Object[] fetchRows(int rowId) {
+    List<Object> keys = new ArrayList<Object>();
+    for (int row = rowId; row < rowId + prefetchSize; row++) {
+      if (rowIndex.isValidRow(row)
+          && (row == rowId || !rowCache.contains(row))) {
+        keys.add(rowIndex.getKey(row));
+      }
+    }
+    // The key list is padded so that a single statement serves all blocks.
+    while (keys.size() < prefetchSize) {
+      keys.add(keys.get(keys.size() - 1));
+    }
+    StringBuffer request = new StringBuffer("SELECT ");
+    for (int i = 0; i < schema.getColumnCount(); i++) {
+      request.append(schema.getColumnName(i)).append(", ");
+    }
+    request.append(primaryKey).append(" FROM ").append(tableName)
+      .append(" WHERE ").append(primaryKey).append(" IN (");
+    for (int i = 0; i < keys.size(); i++) {
+      request.append(i == 0 ? "?" : ", ?");
+    }
+    request.append(")");
+    ResultSet result = null;
+    Object[] requested = null;
+    try {
+      flushBeforeRead();
+      PreparedStatement pStatement = statements.prepare(request.toString());
+      for (int i = 0; i < keys.size(); i++) {
+        bindKey(pStatement, i + 1, keys.get(i));
+      }
+      result = pStatement.executeQuery();
+      int keyCol = schema.getColumnCount() + 1;
+      while (result.next()) {
+        int row = rowIndex.getRow(result.getObject(keyCol));
+        if (row < 0) {
+          continue;
+        }
+        Object[] values = new Object[schema.getColumnCount()];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = result.getObject(i + 1);
+        }
+        rowCache.put(row, values);
+        if (row == rowId) {
+          requested = values;
+        }
+      }
+      return requested;
+    } catch (SQLException e) {
+      System.err.println("SQLException: " + e.getMessage());
+      return null;
+    } finally {
+      try {
+        if (result != null) {
+          result.close();
+        }
+      } catch (Exception e) { e.printStackTrace(); }
     }
   }
 
+  /**
+   * Opens a cursor reading all the rows of the table with a single query.
+   * This is much faster than reading the rows one at a time through
+   * rowIterator, so {@link obvious.util.ObviousLib#fillTable(Table, Table)
+   * ObviousLib.fillTable} uses it.
+   * @return a cursor, to be closed once used
+   */
+  public TupleCursor scan() {
+    return scan(DEFAULT_FETCH_SIZE);
+  }
+
+  /**
+   * Opens a cursor reading all the rows of the table with a single query.
+   * The fetch size is a hint to the driver: some drivers only stream
+   * results under conditions, e.g. PostgreSQL outside of auto-commit mode,
+   * or MySQL with a fetch size of Integer.MIN_VALUE. Pending operations of
+   * the batch mode are executed first.
+   * @param fetchSize number of rows fetched from the server at once
+   * @return a cursor, to be closed once used
+   */
+  public JDBCTableCursor scan(int fetchSize) {
+    flushBeforeRead();
+    StringBuffer request = new StringBuffer("SELECT ");
+    for (int i = 0; i < schema.getColumnCount(); i++) {
+      request.append(schema.getColumnName(i)).append(", ");
+    }
+    request.append(primaryKey).append(" FROM ").append(tableName);
+    try {
+      return new JDBCTableCursor(con, request.toString(), fetchSize, schema,
+          rowIndex);
+    } catch (SQLException e) {
+      throw new ObviousRuntimeException(e);
+    }
+  }
+
+  /**
+   * Binds a primary key value to a parameter of a statement.
+   * @param stmt a prepared statement
+   * @param index index of the parameter, starting from 1
+   * @param key primary key value
+   * @throws SQLException if the value cannot be bound
+   */
+  private void bindKey(PreparedStatement stmt, int index, Object key)
+      throws SQLException {
+    Class<?> type = schema.getColumnIndex(primaryKey) >= 0
+        ? schema.getColumnType(primaryKey) : null;
+    JDBCStatementCache.setParameter(stmt, index, key, type);
+  }
 
   /**
    * Gets a specified value in the database.
@@ -555,7 +1021,7 @@ public class JDBCObviousTable implements Table {
    * @return true if valid
    */
   public boolean isValidRow(int rowId) {
-    return rowIndexMap.containsKey(rowId);
+    return rowIndex.isValidRow(rowId);
   }
 
   /**
@@ -578,20 +1044,18 @@ public class JDBCObviousTable implements Table {
    * Removes all the rows in the table.
    */
   public void removeAllRows() {
-    //con = null;
-    PreparedStatement pStatement = null;
     if (this.canRemoveRow()) {
       try {
-        int r = getRowCount() - 1;
-        String request = "DELETE FROM " + this.tableName;
+        int r = rowIndex.getRowTop() - 1;
+        PreparedStatement pStatement = statements.prepare("DELETE FROM "
+            + this.tableName);
         if (!isInBatchMode) {
-          pStatement = con.prepareStatement(request);
-          pStatement.executeUpdate(request);
-          rowIndexMap.clear();
+          pStatement.executeUpdate();
         } else {
-          batchStmt.addBatch(request);
+          addToBatch(pStatement);
         }
-        this.fireTableEvent(0, r,
+        rowIndex.clear();
+        this.notifyChange(0, r,
             TableListener.ALL_COLUMN, TableListener.DELETE);
       }  catch (SQLException e) {
         System.err.println("SQLException: " + e.getMessage());
@@ -604,13 +1068,6 @@ public class JDBCObviousTable implements Table {
         }
       } catch (Exception e) {
         throw new ObviousRuntimeException(e);
-      } finally {
-        try {
-          if (pStatement != null) {
-            pStatement.close();
-          }
-        } catch (Exception e) { e.printStackTrace(); }
-        //try { con.close(); } catch (Exception e) { e.printStackTrace(); }
       }
     }
   }
@@ -618,28 +1075,23 @@ public class JDBCObviousTable implements Table {
   /**
    * Deletes the indicated row in the database.
    * @param row JDBC index of the row to delete
-   * @return true if deleted
+   * @return true if deleted, false if the row is not valid
    */
   public boolean removeRow(int row) {
-    //con = null;
-    PreparedStatement pStatement = null;
+    if (!rowIndex.isValidRow(row)) {
+      return false;
+    }
     try {
-      //con = DriverManager.getConnection(url, username, password);
-      String request = "DELETE FROM " + tableName + " WHERE " + primaryKey
-        + " = ";
-      TypedFormat formatSQL = formatFactory.
-      getFormat(getColumnSQLType(schema.getColumnIndex(primaryKey)));
-      StringBuffer tupleSQL = formatSQL.format(rowIndexMap.get(row),
-          new StringBuffer(), new FieldPosition(0));
-      request += tupleSQL;
+      PreparedStatement pStatement = statements.prepare("DELETE FROM "
+          + tableName + " WHERE " + primaryKey + " = ?");
+      bindKey(pStatement, 1, rowIndex.getKey(row));
       if (!isInBatchMode) {
-        pStatement = con.prepareStatement(request);
-        pStatement.execute(request);
+        pStatement.executeUpdate();
       } else {
-        batchStmt.addBatch(request);
+        addToBatch(pStatement);
       }
-      rowIndexMap.remove(row);
-      this.fireTableEvent(row, row,
+      rowIndex.removeRow(row);
+      this.notifyChange(row, row,
           TableListener.ALL_COLUMN, TableListener.DELETE);
       return true;
     } catch (SQLException e) {
@@ -654,13 +1106,6 @@ public class JDBCObviousTable implements Table {
       return false;
     } catch (Exception e) {
       throw new ObviousRuntimeException(e);
-    } finally {
-      try {
-        if (pStatement != null) {
-          pStatement.close();
-        }
-      } catch (Exception e) { e.printStackTrace(); }
-      //try { con.close(); } catch (Exception e) { e.printStackTrace(); }
     }
   }
 
@@ -677,7 +1122,7 @@ public class JDBCObviousTable implements Table {
    * @return an iterator over the rows of this table
    */
   public IntIterator rowIterator() {
-    return new IntIteratorImpl(rowIndexMap.keySet().iterator());
+    return rowIndex.rowIterator();
   }
 
   /**
@@ -687,34 +1132,95 @@ public class JDBCObviousTable implements Table {
    * @return an iterator over the rows of this table.
    */
   public IntIterator rowIterator(Predicate pred) {
-    return new FilterIntIterator(this, pred);
+    List<Object> params = new ArrayList<Object>();
+    List<Class<?>> types = new ArrayList<Class<?>>();
+    List<Predicate> residual = new ArrayList<Predicate>();
+    String condition = new JDBCPredicateTranslator(schema)
+      .translateConjunction(pred, params, types, residual);
+    BitSet rows = condition != null ? selectRows(condition, params, types)
+        : null;
+    if (rows == null) {
+      return new FilterIntIterator(this, pred);
+    }
+    for (int row = rows.nextSetBit(0); row >= 0;
+        row = rows.nextSetBit(row + 1)) {
+      for (Predicate clause : residual) {
+        if (!clause.apply(this, row)) {
+          rows.clear(row);
+          break;
+        }
+      }
+    }
+    return new BitSetIntIterator(rows);
+  }
+
+  /**
+   * Selects in the database the rows matching an SQL condition. Pending
+   * operations of the batch mode are executed first.
+   * @param condition an SQL condition
+   * @param params values of the parameters of the condition
+   * @param types column types of the parameters
+   * @return a new bitmap of the matching rows, null if the query fails
+   */
+  private BitSet selectRows(String condition, List<Object> params,
+      List<Class<?>> types) {
+    PreparedStatement pStatement = null;
+    try {
+      flushBeforeRead();
+      // Conditions are not pooled, their text depends on the predicate.
+      pStatement = con.prepareStatement("SELECT " + primaryKey + " FROM "
+          + tableName + " WHERE " + condition);
+      for (int i = 0; i < params.size(); i++) {
+        JDBCStatementCache.setParameter(pStatement, i + 1, params.get(i),
+            types.get(i));
+      }
+      pStatement.setFetchSize(DEFAULT_FETCH_SIZE);
+      ResultSet result = pStatement.executeQuery();
+      BitSet rows = new BitSet();
+      while (result.next()) {
+        int row = rowIndex.getRow(result.getObject(1));
+        if (row >= 0) {
+          rows.set(row);
+        }
+      }
+      result.close();
+      return rows;
+    } catch (SQLException e) {
+      System.err.println("SQLException: " + e.getMessage());
+      return null;
+    } finally {
+      try {
+        if (pStatement != null) {
+          pStatement.close();
+        }
+      } catch (SQLException e) { e.printStackTrace(); }
+    }
   }
 
   /**
    * Sets for a specified row and column a value in the database.
+   * The row is identified by its primary key.
    * @param rowId JDBC index of the row
    * @param field name of the column
    * @param val value to set in the database
    */
   public void set(int rowId, String field, Object val) {
-    //con = null;
-    PreparedStatement pStatement = null;
     try {
-      //con = DriverManager.getConnection(url, username, password);
-      String request = "UPDATE " + tableName + " SET " + field + " = ";
-      TypedFormat formatSQL = formatFactory.getFormat(
-          getColumnSQLType(schema.getColumnIndex(field)));
-      StringBuffer newValue = formatSQL.format(val,
-          new StringBuffer(), new FieldPosition(0));
-      StringBuffer formerValue = formatSQL.format(this.getValue(rowId, field),
-          new StringBuffer(), new FieldPosition(0));
-      request += newValue + " WHERE " + field + " = " + formerValue;
+      PreparedStatement pStatement = statements.prepare("UPDATE " + tableName
+          + " SET " + field + " = ? WHERE " + primaryKey + " = ?");
+      JDBCStatementCache.setParameter(pStatement, 1, val,
+          schema.getColumnType(field));
+      bindKey(pStatement, 2, rowIndex.getKey(rowId));
       if (!isInBatchMode) {
-        pStatement = con.prepareStatement(request);
-        pStatement.executeUpdate(request);
+        pStatement.executeUpdate();
       } else {
-        batchStmt.addBatch(request);
+        addToBatch(pStatement);
       }
+      if (field.equals(primaryKey)) {
+        rowIndex.setKey(rowId, val);
+      }
+      this.notifyChange(rowId, rowId, this.getSchema().getColumnIndex(field),
+          TableListener.UPDATE);
     } catch (SQLException e) {
       System.err.println("SQLException: " + e.getMessage());
       try {
@@ -725,17 +1231,8 @@ public class JDBCObviousTable implements Table {
         e1.printStackTrace();
       }
     } catch (Exception e) {
-      new ObviousRuntimeException(e);
-    } finally {
-      try {
-        if (pStatement != null) {
-          pStatement.close();
-        }
-      } catch (Exception e) { e.printStackTrace(); }
-      //try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+      throw new ObviousRuntimeException(e);
     }
-    this.fireTableEvent(rowId, rowId, this.getSchema().getColumnIndex(field),
-        TableListener.UPDATE);
   }
 
   /**
@@ -755,41 +1252,34 @@ public class JDBCObviousTable implements Table {
    * @return number of rows
    */
   public int addRow(Tuple tuple) {
-    //con = null;
-    PreparedStatement pStatement = null;
+    int r = -1;
     try {
-      //con = DriverManager.getConnection(url, username, password);
       Object primaryValue = null;
-      String request = "INSERT INTO " + tableName + " (";
-      for (int i = 0; i < tuple.getSchema().getColumnCount(); i++) {
-        request += tuple.getSchema().getColumnName(i);
-        if (i == tuple.getSchema().getColumnCount() - 1) {
-          request += ") VALUES (";
-        } else {
-          request += ", ";
-        }
+      Schema tupleSchema = tuple.getSchema();
+      StringBuffer request = new StringBuffer("INSERT INTO " + tableName
+          + " (");
+      for (int i = 0; i < tupleSchema.getColumnCount(); i++) {
+        request.append(i == 0 ? "" : ", ").append(tupleSchema.getColumnName(i));
+      }
+      request.append(") VALUES (");
+      for (int i = 0; i < tupleSchema.getColumnCount(); i++) {
+        request.append(i == 0 ? "?" : ", ?");
       }
-      for (int i = 0; i < tuple.getSchema().getColumnCount(); i++) {
-        TypedFormat formatSQL = formatFactory.getFormat(getColumnSQLType(i));
-        StringBuffer tupleSQL = formatSQL.format(tuple.get(i),
-            new StringBuffer(), new FieldPosition(0));
-        request += tupleSQL;
-        if (tuple.getSchema().getColumnName(i).equals(primaryKey)) {
+      request.append(")");
+      PreparedStatement pStatement = statements.prepare(request.toString());
+      for (int i = 0; i < tupleSchema.getColumnCount(); i++) {
+        JDBCStatementCache.setParameter(pStatement, i + 1, tuple.get(i),
+            tupleSchema.getColumnType(i));
+        if (tupleSchema.getColumnName(i).equals(primaryKey)) {
           primaryValue = tuple.get(i);
         }
-        if (i == tuple.getSchema().getColumnCount() - 1) {
-          request += ")";
-        } else {
-          request += ", ";
-        }
       }
       if (!isInBatchMode) {
-        pStatement = con.prepareStatement(request);
-        pStatement.executeUpdate(request);
+        pStatement.executeUpdate();
       } else {
-        batchStmt.addBatch(request);
+        addToBatch(pStatement);
       }
-      rowIndexMap.put(this.getRowCount() - 1, primaryValue);
+      r = rowIndex.addRow(primaryValue);
     } catch (SQLException e) {
       System.err.println("SQLException: " + e.getMessage());
       try {
@@ -801,44 +1291,36 @@ public class JDBCObviousTable implements Table {
         e1.printStackTrace();
       }
     } catch (Exception e) {
-      new ObviousRuntimeException(e);
-    } finally {
-      try {
-        if (pStatement != null) {
-          pStatement.close();
-        }
-      } catch (Exception e) { e.printStackTrace(); }
-      //try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+      throw new ObviousRuntimeException(e);
+    }
+    if (r >= 0) {
+      this.notifyChange(r, r, TableListener.ALL_COLUMN, TableListener.INSERT);
     }
-    int r = this.getRowCount() - 1;
-    this.fireTableEvent(r, r, TableListener.ALL_COLUMN, TableListener.INSERT);
     return this.getRowCount();
   }
 
   /**
-   * Return the corresponding SQL Type as a string for a column in the schema.
-   * This method should not be called directly by the programmer.
-   * @param col column index
-   * @return SQL type of the column (string)
+   * Closes the prepared statements of the table. This method should be
+   * called before closing the connection; statements are prepared again if
+   * the table is used afterwards.
    */
-  private String getColumnSQLType(int col) {
-    //con = null;
-    PreparedStatement pStatement = null;
-    ResultSet result = null;
-    try {
-      //con = DriverManager.getConnection(url, username, password);
-      String request = "SELECT * FROM " + tableName;
-      pStatement = con.prepareStatement(request);
-      result = pStatement.executeQuery(request);
-      ResultSetMetaData setMetadata = result.getMetaData();
-      return setMetadata.getColumnTypeName(col + 1); // JDBC cols start from 1
-    } catch (SQLException e) {
-      System.err.println("SQLException: " + e.getMessage());
-      return null;
-    } finally {
-      try { result.close(); } catch (Exception e) { e.printStackTrace(); }
-      try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-      //try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+  public void closeStatements() {
+    statements.close();
+  }
+
+  /**
+   * Closes the prepared statements of the table and, if the table borrowed
+   * its connection from a pool, gives the connection back. A connection
+   * given to the constructor is left open. The table cannot be used once
+   * its connection is given back.
+   */
+  public void close() {
+    if (statements != null) {
+      statements.close();
+    }
+    if (pool != null) {
+      pool.release(con);
+      pool = null;
     }
   }
 
@@ -862,6 +1344,7 @@ public class JDBCObviousTable implements Table {
    * @param type the type of modification
    */
   public void fireTableEvent(int start, int end, int col, int type) {
+    rowCache.tableChanged(this, start, end, col, type);
     if (listener.isEmpty()) {
       return;
     }
@@ -0,0 +1,215 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import obvious.data.Schema;
+import obvious.data.util.Predicate;
+import obvious.impl.predicate.AndPredicate;
+import obvious.impl.predicate.ComparisonPredicate;
+import obvious.impl.predicate.CompositePredicate;
+import obvious.impl.predicate.NotPredicate;
+import obvious.impl.predicate.OrPredicate;
+import obvious.impl.predicate.RangePredicate;
+
+/**
+ * Translates obvious predicates into SQL conditions with bound parameters.
+ * <p>
+ * The predicates of obvious.impl.predicate on columns of the schema are
+ * translated; other predicates cannot be, since their code is only known
+ * to Java. Translated conditions match the same rows as the predicates:
+ * null values never match a comparison or a range, negations are written
+ * so that they hold where SQL would answer unknown. Strings are compared
+ * with the collation of the database.
+ * </p>
+ * @author obvious
+ *
+ */
+public class JDBCPredicateTranslator {
+
+  /**
+   * SQL operators indexed by ComparisonPredicate operation.
+   */
+  private static final String[] OPERATORS = {"<", ">", "=", "<>", "<=", ">="};
+
+  /**
+   * Schema of the queried table.
+   */
+  private Schema schema;
+
+  /**
+   * Constructor.
+   * @param inSchema schema of the queried table
+   */
+  public JDBCPredicateTranslator(Schema inSchema) {
+    this.schema = inSchema;
+  }
+
+  /**
+   * Translates a predicate as a whole.
+   * @param pred a predicate
+   * @param params list receiving the parameter values of the condition
+   * @param types list receiving the column types of the parameters
+   * @return the SQL condition, null if the predicate cannot be translated,
+   * in that case the lists are left unchanged
+   */
+  public String translate(Predicate pred, List<Object> params,
+      List<Class<?>> types) {
+    List<Object> newParams = new ArrayList<Object>();
+    List<Class<?>> newTypes = new ArrayList<Class<?>>();
+    String condition = translatePredicate(pred, newParams, newTypes);
+    if (condition != null) {
+      params.addAll(newParams);
+      types.addAll(newTypes);
+    }
+    return condition;
+  }
+
+  /**
+   * Translates the clauses of a conjunction that can be translated. The
+   * other clauses are added to a residual list, to be evaluated in Java on
+   * the rows selected by the condition.
+   * @param pred a predicate, treated as a single clause if it is not an
+   * AndPredicate
+   * @param params list receiving the parameter values of the condition
+   * @param types list receiving the column types of the parameters
+   * @param residual list receiving the clauses not translated
+   * @return the SQL condition, null if no clause can be translated
+   */
+  public String translateConjunction(Predicate pred, List<Object> params,
+      List<Class<?>> types, List<Predicate> residual) {
+    if (!(pred instanceof AndPredicate)) {
+      String condition = translate(pred, params, types);
+      if (condition == null) {
+        residual.add(pred);
+      }
+      return condition;
+    }
+    AndPredicate and = (AndPredicate) pred;
+    StringBuffer condition = null;
+    for (int i = 0; i < and.size(); i++) {
+      String clause = translateConjunction(and.get(i), params, types,
+          residual);
+      if (clause == null) {
+        continue;
+      } else if (condition == null) {
+        condition = new StringBuffer(clause);
+      } else {
+        condition.append(" AND ").append(clause);
+      }
+    }
+    if (condition == null && and.size() == 0) {
+      return "1 = 1";
+    }
+    return condition != null ? condition.toString() : null;
+  }
+
+  /**
+   * Translates a predicate.
+   * @param pred a predicate
+   * @param params list receiving the parameter values
+   * @param types list receiving the column types of the parameters
+   * @return the SQL condition, null if the predicate cannot be translated
+   */
+  private String translatePredicate(Predicate pred, List<Object> params,
+      List<Class<?>> types) {
+    if (pred instanceof ComparisonPredicate) {
+      ComparisonPredicate comp = (ComparisonPredicate) pred;
+      String field = comp.getField();
+      if (!isColumn(field) || comp.getOperation() < 0
+          || comp.getOperation() >= OPERATORS.length) {
+        return null;
+      } else if (comp.getValue() == null) {
+        return "1 = 0";
+      }
+      params.add(comp.getValue());
+      types.add(schema.getColumnType(field));
+      return field + " " + OPERATORS[comp.getOperation()] + " ?";
+    } else if (pred instanceof RangePredicate) {
+      RangePredicate range = (RangePredicate) pred;
+      String field = range.getField();
+      if (!isColumn(field)) {
+        return null;
+      }
+      StringBuffer condition = new StringBuffer();
+      if (range.getLow() != null) {
+        condition.append(field).append(range.isLowInclusive() ? " >= ?"
+            : " > ?");
+        params.add(range.getLow());
+        types.add(schema.getColumnType(field));
+      }
+      if (range.getHigh() != null) {
+        condition.append(condition.length() > 0 ? " AND " : "").append(field)
+          .append(range.isHighInclusive() ? " <= ?" : " < ?");
+        params.add(range.getHigh());
+        types.add(schema.getColumnType(field));
+      }
+      if (condition.length() == 0) {
+        return field + " IS NOT NULL";
+      }
+      return "(" + condition + ")";
+    } else if (pred instanceof AndPredicate || pred instanceof OrPredicate) {
+      boolean and = pred instanceof AndPredicate;
+      CompositePredicate composite = (CompositePredicate) pred;
+      if (composite.size() == 0) {
+        return and ? "1 = 1" : "1 = 0";
+      }
+      StringBuffer condition = new StringBuffer("(");
+      for (int i = 0; i < composite.size(); i++) {
+        String clause = translatePredicate(composite.get(i), params, types);
+        if (clause == null) {
+          return null;
+        }
+        condition.append(i == 0 ? "" : (and ? " AND " : " OR "))
+          .append(clause);
+      }
+      return condition.append(")").toString();
+    } else if (pred instanceof NotPredicate) {
+      String clause = translatePredicate(((NotPredicate) pred).getPredicate(),
+          params, types);
+      if (clause == null) {
+        return null;
+      }
+      // Holds where the clause is false or unknown, like in Java.
+      return "(CASE WHEN " + clause + " THEN 0 ELSE 1 END = 1)";
+    }
+    return null;
+  }
+
+  /**
+   * Indicates if a name is a column of the schema.
+   * @param field a column name
+   * @return true if the column exists
+   */
+  private boolean isColumn(String field) {
+    return field != null && schema.getColumnIndex(field) >= 0;
+  }
+
+}
@@ -0,0 +1,374 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import obvious.data.Table;
+import obvious.data.event.TableListener;
+
+/**
+ * Least recently used cache of the rows of a JDBC table.
+ * <p>
+ * The cache maps a row index to the values of the row, ordered as the
+ * columns of the schema. It is bounded by a number of rows and by an
+ * estimated number of bytes; the least recently read rows are evicted
+ * first. As a TableListener, it drops the rows notified as changed.
+ * </p>
+ * @author obvious
+ *
+ */
+public class JDBCRowCache implements TableListener {
+
+  /**
+   * Default maximum number of cached rows.
+   */
+  public static final int DEFAULT_MAX_ROWS = 10000;
+
+  /**
+   * Estimated size in bytes of a cached row without its values.
+   */
+  private static final int ROW_OVERHEAD = 64;
+
+  /**
+   * Estimated size in bytes of a reference to a value.
+   */
+  private static final int VALUE_OVERHEAD = 8;
+
+  /**
+   * Cached rows by row index, in access order.
+   */
+  private LinkedHashMap<Integer, Object[]> rows =
+    new LinkedHashMap<Integer, Object[]>(16, 0.75f, true);
+
+  /**
+   * Maximum number of cached rows.
+   */
+  private int maxRows;
+
+  /**
+   * Maximum estimated size of the cached rows in bytes, zero or less if
+   * unbounded.
+   */
+  private long maxBytes;
+
+  /**
+   * Estimated size of the cached rows in bytes.
+   */
+  private long bytes;
+
+  /**
+   * Number of reads served by the cache.
+   */
+  private long hitCount;
+
+  /**
+   * Number of reads not served by the cache.
+   */
+  private long missCount;
+
+  /**
+   * Number of rows evicted to respect the bounds.
+   */
+  private long evictionCount;
+
+  /**
+   * Constructor.
+   * @param maxRowCount maximum number of cached rows, zero disables
+   * caching
+   * @param maxByteCount maximum estimated size of the cached rows in
+   * bytes, zero or less if unbounded
+   */
+  public JDBCRowCache(int maxRowCount, long maxByteCount) {
+    this.maxRows = maxRowCount;
+    this.maxBytes = maxByteCount;
+  }
+
+  /**
+   * Constructor for a cache bounded by DEFAULT_MAX_ROWS rows.
+   */
+  public JDBCRowCache() {
+    this(DEFAULT_MAX_ROWS, 0);
+  }
+
+  /**
+   * Indicates if the cache keeps rows.
+   * @return true if the maximum number of rows is positive
+   */
+  public boolean isEnabled() {
+    return maxRows > 0;
+  }
+
+  /**
+   * Gets the maximum number of cached rows.
+   * @return the maximum number of rows
+   */
+  public int getMaxRows() {
+    return maxRows;
+  }
+
+  /**
+   * Sets the maximum number of cached rows, evicting rows if needed.
+   * @param maxRowCount maximum number of rows, zero disables caching
+   */
+  public void setMaxRows(int maxRowCount) {
+    this.maxRows = maxRowCount;
+    evict();
+  }
+
+  /**
+   * Gets the maximum estimated size of the cached rows.
+   * @return the maximum size in bytes, zero or less if unbounded
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Sets the maximum estimated size of the cached rows, evicting rows if
+   * needed.
+   * @param maxByteCount maximum size in bytes, zero or less if unbounded
+   */
+  public void setMaxBytes(long maxByteCount) {
+    this.maxBytes = maxByteCount;
+    evict();
+  }
+
+  /**
+   * Gets a cached row and counts a hit or a miss.
+   * @param row row index
+   * @return the values of the row, null if the row is not cached
+   */
+  public Object[] get(int row) {
+    Object[] values = rows.get(row);
+    if (values == null) {
+      missCount++;
+    } else {
+      hitCount++;
+    }
+    return values;
+  }
+
+  /**
+   * Indicates if a row is cached, without changing the counters nor the
+   * access order.
+   * @param row row index
+   * @return true if cached
+   */
+  public boolean contains(int row) {
+    return rows.containsKey(row);
+  }
+
+  /**
+   * Caches a row, evicting the least recently used rows if needed.
+   * @param row row index
+   * @param values values of the row ordered as the schema columns
+   */
+  public void put(int row, Object[] values) {
+    if (!isEnabled()) {
+      return;
+    }
+    Object[] old = rows.put(row, values);
+    if (old != null) {
+      bytes -= estimateSize(old);
+    }
+    bytes += estimateSize(values);
+    evict();
+  }
+
+  /**
+   * Removes a row from the cache.
+   * @param row row index
+   */
+  public void invalidate(int row) {
+    Object[] old = rows.remove(row);
+    if (old != null) {
+      bytes -= estimateSize(old);
+    }
+  }
+
+  /**
+   * Removes a range of rows from the cache.
+   * @param start first row index
+   * @param end last row index
+   */
+  public void invalidate(int start, int end) {
+    if (end - start >= rows.size()) {
+      Iterator<Map.Entry<Integer, Object[]>> it = rows.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<Integer, Object[]> entry = it.next();
+        if (entry.getKey() >= start && entry.getKey() <= end) {
+          bytes -= estimateSize(entry.getValue());
+          it.remove();
+        }
+      }
+    } else {
+      for (int row = start; row <= end; row++) {
+        invalidate(row);
+      }
+    }
+  }
+
+  /**
+   * Removes all the rows from the cache. Counters are kept.
+   */
+  public void clear() {
+    rows.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Gets the number of cached rows.
+   * @return the number of rows
+   */
+  public int size() {
+    return rows.size();
+  }
+
+  /**
+   * Gets the estimated size of the cached rows.
+   * @return the size in bytes
+   */
+  public long getByteCount() {
+    return bytes;
+  }
+
+  /**
+   * Gets the number of reads served by the cache.
+   * @return the number of hits
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Gets the number of reads not served by the cache.
+   * @return the number of misses
+   */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Gets the number of rows evicted to respect the bounds.
+   * @return the number of evictions
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Resets the hit, miss and eviction counters.
+   */
+  public void resetCounters() {
+    hitCount = 0;
+    missCount = 0;
+    evictionCount = 0;
+  }
+
+  /**
+   * Evicts the least recently used rows until the bounds are respected.
+   */
+  private void evict() {
+    Iterator<Object[]> it = rows.values().iterator();
+    while (it.hasNext() && (rows.size() > maxRows
+        || (maxBytes > 0 && bytes > maxBytes))) {
+      bytes -= estimateSize(it.next());
+      it.remove();
+      evictionCount++;
+    }
+  }
+
+  /**
+   * Estimates the memory used by a row.
+   * @param values values of the row
+   * @return an estimated size in bytes
+   */
+  private static long estimateSize(Object[] values) {
+    long size = ROW_OVERHEAD;
+    for (Object val : values) {
+      size += VALUE_OVERHEAD;
+      if (val instanceof String) {
+        size += 40 + 2 * ((String) val).length();
+      } else if (val instanceof byte[]) {
+        size += 16 + ((byte[]) val).length;
+      } else if (val != null) {
+        size += 24;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Specifies that the following calls to tableChanged belong to the same
+   * transaction.
+   * @param context an integer used, if needed, to identify the edition
+   * context of the edit.
+   */
+  public void beginEdit(int context) {
+  }
+
+  /**
+   * Specifies that the calls to tableChanged belonging to the same
+   * transaction are finished.
+   * @param context an integer used, if needed, to retrieve the edition
+   * context
+   * @return true if transaction succeed
+   */
+  public boolean endEdit(int context) {
+    return true;
+  }
+
+  /**
+   * Checks if the table meets criteria defined by invariant(s).
+   * @return true if the invariant is checked
+   */
+  public boolean checkInvariants() {
+    return true;
+  }
+
+  /**
+   * Notifies that a table has changed. The changed rows are dropped from
+   * the cache, an event without row range clears it.
+   * @param t the table that has changed
+   * @param start the starting row index of the changed table region
+   * @param end the ending row index of the changed table region
+   * @param col the column that has changed, or ALL_COLUMN
+   * @param type the type of modification
+   */
+  public void tableChanged(Table t, int start, int end, int col, int type) {
+    if (start < 0 || end < start) {
+      clear();
+    } else {
+      invalidate(start, end);
+    }
+  }
+
+}
@@ -0,0 +1,525 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import obvious.data.util.IntIterator;
+import obvious.impl.RowManager;
+
+/**
+ * In-memory mapping between the row indexes of a JDBC table and the values
+ * of its primary key.
+ * <p>
+ * Row indexes are managed like in the in-memory tables: removed indexes
+ * are reused and the number of rows is maintained incrementally, so no
+ * query is needed to count or iterate the rows. Integral keys are stored
+ * in primitive arrays with an open addressing hash table for the reverse
+ * lookup; other keys are stored as objects.
+ * </p>
+ * <p>
+ * Changes can be recorded from a {@link #mark() mark} and undone by
+ * {@link #rollback()}, so that a table restores its rows when a batch of
+ * operations fails.
+ * </p>
+ * @author obvious
+ *
+ */
+public class JDBCRowIndex {
+
+  /**
+   * Initial capacity of the key arrays.
+   */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Row indexes.
+   */
+  private RowManager rows = new RowManager();
+
+  /**
+   * Are keys stored as longs.
+   */
+  private boolean integral;
+
+  /**
+   * Integral keys by row index.
+   */
+  private long[] longKeys;
+
+  /**
+   * Rows having an integral key.
+   */
+  private BitSet hasLongKey;
+
+  /**
+   * Hash table slots: keys.
+   */
+  private long[] slotKeys;
+
+  /**
+   * Hash table slots: row index plus one, zero for an empty slot.
+   */
+  private int[] slotRows;
+
+  /**
+   * Number of used hash table slots.
+   */
+  private int slotCount;
+
+  /**
+   * Other keys by row index.
+   */
+  private Object[] objectKeys;
+
+  /**
+   * Row index by other key.
+   */
+  private Map<Object, Integer> objectRows;
+
+  /**
+   * Changes since the last mark, most recent last, null if changes are not
+   * recorded.
+   */
+  private List<Change> journal;
+
+  /**
+   * Constructor.
+   * @param integralKeys true if the primary key is an integral number
+   */
+  public JDBCRowIndex(boolean integralKeys) {
+    this.integral = integralKeys;
+    clear();
+  }
+
+  /**
+   * Indicates if a column type is an integral number.
+   * @param type a column type
+   * @return true if values of this type can be stored as longs
+   */
+  public static boolean isIntegral(Class<?> type) {
+    return type == Integer.class || type == Long.class || type == Short.class
+        || type == Byte.class || type == int.class || type == long.class
+        || type == short.class || type == byte.class;
+  }
+
+  /**
+   * Normalizes a primary key value so that the values read from the
+   * database match the values given by the user whatever their numeric
+   * class.
+   * @param key a primary key value
+   * @return a value suitable for equality tests
+   */
+  static Object normalizeKey(Object key) {
+    if (key instanceof Number) {
+      Number num = (Number) key;
+      if (num.doubleValue() == num.longValue()) {
+        return num.longValue();
+      }
+      return num.doubleValue();
+    }
+    return key;
+  }
+
+  /**
+   * Removes all the rows.
+   */
+  public void clear() {
+    if (journal != null) {
+      // Recorded downwards, so that rows are restored upwards.
+      for (int row = rows.getRowTop() - 1; row >= 0; row--) {
+        if (rows.isValidRow(row)) {
+          journal.add(new Change(Change.REMOVED, row, getKey(row), -1));
+        }
+      }
+    }
+    rows.clear();
+    if (integral) {
+      longKeys = new long[INITIAL_CAPACITY];
+      hasLongKey = new BitSet();
+      slotKeys = new long[INITIAL_CAPACITY];
+      slotRows = new int[INITIAL_CAPACITY];
+      slotCount = 0;
+    } else {
+      objectKeys = new Object[INITIAL_CAPACITY];
+      objectRows = new HashMap<Object, Integer>();
+    }
+  }
+
+  /**
+   * Gets the number of rows.
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return rows.getRowCount();
+  }
+
+  /**
+   * Gets the highest row index ever used plus one.
+   * @return the row top
+   */
+  public int getRowTop() {
+    return rows.getRowTop();
+  }
+
+  /**
+   * Indicates if a row exists.
+   * @param row a row index
+   * @return true if the row exists
+   */
+  public boolean isValidRow(int row) {
+    return rows.isValidRow(row);
+  }
+
+  /**
+   * Gets an iterator over the row indexes.
+   * @return an iterator
+   */
+  public IntIterator rowIterator() {
+    return rows.rowIterator();
+  }
+
+  /**
+   * Adds a row.
+   * @param key primary key value of the row
+   * @return the index of the new row
+   */
+  public int addRow(Object key) {
+    int previous = journal != null ? getRow(key) : -1;
+    int row = rows.addRow();
+    ensureCapacity(row);
+    putKey(row, key);
+    if (journal != null) {
+      journal.add(new Change(Change.ADDED, row, null, previous));
+    }
+    return row;
+  }
+
+  /**
+   * Grows the key arrays so that they can hold the key of a row.
+   * @param row a row index
+   */
+  private void ensureCapacity(int row) {
+    int capacity = integral ? longKeys.length : objectKeys.length;
+    if (row >= capacity) {
+      int newCapacity = Math.max(row + 1, capacity + (capacity >> 1));
+      if (integral) {
+        long[] keys = new long[newCapacity];
+        System.arraycopy(longKeys, 0, keys, 0, longKeys.length);
+        longKeys = keys;
+      } else {
+        Object[] keys = new Object[newCapacity];
+        System.arraycopy(objectKeys, 0, keys, 0, objectKeys.length);
+        objectKeys = keys;
+      }
+    }
+  }
+
+  /**
+   * Removes a row.
+   * @param row a row index
+   * @return true if the row existed
+   */
+  public boolean removeRow(int row) {
+    if (!rows.isValidRow(row)) {
+      return false;
+    }
+    if (journal != null) {
+      journal.add(new Change(Change.REMOVED, row, getKey(row), -1));
+    }
+    removeKey(row);
+    rows.removeRow(row);
+    return true;
+  }
+
+  /**
+   * Gets the primary key value of a row.
+   * @param row a row index
+   * @return the key, null if the row does not exist or has no key
+   */
+  public Object getKey(int row) {
+    if (!rows.isValidRow(row)) {
+      return null;
+    } else if (integral) {
+      return hasLongKey.get(row) ? (Object) longKeys[row] : null;
+    }
+    return objectKeys[row];
+  }
+
+  /**
+   * Changes the primary key value of a row.
+   * @param row a valid row index
+   * @param key the new key
+   */
+  public void setKey(int row, Object key) {
+    if (rows.isValidRow(row)) {
+      if (journal != null) {
+        journal.add(new Change(Change.KEY_CHANGED, row, getKey(row),
+            getRow(key)));
+      }
+      removeKey(row);
+      putKey(row, key);
+    }
+  }
+
+  /**
+   * Starts recording the changes, forgetting the changes recorded so far.
+   */
+  public void mark() {
+    journal = new ArrayList<Change>();
+  }
+
+  /**
+   * Stops recording the changes.
+   */
+  public void unmark() {
+    journal = null;
+  }
+
+  /**
+   * Undoes the changes recorded since the last mark: added rows are
+   * removed, removed rows are restored with their index and key, and rows
+   * whose key was given to another row can be found by their key again.
+   * The recording goes on from the restored state.
+   */
+  public void rollback() {
+    if (journal == null) {
+      return;
+    }
+    List<Change> changes = journal;
+    journal = null;
+    for (int i = changes.size() - 1; i >= 0; i--) {
+      Change change = changes.get(i);
+      if (change.type == Change.ADDED) {
+        removeKey(change.row);
+        rows.removeRow(change.row);
+      } else if (change.type == Change.REMOVED) {
+        rows.restoreRow(change.row);
+        ensureCapacity(change.row);
+        putKey(change.row, change.key);
+      } else {
+        removeKey(change.row);
+        putKey(change.row, change.key);
+      }
+      if (change.previous >= 0 && change.previous != change.row
+          && rows.isValidRow(change.previous)) {
+        putKey(change.previous, getKey(change.previous));
+      }
+    }
+    mark();
+  }
+
+  /**
+   * Gets the row having a primary key value.
+   * @param key a primary key value
+   * @return the row index, -1 if no row has this key
+   */
+  public int getRow(Object key) {
+    if (key == null) {
+      return -1;
+    } else if (integral) {
+      if (!(key instanceof Number)) {
+        return -1;
+      }
+      long k = ((Number) key).longValue();
+      int mask = slotKeys.length - 1;
+      for (int i = slot(k); slotRows[i] != 0; i = (i + 1) & mask) {
+        if (slotKeys[i] == k) {
+          return slotRows[i] - 1;
+        }
+      }
+      return -1;
+    }
+    Integer row = objectRows.get(normalizeKey(key));
+    return row != null ? row : -1;
+  }
+
+  /**
+   * Stores the key of a row.
+   * @param row a row index
+   * @param key the key, may be null
+   */
+  private void putKey(int row, Object key) {
+    if (!integral) {
+      objectKeys[row] = key;
+      if (key != null) {
+        objectRows.put(normalizeKey(key), row);
+      }
+    } else if (key instanceof Number) {
+      long k = ((Number) key).longValue();
+      longKeys[row] = k;
+      hasLongKey.set(row);
+      if ((slotCount + 1) * 4 > slotKeys.length * 3) {
+        resize();
+      }
+      int mask = slotKeys.length - 1;
+      int i = slot(k);
+      while (slotRows[i] != 0 && slotKeys[i] != k) {
+        i = (i + 1) & mask;
+      }
+      if (slotRows[i] == 0) {
+        slotCount++;
+      }
+      slotKeys[i] = k;
+      slotRows[i] = row + 1;
+    }
+  }
+
+  /**
+   * Forgets the key of a row.
+   * @param row a valid row index
+   */
+  private void removeKey(int row) {
+    if (!integral) {
+      Object key = objectKeys[row];
+      if (key != null) {
+        objectRows.remove(normalizeKey(key));
+        objectKeys[row] = null;
+      }
+      return;
+    } else if (!hasLongKey.get(row)) {
+      return;
+    }
+    hasLongKey.clear(row);
+    long k = longKeys[row];
+    int mask = slotKeys.length - 1;
+    int i = slot(k);
+    while (slotRows[i] != 0 && slotKeys[i] != k) {
+      i = (i + 1) & mask;
+    }
+    if (slotRows[i] != row + 1) {
+      return;
+    }
+    slotRows[i] = 0;
+    slotCount--;
+    // Shifts back the following entries of the probe sequence.
+    for (int j = (i + 1) & mask; slotRows[j] != 0; j = (j + 1) & mask) {
+      int home = slot(slotKeys[j]);
+      boolean inRange = i <= j ? (i < home && home <= j)
+          : (i < home || home <= j);
+      if (!inRange) {
+        slotKeys[i] = slotKeys[j];
+        slotRows[i] = slotRows[j];
+        slotRows[j] = 0;
+        i = j;
+      }
+    }
+  }
+
+  /**
+   * Gets the home slot of a key.
+   * @param key an integral key
+   * @return a slot index
+   */
+  private int slot(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & (slotKeys.length - 1);
+  }
+
+  /**
+   * Doubles the size of the hash table.
+   */
+  private void resize() {
+    long[] oldKeys = slotKeys;
+    int[] oldRows = slotRows;
+    slotKeys = new long[oldKeys.length * 2];
+    slotRows = new int[oldRows.length * 2];
+    int mask = slotKeys.length - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldRows[j] != 0) {
+        int i = slot(oldKeys[j]);
+        while (slotRows[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        slotKeys[i] = oldKeys[j];
+        slotRows[i] = oldRows[j];
+      }
+    }
+  }
+
+  /**
+   * Recorded change of a row.
+   */
+  private static final class Change {
+
+    /**
+     * The row was added.
+     */
+    static final int ADDED = 0;
+
+    /**
+     * The row was removed.
+     */
+    static final int REMOVED = 1;
+
+    /**
+     * The key of the row was changed.
+     */
+    static final int KEY_CHANGED = 2;
+
+    /**
+     * Type of the change.
+     */
+    private final int type;
+
+    /**
+     * Index of the changed row.
+     */
+    private final int row;
+
+    /**
+     * Key of the row before the change, null for an addition.
+     */
+    private final Object key;
+
+    /**
+     * Row found by the new key before the change, -1 if there was none.
+     */
+    private final int previous;
+
+    /**
+     * Constructor.
+     * @param changeType type of the change
+     * @param changedRow index of the changed row
+     * @param oldKey key of the row before the change
+     * @param previousRow row found by the new key before the change
+     */
+    Change(int changeType, int changedRow, Object oldKey, int previousRow) {
+      this.type = changeType;
+      this.row = changedRow;
+      this.key = oldKey;
+      this.previous = previousRow;
+    }
+
+  }
+
+}
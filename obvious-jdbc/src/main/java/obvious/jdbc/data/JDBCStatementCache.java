@@ -0,0 +1,299 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pool of prepared statements of a JDBC connection.
+ * <p>
+ * Statements are keyed by their SQL text, which identifies the operation
+ * and the columns it applies to; values are always bound as parameters.
+ * So each query is parsed once by the server and reused for the lifetime
+ * of the connection.
+ * </p>
+ * <p>
+ * The pool also groups batched executions. Each statement keeps its own
+ * pending batch, and the batches are sent in the order of their first
+ * operation. An operation joins the batch of its statement only when this
+ * does not change its outcome: the last batch always accepts it, and an
+ * insert or an update moves ahead of the pending updates of non key
+ * columns, which cannot concern a row not inserted yet. So alternating
+ * insertions and updates of a table are sent as two batches. Otherwise the
+ * pending batches are sent first: deletes and key updates are never
+ * reordered, and neither are inserts in different tables, since a row may
+ * reference a row inserted just before it, like an edge its nodes.
+ * </p>
+ * @author obvious
+ *
+ */
+public class JDBCStatementCache {
+
+  /**
+   * Update of a single column selecting its row with a single column.
+   */
+  private static final Pattern UPDATE = Pattern.compile(
+      "UPDATE \\w+ SET (\\w+) = \\? WHERE (\\w+) = \\?");
+
+  /**
+   * JDBC connection.
+   */
+  private Connection con;
+
+  /**
+   * Prepared statements by SQL text.
+   */
+  private Map<String, PreparedStatement> statements =
+    new HashMap<String, PreparedStatement>();
+
+  /**
+   * SQL texts of the prepared statements.
+   */
+  private Map<PreparedStatement, String> texts =
+    new HashMap<PreparedStatement, String>();
+
+  /**
+   * Statements having a pending batch, in the order of their first pending
+   * operation.
+   */
+  private List<PreparedStatement> batched = new ArrayList<PreparedStatement>();
+
+  /**
+   * Number of pending operations.
+   */
+  private int pendingCount;
+
+  /**
+   * Constructor.
+   * @param connection JDBC connection
+   */
+  public JDBCStatementCache(Connection connection) {
+    this.con = connection;
+  }
+
+  /**
+   * Gets the prepared statement of a query, preparing it on first use.
+   * The parameters of a reused statement are cleared.
+   * @param sql SQL text of the query
+   * @return a prepared statement
+   * @throws SQLException if the statement cannot be prepared
+   */
+  public PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement stmt = statements.get(sql);
+    if (stmt == null || stmt.isClosed()) {
+      if (stmt != null) {
+        texts.remove(stmt);
+      }
+      stmt = con.prepareStatement(sql);
+      statements.put(sql, stmt);
+      texts.put(stmt, sql);
+    } else {
+      stmt.clearParameters();
+    }
+    return stmt;
+  }
+
+  /**
+   * Adds the current parameters of a statement to its batch. If the
+   * operation cannot be sent before the pending batches of the statements
+   * used since the first pending operation of this one, all the pending
+   * batches are executed first.
+   * @param stmt a statement of this pool with its parameters bound
+   * @throws SQLException if a pending batch fails
+   */
+  public void addBatch(PreparedStatement stmt) throws SQLException {
+    if (!canAddBatch(stmt)) {
+      executeBatch();
+    }
+    if (!batched.contains(stmt)) {
+      batched.add(stmt);
+    }
+    stmt.addBatch();
+    pendingCount++;
+  }
+
+  /**
+   * Indicates if an operation of a statement can be added to the batches
+   * without executing the pending batches first.
+   * @param stmt a statement of this pool
+   * @return true if the operation can be added as is
+   */
+  public boolean canAddBatch(PreparedStatement stmt) {
+    int index = batched.indexOf(stmt);
+    return index < 0 || canJoin(index);
+  }
+
+  /**
+   * Indicates if an operation can join the pending batch of a statement,
+   * i.e. be executed before the pending batches that follow it.
+   * @param index position of the statement in the pending batches
+   * @return true if the operation can join the batch
+   */
+  private boolean canJoin(int index) {
+    if (index == batched.size() - 1) {
+      return true;
+    }
+    String sql = texts.get(batched.get(index));
+    if (sql == null || !(sql.startsWith("INSERT") || isValueUpdate(sql))) {
+      return false;
+    }
+    for (int i = index + 1; i < batched.size(); i++) {
+      if (!isValueUpdate(texts.get(batched.get(i)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Indicates if a statement updates a column other than the key selecting
+   * the row. Such updates can be reordered with inserts and with each other.
+   * @param sql SQL text of a statement, may be null
+   * @return true if the statement updates a value
+   */
+  private static boolean isValueUpdate(String sql) {
+    if (sql == null) {
+      return false;
+    }
+    Matcher m = UPDATE.matcher(sql);
+    return m.matches() && !m.group(1).equalsIgnoreCase(m.group(2));
+  }
+
+  /**
+   * Gets the number of operations waiting in the batches.
+   * @return the number of pending operations
+   */
+  public int getPendingCount() {
+    return pendingCount;
+  }
+
+  /**
+   * Executes the pending batches, in the order of their first operation.
+   * If a batch fails, the following ones are cleared without being sent.
+   * @throws SQLException if a batch fails
+   */
+  public void executeBatch() throws SQLException {
+    List<PreparedStatement> pending = batched;
+    batched = new ArrayList<PreparedStatement>();
+    pendingCount = 0;
+    for (int i = 0; i < pending.size(); i++) {
+      try {
+        pending.get(i).executeBatch();
+      } catch (SQLException e) {
+        for (int j = i + 1; j < pending.size(); j++) {
+          pending.get(j).clearBatch();
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Gets the number of pooled statements.
+   * @return the number of statements
+   */
+  public int size() {
+    return statements.size();
+  }
+
+  /**
+   * Closes all the pooled statements. They are prepared again if used
+   * later.
+   */
+  public void close() {
+    for (PreparedStatement stmt : statements.values()) {
+      try {
+        stmt.close();
+      } catch (SQLException e) {
+        e.printStackTrace();
+      }
+    }
+    statements.clear();
+    texts.clear();
+    batched.clear();
+    pendingCount = 0;
+  }
+
+  /**
+   * Binds a parameter of a statement.
+   * @param stmt a prepared statement
+   * @param index index of the parameter, starting from 1
+   * @param value value to bind, may be null
+   * @param type Java type of the column, used to bind null values
+   * @throws SQLException if the value cannot be bound
+   */
+  public static void setParameter(PreparedStatement stmt, int index,
+      Object value, Class<?> type) throws SQLException {
+    if (value == null) {
+      stmt.setNull(index, getSQLType(type));
+    } else if (value instanceof Date && !(value instanceof java.sql.Date)
+        && !(value instanceof java.sql.Timestamp)) {
+      stmt.setTimestamp(index, new java.sql.Timestamp(
+          ((Date) value).getTime()));
+    } else {
+      stmt.setObject(index, value);
+    }
+  }
+
+  /**
+   * Gets the SQL type matching a Java type.
+   * @param type a Java type, may be null
+   * @return a constant of java.sql.Types
+   */
+  public static int getSQLType(Class<?> type) {
+    if (type == null) {
+      return Types.NULL;
+    } else if (type == Integer.class || type == int.class) {
+      return Types.INTEGER;
+    } else if (type == Long.class || type == long.class) {
+      return Types.BIGINT;
+    } else if (type == Double.class || type == double.class) {
+      return Types.DOUBLE;
+    } else if (type == Float.class || type == float.class) {
+      return Types.REAL;
+    } else if (type == Boolean.class || type == boolean.class) {
+      return Types.BOOLEAN;
+    } else if (type == String.class) {
+      return Types.VARCHAR;
+    } else if (Date.class.isAssignableFrom(type)) {
+      return Types.TIMESTAMP;
+    }
+    return Types.NULL;
+  }
+
+}
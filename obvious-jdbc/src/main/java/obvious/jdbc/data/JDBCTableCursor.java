@@ -0,0 +1,174 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import obvious.ObviousRuntimeException;
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.data.Tuple;
+import obvious.data.util.TupleCursor;
+import obvious.impl.TableImpl;
+import obvious.impl.TupleImpl;
+
+/**
+ * Cursor reading a JDBC table with a single forward-only query.
+ * <p>
+ * Rows are fetched from the server by blocks of the given fetch size and
+ * copied one at a time into a single buffered row, seen through a reused
+ * tuple. The cursor is closed automatically after the last row.
+ * </p>
+ * @author obvious
+ *
+ */
+public class JDBCTableCursor implements TupleCursor {
+
+  /**
+   * Statement of the scan.
+   */
+  private PreparedStatement stmt;
+
+  /**
+   * Result of the scan, null once closed.
+   */
+  private ResultSet result;
+
+  /**
+   * Row index of the scanned table.
+   */
+  private JDBCRowIndex rowIndex;
+
+  /**
+   * Number of columns of the schema.
+   */
+  private int columnCount;
+
+  /**
+   * Table holding the current row.
+   */
+  private Table buffer;
+
+  /**
+   * Reused view on the current row.
+   */
+  private TupleImpl tuple;
+
+  /**
+   * Index of the current row in the scanned table.
+   */
+  private int row = -1;
+
+  /**
+   * Constructor. The query has to select the columns of the schema in
+   * order followed by the primary key.
+   * @param con JDBC connection
+   * @param sql query of the scan
+   * @param fetchSize number of rows fetched from the server at once
+   * @param schema schema of the scanned table
+   * @param index row index of the scanned table
+   * @throws SQLException if the query fails
+   */
+  JDBCTableCursor(Connection con, String sql, int fetchSize, Schema schema,
+      JDBCRowIndex index) throws SQLException {
+    this.rowIndex = index;
+    this.columnCount = schema.getColumnCount();
+    this.buffer = new TableImpl(schema);
+    this.buffer.addRow();
+    this.tuple = new TupleImpl(buffer, 0);
+    this.stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+        ResultSet.CONCUR_READ_ONLY);
+    try {
+      this.stmt.setFetchSize(fetchSize);
+      this.result = stmt.executeQuery();
+    } catch (SQLException e) {
+      stmt.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Moves the cursor to the next row.
+   * @return false if there is no more row
+   */
+  public boolean next() {
+    if (result == null) {
+      return false;
+    }
+    try {
+      if (!result.next()) {
+        close();
+        return false;
+      }
+      for (int i = 0; i < columnCount; i++) {
+        buffer.set(0, i, result.getObject(i + 1));
+      }
+      row = rowIndex.getRow(result.getObject(columnCount + 1));
+      return true;
+    } catch (SQLException e) {
+      close();
+      throw new ObviousRuntimeException(e);
+    }
+  }
+
+  /**
+   * Gets the index of the current row in the scanned table.
+   * @return the row index, or -1 if the row is unknown to the table
+   */
+  public int getRow() {
+    return row;
+  }
+
+  /**
+   * Gets a view on the current row.
+   * @return a tuple valid until the next move of the cursor
+   */
+  public Tuple getTuple() {
+    return tuple;
+  }
+
+  /**
+   * Closes the query of the scan.
+   */
+  public void close() {
+    if (result == null) {
+      return;
+    }
+    try {
+      result.close();
+      stmt.close();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    result = null;
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.jdbc.data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * Default connection pool of the obvious JDBC binding.
+ * <p>
+ * Released connections are kept open, up to a number of idle connections,
+ * and given again to the next borrowers. Connections are opened with the
+ * DriverManager or with a DataSource. {@link #getPool(String, String,
+ * String)} returns a pool shared by all the users of the same database
+ * account.
+ * </p>
+ * @author obvious
+ *
+ */
+public class SimpleConnectionPool implements JDBCConnectionPool {
+
+  /**
+   * Default maximum number of idle connections.
+   */
+  public static final int DEFAULT_MAX_IDLE = 4;
+
+  /**
+   * Shared pools by URL, user name and password.
+   */
+  private static Map<String, SimpleConnectionPool> pools =
+    new HashMap<String, SimpleConnectionPool>();
+
+  /**
+   * URL of the database, null if a DataSource is used.
+   */
+  private String url;
+
+  /**
+   * User name for the database.
+   */
+  private String username;
+
+  /**
+   * Password for the database.
+   */
+  private String password;
+
+  /**
+   * DataSource opening the connections, null if the DriverManager is used.
+   */
+  private DataSource dataSource;
+
+  /**
+   * Idle connections.
+   */
+  private LinkedList<Connection> idle = new LinkedList<Connection>();
+
+  /**
+   * Maximum number of idle connections.
+   */
+  private int maxIdle = DEFAULT_MAX_IDLE;
+
+  /**
+   * Constructor for a pool opening its connections with the DriverManager.
+   * @param inUrl URL of the database
+   * @param inUsername user name for the database
+   * @param inPswd password for the database
+   */
+  public SimpleConnectionPool(String inUrl, String inUsername,
+      String inPswd) {
+    this.url = inUrl;
+    this.username = inUsername;
+    this.password = inPswd;
+  }
+
+  /**
+   * Constructor for a pool opening its connections with a DataSource.
+   * @param source a DataSource
+   */
+  public SimpleConnectionPool(DataSource source) {
+    this.dataSource = source;
+  }
+
+  /**
+   * Gets the pool shared by the users of a database account. The password
+   * is part of the key: a caller giving another password for the same
+   * account gets another pool, so it never borrows connections opened with
+   * credentials it did not provide.
+   * @param inUrl URL of the database
+   * @param inUsername user name for the database
+   * @param inPswd password for the database
+   * @return the shared pool
+   */
+  public static synchronized SimpleConnectionPool getPool(String inUrl,
+      String inUsername, String inPswd) {
+    String key = inUrl + "\u0000" + inUsername + "\u0000" + inPswd;
+    SimpleConnectionPool pool = pools.get(key);
+    if (pool == null) {
+      pool = new SimpleConnectionPool(inUrl, inUsername, inPswd);
+      pools.put(key, pool);
+    }
+    return pool;
+  }
+
+  /**
+   * Gets the maximum number of idle connections.
+   * @return the maximum number of idle connections
+   */
+  public synchronized int getMaxIdle() {
+    return maxIdle;
+  }
+
+  /**
+   * Sets the maximum number of idle connections.
+   * @param max maximum number of idle connections
+   */
+  public synchronized void setMaxIdle(int max) {
+    this.maxIdle = max;
+    while (idle.size() > Math.max(0, max)) {
+      close(idle.removeLast());
+    }
+  }
+
+  /**
+   * Gets the number of idle connections.
+   * @return the number of idle connections
+   */
+  public synchronized int getIdleCount() {
+    return idle.size();
+  }
+
+  /**
+   * Borrows a connection, reusing an idle one if possible.
+   * @return an open connection
+   * @throws SQLException if no connection can be opened
+   */
+  public Connection getConnection() throws SQLException {
+    synchronized (this) {
+      while (!idle.isEmpty()) {
+        Connection con = idle.removeFirst();
+        if (!con.isClosed()) {
+          return con;
+        }
+      }
+    }
+    if (dataSource != null) {
+      return dataSource.getConnection();
+    }
+    return DriverManager.getConnection(url, username, password);
+  }
+
+  /**
+   * Gives back a connection, which is closed if there are enough idle
+   * connections.
+   * @param con a connection, ignored if null
+   */
+  public void release(Connection con) {
+    if (con == null) {
+      return;
+    }
+    synchronized (this) {
+      if (idle.size() < maxIdle) {
+        idle.addFirst(con);
+        return;
+      }
+    }
+    close(con);
+  }
+
+  /**
+   * Closes the idle connections.
+   */
+  public synchronized void close() {
+    while (!idle.isEmpty()) {
+      close(idle.removeFirst());
+    }
+  }
+
+  /**
+   * Closes a connection.
+   * @param con a connection
+   */
+  private static void close(Connection con) {
+    try {
+      con.close();
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+}
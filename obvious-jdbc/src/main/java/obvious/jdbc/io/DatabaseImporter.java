@@ -29,7 +29,6 @@ package obvious.jdbc.io;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -37,6 +36,8 @@ import java.util.Map;
 
 import obvious.data.DataFactory;
 import obvious.data.Table;
+import obvious.jdbc.data.JDBCConnectionPool;
+import obvious.jdbc.data.SimpleConnectionPool;
 import obviousx.util.FormatFactory;
 
 /**
@@ -48,14 +49,9 @@ import obviousx.util.FormatFactory;
 public class DatabaseImporter {
 
   /**
-   * JDBC connection for the spotted database.
+   * Pool providing the connections to the spotted database.
    */
-  private Connection con;
-
-  /**
-   * Database metadata.
-   */
-  private DatabaseMetaData metadata;
+  private JDBCConnectionPool pool;
 
   /**
    * Table(s) contained in the DataBase.
@@ -73,7 +69,8 @@ public class DatabaseImporter {
   private FormatFactory formatFactory;
 
   /**
-   * Constructor.
+   * Constructor. Connections come from the {@link SimpleConnectionPool}
+   * shared by the users of the database account.
    * @param driver JDBC driver to load.
    * @param url URL to connect to the database.
    * @param username login to access to the database.
@@ -83,26 +80,35 @@ public class DatabaseImporter {
    */
   public DatabaseImporter(String driver, String url, String username,
         String password, DataFactory dFactory, FormatFactory fFactory) {
-    this.table = new HashMap<String, Table>();
-    this.dataFactory = dFactory;
-    this.formatFactory = fFactory;
+    this(SimpleConnectionPool.getPool(url, username, password), dFactory,
+        fFactory);
     try {
       Class.forName(driver);
-      this.con = DriverManager.getConnection(url, username, password);
-      this.metadata = con.getMetaData();
     } catch (ClassNotFoundException e) {
       System.err.println("Can't load " + driver + " as a jdbc driver!");
-    } catch (SQLException e) {
-      System.err.println("Bad URL or invalid username/password!");
     }
   }
 
   /**
-   * Getter for the connection attribute.
-   * @return connection attribute
+   * Constructor.
+   * @param connectionPool pool providing the connections to the database.
+   * @param dFactory DataFactory to use to create tables.
+   * @param fFactory FormatFactory to use to create formats.
+   */
+  public DatabaseImporter(JDBCConnectionPool connectionPool,
+      DataFactory dFactory, FormatFactory fFactory) {
+    this.table = new HashMap<String, Table>();
+    this.pool = connectionPool;
+    this.dataFactory = dFactory;
+    this.formatFactory = fFactory;
+  }
+
+  /**
+   * Gets the pool providing the connections to the database.
+   * @return the connection pool
    */
-  public Connection getConnection() {
-    return this.con;
+  public JDBCConnectionPool getConnectionPool() {
+    return this.pool;
   }
 
   /**
@@ -114,17 +120,26 @@ public class DatabaseImporter {
   }
 
   /**
-   * Tables importer.
+   * Tables importer. A connection is borrowed from the pool for the import
+   * and given back afterwards.
    * @throws SQLException if bad thing happen.
    */
   public void importTables() throws SQLException {
-    ResultSet setTable = metadata.getTables(null, null, "%", null);
-    while (setTable.next()) {
-      TableImporter importer = new TableImporter(setTable
-           .getString("TABLE_NAME"), metadata, con, dataFactory, formatFactory);
-      importer.createTable();
-      Table tableImported = importer.getTable();
-      table.put(setTable.getString("TABLE_NAME"), tableImported);
+    Connection con = pool.getConnection();
+    try {
+      DatabaseMetaData metadata = con.getMetaData();
+      ResultSet setTable = metadata.getTables(null, null, "%", null);
+      while (setTable.next()) {
+        TableImporter importer = new TableImporter(setTable
+             .getString("TABLE_NAME"), metadata, con, dataFactory,
+             formatFactory);
+        importer.createTable();
+        Table tableImported = importer.getTable();
+        table.put(setTable.getString("TABLE_NAME"), tableImported);
+      }
+      setTable.close();
+    } finally {
+      pool.release(con);
     }
   }
 
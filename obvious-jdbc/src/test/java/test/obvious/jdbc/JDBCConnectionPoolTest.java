@@ -0,0 +1,134 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+
+import obvious.ObviousException;
+import obvious.data.Schema;
+import obvious.impl.SchemaImpl;
+import obvious.jdbc.data.JDBCConnectionPool;
+import obvious.jdbc.data.JDBCObviousTable;
+import obvious.jdbc.data.SimpleConnectionPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the use of connection pools by the JDBC binding.
+ * @author obvious
+ *
+ */
+public class JDBCConnectionPoolTest {
+
+  /**
+   * Number of borrowed connections not given back yet.
+   */
+  private int borrowed;
+
+  /**
+   * Pool over an in-memory database counting the borrowed connections.
+   */
+  private JDBCConnectionPool pool;
+
+  /**
+   * Schema of the tested tables.
+   */
+  private Schema schema;
+
+  /**
+   * Creates a counting pool.
+   */
+  @Before
+  public void setUp() {
+    final MemoryDatabase database = new MemoryDatabase();
+    borrowed = 0;
+    pool = new JDBCConnectionPool() {
+      public Connection getConnection() {
+        borrowed++;
+        return database.getConnection();
+      }
+      public void release(Connection con) {
+        borrowed--;
+      }
+    };
+    schema = new SchemaImpl();
+    schema.addColumn("id", Integer.class, 0);
+    schema.addColumn("name", String.class, "");
+  }
+
+  /**
+   * Test method checking that shared pools are distinct for distinct
+   * credentials.
+   */
+  @Test
+  public void testSharedPools() {
+    String url = "jdbc:test:pools";
+    assertSame(SimpleConnectionPool.getPool(url, "user", "a"),
+        SimpleConnectionPool.getPool(url, "user", "a"));
+    assertNotSame(SimpleConnectionPool.getPool(url, "user", "a"),
+        SimpleConnectionPool.getPool(url, "user", "b"));
+    assertNotSame(SimpleConnectionPool.getPool(url, "user", "a"),
+        SimpleConnectionPool.getPool(url, "other", "a"));
+  }
+
+  /**
+   * Test method checking that a table gives its connection back when it is
+   * closed.
+   * @throws ObviousException if the table cannot be created
+   */
+  @Test
+  public void testTableRelease() throws ObviousException {
+    JDBCObviousTable table = new JDBCObviousTable(schema, pool, "people",
+        "id");
+    assertEquals(1, borrowed);
+    table.close();
+    table.close();
+    assertEquals(0, borrowed);
+  }
+
+  /**
+   * Test method checking that a table failing to be created gives its
+   * connection back.
+   */
+  @Test
+  public void testFailedTableRelease() {
+    try {
+      new JDBCObviousTable(schema, pool, "people", null);
+      fail("A table cannot be created without primary key");
+    } catch (ObviousException e) {
+      assertEquals(0, borrowed);
+    }
+  }
+
+}
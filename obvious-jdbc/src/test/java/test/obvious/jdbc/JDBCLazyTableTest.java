@@ -0,0 +1,215 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import obvious.data.Schema;
+import obvious.data.event.TableListener;
+import obvious.impl.NodeImpl;
+import obvious.impl.SchemaImpl;
+import obvious.jdbc.data.JDBCColumnCache;
+import obvious.jdbc.data.JDBCLazyTable;
+import obvious.jdbc.data.JDBCRowIndex;
+import obvious.jdbc.data.JDBCStatementCache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the lazy table views of the JDBC binding. The connection is
+ * a proxy answering the block queries, so no database is needed.
+ * @author obvious
+ *
+ */
+public class JDBCLazyTableTest {
+
+  /**
+   * Number of rows of the tested view.
+   */
+  private static final int ROWS = 600;
+
+  /**
+   * Executed queries.
+   */
+  private List<String> queries;
+
+  /**
+   * Row index of the tested view.
+   */
+  private JDBCRowIndex index;
+
+  /**
+   * Tested view.
+   */
+  private JDBCLazyTable table;
+
+  /**
+   * Creates a view over a connection answering "SELECT col, key" queries
+   * with the value col + key for each bound key.
+   */
+  @Before
+  public void setUp() {
+    queries = new ArrayList<String>();
+    Connection con = (Connection) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {Connection.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("prepareStatement")) {
+              return createStatement((String) args[0]);
+            }
+            return null;
+          }
+        });
+    Schema schema = new SchemaImpl();
+    schema.addColumn("id", Integer.class, -1);
+    schema.addColumn("name", String.class, "");
+    schema.addColumn("weight", Double.class, 0.0);
+    index = new JDBCRowIndex(true);
+    for (int i = 0; i < ROWS; i++) {
+      index.addRow(i * 10);
+    }
+    table = new JDBCLazyTable(new JDBCStatementCache(con), "node", "id",
+        schema, index);
+  }
+
+  /**
+   * Creates a statement answering block queries.
+   * @param sql SQL text of the statement
+   * @return a statement
+   */
+  private PreparedStatement createStatement(final String sql) {
+    final Set<Object> keys = new LinkedHashSet<Object>();
+    return (PreparedStatement) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {PreparedStatement.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("setObject")) {
+              keys.add(args[1]);
+            } else if (name.equals("clearParameters")) {
+              keys.clear();
+            } else if (name.equals("executeQuery")) {
+              queries.add(sql);
+              String column = sql.substring(7, sql.indexOf(','));
+              List<Object[]> rows = new ArrayList<Object[]>();
+              for (Object key : keys) {
+                rows.add(new Object[] {column + key, key});
+              }
+              return createResultSet(rows);
+            } else if (name.equals("executeUpdate")) {
+              queries.add(sql);
+              return 1;
+            } else if (name.equals("isClosed")) {
+              return false;
+            } else if (name.equals("equals")) {
+              return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+              return System.identityHashCode(proxy);
+            }
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Creates a result set over some rows.
+   * @param rows the rows
+   * @return a result set
+   */
+  private ResultSet createResultSet(final List<Object[]> rows) {
+    final int[] cursor = {-1};
+    return (ResultSet) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {ResultSet.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("next")) {
+              return ++cursor[0] < rows.size();
+            } else if (name.equals("getObject")) {
+              return rows.get(cursor[0])[(Integer) args[0] - 1];
+            }
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Test method for the reading of a column by blocks.
+   */
+  @Test
+  public void testColumnBlocks() {
+    for (int row = 0; row < ROWS; row++) {
+      assertEquals("weight" + (row * 10L), table.getValue(row, "weight"));
+    }
+    int blocks = (ROWS + JDBCColumnCache.BLOCK_SIZE - 1)
+        / JDBCColumnCache.BLOCK_SIZE;
+    assertEquals(blocks, queries.size());
+    for (String query : queries) {
+      assertTrue(query.startsWith("SELECT weight, id FROM node"));
+    }
+    for (int row = 0; row < ROWS; row++) {
+      table.getValue(row, "weight");
+    }
+    assertEquals(blocks, queries.size());
+  }
+
+  /**
+   * Test method for tuples on the view and for the invalidation of the
+   * cache.
+   */
+  @Test
+  public void testTuplesAndInvalidation() {
+    NodeImpl node = new NodeImpl(table, 3);
+    assertEquals(0, queries.size());
+    assertEquals("name30", node.get("name"));
+    assertEquals(1, queries.size());
+    table.set(3, "name", "x");
+    table.getValue(4, "name");
+    assertEquals(3, queries.size());
+    index.removeRow(3);
+    table.fireTableEvent(3, 3, TableListener.ALL_COLUMN, TableListener.DELETE);
+    assertFalse(table.isValidRow(3));
+    assertEquals(null, table.getValue(3, "name"));
+    assertEquals(ROWS - 1, table.getRowCount());
+  }
+
+}
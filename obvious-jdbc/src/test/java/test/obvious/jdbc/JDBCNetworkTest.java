@@ -0,0 +1,283 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import obvious.ObviousException;
+import obvious.data.Edge;
+import obvious.data.Graph.EdgeType;
+import obvious.data.Node;
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.data.event.TableListener;
+import obvious.impl.EdgeImpl;
+import obvious.impl.NodeImpl;
+import obvious.impl.SchemaImpl;
+import obvious.impl.TableImpl;
+import obvious.impl.TupleImpl;
+import obvious.jdbc.data.JDBCObviousNetwork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for JDBCObviousNetwork. The node and edge tables are stored in
+ * a {@link MemoryDatabase}, where the source and target columns of the
+ * edges reference the node keys.
+ * @author obvious
+ *
+ */
+public class JDBCNetworkTest {
+
+  /**
+   * Database of the tested network.
+   */
+  private MemoryDatabase database;
+
+  /**
+   * Tested network.
+   */
+  private JDBCObviousNetwork network;
+
+  /**
+   * Table holding the nodes given to the network.
+   */
+  private Table nodes;
+
+  /**
+   * Table holding the edges given to the network.
+   */
+  private Table edges;
+
+  /**
+   * Creates an empty network.
+   * @throws Exception if the network cannot be created
+   */
+  @Before
+  public void setUp() throws Exception {
+    database = new MemoryDatabase();
+    database.createTable("node", "id", "id", "name");
+    database.createTable("edge", "id", "id", "src", "dst");
+    database.addReference("edge", "src", "node");
+    database.addReference("edge", "dst", "node");
+    Schema nodeSchema = new SchemaImpl();
+    nodeSchema.addColumn("id", Integer.class, -1);
+    nodeSchema.addColumn("name", String.class, "");
+    Schema edgeSchema = new SchemaImpl();
+    edgeSchema.addColumn("id", Integer.class, -1);
+    edgeSchema.addColumn("src", Integer.class, -1);
+    edgeSchema.addColumn("dst", Integer.class, -1);
+    nodes = new TableImpl(nodeSchema);
+    edges = new TableImpl(edgeSchema);
+    network = new JDBCObviousNetwork(database.getConnection(), "node", "edge",
+        "id", "id", "src", "dst", nodeSchema, edgeSchema);
+  }
+
+  /**
+   * Adds a node to the network.
+   * @param id key of the node
+   * @return the node given to the network
+   */
+  private Node addNode(int id) {
+    int row = nodes.addRow(new TupleImpl(nodes.getSchema(),
+        new Object[] {id, "node" + id})) - 1;
+    Node node = new NodeImpl(nodes, row);
+    network.addNode(node);
+    return node;
+  }
+
+  /**
+   * Adds an edge to the network.
+   * @param id key of the edge
+   * @param source source node
+   * @param target target node
+   * @return the edge given to the network
+   */
+  private Edge addEdge(int id, Node source, Node target) {
+    int row = edges.addRow(new TupleImpl(edges.getSchema(),
+        new Object[] {id, source.get("id"), target.get("id")})) - 1;
+    Edge edge = new EdgeImpl(edges, row);
+    network.addEdge(edge, source, target, EdgeType.DIRECTED);
+    return edge;
+  }
+
+  /**
+   * Test method checking that setting the target of an edge through the
+   * edge table moves the edge in the structure.
+   */
+  @Test
+  public void testSetEndpoint() {
+    Node n0 = addNode(0);
+    Node n1 = addNode(1);
+    Node n2 = addNode(2);
+    Edge edge = addEdge(0, n0, n1);
+    network.getEdgeTable().set(0, "dst", 2);
+    assertEquals(2, network.getTarget(edge).get("id"));
+    assertEquals(0, network.getInEdges(n1).size());
+    assertEquals(1, network.getInEdges(n2).size());
+    assertEquals(2, network.getSuccessors(n0).iterator().next().get("id"));
+  }
+
+  /**
+   * Test method for the removal of nodes and edges.
+   */
+  @Test
+  public void testRemove() {
+    Node n0 = addNode(0);
+    Node n1 = addNode(1);
+    addEdge(0, n0, n1);
+    addEdge(1, n1, n0);
+    assertTrue(network.removeNode(n1));
+    assertEquals(1, database.getRowCount("node"));
+    assertEquals(0, database.getRowCount("edge"));
+    assertEquals(0, network.getEdges().size());
+  }
+
+  /**
+   * Test method checking that batched insertions reach the database in
+   * the order they were issued, so that edges never precede their nodes.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testBatchOrder() throws ObviousException {
+    Node n0 = addNode(0);
+    Node n1 = addNode(1);
+    network.beginEdit(JDBCObviousNetwork.BATCH_MODE);
+    addEdge(0, n0, n1);
+    Node n2 = addNode(2);
+    addEdge(1, n1, n2);
+    network.endEdit(JDBCObviousNetwork.BATCH_MODE);
+    assertEquals(3, database.getRowCount("node"));
+    assertEquals(2, database.getRowCount("edge"));
+    assertEquals(2, network.getEdges().size());
+  }
+
+  /**
+   * Test method checking that the events of the batch mode are delayed
+   * until the batch is executed and coalesced into one range event.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testBatchEvents() throws ObviousException {
+    final List<int[]> events = new ArrayList<int[]>();
+    network.getNodeTable().addTableListener(new TableListener() {
+      public void beginEdit(int context) { }
+      public boolean endEdit(int context) {
+        return true;
+      }
+      public boolean checkInvariants() {
+        return true;
+      }
+      public void tableChanged(Table t, int start, int end, int col,
+          int type) {
+        events.add(new int[] {start, end, type});
+      }
+    });
+    network.beginEdit(JDBCObviousNetwork.BATCH_MODE);
+    for (int i = 0; i < 5; i++) {
+      addNode(i);
+    }
+    assertEquals(0, events.size());
+    network.endEdit(JDBCObviousNetwork.BATCH_MODE);
+    assertEquals(1, events.size());
+    assertEquals(0, events.get(0)[0]);
+    assertEquals(4, events.get(0)[1]);
+    assertEquals(TableListener.INSERT, events.get(0)[2]);
+  }
+
+  /**
+   * Test method checking that the node and edge views read the values
+   * written in batch mode.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testReadInBatchMode() throws ObviousException {
+    Node n0 = addNode(0);
+    network.beginEdit(JDBCObviousNetwork.BATCH_MODE);
+    Node n1 = addNode(1);
+    assertEquals("node1", network.getNodeTable().getValue(1, "name"));
+    addEdge(0, n0, n1);
+    assertEquals(1, network.getEdgeTable().getValue(0, "dst"));
+    network.getNodeTable().set(0, "name", "first");
+    network.endEdit(JDBCObviousNetwork.BATCH_MODE);
+    assertEquals("first", network.getNodeTable().getValue(0, "name"));
+    assertEquals("node1", network.getNodeTable().getValue(1, "name"));
+  }
+
+  /**
+   * Test method checking that a failed batch is undone in the network and
+   * thrown by endEdit.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testBatchFailure() throws ObviousException {
+    Node n0 = addNode(0);
+    Node n1 = addNode(1);
+    addEdge(0, n0, n1);
+    final List<int[]> events = new ArrayList<int[]>();
+    network.getEdgeTable().addTableListener(new TableListener() {
+      public void beginEdit(int context) { }
+      public boolean endEdit(int context) {
+        return true;
+      }
+      public boolean checkInvariants() {
+        return true;
+      }
+      public void tableChanged(Table t, int start, int end, int col,
+          int type) {
+        events.add(new int[] {start, end, type});
+      }
+    });
+    network.beginEdit(JDBCObviousNetwork.BATCH_MODE);
+    Node n2 = addNode(2);
+    network.removeEdge(network.getEdges().iterator().next());
+    addEdge(1, n1, n2);
+    // The source column references a missing node.
+    int row = edges.addRow(new TupleImpl(edges.getSchema(),
+        new Object[] {2, 99, 1})) - 1;
+    network.addEdge(new EdgeImpl(edges, row), n0, n1, EdgeType.DIRECTED);
+    try {
+      network.endEdit(JDBCObviousNetwork.BATCH_MODE);
+      fail("The batch should fail");
+    } catch (ObviousException e) {
+      assertEquals(0, events.size());
+    }
+    assertEquals(2, network.getNodes().size());
+    assertEquals(1, network.getEdges().size());
+    assertEquals(1, network.getOutEdges(n0).size());
+    assertEquals(1, network.getSuccessors(n0).iterator().next().get("id"));
+    assertEquals(0, network.getOutEdges(n1).size());
+  }
+
+}
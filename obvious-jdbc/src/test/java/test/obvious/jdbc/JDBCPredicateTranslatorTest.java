@@ -0,0 +1,156 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.data.util.Predicate;
+import obvious.impl.SchemaImpl;
+import obvious.impl.predicate.AndPredicate;
+import obvious.impl.predicate.ComparisonPredicate;
+import obvious.impl.predicate.NotPredicate;
+import obvious.impl.predicate.OrPredicate;
+import obvious.impl.predicate.RangePredicate;
+import obvious.jdbc.data.JDBCPredicateTranslator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the translation of predicates into SQL conditions. It does
+ * not need a database.
+ * @author obvious
+ *
+ */
+public class JDBCPredicateTranslatorTest {
+
+  /**
+   * Translator under test.
+   */
+  private JDBCPredicateTranslator translator;
+
+  /**
+   * Parameter values of the last translation.
+   */
+  private List<Object> params;
+
+  /**
+   * Parameter types of the last translation.
+   */
+  private List<Class<?>> types;
+
+  /**
+   * A predicate that can not be translated.
+   */
+  private Predicate opaque = new Predicate() {
+    public boolean apply(Table table, int rowId) {
+      return true;
+    }
+  };
+
+  /**
+   * Creates the translator for a two-column schema.
+   */
+  @Before
+  public void setUp() {
+    Schema schema = new SchemaImpl();
+    schema.addColumn("id", Integer.class, 0);
+    schema.addColumn("name", String.class, "");
+    translator = new JDBCPredicateTranslator(schema);
+    params = new ArrayList<Object>();
+    types = new ArrayList<Class<?>>();
+  }
+
+  /**
+   * Test method for comparison and range predicates.
+   */
+  @Test
+  public void testSimplePredicates() {
+    assertEquals("id >= ?", translator.translate(new ComparisonPredicate(
+        ComparisonPredicate.GTEQ, "id", 3), params, types));
+    assertEquals(Arrays.asList((Object) 3), params);
+    assertEquals(Integer.class, types.get(0));
+    assertEquals("1 = 0", translator.translate(new ComparisonPredicate(
+        ComparisonPredicate.EQ, "name", null), params, types));
+    assertEquals("(id >= ? AND id <= ?)", translator.translate(
+        new RangePredicate("id", 1, 5), params, types));
+    assertEquals("(id >= ? AND id < ?)", translator.translate(
+        new RangePredicate(RangePredicate.IN_EX, "id", 1, 5), params, types));
+    assertEquals("id IS NOT NULL", translator.translate(
+        new RangePredicate("id", null, null), params, types));
+    assertEquals(5, params.size());
+    assertNull(translator.translate(new ComparisonPredicate(
+        ComparisonPredicate.EQ, "unknown", 1), params, types));
+    assertEquals(5, params.size());
+  }
+
+  /**
+   * Test method for composite predicates.
+   */
+  @Test
+  public void testCompositePredicates() {
+    Predicate pred = new OrPredicate(
+        new ComparisonPredicate(ComparisonPredicate.EQ, "name", "a"),
+        new NotPredicate(new ComparisonPredicate(ComparisonPredicate.LT,
+            "id", 2)));
+    assertEquals("(name = ? OR (CASE WHEN id < ? THEN 0 ELSE 1 END = 1))",
+        translator.translate(pred, params, types));
+    assertEquals(Arrays.asList((Object) "a", 2), params);
+    assertNull(translator.translate(new AndPredicate(pred, opaque), params,
+        types));
+    assertEquals(2, params.size());
+  }
+
+  /**
+   * Test method for the split of a conjunction.
+   */
+  @Test
+  public void testConjunction() {
+    List<Predicate> residual = new ArrayList<Predicate>();
+    Predicate pred = new AndPredicate(
+        new ComparisonPredicate(ComparisonPredicate.GT, "id", 1), opaque,
+        new ComparisonPredicate(ComparisonPredicate.NEQ, "name", "b"));
+    assertEquals("id > ? AND name <> ?", translator.translateConjunction(
+        pred, params, types, residual));
+    assertEquals(1, residual.size());
+    assertSame(opaque, residual.get(0));
+    residual.clear();
+    assertNull(translator.translateConjunction(opaque, params, types,
+        residual));
+    assertEquals(1, residual.size());
+  }
+
+}
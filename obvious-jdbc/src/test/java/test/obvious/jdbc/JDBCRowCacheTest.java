@@ -0,0 +1,104 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import obvious.data.event.TableListener;
+import obvious.jdbc.data.JDBCRowCache;
+
+import org.junit.Test;
+
+/**
+ * Test case for the row cache of JDBCObviousTable. It does not need a
+ * database.
+ * @author obvious
+ *
+ */
+public class JDBCRowCacheTest {
+
+  /**
+   * Test method for the least recently used eviction and the counters.
+   */
+  @Test
+  public void testEviction() {
+    JDBCRowCache cache = new JDBCRowCache(2, 0);
+    cache.put(0, new Object[] {"a"});
+    cache.put(1, new Object[] {"b"});
+    assertNotNull(cache.get(0));
+    cache.put(2, new Object[] {"c"});
+    assertEquals(2, cache.size());
+    assertNull(cache.get(1));
+    assertNotNull(cache.get(0));
+    assertNotNull(cache.get(2));
+    assertEquals(3, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  /**
+   * Test method for the bound on the estimated size.
+   */
+  @Test
+  public void testByteBound() {
+    JDBCRowCache cache = new JDBCRowCache(1000, 0);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, new Object[] {i, "value" + i});
+    }
+    long rowBytes = cache.getByteCount() / 100;
+    cache.setMaxBytes(rowBytes * 10);
+    assertTrue(cache.getByteCount() <= rowBytes * 10);
+    assertTrue(cache.contains(99));
+    assertFalse(cache.contains(0));
+  }
+
+  /**
+   * Test method for the invalidation by table events.
+   */
+  @Test
+  public void testInvalidation() {
+    JDBCRowCache cache = new JDBCRowCache();
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, new Object[] {i});
+    }
+    cache.tableChanged(null, 3, 3, 0, TableListener.UPDATE);
+    assertFalse(cache.contains(3));
+    cache.tableChanged(null, 5, 100, TableListener.ALL_COLUMN,
+        TableListener.DELETE);
+    assertEquals(4, cache.size());
+    cache.tableChanged(null, -1, -1, TableListener.ALL_COLUMN,
+        TableListener.UPDATE);
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getByteCount());
+  }
+
+}
@@ -0,0 +1,177 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import obvious.data.util.IntIterator;
+import obvious.jdbc.data.JDBCRowIndex;
+
+import org.junit.Test;
+
+/**
+ * Test case for the row index of JDBCObviousTable. It does not need a
+ * database.
+ * @author obvious
+ *
+ */
+public class JDBCRowIndexTest {
+
+  /**
+   * Test method for integral keys, compared with a map on random edits.
+   */
+  @Test
+  public void testIntegralKeys() {
+    JDBCRowIndex index = new JDBCRowIndex(true);
+    Map<Integer, Long> expected = new HashMap<Integer, Long>();
+    Random random = new Random(7);
+    for (int i = 0; i < 5000; i++) {
+      long key = random.nextInt(2000);
+      if (random.nextInt(3) > 0 && index.getRow(key) < 0) {
+        expected.put(index.addRow((int) key), key);
+      } else if (index.getRow(key) >= 0) {
+        int row = index.getRow(key);
+        assertTrue(index.removeRow(row));
+        expected.remove(row);
+      }
+    }
+    assertEquals(expected.size(), index.getRowCount());
+    int count = 0;
+    for (IntIterator it = index.rowIterator(); it.hasNext();) {
+      int row = it.nextInt();
+      assertEquals(expected.get(row), index.getKey(row));
+      assertEquals(row, index.getRow(expected.get(row)));
+      count++;
+    }
+    assertEquals(expected.size(), count);
+  }
+
+  /**
+   * Test method for object keys and key changes.
+   */
+  @Test
+  public void testObjectKeys() {
+    JDBCRowIndex index = new JDBCRowIndex(false);
+    int a = index.addRow("a");
+    int b = index.addRow("b");
+    assertEquals(2, index.getRowCount());
+    index.setKey(a, "c");
+    assertEquals(-1, index.getRow("a"));
+    assertEquals(a, index.getRow("c"));
+    index.removeRow(b);
+    assertFalse(index.isValidRow(b));
+    assertNull(index.getKey(b));
+    assertEquals(b, index.addRow("d"));
+    index.clear();
+    assertEquals(0, index.getRowCount());
+    assertEquals(-1, index.getRow("c"));
+  }
+
+  /**
+   * Test method for numeric keys read with another class than the one
+   * given by the user.
+   */
+  @Test
+  public void testNumericClasses() {
+    JDBCRowIndex index = new JDBCRowIndex(true);
+    int row = index.addRow(Integer.valueOf(42));
+    assertEquals(row, index.getRow(Long.valueOf(42)));
+    assertEquals(row, index.getRow(new java.math.BigDecimal(42)));
+    JDBCRowIndex objects = new JDBCRowIndex(false);
+    row = objects.addRow(Integer.valueOf(42));
+    assertEquals(row, objects.getRow(Long.valueOf(42)));
+  }
+
+  /**
+   * Test method checking that a rollback restores the rows and keys of
+   * the mark, after random edits, some of them reusing existing keys, and
+   * a clear.
+   */
+  @Test
+  public void testRollback() {
+    for (boolean integral : new boolean[] {true, false}) {
+      JDBCRowIndex index = new JDBCRowIndex(integral);
+      Random random = new Random(11);
+      for (int i = 0; i < 300; i++) {
+        index.addRow(i);
+      }
+      for (int row = 0; row < 300; row += 3) {
+        index.removeRow(row);
+      }
+      Map<Integer, Object> expected = getKeys(index);
+      index.mark();
+      for (int i = 0; i < 500; i++) {
+        int row = random.nextInt(index.getRowTop() + 1);
+        int op = random.nextInt(3);
+        int key = random.nextBoolean() ? 1000 + i : random.nextInt(300);
+        if (op == 0) {
+          index.addRow(key);
+        } else if (op == 1) {
+          index.removeRow(row);
+        } else {
+          index.setKey(row, key);
+        }
+        if (i == 250) {
+          index.clear();
+        }
+      }
+      index.rollback();
+      assertEquals(expected, getKeys(index));
+      for (Map.Entry<Integer, Object> entry : expected.entrySet()) {
+        assertEquals(entry.getKey().intValue(),
+            index.getRow(entry.getValue()));
+      }
+      int row = index.addRow(5000);
+      assertFalse(expected.containsKey(row));
+      assertEquals(expected.size() + 1, index.getRowCount());
+    }
+  }
+
+  /**
+   * Gets the keys of the rows of an index.
+   * @param index a row index
+   * @return the keys by row
+   */
+  private static Map<Integer, Object> getKeys(JDBCRowIndex index) {
+    Map<Integer, Object> keys = new HashMap<Integer, Object>();
+    for (IntIterator it = index.rowIterator(); it.hasNext();) {
+      int row = it.nextInt();
+      keys.put(row, index.getKey(row));
+    }
+    assertEquals(keys.size(), index.getRowCount());
+    return keys;
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.List;
+
+import obvious.jdbc.data.JDBCConnectionPool;
+import obvious.jdbc.data.JDBCObviousSchema;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the metadata snapshot of JDBCObviousSchema. The pool gives
+ * a proxy connection over an in-memory list of columns, so no database is
+ * needed.
+ * @author obvious
+ *
+ */
+public class JDBCSchemaMetadataTest {
+
+  /**
+   * Columns of the fake table: name and class name.
+   */
+  private List<String[]> columns;
+
+  /**
+   * Number of queries executed.
+   */
+  private int queryCount;
+
+  /**
+   * Number of connections borrowed and not released.
+   */
+  private int borrowed;
+
+  /**
+   * Tested schema.
+   */
+  private JDBCObviousSchema schema;
+
+  /**
+   * Creates a schema over a fake table with two columns.
+   */
+  @Before
+  public void setUp() {
+    columns = new ArrayList<String[]>();
+    columns.add(new String[] {"ID", "java.lang.Integer"});
+    columns.add(new String[] {"NAME", "java.lang.String"});
+    final Connection con = (Connection) proxy(Connection.class,
+        new InvocationHandler() {
+          public Object invoke(Object p, Method method, Object[] args) {
+            if (method.getName().equals("getMetaData")) {
+              return databaseMetaData();
+            } else if (method.getName().equals("prepareStatement")) {
+              return statement((String) args[0]);
+            }
+            return null;
+          }
+        });
+    schema = new JDBCObviousSchema(new JDBCConnectionPool() {
+      public Connection getConnection() {
+        borrowed++;
+        return con;
+      }
+      public void release(Connection c) {
+        borrowed--;
+      }
+    }, "T");
+  }
+
+  /**
+   * Creates a proxy.
+   * @param type implemented interface
+   * @param handler invocation handler
+   * @return the proxy
+   */
+  private Object proxy(Class<?> type, InvocationHandler handler) {
+    return Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] {type}, handler);
+  }
+
+  /**
+   * Creates database metadata listing the table T.
+   * @return database metadata
+   */
+  private DatabaseMetaData databaseMetaData() {
+    return (DatabaseMetaData) proxy(DatabaseMetaData.class,
+        new InvocationHandler() {
+          public Object invoke(Object p, Method method, Object[] args) {
+            if (method.getName().equals("getTables")) {
+              final boolean[] done = {false};
+              return proxy(ResultSet.class, new InvocationHandler() {
+                public Object invoke(Object q, Method m, Object[] a) {
+                  if (m.getName().equals("next")) {
+                    boolean next = !done[0];
+                    done[0] = true;
+                    return next;
+                  } else if (m.getName().equals("getString")) {
+                    return "T";
+                  }
+                  return null;
+                }
+              });
+            }
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Creates a statement: queries return the column metadata, updates add
+   * a column.
+   * @param sql SQL text of the statement
+   * @return a statement
+   */
+  private PreparedStatement statement(final String sql) {
+    return (PreparedStatement) proxy(PreparedStatement.class,
+        new InvocationHandler() {
+          public Object invoke(Object p, Method method, Object[] args) {
+            if (method.getName().equals("executeQuery")) {
+              queryCount++;
+              return proxy(ResultSet.class, new InvocationHandler() {
+                public Object invoke(Object q, Method m, Object[] a) {
+                  if (m.getName().equals("getMetaData")) {
+                    return resultSetMetaData();
+                  }
+                  return null;
+                }
+              });
+            } else if (method.getName().equals("executeUpdate")) {
+              String[] words = sql.split(" ");
+              columns.add(new String[] {words[4], "java.lang.Double"});
+              return 0;
+            }
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Creates result set metadata describing the current columns.
+   * @return result set metadata
+   */
+  private ResultSetMetaData resultSetMetaData() {
+    final List<String[]> copy = new ArrayList<String[]>(columns);
+    return (ResultSetMetaData) proxy(ResultSetMetaData.class,
+        new InvocationHandler() {
+          public Object invoke(Object p, Method method, Object[] args) {
+            if (method.getName().equals("getColumnCount")) {
+              return copy.size();
+            } else if (method.getName().equals("getColumnName")) {
+              return copy.get((Integer) args[0] - 1)[0];
+            } else if (method.getName().equals("getColumnClassName")) {
+              return copy.get((Integer) args[0] - 1)[1];
+            }
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Test method for the reuse of the metadata snapshot.
+   */
+  @Test
+  public void testSnapshot() {
+    for (int i = 0; i < 100; i++) {
+      assertEquals(2, schema.getColumnCount());
+      assertEquals(1, schema.getColumnIndex("name"));
+      assertEquals("ID", schema.getColumnName(0));
+      assertEquals(String.class, schema.getColumnType(1));
+    }
+    assertEquals(1, queryCount);
+    assertEquals(0, borrowed);
+    assertTrue(schema.hasColumn("id"));
+    assertFalse(schema.hasColumn("other"));
+    assertEquals(-1, schema.getColumnIndex("other"));
+    assertEquals(null, schema.getColumnName(2));
+  }
+
+  /**
+   * Test method for the refresh of the snapshot after addColumn.
+   */
+  @Test
+  public void testAddColumn() {
+    assertEquals(2, schema.getColumnCount());
+    assertEquals(3, schema.addColumn("WEIGHT", Double.class, 0.0));
+    assertEquals(2, schema.getColumnIndex("weight"));
+    assertEquals(Double.class, schema.getColumnType("WEIGHT"));
+    assertEquals(2, queryCount);
+    assertEquals(0, borrowed);
+  }
+
+}
@@ -0,0 +1,249 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import obvious.jdbc.data.JDBCStatementCache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the statement pool of the JDBC binding. The connection is
+ * a proxy recording the batch executions, so no database is needed.
+ * @author obvious
+ *
+ */
+public class JDBCStatementCacheTest {
+
+  /**
+   * Recorded batch executions: SQL text and number of operations.
+   */
+  private List<String> executions;
+
+  /**
+   * Number of statements prepared by the connection.
+   */
+  private int prepareCount;
+
+  /**
+   * Tested pool.
+   */
+  private JDBCStatementCache cache;
+
+  /**
+   * Creates a pool over a recording connection.
+   */
+  @Before
+  public void setUp() {
+    executions = new ArrayList<String>();
+    prepareCount = 0;
+    Connection con = (Connection) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {Connection.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("prepareStatement")) {
+              prepareCount++;
+              return createStatement((String) args[0]);
+            }
+            return null;
+          }
+        });
+    cache = new JDBCStatementCache(con);
+  }
+
+  /**
+   * Creates a statement recording its batch executions. The batches of a
+   * statement whose SQL text contains "FAIL" fail.
+   * @param sql SQL text of the statement
+   * @return a statement
+   */
+  private PreparedStatement createStatement(final String sql) {
+    final int[] batch = new int[1];
+    return (PreparedStatement) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {PreparedStatement.class},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args)
+              throws SQLException {
+            String name = method.getName();
+            if (name.equals("addBatch")) {
+              batch[0]++;
+            } else if (name.equals("clearBatch")) {
+              batch[0] = 0;
+            } else if (name.equals("executeBatch") && sql.contains("FAIL")) {
+              batch[0] = 0;
+              throw new SQLException("Batch failed: " + sql);
+            } else if (name.equals("executeBatch")) {
+              executions.add(sql + " x" + batch[0]);
+              batch[0] = 0;
+              return new int[0];
+            } else if (name.equals("isClosed")) {
+              return false;
+            } else if (name.equals("equals")) {
+              return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+              return System.identityHashCode(proxy);
+            }
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Test method for the reuse of prepared statements.
+   * @throws Exception if something bad happens
+   */
+  @Test
+  public void testReuse() throws Exception {
+    PreparedStatement stmt = cache.prepare("SELECT a FROM t WHERE k = ?");
+    assertSame(stmt, cache.prepare("SELECT a FROM t WHERE k = ?"));
+    cache.prepare("SELECT b FROM t WHERE k = ?");
+    assertEquals(2, prepareCount);
+    assertEquals(2, cache.size());
+  }
+
+  /**
+   * Test method checking that interleaved insertions keep their order.
+   * @throws Exception if something bad happens
+   */
+  @Test
+  public void testInsertOrder() throws Exception {
+    PreparedStatement node = cache.prepare("INSERT INTO node");
+    PreparedStatement edge = cache.prepare("INSERT INTO edge");
+    cache.addBatch(node);
+    cache.addBatch(node);
+    cache.addBatch(edge);
+    cache.addBatch(node);
+    assertEquals(1, cache.getPendingCount());
+    cache.executeBatch();
+    assertEquals("[INSERT INTO node x2, INSERT INTO edge x1,"
+        + " INSERT INTO node x1]", executions.toString());
+    assertEquals(0, cache.getPendingCount());
+  }
+
+  /**
+   * Test method for the order of mixed operations.
+   * @throws Exception if something bad happens
+   */
+  @Test
+  public void testMixedOrder() throws Exception {
+    PreparedStatement insert = cache.prepare("INSERT INTO t");
+    PreparedStatement delete = cache.prepare("DELETE FROM t");
+    cache.addBatch(insert);
+    cache.addBatch(insert);
+    cache.addBatch(delete);
+    cache.addBatch(insert);
+    cache.executeBatch();
+    assertEquals("[INSERT INTO t x2, DELETE FROM t x1, INSERT INTO t x1]",
+        executions.toString());
+  }
+
+  /**
+   * Test method checking that alternating inserts and updates are sent as
+   * one batch per statement, inserts first.
+   * @throws Exception if something bad happens
+   */
+  @Test
+  public void testInsertsBeforeUpdates() throws Exception {
+    PreparedStatement insert = cache.prepare("INSERT INTO t");
+    PreparedStatement update = cache.prepare(
+        "UPDATE t SET a = ? WHERE k = ?");
+    PreparedStatement other = cache.prepare(
+        "UPDATE t SET b = ? WHERE k = ?");
+    for (int i = 0; i < 3; i++) {
+      cache.addBatch(insert);
+      cache.addBatch(update);
+      cache.addBatch(other);
+    }
+    assertEquals(9, cache.getPendingCount());
+    assertEquals(0, executions.size());
+    cache.executeBatch();
+    assertEquals("[INSERT INTO t x3, UPDATE t SET a = ? WHERE k = ? x3,"
+        + " UPDATE t SET b = ? WHERE k = ? x3]", executions.toString());
+  }
+
+  /**
+   * Test method checking that updates are not moved ahead of inserts, nor
+   * inserts ahead of key updates.
+   * @throws Exception if something bad happens
+   */
+  @Test
+  public void testUpdateOrder() throws Exception {
+    PreparedStatement update = cache.prepare(
+        "UPDATE t SET a = ? WHERE k = ?");
+    PreparedStatement insert = cache.prepare("INSERT INTO t");
+    PreparedStatement key = cache.prepare("UPDATE t SET k = ? WHERE k = ?");
+    cache.addBatch(update);
+    cache.addBatch(insert);
+    cache.addBatch(update);
+    cache.addBatch(key);
+    cache.addBatch(insert);
+    cache.executeBatch();
+    assertEquals("[UPDATE t SET a = ? WHERE k = ? x1, INSERT INTO t x1,"
+        + " UPDATE t SET a = ? WHERE k = ? x1,"
+        + " UPDATE t SET k = ? WHERE k = ? x1, INSERT INTO t x1]",
+        executions.toString());
+  }
+
+  /**
+   * Test method checking that the batches following a failed batch are
+   * discarded.
+   * @throws Exception if something bad happens
+   */
+  @Test
+  public void testFailure() throws Exception {
+    PreparedStatement insert = cache.prepare("INSERT INTO FAIL");
+    PreparedStatement update = cache.prepare(
+        "UPDATE t SET a = ? WHERE k = ?");
+    cache.addBatch(insert);
+    cache.addBatch(update);
+    try {
+      cache.executeBatch();
+      fail("The batch should fail");
+    } catch (SQLException e) {
+      assertEquals(0, cache.getPendingCount());
+    }
+    cache.addBatch(update);
+    cache.executeBatch();
+    assertEquals("[UPDATE t SET a = ? WHERE k = ? x1]",
+        executions.toString());
+  }
+
+}
@@ -27,93 +27,376 @@
 
 package test.obvious.jdbc;
 
-/*import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import obvious.ObviousException;
+import obvious.ObviousRuntimeException;
 import obvious.data.Schema;
 import obvious.data.Table;
+import obvious.data.event.TableListener;
+import obvious.data.util.TupleCursor;
+import obvious.impl.TupleImpl;
 import obvious.jdbc.data.JDBCObviousTable;
+
+import org.junit.Test;
+
 import test.obvious.data.TableTest;
-*/
+
 /**
  * Implementation of  Table  test-case for JDBCObviousTable implementation.
+ * The table is stored in a {@link MemoryDatabase}, so no database server is
+ * needed.
  * @author Pierre-Luc Hemery
  *
  */
-public class JDBCTableTest /*extends TableTest*/ {
-/*
-  *//**
-   * Driver for the database.
-   *//*
-  public static final String DRIVER = "com.mysql.jdbc.Driver";
-
-  *//**
-   * URL for the test database.
-   *//*
-  public static final String URL = "jdbc:mysql:///test";
-
-  *//**
-   * Login for the test database.
-   *//*
-  public static final String LOGIN = "root";
-
-  *//**
-   * Database for the test database.
-   *//*
-  public static final String PASSWORD = "";
-
-  *//**
+public class JDBCTableTest extends TableTest {
+
+  /**
    * Name of the test table.
-   *//*
+   */
   public static final String TABLE_NAME = "TEST_CASE_TABLE";
 
-  *//**
+  /**
    * Name of the primary key column.
-   *//*
+   */
   public static final String PRIMARY_KEY = "col2";
 
+  /**
+   * Database of the tested table.
+   */
+  private MemoryDatabase database;
+
   @Override
   public Table newInstance(Schema schema) throws ObviousException {
-    return new JDBCObviousTable(schema, DRIVER, URL, LOGIN, PASSWORD,
-        TABLE_NAME, PRIMARY_KEY);
+    database = new MemoryDatabase();
+    return new JDBCObviousTable(schema, database.getConnection(), TABLE_NAME,
+        PRIMARY_KEY);
   }
 
-  @Override
-  public void tearDown() {
-    try {
-      Class.forName(DRIVER);
-    } catch (ClassNotFoundException e) {
-      System.err.print("ClassNotFoundException: ");
-      System.err.println(e.getMessage());
+  /**
+   * Gets the database of the tested table.
+   * @return the database
+   */
+  protected MemoryDatabase getDatabase() {
+    return database;
+  }
+
+  /**
+   * Test method checking that the table is created in the database and
+   * that the rows are written to it.
+   * @throws ObviousException if the table metadata cannot be read
+   */
+  @Test
+  public void testStoredRows() throws ObviousException {
+    assertTrue(((JDBCObviousTable) getTable()).tableExist());
+    assertEquals(NUMROW, database.getRowCount(TABLE_NAME));
+    getTable().removeRow(1);
+    assertEquals(NUMROW - 1, database.getRowCount(TABLE_NAME));
+  }
+
+  /**
+   * Test method checking that removing an invalid row does nothing.
+   */
+  @Test
+  public void testRemoveInvalidRow() {
+    final List<int[]> events = new ArrayList<int[]>();
+    getTable().addTableListener(new TableListener() {
+      public void beginEdit(int context) { }
+      public boolean endEdit(int context) {
+        return true;
+      }
+      public boolean checkInvariants() {
+        return true;
+      }
+      public void tableChanged(Table t, int start, int end, int col,
+          int type) {
+        events.add(new int[] {start, end, type});
+      }
+    });
+    int executed = database.getExecuted().size();
+    assertFalse(getTable().removeRow(NUMROW + 10));
+    assertTrue(getTable().removeRow(0));
+    assertFalse(getTable().removeRow(0));
+    assertEquals(1, events.size());
+    assertEquals(executed + 1, database.getExecuted().size());
+    assertEquals(NUMROW - 1, database.getRowCount(TABLE_NAME));
+  }
+
+  /**
+   * Test method checking that statements are prepared once and that values
+   * are bound as parameters instead of being formatted in the SQL text.
+   */
+  @Test
+  public void testStatementPooling() {
+    Table table = getTable();
+    int prepared = database.getPrepareCount();
+    for (int i = 0; i < 20; i++) {
+      table.set(i % NUMROW, 0, "value" + i);
+      table.getValue(i % NUMROW, 0);
+      table.addRow(new TupleImpl(table.getSchema(),
+          new Object[] {"added" + i, 100 + i, true}));
+    }
+    // One UPDATE statement, one block read statement, the INSERT is pooled.
+    assertEquals(prepared + 2, database.getPrepareCount());
+    for (String sql : database.getExecuted()) {
+      assertFalse(sql, sql.contains("value") || sql.contains("added"));
     }
-    Connection con = null;
-    PreparedStatement pStatement = null;
-    if (((JDBCObviousTable) this.getTable()).tableExist()) {
-      try {
-        con = DriverManager.getConnection(URL, LOGIN, PASSWORD);
-        String request = "DROP TABLE " + TABLE_NAME;
-        pStatement = con.prepareStatement(request);
-        pStatement.execute(request);
-      } catch (SQLException e) {
-        System.err.println("SQLException: " + e.getMessage());
-        if (con != null) {
-          try {
-            System.err.print("Transaction is being rolled back");
-            con.rollback();
-          } catch (SQLException ex) {
-            System.err.print("SQLException: ");
-            System.err.println(ex.getMessage());
-          }
-        }
-      } finally {
-        try { pStatement.close(); } catch (Exception e) { e.printStackTrace(); }
-        try { con.close(); } catch (Exception e) { e.printStackTrace(); }
+    assertEquals("value19", table.getValue(19 % NUMROW, 0));
+    assertEquals("added19", table.getValue(NUMROW + 19, "col1"));
+  }
+
+  /**
+   * Test method checking that a scan reads the rows added in batch mode.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testScanInBatchMode() throws ObviousException {
+    JDBCObviousTable table = (JDBCObviousTable) getTable();
+    table.beginEdit(JDBCObviousTable.BATCH_MODE);
+    table.addRow(new TupleImpl(table.getSchema(),
+        new Object[] {"Ciao", 5, false}));
+    table.set(0, "col1", "Salut");
+    TupleCursor cursor = table.scan();
+    List<Object> names = new ArrayList<Object>();
+    while (cursor.next()) {
+      names.add(cursor.getTuple().get("col1"));
+    }
+    cursor.close();
+    table.endEdit(JDBCObviousTable.BATCH_MODE);
+    assertEquals(NUMROW + 1, names.size());
+    assertTrue(names.contains("Ciao"));
+    assertTrue(names.contains("Salut"));
+  }
+
+  /**
+   * Test method checking that values read in batch mode include the
+   * pending operations and are not cached stale.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testReadInBatchMode() throws ObviousException {
+    JDBCObviousTable table = (JDBCObviousTable) getTable();
+    table.beginEdit(JDBCObviousTable.BATCH_MODE);
+    table.addRow(new TupleImpl(table.getSchema(),
+        new Object[] {"Ciao", 5, false}));
+    assertEquals("Ciao", table.getValue(NUMROW, "col1"));
+    table.set(0, "col1", "Salut");
+    assertEquals("Salut", table.getValue(0, "col1"));
+    table.set(1, "col1", "Hola");
+    table.endEdit(JDBCObviousTable.BATCH_MODE);
+    assertEquals("Hola", table.getValue(1, "col1"));
+    assertEquals("Ciao", table.getValue(NUMROW, "col1"));
+  }
+
+  /**
+   * Test method checking that the events of the batch mode are delayed
+   * and coalesced.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testBatchEvents() throws ObviousException {
+    JDBCObviousTable table = (JDBCObviousTable) getTable();
+    final List<int[]> events = new ArrayList<int[]>();
+    table.addTableListener(new TableListener() {
+      public void beginEdit(int context) { }
+      public boolean endEdit(int context) {
+        return true;
       }
+      public boolean checkInvariants() {
+        return true;
+      }
+      public void tableChanged(Table t, int start, int end, int col,
+          int type) {
+        events.add(new int[] {start, end, type});
+      }
+    });
+    table.beginEdit(JDBCObviousTable.BATCH_MODE);
+    for (int i = 0; i < 3; i++) {
+      table.addRow(new TupleImpl(table.getSchema(),
+          new Object[] {"Ciao", 5 + i, false}));
+    }
+    assertEquals(0, events.size());
+    assertEquals(NUMROW, database.getRowCount(TABLE_NAME));
+    table.endEdit(JDBCObviousTable.BATCH_MODE);
+    assertEquals(1, events.size());
+    assertEquals(NUMROW, events.get(0)[0]);
+    assertEquals(NUMROW + 2, events.get(0)[1]);
+    assertEquals(TableListener.INSERT, events.get(0)[2]);
+    assertEquals(NUMROW + 3, database.getRowCount(TABLE_NAME));
+  }
+
+  /**
+   * Test method checking that alternating insertions and updates in batch
+   * mode are sent as a few batches and reach the database correctly, even
+   * with a key update in between.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testBatchOrder() throws ObviousException {
+    JDBCObviousTable table = (JDBCObviousTable) getTable();
+    int executed = database.getExecuted().size();
+    table.beginEdit(JDBCObviousTable.BATCH_MODE);
+    for (int i = 0; i < 10; i++) {
+      table.addRow(new TupleImpl(table.getSchema(),
+          new Object[] {"Ciao", 10 + i, false}));
+      table.set(NUMROW + i, "col1", "Hola" + i);
+      table.set(NUMROW + i, "col3", true);
+    }
+    table.set(0, PRIMARY_KEY, 100);
+    table.addRow(new TupleImpl(table.getSchema(),
+        new Object[] {"Salut", 1, false}));
+    table.set(NUMROW + 10, "col1", "Hallo");
+    table.endEdit(JDBCObviousTable.BATCH_MODE);
+    // The inserts, the updates of each column, the key update, then the
+    // last insert and update.
+    List<String> sql = database.getExecuted().subList(executed,
+        database.getExecuted().size());
+    assertEquals(33, sql.size());
+    for (int i = 0; i < 10; i++) {
+      assertTrue(sql.get(i).startsWith("INSERT"));
+      assertTrue(sql.get(10 + i).contains("SET col1"));
+      assertTrue(sql.get(20 + i).contains("SET col3"));
+    }
+    assertTrue(sql.get(30).contains("SET " + PRIMARY_KEY));
+    assertTrue(sql.get(31).startsWith("INSERT"));
+    assertEquals(NUMROW + 11, database.getRowCount(TABLE_NAME));
+    table.getRowCache().clear();
+    for (int i = 0; i < 10; i++) {
+      assertEquals("Hola" + i, table.getValue(NUMROW + i, "col1"));
+      assertEquals(true, table.getValue(NUMROW + i, "col3"));
+    }
+    assertEquals(100, table.getValue(0, PRIMARY_KEY));
+    assertEquals("Hallo", table.getValue(NUMROW + 10, "col1"));
+  }
+
+  /**
+   * Test method checking that only contiguous events of the batch mode are
+   * merged.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testBatchEventsNotContiguous() throws ObviousException {
+    JDBCObviousTable table = (JDBCObviousTable) getTable();
+    final List<int[]> events = new ArrayList<int[]>();
+    table.addTableListener(new TableListener() {
+      public void beginEdit(int context) { }
+      public boolean endEdit(int context) {
+        return true;
+      }
+      public boolean checkInvariants() {
+        return true;
+      }
+      public void tableChanged(Table t, int start, int end, int col,
+          int type) {
+        events.add(new int[] {start, end, type});
+      }
+    });
+    table.beginEdit(JDBCObviousTable.BATCH_MODE);
+    table.removeRow(0);
+    table.removeRow(2);
+    table.removeRow(1);
+    table.endEdit(JDBCObviousTable.BATCH_MODE);
+    assertEquals(2, events.size());
+    assertEquals(0, events.get(0)[0]);
+    assertEquals(0, events.get(0)[1]);
+    assertEquals(1, events.get(1)[0]);
+    assertEquals(2, events.get(1)[1]);
+    assertEquals(TableListener.DELETE, events.get(1)[2]);
+  }
+
+  /**
+   * Adds to a table a listener recording the events.
+   * @param table a table
+   * @return the recorded events, each one {start, end, type}
+   */
+  private static List<int[]> recordEvents(Table table) {
+    final List<int[]> events = new ArrayList<int[]>();
+    table.addTableListener(new TableListener() {
+      public void beginEdit(int context) { }
+      public boolean endEdit(int context) {
+        return true;
+      }
+      public boolean checkInvariants() {
+        return true;
+      }
+      public void tableChanged(Table t, int start, int end, int col,
+          int type) {
+        events.add(new int[] {start, end, type});
+      }
+    });
+    return events;
+  }
+
+  /**
+   * Test method checking that a failed batch is undone in the table and
+   * thrown by endEdit. The database is in auto-commit mode, so the
+   * operations executed before the failure are found by a refresh.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testBatchFailure() throws ObviousException {
+    JDBCObviousTable table = (JDBCObviousTable) getTable();
+    List<int[]> events = recordEvents(table);
+    table.beginEdit(JDBCObviousTable.BATCH_MODE);
+    table.removeRow(2);
+    table.addRow(new TupleImpl(table.getSchema(),
+        new Object[] {"Ciao", 5, false}));
+    table.set(0, "col1", "Salut");
+    // Duplicate key.
+    table.addRow(new TupleImpl(table.getSchema(),
+        new Object[] {"Hola", 1, false}));
+    try {
+      table.endEdit(JDBCObviousTable.BATCH_MODE);
+      fail("The batch should fail");
+    } catch (ObviousException e) {
+      assertEquals(0, events.size());
+    }
+    assertEquals(NUMROW, table.getRowCount());
+    assertTrue(table.isValidRow(2));
+    assertFalse(table.isValidRow(NUMROW));
+    assertEquals("Bonjour", table.getValue(0, "col1"));
+    assertTrue(table.refresh());
+    assertEquals(2, events.get(0)[0]);
+    assertEquals(TableListener.DELETE, events.get(0)[2]);
+    assertEquals(TableListener.INSERT, events.get(1)[2]);
+    assertEquals("Ciao", table.getValue(events.get(1)[0], "col1"));
+    assertEquals(NUMROW, table.getRowCount());
+  }
+
+  /**
+   * Test method checking that a batch failing when it is full is undone
+   * and thrown by the operation that executed it.
+   * @throws ObviousException if the batch mode is not supported
+   */
+  @Test
+  public void testFullBatchFailure() throws ObviousException {
+    JDBCObviousTable table = (JDBCObviousTable) getTable();
+    List<int[]> events = recordEvents(table);
+    table.setBatchSize(2);
+    table.beginEdit(JDBCObviousTable.BATCH_MODE);
+    table.addRow(new TupleImpl(table.getSchema(),
+        new Object[] {"Ciao", 1, false}));
+    table.addRow(new TupleImpl(table.getSchema(),
+        new Object[] {"Hola", 6, false}));
+    try {
+      table.addRow(new TupleImpl(table.getSchema(),
+          new Object[] {"Salut", 7, false}));
+      fail("The batch should fail");
+    } catch (ObviousRuntimeException e) {
+      assertEquals(0, events.size());
     }
-    setTable(null);
-  }*/
+    assertEquals(NUMROW, table.getRowCount());
+    table.endEdit(JDBCObviousTable.BATCH_MODE);
+    assertEquals(0, events.size());
+    // The index still maps the existing key to its row.
+    assertFalse(table.refresh());
+    assertEquals(NUMROW, database.getRowCount(TABLE_NAME));
+  }
 
 }
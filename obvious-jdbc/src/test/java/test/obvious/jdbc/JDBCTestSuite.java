@@ -40,7 +40,15 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses(value = {
 JDBCSchemaTest.class,
-JDBCTableTest.class
+JDBCTableTest.class,
+JDBCRowCacheTest.class,
+JDBCStatementCacheTest.class,
+JDBCRowIndexTest.class,
+JDBCLazyTableTest.class,
+JDBCNetworkTest.class,
+JDBCConnectionPoolTest.class,
+JDBCSchemaMetadataTest.class,
+JDBCPredicateTranslatorTest.class
 })
 public class JDBCTestSuite {
 
@@ -0,0 +1,636 @@
+/*
+* Copyright (c) 2010, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory database answering, through proxies of the java.sql
+ * interfaces, the statements issued by the JDBC binding. It lets the
+ * tables and networks of the binding be tested without a database server.
+ * <p>
+ * Only the statement shapes generated by the binding are understood:
+ * CREATE TABLE, INSERT with bound values, UPDATE and DELETE by primary key,
+ * and SELECT of columns with no condition, a condition on the primary key
+ * or the "1 = 0" condition. Other statements fail with an SQLException.
+ * Batched operations are only applied when the batch is executed, like
+ * with a real server.
+ * </p>
+ * @author obvious
+ *
+ */
+public class MemoryDatabase {
+
+  /**
+   * CREATE TABLE statement.
+   */
+  private static final Pattern CREATE = Pattern.compile(
+      "CREATE TABLE (\\w+) \\((.*)\\)");
+
+  /**
+   * INSERT statement.
+   */
+  private static final Pattern INSERT = Pattern.compile(
+      "INSERT INTO (\\w+) \\((.*)\\) VALUES \\(.*\\)");
+
+  /**
+   * UPDATE statement.
+   */
+  private static final Pattern UPDATE = Pattern.compile(
+      "UPDATE (\\w+) SET (\\w+) = \\? WHERE (\\w+) = \\?");
+
+  /**
+   * DELETE statement.
+   */
+  private static final Pattern DELETE = Pattern.compile(
+      "DELETE FROM (\\w+)(?: WHERE (\\w+) = \\?)?");
+
+  /**
+   * SELECT statement.
+   */
+  private static final Pattern SELECT = Pattern.compile(
+      "SELECT (.+?) FROM (\\w+)(?: WHERE (.+?))?(?: ORDER BY (\\w+))?");
+
+  /**
+   * IN condition on a column.
+   */
+  private static final Pattern IN = Pattern.compile("(\\w+) IN \\((.*)\\)");
+
+  /**
+   * Equality condition on a column.
+   */
+  private static final Pattern EQUALS = Pattern.compile("(\\w+) = \\?");
+
+  /**
+   * Tables by upper case name.
+   */
+  private Map<String, MemoryTable> tables =
+    new LinkedHashMap<String, MemoryTable>();
+
+  /**
+   * Executed statements, in execution order. A batch appears once per
+   * operation.
+   */
+  private List<String> executed = new ArrayList<String>();
+
+  /**
+   * Number of prepared statements.
+   */
+  private int prepareCount;
+
+  /**
+   * Connection to the database.
+   */
+  private Connection connection;
+
+  /**
+   * Constructor.
+   */
+  public MemoryDatabase() {
+    connection = (Connection) proxy(Connection.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args)
+          throws SQLException {
+        String name = method.getName();
+        if (name.equals("prepareStatement")) {
+          prepareCount++;
+          return proxy(PreparedStatement.class,
+              new StatementHandler((String) args[0]));
+        } else if (name.equals("createStatement")) {
+          return proxy(PreparedStatement.class, new StatementHandler(null));
+        } else if (name.equals("getMetaData")) {
+          return createMetaData();
+        } else if (name.equals("getAutoCommit")) {
+          return true;
+        }
+        return defaultValue(proxy, method, args);
+      }
+    });
+  }
+
+  /**
+   * Gets a connection to the database. All the connections share the same
+   * data.
+   * @return a connection
+   */
+  public Connection getConnection() {
+    return connection;
+  }
+
+  /**
+   * Gets the statements executed since the creation of the database.
+   * @return the SQL texts, in execution order
+   */
+  public List<String> getExecuted() {
+    return executed;
+  }
+
+  /**
+   * Gets the number of statements prepared on the connection.
+   * @return the number of prepared statements
+   */
+  public int getPrepareCount() {
+    return prepareCount;
+  }
+
+  /**
+   * Creates a table.
+   * @param name name of the table
+   * @param key primary key column
+   * @param columns all the columns, including the primary key
+   */
+  public void createTable(String name, String key, String... columns) {
+    MemoryTable table = new MemoryTable();
+    table.key = key;
+    for (String column : columns) {
+      table.columns.add(column);
+    }
+    tables.put(name.toUpperCase(), table);
+  }
+
+  /**
+   * Declares that a column references the primary key of another table.
+   * Insertions whose value is not an existing key then fail.
+   * @param name name of the referencing table
+   * @param column referencing column
+   * @param referenced name of the referenced table
+   */
+  public void addReference(String name, String column, String referenced) {
+    tables.get(name.toUpperCase()).references.put(column, referenced);
+  }
+
+  /**
+   * Gets the number of rows of a table.
+   * @param name name of the table
+   * @return the number of rows
+   */
+  public int getRowCount(String name) {
+    return tables.get(name.toUpperCase()).rows.size();
+  }
+
+  /**
+   * Executes a statement.
+   * @param sql SQL text of the statement
+   * @param params parameter values by index
+   * @return the result rows of a query, null for an update
+   * @throws SQLException if the statement is not understood or fails
+   */
+  private Result execute(String sql, Map<Integer, Object> params)
+      throws SQLException {
+    executed.add(sql);
+    Matcher m;
+    if ((m = SELECT.matcher(sql)).matches()) {
+      return select(m, params);
+    } else if ((m = INSERT.matcher(sql)).matches()) {
+      MemoryTable table = getTable(m.group(1));
+      Object[] row = new Object[table.columns.size()];
+      String[] columns = m.group(2).split(",");
+      for (int i = 0; i < columns.length; i++) {
+        row[table.indexOf(columns[i].trim())] = params.get(i + 1);
+      }
+      Object key = row[table.indexOf(table.key)];
+      if (table.find(key) >= 0) {
+        throw new SQLException("Duplicate key " + key);
+      }
+      for (Map.Entry<String, String> ref : table.references.entrySet()) {
+        Object value = row[table.indexOf(ref.getKey())];
+        if (getTable(ref.getValue()).find(value) < 0) {
+          throw new SQLException("Foreign key " + value + " not found");
+        }
+      }
+      table.rows.add(row);
+    } else if ((m = UPDATE.matcher(sql)).matches()) {
+      MemoryTable table = getTable(m.group(1));
+      int row = table.find(params.get(2));
+      if (row >= 0) {
+        table.rows.get(row)[table.indexOf(m.group(2))] = params.get(1);
+      }
+    } else if ((m = DELETE.matcher(sql)).matches()) {
+      MemoryTable table = getTable(m.group(1));
+      if (m.group(2) == null) {
+        table.rows.clear();
+      } else if (table.find(params.get(1)) >= 0) {
+        table.rows.remove(table.find(params.get(1)));
+      }
+    } else if ((m = CREATE.matcher(sql)).matches()) {
+      List<String> columns = new ArrayList<String>();
+      String key = null;
+      for (String definition : m.group(2).split(",")) {
+        String column = definition.trim().split(" ")[0];
+        columns.add(column);
+        if (definition.endsWith("PRIMARY KEY")) {
+          key = column;
+        }
+      }
+      createTable(m.group(1), key, columns.toArray(new String[0]));
+    } else {
+      throw new SQLException("Unsupported statement: " + sql);
+    }
+    return null;
+  }
+
+  /**
+   * Executes a query.
+   * @param m matcher of the query
+   * @param params parameter values by index
+   * @return the result rows
+   * @throws SQLException if the condition is not understood
+   */
+  private Result select(Matcher m, Map<Integer, Object> params)
+      throws SQLException {
+    final MemoryTable table = getTable(m.group(2));
+    Result result = new Result();
+    if (m.group(1).equals("*")) {
+      result.labels.addAll(table.columns);
+    } else {
+      for (String column : m.group(1).split(",")) {
+        result.labels.add(column.trim());
+      }
+    }
+    List<Object[]> rows = new ArrayList<Object[]>();
+    String condition = m.group(3);
+    Matcher c;
+    if (condition == null) {
+      rows.addAll(table.rows);
+    } else if (condition.equals("1 = 0")) {
+      rows.clear();
+    } else if ((c = EQUALS.matcher(condition)).matches()) {
+      int col = table.indexOf(c.group(1));
+      for (Object[] row : table.rows) {
+        if (same(row[col], params.get(1))) {
+          rows.add(row);
+        }
+      }
+    } else if ((c = IN.matcher(condition)).matches()) {
+      int col = table.indexOf(c.group(1));
+      for (Object[] row : table.rows) {
+        for (Object value : params.values()) {
+          if (same(row[col], value)) {
+            rows.add(row);
+            break;
+          }
+        }
+      }
+    } else {
+      throw new SQLException("Unsupported condition: " + condition);
+    }
+    if (m.group(4) != null) {
+      final int col = table.indexOf(m.group(4));
+      Collections.sort(rows, new Comparator<Object[]>() {
+        @SuppressWarnings("unchecked")
+        public int compare(Object[] r1, Object[] r2) {
+          return ((Comparable<Object>) r1[col]).compareTo(r2[col]);
+        }
+      });
+    }
+    for (Object[] row : rows) {
+      Object[] values = new Object[result.labels.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = row[table.indexOf(result.labels.get(i))];
+      }
+      result.rows.add(values);
+    }
+    return result;
+  }
+
+  /**
+   * Gets a table.
+   * @param name name of the table
+   * @return the table
+   * @throws SQLException if the table does not exist
+   */
+  private MemoryTable getTable(String name) throws SQLException {
+    MemoryTable table = tables.get(name.toUpperCase());
+    if (table == null) {
+      throw new SQLException("Unknown table " + name);
+    }
+    return table;
+  }
+
+  /**
+   * Creates the metadata of the database.
+   * @return database metadata listing the tables and their primary keys
+   */
+  private DatabaseMetaData createMetaData() {
+    return (DatabaseMetaData) proxy(DatabaseMetaData.class,
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            Result result = new Result();
+            if (name.equals("getTables")) {
+              result.labels.add("TABLE_NAME");
+              for (String table : tables.keySet()) {
+                result.rows.add(new Object[] {table});
+              }
+              return createResultSet(result);
+            } else if (name.equals("getPrimaryKeys")) {
+              result.labels.add("COLUMN_NAME");
+              MemoryTable table = tables.get(((String) args[2]).toUpperCase());
+              if (table != null) {
+                result.rows.add(new Object[] {table.key});
+              }
+              return createResultSet(result);
+            }
+            return defaultValue(proxy, method, args);
+          }
+        });
+  }
+
+  /**
+   * Creates a result set.
+   * @param result rows and column labels of the result
+   * @return a result set
+   */
+  private ResultSet createResultSet(final Result result) {
+    final int[] cursor = {-1};
+    final ResultSetMetaData metadata = (ResultSetMetaData) proxy(
+        ResultSetMetaData.class, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("getColumnCount")) {
+              return result.labels.size();
+            } else if (method.getName().equals("getColumnName")) {
+              return result.labels.get((Integer) args[0] - 1);
+            }
+            return defaultValue(proxy, method, args);
+          }
+        });
+    return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("next")) {
+          return ++cursor[0] < result.rows.size();
+        } else if (name.equals("getMetaData")) {
+          return metadata;
+        } else if (name.equals("getObject") || name.equals("getString")) {
+          int col = args[0] instanceof Integer ? (Integer) args[0] - 1
+              : result.indexOf((String) args[0]);
+          Object value = result.rows.get(cursor[0])[col];
+          return name.equals("getString") && value != null
+              ? value.toString() : value;
+        }
+        return defaultValue(proxy, method, args);
+      }
+    });
+  }
+
+  /**
+   * Indicates if two values are equal, numbers being compared by value.
+   * @param v1 a value
+   * @param v2 another value
+   * @return true if the values are equal
+   */
+  private static boolean same(Object v1, Object v2) {
+    if (v1 instanceof Number && v2 instanceof Number) {
+      return ((Number) v1).doubleValue() == ((Number) v2).doubleValue();
+    }
+    return v1 == null ? v2 == null : v1.equals(v2);
+  }
+
+  /**
+   * Creates a proxy of an interface.
+   * @param type the interface
+   * @param handler the invocation handler
+   * @return a proxy
+   */
+  private static Object proxy(Class<?> type, InvocationHandler handler) {
+    return Proxy.newProxyInstance(MemoryDatabase.class.getClassLoader(),
+        new Class<?>[] {type}, handler);
+  }
+
+  /**
+   * Answers the methods not simulated by a proxy.
+   * @param proxy the proxy
+   * @param method the invoked method
+   * @param args the arguments
+   * @return the identity for equals and hashCode, false or zero for the
+   * other primitive results, null otherwise
+   */
+  private static Object defaultValue(Object proxy, Method method,
+      Object[] args) {
+    Class<?> type = method.getReturnType();
+    if (method.getName().equals("equals")) {
+      return proxy == args[0];
+    } else if (method.getName().equals("hashCode")) {
+      return System.identityHashCode(proxy);
+    } else if (type == boolean.class) {
+      return false;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+
+  /**
+   * Table of the database.
+   */
+  private static final class MemoryTable {
+
+    /**
+     * Column names.
+     */
+    private List<String> columns = new ArrayList<String>();
+
+    /**
+     * Primary key column.
+     */
+    private String key;
+
+    /**
+     * Referenced tables by referencing column.
+     */
+    private Map<String, String> references = new HashMap<String, String>();
+
+    /**
+     * Rows, in insertion order.
+     */
+    private List<Object[]> rows = new ArrayList<Object[]>();
+
+    /**
+     * Gets the index of a column.
+     * @param column a column name
+     * @return the column index
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    int indexOf(String column) {
+      for (int i = 0; i < columns.size(); i++) {
+        if (columns.get(i).equalsIgnoreCase(column)) {
+          return i;
+        }
+      }
+      throw new IllegalArgumentException("Unknown column " + column);
+    }
+
+    /**
+     * Finds a row by primary key.
+     * @param value a primary key value
+     * @return the position of the row, -1 if there is none
+     */
+    int find(Object value) {
+      int col = indexOf(key);
+      for (int i = 0; i < rows.size(); i++) {
+        if (same(rows.get(i)[col], value)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+  }
+
+  /**
+   * Rows and column labels of a query result.
+   */
+  private static final class Result {
+
+    /**
+     * Column labels.
+     */
+    private List<String> labels = new ArrayList<String>();
+
+    /**
+     * Rows.
+     */
+    private List<Object[]> rows = new ArrayList<Object[]>();
+
+    /**
+     * Gets the index of a column label.
+     * @param label a column label
+     * @return the index, starting from 0
+     */
+    int indexOf(String label) {
+      for (int i = 0; i < labels.size(); i++) {
+        if (labels.get(i).equalsIgnoreCase(label)) {
+          return i;
+        }
+      }
+      throw new IllegalArgumentException("Unknown column " + label);
+    }
+
+  }
+
+  /**
+   * Simulated statement, holding its parameters and its pending batch.
+   */
+  private final class StatementHandler implements InvocationHandler {
+
+    /**
+     * SQL text of a prepared statement, null for a plain statement.
+     */
+    private String sql;
+
+    /**
+     * Current parameter values by index.
+     */
+    private Map<Integer, Object> params = new HashMap<Integer, Object>();
+
+    /**
+     * Parameter values of the pending batch.
+     */
+    private List<Map<Integer, Object>> batch =
+      new ArrayList<Map<Integer, Object>>();
+
+    /**
+     * Is the statement closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor.
+     * @param text SQL text of a prepared statement, null for a plain one
+     */
+    StatementHandler(String text) {
+      this.sql = text;
+    }
+
+    /**
+     * Simulates a method of the statement.
+     * @param proxy the statement
+     * @param method the invoked method
+     * @param args the arguments
+     * @return the result of the method
+     * @throws SQLException if an executed statement fails
+     */
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws SQLException {
+      String name = method.getName();
+      String text = args != null && args.length > 0
+          && args[0] instanceof String ? (String) args[0] : sql;
+      if (name.startsWith("set") && args.length >= 2
+          && args[0] instanceof Integer && !name.equals("setFetchSize")) {
+        params.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+      } else if (name.equals("clearParameters")) {
+        params.clear();
+      } else if (name.equals("executeQuery")) {
+        return createResultSet(execute(text, params));
+      } else if (name.equals("executeUpdate") || name.equals("execute")) {
+        execute(text, params);
+        return name.equals("execute") ? (Object) false : (Object) 1;
+      } else if (name.equals("addBatch")) {
+        batch.add(new HashMap<Integer, Object>(params));
+      } else if (name.equals("clearBatch")) {
+        batch.clear();
+      } else if (name.equals("executeBatch")) {
+        List<Map<Integer, Object>> operations = batch;
+        batch = new ArrayList<Map<Integer, Object>>();
+        int[] counts = new int[operations.size()];
+        for (int i = 0; i < counts.length; i++) {
+          execute(sql, operations.get(i));
+          counts[i] = 1;
+        }
+        return counts;
+      } else if (name.equals("close")) {
+        closed = true;
+      } else if (name.equals("isClosed")) {
+        return closed;
+      } else {
+        return defaultValue(proxy, method, args);
+      }
+      return null;
+    }
+
+  }
+
+}
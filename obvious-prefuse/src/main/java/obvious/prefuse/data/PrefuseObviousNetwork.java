@@ -27,6 +27,7 @@
 
 package obvious.prefuse.data;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -85,6 +86,18 @@ public class PrefuseObviousNetwork implements Network {
   private Collection<NetworkListener> listeners =
     new ArrayList<NetworkListener>();
 
+  /**
+   * Wrappers of the prefuse nodes returned by this network.
+   */
+  private WrapperCache<PrefuseObviousNode> nodeCache =
+    new WrapperCache<PrefuseObviousNode>();
+
+  /**
+   * Wrappers of the prefuse edges returned by this network.
+   */
+  private WrapperCache<PrefuseObviousEdge> edgeCache =
+    new WrapperCache<PrefuseObviousEdge>();
+
   /**
    * Constructor from obvious schemas and extra parameters.
    * @param nodeSchema original schema for the nodes
@@ -158,6 +171,8 @@ public class PrefuseObviousNetwork implements Network {
    */
   protected void setPrefuseGraph(prefuse.data.Graph inputGraph) {
     this.graph = inputGraph;
+    this.nodeCache.clear();
+    this.edgeCache.clear();
   }
 
   /**
@@ -324,45 +339,41 @@ public class PrefuseObviousNetwork implements Network {
     prefuse.data.Node prefV2 = this.graph.getNodeFromKey(
         this.graph.getKey(v2.getRow()));
     prefuse.data.Edge prefEdge = this.graph.getEdge(prefV1, prefV2);
-    return new PrefuseObviousEdge(prefEdge);
+    return wrapEdge(prefEdge);
   }
 
   /**
-   * Gets connecting edges between two nodes.
+   * Gets connecting edges between two nodes. Only the edges of the node
+   * with the smallest degree are visited.
    * @param v1 first node
    * @param v2 second node
    * @return collection of connecting edges
    */
   public Collection<Edge> getConnectingEdges(Node v1, Node v2) {
     Collection<Edge> edge = new ArrayList<Edge>(); // connecting edges list
-    ArrayList<Integer> v1Edge = new ArrayList<Integer>(); // edges list of v1
-    ArrayList<Integer> v2Edge = new ArrayList<Integer>(); // edges list of v2
-    ArrayList<Integer> commonEdge = new ArrayList<Integer>(); // edges of v1/v2
-    prefuse.util.collections.IntIterator v1EdgeIter =
-      this.graph.edgeRows(v1.getRow());
-    prefuse.util.collections.IntIterator v2EdgeIter =
-      this.graph.edgeRows(v2.getRow());
-    // fill in the list of v1 edges
-    while (v1EdgeIter.hasNext()) {
-      v1Edge.add(v1EdgeIter.nextInt());
+    int node = v1.getRow();
+    int other = v2.getRow();
+    if (this.graph.getDegree(other) < this.graph.getDegree(node)) {
+      node = v2.getRow();
+      other = v1.getRow();
     }
-    // fill in the list of v2 edges
-    while (v2EdgeIter.hasNext()) {
-      v2Edge.add(v2EdgeIter.nextInt());
+    prefuse.util.collections.IntIterator it = this.graph.outEdgeRows(node);
+    while (it.hasNext()) {
+      int edgeRow = it.nextInt();
+      if (this.graph.getTargetNode(edgeRow) == other) {
+        edge.add(wrapEdge(this.graph.getEdge(edgeRow)));
+      }
     }
-    // find the connecting edges
-    for (int i = 0; i < v1Edge.size(); i++) {
-      for (int j = 0; j < v2Edge.size(); j++) {
-        if (v1Edge.get(i).equals(v2Edge.get(j))) {
-          commonEdge.add(v1Edge.get(i));
-          break;
+    // loops are out edges too
+    if (node != other) {
+      it = this.graph.inEdgeRows(node);
+      while (it.hasNext()) {
+        int edgeRow = it.nextInt();
+        if (this.graph.getSourceNode(edgeRow) == other) {
+          edge.add(wrapEdge(this.graph.getEdge(edgeRow)));
         }
       }
     }
-    // build the collection
-    for (int i = 0; i < commonEdge.size(); i++) {
-      edge.add(new PrefuseObviousEdge(this.graph.getEdge(commonEdge.get(i))));
-    }
     return edge;
   }
 
@@ -389,7 +400,7 @@ public class PrefuseObviousNetwork implements Network {
   public Collection<Edge> getEdges() {
     Collection<Edge> edge = new ArrayList<Edge>();
     for (int i = 0; i < this.graph.getEdgeCount(); i++) {
-      edge.add(new PrefuseObviousEdge(this.graph.getEdge(i)));
+      edge.add(wrapEdge(this.graph.getEdge(i)));
     }
     return edge;
   }
@@ -406,7 +417,7 @@ public class PrefuseObviousNetwork implements Network {
         this.graph.getKey(node.getRow()));
     Iterator<Edge> i = this.graph.inEdges(prefNode);
     while (i.hasNext()) {
-      inEdge.add(new PrefuseObviousEdge((prefuse.data.Edge) i.next()));
+      inEdge.add(wrapEdge((prefuse.data.Edge) i.next()));
     }
     return inEdge;
   }
@@ -423,7 +434,7 @@ public class PrefuseObviousNetwork implements Network {
         this.graph.getKey(node.getRow()));
     Iterator<Edge> i = this.graph.edges(prefNode);
     while (i.hasNext()) {
-      edge.add(new PrefuseObviousEdge((prefuse.data.Edge) i.next()));
+      edge.add(wrapEdge((prefuse.data.Edge) i.next()));
     }
     return edge;
   }
@@ -436,8 +447,8 @@ public class PrefuseObviousNetwork implements Network {
   public Collection<Node> getIncidentNodes(Edge edge) {
     Collection<Node> node = new ArrayList<Node>();
     prefuse.data.Edge prefEdge = this.graph.getEdge(edge.getRow());
-    node.add(new PrefuseObviousNode(prefEdge.getSourceNode()));
-    node.add(new PrefuseObviousNode(prefEdge.getTargetNode()));
+    node.add(wrapNode(prefEdge.getSourceNode()));
+    node.add(wrapNode(prefEdge.getTargetNode()));
     return node;
   }
 
@@ -453,7 +464,7 @@ public class PrefuseObviousNetwork implements Network {
         this.graph.getKey(node.getRow()));
     Iterator<prefuse.data.Node> i = this.graph.neighbors(prefNode);
     while (i.hasNext()) {
-      neighbor.add(new PrefuseObviousNode((prefuse.data.Node) i.next()));
+      neighbor.add(wrapNode((prefuse.data.Node) i.next()));
     }
     return neighbor;
   }
@@ -468,7 +479,7 @@ public class PrefuseObviousNetwork implements Network {
     while (it.hasNext()) {
       int currentId = (Integer) it.next();
       if (this.graph.getNodeTable().isValidRow(currentId)) {
-        node.add(new PrefuseObviousNode(this.graph.getNode(currentId)));
+        node.add(wrapNode(this.graph.getNode(currentId)));
       }
     }
     return node;
@@ -484,7 +495,7 @@ public class PrefuseObviousNetwork implements Network {
     prefuse.data.Node prefNode = this.graph.getNodeFromKey(
         graph.getKey(node.getRow()));
     prefuse.data.Edge prefEdge = this.graph.getEdge(edge.getRow());
-    return new PrefuseObviousNode(this.graph.getAdjacentNode(prefEdge,
+    return wrapNode(this.graph.getAdjacentNode(prefEdge,
         prefNode));
   }
 
@@ -500,7 +511,7 @@ public class PrefuseObviousNetwork implements Network {
         this.graph.getKey(node.getRow()));
     Iterator<Edge> i = this.graph.outEdges(prefNode);
     while (i.hasNext()) {
-      outEdge.add(new PrefuseObviousEdge((prefuse.data.Edge) i.next()));
+      outEdge.add(wrapEdge((prefuse.data.Edge) i.next()));
     }
     return outEdge;
   }
@@ -517,7 +528,7 @@ public class PrefuseObviousNetwork implements Network {
       Iterator<Node> i = this.graph.inNeighbors(
           this.graph.getNodeFromKey(this.graph.getKey(node.getRow())));
       while (i.hasNext()) {
-        predecessor.add(new PrefuseObviousNode((prefuse.data.Node) i.next()));
+        predecessor.add(wrapNode((prefuse.data.Node) i.next()));
       }
       return predecessor;
     } else {
@@ -534,7 +545,7 @@ public class PrefuseObviousNetwork implements Network {
     int index = this.graph.getSourceNode(directedEdge.getRow());
     prefuse.data.Node prefNode = this.graph.getNodeFromKey(
         this.graph.getKey(index));
-    return new PrefuseObviousNode(prefNode);
+    return wrapNode(prefNode);
   }
 
   /**
@@ -549,7 +560,7 @@ public class PrefuseObviousNetwork implements Network {
       Iterator<Node> i = this.graph.outNeighbors(
           this.graph.getNodeFromKey(this.graph.getKey(node.getRow())));
       while (i.hasNext()) {
-        successor.add(new PrefuseObviousNode((prefuse.data.Node) i.next()));
+        successor.add(wrapNode((prefuse.data.Node) i.next()));
       }
       return successor;
     } else {
@@ -566,7 +577,7 @@ public class PrefuseObviousNetwork implements Network {
     int index = this.graph.getTargetNode(directedEdge.getRow());
     prefuse.data.Node prefNode = this.graph.getNodeFromKey(
         this.graph.getKey(index));
-    return new PrefuseObviousNode(prefNode);
+    return wrapNode(prefNode);
   }
 
   /**
@@ -606,6 +617,42 @@ public class PrefuseObviousNetwork implements Network {
     }
   }
 
+  /**
+   * Gets the Obvious node wrapping a prefuse node. Wrappers are cached, so
+   * that traversing the network again returns the same instances.
+   * @param prefNode a prefuse node, possibly null
+   * @return the wrapper, null if the prefuse node is null
+   */
+  protected Node wrapNode(prefuse.data.Node prefNode) {
+    if (prefNode == null) {
+      return null;
+    }
+    PrefuseObviousNode node = nodeCache.get(prefNode);
+    if (node == null) {
+      node = new PrefuseObviousNode(prefNode);
+      nodeCache.put(node);
+    }
+    return node;
+  }
+
+  /**
+   * Gets the Obvious edge wrapping a prefuse edge. Wrappers are cached, so
+   * that traversing the network again returns the same instances.
+   * @param prefEdge a prefuse edge, possibly null
+   * @return the wrapper, null if the prefuse edge is null
+   */
+  protected Edge wrapEdge(prefuse.data.Edge prefEdge) {
+    if (prefEdge == null) {
+      return null;
+    }
+    PrefuseObviousEdge edge = edgeCache.get(prefEdge);
+    if (edge == null) {
+      edge = new PrefuseObviousEdge(prefEdge);
+      edgeCache.put(edge);
+    }
+    return edge;
+  }
+
   /**
    * Return the underlying implementation.
    * @param type targeted class
@@ -691,4 +738,55 @@ public class PrefuseObviousNetwork implements Network {
   public String getTargetColumnName() {
     return this.targetKey;
   }
+  /**
+   * Cache of tuple wrappers indexed by row. Wrappers are weakly referenced,
+   * so that the cache does not keep alive the ones no longer used. A
+   * wrapper is only reused while it wraps the current prefuse tuple of its
+   * row: prefuse creates a new tuple when a removed row is reused.
+   * @param <W> type of the wrappers
+   */
+  private static final class WrapperCache<W extends PrefuseObviousTuple> {
+
+    /**
+     * Wrappers indexed by row.
+     */
+    private ArrayList<WeakReference<W>> wrappers =
+      new ArrayList<WeakReference<W>>();
+
+    /**
+     * Gets the cached wrapper of a prefuse tuple.
+     * @param tuple a prefuse tuple
+     * @return the wrapper, null if it is not cached
+     */
+    W get(prefuse.data.Tuple tuple) {
+      int row = tuple.getRow();
+      if (row < 0 || row >= wrappers.size() || wrappers.get(row) == null) {
+        return null;
+      }
+      W wrapper = wrappers.get(row).get();
+      return wrapper != null && wrapper.getPrefuseTuple() == tuple ? wrapper
+          : null;
+    }
+
+    /**
+     * Caches a wrapper.
+     * @param wrapper a wrapper of a valid prefuse tuple
+     */
+    void put(W wrapper) {
+      int row = wrapper.getPrefuseTuple().getRow();
+      while (wrappers.size() <= row) {
+        wrappers.add(null);
+      }
+      wrappers.set(row, new WeakReference<W>(wrapper));
+    }
+
+    /**
+     * Empties the cache.
+     */
+    void clear() {
+      wrappers.clear();
+    }
+
+  }
+
 }
@@ -128,7 +128,7 @@ public class PrefuseObviousTree extends PrefuseObviousNetwork
           this.getPrefuseGraph().getKey(currentNode.getRow()));
       prefuse.data.Edge currentEdge = this.getPrefuseGraph().getEdge(
           prefNode, currentChild);
-      edgeList.add(new PrefuseObviousEdge(currentEdge));
+      edgeList.add(wrapEdge(currentEdge));
     }
     return edgeList;
   }
@@ -144,7 +144,7 @@ public class PrefuseObviousTree extends PrefuseObviousNetwork
         this.getPrefuseGraph().getKey(node.getRow()));
     prefuse.data.Tree prefTree = (prefuse.data.Tree) this.getPrefuseGraph();
     for (int i = 0; i < prefTree.getChildCount(node.getRow()); i++) {
-      nodeList.add(new PrefuseObviousNode(prefTree.getChild(prefNode, i)));
+      nodeList.add(wrapNode(prefTree.getChild(prefNode, i)));
     }
     return nodeList;
   }
@@ -160,7 +160,7 @@ public class PrefuseObviousTree extends PrefuseObviousNetwork
     } else {
       int depth = 0;
       for (int i = n.getRow(); i != getRoot().getRow() && i >= 0; ++depth, i =
-          getParentNode(new PrefuseObviousNode(
+          getParentNode(wrapNode(
               getPrefuseGraph().getNode(i))).getRow()) {
         continue;
       }
@@ -200,7 +200,7 @@ public class PrefuseObviousTree extends PrefuseObviousNetwork
         this.getPrefuseGraph().getKey(node.getRow()));
     prefuse.data.Edge parentEdge = ((prefuse.data.Tree)
         this.getPrefuseGraph()).getParentEdge(prefNode);
-    return new PrefuseObviousEdge(parentEdge);
+    return wrapEdge(parentEdge);
   }
 
   /**
@@ -216,7 +216,7 @@ public class PrefuseObviousTree extends PrefuseObviousNetwork
           this.getPrefuseGraph().getKey(node.getRow()));
       prefuse.data.Node parentNode = ((prefuse.data.Tree)
           this.getPrefuseGraph()).getParent(prefNode);
-      return new PrefuseObviousNode(parentNode);
+      return wrapNode(parentNode);
     }
   }
 
@@ -227,12 +227,12 @@ public class PrefuseObviousTree extends PrefuseObviousNetwork
   public Node getRoot() {
     try {
       prefuse.data.Node n = ((prefuse.data.Tree) getPrefuseGraph()).getRoot();
-      return new PrefuseObviousNode(n);
+      return wrapNode(n);
     } catch (IllegalArgumentException e) {
       for (Node node  : this.getNodes()) {
         int nodeRow = node.getRow();
         if (((prefuse.data.Tree) getPrefuseGraph()).getParent(nodeRow) < 0) {
-          return new PrefuseObviousNode(
+          return wrapNode(
               ((prefuse.data.Tree) getPrefuseGraph()).getNode(nodeRow));
         }
       }
@@ -56,6 +56,14 @@ public class PrefuseObviousTuple implements Tuple {
     this.tuple = inputTuple;
   }
 
+  /**
+   * Gets the wrapped prefuse tuple.
+   * @return the prefuse tuple
+   */
+  public prefuse.data.Tuple getPrefuseTuple() {
+    return tuple;
+  }
+
   /**
    * Check if the <code>get</code> method for the given data field returns
    * values that are compatible with a given target type.
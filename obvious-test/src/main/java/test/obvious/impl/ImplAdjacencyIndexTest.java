@@ -0,0 +1,179 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import obvious.impl.index.AdjacencyIndex;
+
+import org.junit.Test;
+
+/**
+ * Test case for the compressed adjacency index of networks. Adjacency
+ * queries are checked against a scan of the edges.
+ * @author obvious
+ *
+ */
+public class ImplAdjacencyIndexTest {
+
+  /**
+   * Number of nodes of the random networks.
+   */
+  private static final int NODES = 50;
+
+  /**
+   * Test method for random edge insertions and removals.
+   */
+  @Test
+  public void testRandomEdits() {
+    AdjacencyIndex index = new AdjacencyIndex();
+    int[] sources = new int[2000];
+    int[] targets = new int[2000];
+    Arrays.fill(sources, -1);
+    Random random = new Random(11);
+    for (int step = 0; step < 6000; step++) {
+      int edge = random.nextInt(sources.length);
+      if (sources[edge] < 0) {
+        sources[edge] = random.nextInt(NODES);
+        targets[edge] = random.nextInt(NODES);
+        index.addEdge(edge, sources[edge], targets[edge]);
+      } else {
+        index.removeEdge(edge);
+        sources[edge] = -1;
+      }
+      if (step % 500 == 0) {
+        check(index, sources, targets);
+      }
+    }
+    index.rebuild();
+    check(index, sources, targets);
+  }
+
+  /**
+   * Test method for connecting edges and self loops.
+   */
+  @Test
+  public void testConnectingEdge() {
+    AdjacencyIndex index = new AdjacencyIndex();
+    index.addEdge(0, 1, 2);
+    index.addEdge(1, 2, 2);
+    index.rebuild();
+    index.addEdge(2, 2, 3);
+    assertEquals(0, index.getEdge(1, 2));
+    assertEquals(-1, index.getEdge(2, 1));
+    assertEquals(1, index.getEdge(2, 2));
+    assertEquals(2, index.getEdge(2, 3));
+    assertEquals(2, index.getInDegree(2));
+    assertEquals(2, index.getOutDegree(2));
+    index.removeEdge(0);
+    assertEquals(-1, index.getEdge(1, 2));
+    assertEquals(2, index.getEdgeCount());
+  }
+
+  /**
+   * Test method checking that masked removals count toward a rebuild.
+   */
+  @Test
+  public void testRemovalsTriggerRebuild() {
+    AdjacencyIndex index = new AdjacencyIndex();
+    for (int edge = 0; edge < 1600; edge++) {
+      index.addEdge(edge, edge % NODES, (edge * 7) % NODES);
+    }
+    index.rebuild();
+    assertEquals(0, index.getStaleCount());
+    for (int edge = 0; edge < 1600; edge += 10) {
+      index.removeEdge(edge);
+    }
+    assertEquals(160, index.getStaleCount());
+    assertEquals(0, index.getOutDegree(0));
+    assertEquals(0, index.getStaleCount());
+  }
+
+  /**
+   * Test method for the removal and the reuse of pending edge ids.
+   */
+  @Test
+  public void testPendingEdits() {
+    AdjacencyIndex index = new AdjacencyIndex();
+    index.addEdge(0, 1, 2);
+    index.addEdge(1, 1, 3);
+    index.addEdge(2, 1, 2);
+    index.removeEdge(1);
+    index.removeEdge(0);
+    assertArrayEquals(new int[] {2}, index.getOutEdges(1));
+    index.addEdge(0, 3, 1);
+    index.addEdge(1, 1, 1);
+    assertArrayEquals(new int[] {1, 2}, sorted(index.getOutEdges(1)));
+    assertArrayEquals(new int[] {0, 1}, sorted(index.getInEdges(1)));
+    assertArrayEquals(new int[] {2}, index.getInEdges(2));
+    assertEquals(3, index.getStaleCount());
+  }
+
+  /**
+   * Checks the adjacency of every node against a scan of the edges.
+   * @param index the index to check
+   * @param sources source of each edge, -1 for missing edges
+   * @param targets target of each edge
+   */
+  private void check(AdjacencyIndex index, int[] sources, int[] targets) {
+    for (int node = 0; node < NODES; node++) {
+      int[] out = new int[sources.length];
+      int[] in = new int[sources.length];
+      int outCount = 0;
+      int inCount = 0;
+      for (int e = 0; e < sources.length; e++) {
+        if (sources[e] == node) {
+          out[outCount++] = e;
+        }
+        if (sources[e] >= 0 && targets[e] == node) {
+          in[inCount++] = e;
+        }
+      }
+      assertArrayEquals(Arrays.copyOf(out, outCount),
+          sorted(index.getOutEdges(node)));
+      assertArrayEquals(Arrays.copyOf(in, inCount),
+          sorted(index.getInEdges(node)));
+    }
+  }
+
+  /**
+   * Sorts a copy of an array.
+   * @param array an array
+   * @return the sorted copy
+   */
+  private int[] sorted(int[] array) {
+    int[] copy = array.clone();
+    Arrays.sort(copy);
+    return copy;
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import obvious.ObviousException;
+import obvious.data.DataFactory;
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.impl.ColumnTableImpl;
+import obvious.impl.DataFactoryImpl;
+
+import org.junit.Test;
+
+import test.obvious.data.TableTest;
+
+/**
+ * Implementation of the Table Test case for ColumnTableImpl implementation.
+ * @author obvious
+ *
+ */
+public class ImplColumnTableTest extends TableTest {
+
+  /**
+   * Creates a ColumnTableImpl instance.
+   * @param schema based schema to create the table
+   * @return a ColumnTableImpl instance
+   * @throws ObviousException if ColumnTableImpl instantiation failed
+   */
+  public Table newInstance(Schema schema) throws ObviousException {
+    System.setProperty("obvious.DataFactory", "obvious.impl.DataFactoryImpl");
+    DataFactory dFactory = DataFactoryImpl.getInstance();
+    Map<String, Object> param = new HashMap<String, Object>();
+    param.put(DataFactoryImpl.COLUMNAR, true);
+    return dFactory.createTable(schema, param);
+  }
+
+  /**
+   * Test method for the typed accessors of ColumnTableImpl.
+   */
+  @Test
+  public void testTypedAccessors() {
+    ColumnTableImpl table = (ColumnTableImpl) getTable();
+    assertEquals(2, table.getInt(1, 1));
+    assertEquals(2.0, table.getDouble(1, 1), 0.0);
+    assertEquals(true, table.getBoolean(0, 2));
+    table.setInt(1, 1, 42);
+    assertEquals(42, table.getValue(1, "col2"));
+    table.set(1, 1, null);
+    assertNull(table.getValue(1, 1));
+    table.set(2, 0, "Bonjour");
+    assertEquals("Bonjour", table.getValue(2, 0));
+    assertEquals("Bonjour", table.getValue(0, 0));
+  }
+
+  /**
+   * Test method for the conversion of numbers stored in an Integer column.
+   */
+  @Test
+  public void testIntegralValues() {
+    ColumnTableImpl table = (ColumnTableImpl) getTable();
+    table.set(1, 1, 3.0);
+    assertEquals(3, table.getValue(1, 1));
+    table.set(1, 1, 7L);
+    assertEquals(7, table.getValue(1, 1));
+  }
+
+  /**
+   * Test method for a fractional number stored in an Integer column.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testFractionalValue() {
+    getTable().set(1, 1, 2.7);
+  }
+
+  /**
+   * Test method for a number too large for an Integer column.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testOverflowingValue() {
+    getTable().set(1, 1, 1L << 40);
+  }
+
+}
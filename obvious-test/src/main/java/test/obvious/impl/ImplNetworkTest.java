@@ -0,0 +1,180 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import obvious.ObviousException;
+import obvious.data.DataFactory;
+import obvious.data.Edge;
+import obvious.data.Network;
+import obvious.data.Node;
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.data.Graph.EdgeType;
+import obvious.impl.DataFactoryImpl;
+import obvious.impl.EdgeImpl;
+import obvious.impl.NetworkImpl;
+import obvious.impl.NodeImpl;
+import obvious.impl.TableImpl;
+
+import org.junit.Test;
+
+import test.obvious.data.NetworkTest;
+
+/**
+ * Implementation of the Network Test case for NetworkImpl implementation.
+ * @author obvious
+ *
+ */
+public class ImplNetworkTest extends NetworkTest {
+
+  /**
+   * Creates a NetworkImpl instance.
+   * @param nSchema schema for the nodes the network
+   * @param eSchema schema for the edges of the network
+   * @return a NetworkImpl instance
+   */
+  public Network newInstance(Schema nSchema, Schema eSchema) {
+    System.setProperty("obvious.DataFactory", "obvious.impl.DataFactoryImpl");
+    try {
+      return DataFactoryImpl.getInstance().createGraph(nSchema, eSchema);
+    } catch (ObviousException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Test method for the factory.
+   * @throws ObviousException if the factory fails
+   */
+  @Test
+  public void testFactory() throws ObviousException {
+    DataFactory factory = DataFactoryImpl.getInstance();
+    assertTrue(factory.createGraph(nodeTable.getSchema(),
+        edgeTable.getSchema()) instanceof NetworkImpl);
+  }
+
+  /**
+   * Test method for directed and undirected edges.
+   */
+  @Test
+  public void testEdgeTypes() {
+    Node n0 = new NodeImpl(nodeTable, 0);
+    Node n2 = new NodeImpl(nodeTable, 2);
+    Node n5 = new NodeImpl(nodeTable, 5);
+    network.addEdge(new EdgeImpl(edgeTable, 0), n2, n5, EdgeType.DIRECTED);
+    Edge directed = network.getConnectingEdge(n5, n2);
+    assertEquals(EdgeType.DIRECTED, network.getEdgeType(directed));
+    assertEquals("node_2", network.getSource(directed).get("nodeName"));
+    assertEquals("node_5", network.getTarget(directed).get("nodeName"));
+    assertEquals(2, network.getInEdges(n5).size());
+    assertEquals(1, network.getPredecessors(n2).size());
+    assertEquals(2, network.getSuccessors(n2).size());
+    assertEquals(EdgeType.UNDIRECTED, network.getEdgeType(
+        network.getConnectingEdge(n0, n2)));
+    assertEquals(2, network.getOutEdges(n0).size());
+    assertEquals(2, network.getInEdges(n0).size());
+  }
+
+  /**
+   * Test method checking that edits of the tables update the structure.
+   */
+  @Test
+  public void testTableEdits() {
+    Table edges = network.getEdgeTable();
+    Table nodes = network.getNodeTable();
+    Node n0 = new NodeImpl(nodeTable, 0);
+    Node n5 = new NodeImpl(nodeTable, 5);
+    assertNull(network.getConnectingEdge(n0, n5));
+    edges.set(0, network.getTargetColumnName(), 5);
+    assertEquals("edge_0", network.getConnectingEdge(n0, n5).get("edgeName"));
+    assertEquals(2, network.getNeighbors(new NodeImpl(nodeTable, 1)).size());
+    assertTrue(nodes.removeRow(4));
+    assertEquals(NetworkTest.EDGENUMBER - 3, network.getEdges().size());
+    assertEquals(1, network.getNeighbors(n5).size());
+    assertFalse(network.removeEdge(new EdgeImpl(edgeTable, 5)));
+    assertTrue(network.removeNode(n0));
+    assertEquals(0, network.getNeighbors(n5).size());
+  }
+
+  /**
+   * Test method checking that compacting the node table renumbers the
+   * endpoints of the edges.
+   */
+  @Test
+  public void testCompactNodes() {
+    Table edges = network.getEdgeTable();
+    String source = network.getSourceColumnName();
+    String target = network.getTargetColumnName();
+    assertTrue(network.removeNode(new NodeImpl(nodeTable, 2)));
+    edges.set(5, target, 2);
+    ((TableImpl) network.getNodeTable()).compact();
+    assertEquals(NetworkTest.NODENUMBER - 1, network.getNodes().size());
+    assertEquals(NetworkTest.EDGENUMBER - 2, network.getEdges().size());
+    for (Edge edge : network.getEdges()) {
+      assertEquals(edge.getInt(source),
+          network.getSource(edge).getRow());
+      assertEquals(edge.getInt(target),
+          network.getTarget(edge).getRow());
+    }
+    Edge edge = network.getConnectingEdge(
+        new NodeImpl(network.getNodeTable(), 1),
+        new NodeImpl(network.getNodeTable(), 2));
+    assertEquals("edge_2", edge.get("edgeName"));
+    assertEquals("node_3", network.getTarget(edge).get("nodeName"));
+    assertEquals(-1, edges.getValue(5, target));
+    assertTrue(network.getIncidentEdges(
+        new NodeImpl(network.getNodeTable(), 4)).isEmpty());
+  }
+
+  /**
+   * Test method checking that compacting the edge table keeps the edge
+   * types.
+   */
+  @Test
+  public void testCompactEdges() {
+    Node n0 = new NodeImpl(nodeTable, 0);
+    Node n5 = new NodeImpl(nodeTable, 5);
+    network.addEdge(new EdgeImpl(edgeTable, 0), n5, n0, EdgeType.DIRECTED);
+    assertTrue(network.removeEdge(new EdgeImpl(edgeTable, 1)));
+    ((TableImpl) network.getEdgeTable()).compact();
+    assertEquals(NetworkTest.EDGENUMBER, network.getEdges().size());
+    Edge directed = network.getConnectingEdge(n5, n0);
+    assertEquals(NetworkTest.EDGENUMBER - 1, directed.getRow());
+    assertEquals(EdgeType.DIRECTED, network.getEdgeType(directed));
+    assertEquals(EdgeType.UNDIRECTED, network.getEdgeType(
+        network.getConnectingEdge(n0, new NodeImpl(nodeTable, 1))));
+    assertEquals("edge_2", network.getConnectingEdge(
+        new NodeImpl(nodeTable, 3), new NodeImpl(nodeTable, 1)).get("edgeName"));
+  }
+
+}
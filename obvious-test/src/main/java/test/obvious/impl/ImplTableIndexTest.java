@@ -0,0 +1,237 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.data.util.IntIterator;
+import obvious.data.util.Predicate;
+import obvious.impl.BitSetIntIterator;
+import obvious.impl.ColumnTableImpl;
+import obvious.impl.FilterIntIterator;
+import obvious.impl.SchemaImpl;
+import obvious.impl.TableImpl;
+import obvious.impl.TupleImpl;
+import obvious.impl.index.BitmapColumnIndex;
+import obvious.impl.index.SortedColumnIndex;
+import obvious.impl.predicate.AndPredicate;
+import obvious.impl.predicate.ComparisonPredicate;
+import obvious.impl.predicate.NotPredicate;
+import obvious.impl.predicate.OrPredicate;
+import obvious.impl.predicate.RangePredicate;
+
+import org.junit.Test;
+
+/**
+ * Test case for the secondary indexes of the obvious.impl tables. Indexed
+ * selections are checked against a scan of the table.
+ * @author obvious
+ *
+ */
+public class ImplTableIndexTest {
+
+  /**
+   * Number of rows of the tested tables.
+   */
+  private static final int ROWS = 2000;
+
+  /**
+   * Creates a schema with a numeric, a categorical and a text column.
+   * @return a schema
+   */
+  private Schema createSchema() {
+    Schema schema = new SchemaImpl();
+    schema.addColumn("value", Double.class, null);
+    schema.addColumn("category", Integer.class, null);
+    schema.addColumn("name", String.class, null);
+    return schema;
+  }
+
+  /**
+   * Fills a table with random rows.
+   * @param table table to fill
+   * @param random random generator
+   */
+  private void fill(Table table, Random random) {
+    for (int i = 0; i < ROWS; i++) {
+      Object[] values = {
+          random.nextInt(10) == 0 ? null : random.nextDouble(),
+          random.nextInt(8), "name" + random.nextInt(100)};
+      table.addRow(new TupleImpl(table.getSchema(), values));
+    }
+  }
+
+  /**
+   * Gets the rows returned by an iterator.
+   * @param it an iterator
+   * @return the rows
+   */
+  private List<Integer> rows(IntIterator it) {
+    List<Integer> rows = new ArrayList<Integer>();
+    while (it.hasNext()) {
+      rows.add(it.nextInt());
+    }
+    return rows;
+  }
+
+  /**
+   * Gets the predicates checked by the tests.
+   * @return a list of predicates
+   */
+  private List<Predicate> predicates() {
+    List<Predicate> preds = new ArrayList<Predicate>();
+    preds.add(new ComparisonPredicate(ComparisonPredicate.LT, "value", 0.3));
+    preds.add(new ComparisonPredicate(ComparisonPredicate.GTEQ, "value", 0.9));
+    preds.add(new ComparisonPredicate(ComparisonPredicate.NEQ, "category", 3));
+    preds.add(new ComparisonPredicate(ComparisonPredicate.EQ, "category", 5));
+    preds.add(new RangePredicate(RangePredicate.EX_IN, "value", 0.2, 0.4));
+    preds.add(new RangePredicate("category", 2, 4));
+    preds.add(new AndPredicate(
+        new RangePredicate("value", 0.1, 0.6),
+        new ComparisonPredicate(ComparisonPredicate.EQ, "category", 1),
+        new ComparisonPredicate(ComparisonPredicate.LT, "name", "name5")));
+    preds.add(new OrPredicate(
+        new ComparisonPredicate(ComparisonPredicate.GT, "value", 0.95),
+        new ComparisonPredicate(ComparisonPredicate.EQ, "category", 7)));
+    preds.add(new NotPredicate(
+        new ComparisonPredicate(ComparisonPredicate.LTEQ, "value", 0.5)));
+    return preds;
+  }
+
+  /**
+   * Checks that the indexed selections match a scan of the table.
+   * @param table an indexed table
+   */
+  private void checkSelections(Table table) {
+    for (Predicate pred : predicates()) {
+      IntIterator indexed = table.rowIterator(pred);
+      assertTrue(pred.toString(), indexed instanceof BitSetIntIterator);
+      assertEquals(pred.toString(), rows(new FilterIntIterator(table, pred)),
+          rows(indexed));
+    }
+  }
+
+  /**
+   * Checks indexed selections while the table is modified.
+   * @param table an empty table, either a TableImpl or a ColumnTableImpl
+   */
+  private void checkIndexedTable(Table table) {
+    Random random = new Random(1);
+    fill(table, random);
+    if (table instanceof TableImpl) {
+      ((TableImpl) table).createIndex("value");
+      ((TableImpl) table).createIndex("category");
+    } else {
+      ((ColumnTableImpl) table).createIndex("value");
+      ((ColumnTableImpl) table).createIndex("category");
+    }
+    checkSelections(table);
+    for (int i = 0; i < 50; i++) {
+      int row = random.nextInt(ROWS);
+      if (table.isValidRow(row)) {
+        table.set(row, 0, random.nextDouble());
+        table.set(row, 1, random.nextInt(8));
+      }
+      table.removeRow(random.nextInt(ROWS));
+    }
+    checkSelections(table);
+    fill(table, random);
+    checkSelections(table);
+  }
+
+  /**
+   * Test method for the indexes of TableImpl.
+   */
+  @Test
+  public void testTableImplIndex() {
+    TableImpl table = new TableImpl(createSchema());
+    checkIndexedTable(table);
+    assertTrue(table.getIndexManager().getIndex("value")
+        instanceof SortedColumnIndex);
+    assertTrue(table.getIndexManager().getIndex("category")
+        instanceof BitmapColumnIndex);
+  }
+
+  /**
+   * Test method for the indexes of ColumnTableImpl.
+   */
+  @Test
+  public void testColumnTableImplIndex() {
+    checkIndexedTable(new ColumnTableImpl(createSchema()));
+  }
+
+  /**
+   * Test method for equality selections on a bitmap index whose probe or
+   * stored values have another numeric class than the column type.
+   */
+  @Test
+  public void testBitmapIndexNumericKeys() {
+    TableImpl table = new TableImpl(createSchema());
+    fill(table, new Random(3));
+    table.getIndexManager().createBitmapIndex("category");
+    for (int row = 0; row < ROWS; row += 7) {
+      table.set(row, 1, Long.valueOf(5));
+    }
+    Object[] probes = {Integer.valueOf(5), Long.valueOf(5),
+        Double.valueOf(5.0), Short.valueOf((short) 5), Double.valueOf(5.5)};
+    for (Object probe : probes) {
+      Predicate pred = new ComparisonPredicate(ComparisonPredicate.EQ,
+          "category", probe);
+      List<Integer> expected = rows(new FilterIntIterator(table, pred));
+      assertEquals(pred.toString(), expected, rows(table.rowIterator(pred)));
+      assertEquals(pred.toString(), probe.equals(Double.valueOf(5.5)),
+          expected.isEmpty());
+    }
+  }
+
+  /**
+   * Test method for the fallback to a scan of the predicates that cannot
+   * use an index.
+   */
+  @Test
+  public void testUnindexedPredicate() {
+    TableImpl table = new TableImpl(createSchema());
+    fill(table, new Random(2));
+    table.createIndex("category");
+    Predicate pred = new ComparisonPredicate(ComparisonPredicate.EQ, "name",
+        "name1");
+    assertTrue(table.rowIterator(pred) instanceof FilterIntIterator);
+    table.removeAllRows();
+    assertEquals(0, rows(table.rowIterator(
+        new ComparisonPredicate(ComparisonPredicate.EQ, "category", 1)))
+        .size());
+  }
+
+}
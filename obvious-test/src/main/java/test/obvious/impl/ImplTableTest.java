@@ -27,11 +27,28 @@
 
 package test.obvious.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import obvious.ObviousException;
 import obvious.data.DataFactory;
 import obvious.data.Schema;
 import obvious.data.Table;
+import obvious.data.event.TableListener;
+import obvious.data.util.IntIterator;
+import obvious.data.util.Predicate;
+import obvious.data.util.TupleCursor;
+import obvious.impl.ColumnTableImpl;
 import obvious.impl.DataFactoryImpl;
+import obvious.impl.FilterIntIterator;
+import obvious.impl.TableImpl;
+import obvious.util.ObviousLib;
+
+import org.junit.Test;
 
 import test.obvious.data.TableTest;
 
@@ -54,8 +71,95 @@ public class ImplTableTest extends TableTest {
     return dFactory.createTable(schema);
   }
 
-  @Override
-  public void testRemoveRow() {
+  /**
+   * Test method checking that rowIterator() iterates over row ids.
+   */
+  @Test
+  public void testRowIteratorIds() {
+    IntIterator it = getTable().rowIterator();
+    for (int i = 0; i < NUMROW; i++) {
+      assertEquals(i, it.nextInt());
+    }
+    assertFalse(it.hasNext());
+  }
+
+  /**
+   * Test method for row removal, row id reuse and TableImpl.compact().
+   */
+  @Test
+  public void testRemoveAndCompact() {
+    TableImpl table = (TableImpl) getTable();
+    final List<int[]> events = new ArrayList<int[]>();
+    table.removeRow(1);
+    assertFalse(table.isValidRow(1));
+    assertEquals("Hallo", table.getValue(2, 0));
+    table.addRow();
+    assertTrue(table.isValidRow(1));
+    assertEquals("Hi", table.getValue(1, 0));
+    table.removeRow(0);
+    table.removeRow(2);
+    table.addTableListener(new TableListener() {
+      public void beginEdit(int context) { }
+      public boolean endEdit(int context) {
+        return true;
+      }
+      public boolean checkInvariants() {
+        return true;
+      }
+      public void tableChanged(Table t, int start, int end, int col,
+          int type) {
+        events.add(new int[] {start, end, type});
+      }
+    });
+    table.compact();
+    assertEquals(1, events.size());
+    assertEquals(NUMROW - 1, events.get(0)[1]);
+    assertEquals(2, table.getRowCount());
+    assertEquals("Hi", table.getValue(0, 0));
+    assertEquals("Nihaho", table.getValue(1, 0));
+    assertFalse(table.isValidRow(2));
+  }
+
+  /**
+   * Test method for FilterIntIterator.reset().
+   */
+  @Test
+  public void testFilterIteratorReset() {
+    Predicate pred = new Predicate() {
+      public boolean apply(Table table, int rowId) {
+        return (Boolean) table.getValue(rowId, "col3");
+      }
+    };
+    FilterIntIterator it = new FilterIntIterator(getTable(), pred);
+    for (int pass = 0; pass < 2; pass++) {
+      assertEquals(0, it.nextInt());
+      assertEquals(NUMROW - 1, it.nextInt());
+      assertFalse(it.hasNext());
+      it.reset();
+    }
   }
-  
+
+  /**
+   * Test method for ObviousLib.scan() and ObviousLib.fillTable().
+   */
+  @Test
+  public void testScanAndFill() {
+    Table table = getTable();
+    table.removeRow(1);
+    TupleCursor cursor = ObviousLib.scan(table);
+    int count = 0;
+    while (cursor.next()) {
+      int row = cursor.getRow();
+      assertTrue(table.isValidRow(row));
+      assertEquals(table.getValue(row, "col1"), cursor.getTuple().get("col1"));
+      count++;
+    }
+    cursor.close();
+    assertEquals(table.getRowCount(), count);
+    Table copy = new ColumnTableImpl(table.getSchema());
+    ObviousLib.fillTable(table, copy);
+    assertEquals(count, copy.getRowCount());
+    assertEquals(table.getValue(2, "col2"), copy.getValue(1, "col2"));
+  }
+
 }
@@ -0,0 +1,146 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package test.obvious.impl;
+
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.impl.ColumnTableImpl;
+import obvious.impl.SchemaImpl;
+import obvious.impl.TableImpl;
+
+/**
+ * Micro-benchmark of positional access on the tables of obvious.impl.
+ * It measures getValue(int, int), getRowCount() and isValueValid(int, int)
+ * on a wide table, the access pattern of renderers and iterators.
+ * <p>
+ * Usage: TableImplBenchmark [columns] [rows] [runs]
+ * </p>
+ * @author obvious
+ *
+ */
+public final class TableImplBenchmark {
+
+  /**
+   * Default number of columns.
+   */
+  private static final int COLUMNS = 64;
+
+  /**
+   * Default number of rows.
+   */
+  private static final int ROWS = 20000;
+
+  /**
+   * Default number of measured runs.
+   */
+  private static final int RUNS = 5;
+
+  /**
+   * Value accumulated to prevent the JIT from discarding the loops.
+   */
+  private static long sink;
+
+  /**
+   * Private constructor.
+   */
+  private TableImplBenchmark() { }
+
+  /**
+   * Builds a table with integer columns.
+   * @param table an empty table
+   * @param rows number of rows to add
+   * @return the filled table
+   */
+  private static Table fill(Table table, int rows) {
+    int cols = table.getSchema().getColumnCount();
+    for (int i = 0; i < rows; i++) {
+      table.addRow();
+      for (int j = 0; j < cols; j++) {
+        table.set(i, j, i + j);
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Reads every cell through positional access.
+   * @param table table to read
+   * @return elapsed time in nanoseconds
+   */
+  private static long scan(Table table) {
+    long start = System.nanoTime();
+    int cols = table.getSchema().getColumnCount();
+    long sum = 0;
+    for (int i = 0; i < table.getRowCount(); i++) {
+      for (int j = 0; j < cols; j++) {
+        if (table.isValueValid(i, j)) {
+          sum += (Integer) table.getValue(i, j);
+        }
+      }
+    }
+    sink += sum;
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Runs the benchmark on a table and prints the time per cell.
+   * @param name name of the table implementation
+   * @param table table to measure
+   * @param runs number of measured runs
+   */
+  private static void measure(String name, Table table, int runs) {
+    scan(table);
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < runs; i++) {
+      best = Math.min(best, scan(table));
+    }
+    long cells = (long) table.getRowCount()
+        * table.getSchema().getColumnCount();
+    System.out.println(name + ": " + (best / 1000000) + " ms, "
+        + ((double) best / cells) + " ns/cell");
+  }
+
+  /**
+   * Main method.
+   * @param args number of columns, rows and runs
+   */
+  public static void main(String[] args) {
+    int cols = args.length > 0 ? Integer.parseInt(args[0]) : COLUMNS;
+    int rows = args.length > 1 ? Integer.parseInt(args[1]) : ROWS;
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : RUNS;
+    Schema schema = new SchemaImpl();
+    for (int j = 0; j < cols; j++) {
+      schema.addColumn("col" + j, Integer.class, 0);
+    }
+    System.out.println(cols + " columns, " + rows + " rows");
+    measure("TableImpl", fill(new TableImpl(schema), rows), runs);
+    measure("ColumnTableImpl", fill(new ColumnTableImpl(schema), rows), runs);
+    System.out.println("(" + sink + ")");
+  }
+
+}
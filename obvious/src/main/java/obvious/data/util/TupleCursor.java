@@ -0,0 +1,67 @@
+/*
+* Copyright (c) 2009, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.data.util;
+
+import obvious.data.Tuple;
+
+/**
+ * Interface TupleCursor.
+ * <p>
+ * A cursor reads the rows of a table sequentially. The tuple returned by
+ * {@link #getTuple() getTuple} is a view reused for every row: its values
+ * are only valid until the next call to {@link #next() next}, and it has
+ * to be copied to be kept. A cursor should be closed once used.
+ * </p>
+ * @author obvious
+ * @version $Revision$
+ */
+
+public interface TupleCursor {
+    /**
+     * Moves the cursor to the next row.
+     * @return false if there is no more row
+     */
+    boolean next();
+
+    /**
+     * Gets the index of the current row in the scanned table.
+     * @return the row index, or -1 if the row is unknown to the table
+     */
+    int getRow();
+
+    /**
+     * Gets a view on the values of the current row.
+     * @return a tuple valid until the next move of the cursor
+     */
+    Tuple getTuple();
+
+    /**
+     * Releases the resources held by the cursor.
+     */
+    void close();
+}
@@ -0,0 +1,112 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl;
+
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+import obvious.data.util.IntIterator;
+
+/**
+ * An implementation of the interface IntIterator over the set bits of a
+ * BitSet, typically the bitmap of the live rows of a table.
+ * <p>
+ * The iterator reads the bitmap directly: it does not allocate anything
+ * while iterating with {@link #nextInt() nextInt} and rows cleared from the
+ * bitmap during the iteration are skipped. It can be restarted with
+ * {@link #reset() reset} to iterate the rows again.
+ * </p>
+ * @author obvious
+ *
+ */
+public class BitSetIntIterator implements IntIterator {
+
+  /**
+   * Iterated bitmap.
+   */
+  private BitSet bits;
+
+  /**
+   * Index from which the next set bit is searched.
+   */
+  private int cursor;
+
+  /**
+   * Constructor.
+   * @param bitSet the bitmap to iterate, it is not copied
+   */
+  public BitSetIntIterator(BitSet bitSet) {
+    this.bits = bitSet;
+    this.cursor = 0;
+  }
+
+  /**
+   * Restarts the iteration from the first set bit.
+   */
+  public void reset() {
+    this.cursor = 0;
+  }
+
+  /**
+   * Returns the next element in the iteration as an int.
+   * @return the next element in iteration (as int)
+   */
+  public int nextInt() {
+    int next = bits.nextSetBit(cursor);
+    if (next < 0) {
+      throw new NoSuchElementException("No more rows!");
+    }
+    cursor = next + 1;
+    return next;
+  }
+
+  /**
+   * Returns true if the iteration has more elements. (In other words, returns
+   * true if next would return an element rather than throwing an exception.)
+   * @return true if the iterator has more elements.
+   */
+  public boolean hasNext() {
+    return cursor >= 0 && bits.nextSetBit(cursor) >= 0;
+  }
+
+  /**
+   * Returns the next element in the iteration.
+   * @return the next element in iteration (as Integer)
+   */
+  public Integer next() {
+    return nextInt();
+  }
+
+  /**
+   * Unsupported operation, rows have to be removed through their table.
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+}
@@ -0,0 +1,612 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import obvious.ObviousException;
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.data.Tuple;
+import obvious.data.event.TableListener;
+import obvious.data.util.IntIterator;
+import obvious.data.util.Predicate;
+import obvious.impl.index.ColumnIndex;
+import obvious.impl.index.TableIndexManager;
+import obvious.impl.column.Column;
+import obvious.impl.column.ColumnFactory;
+
+/**
+ * Columnar implementation of Interface Table.
+ * <p>
+ * Each column is stored in a storage chosen from its type in the schema:
+ * int, long, double and boolean columns use primitive arrays and string
+ * columns are dictionary-encoded (see
+ * {@link obvious.impl.column.ColumnFactory ColumnFactory}). Compared to
+ * {@link TableImpl TableImpl}, numeric values are not boxed, so the table
+ * uses far less memory and values can be read without allocation through
+ * the typed accessors ({@link #getInt(int, int) getInt},
+ * {@link #getDouble(int, int) getDouble}, ...).
+ * </p>
+ * <p>
+ * Like TableImpl, the columns are built from the schema given at
+ * construction time, and row ids are stable: removed rows are marked dead,
+ * their ids are reused and {@link #compact() compact} squeezes them out.
+ * </p>
+ * @author obvious
+ */
+public class ColumnTableImpl implements Table {
+
+  /**
+   * Initial capacity of the columns.
+   */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Table's schema.
+   */
+  private Schema schema;
+
+  /**
+   * Is the schema being edited.
+   */
+  private boolean editing;
+
+  /**
+   * Are rows removable.
+   */
+  private boolean canRemoveRow = true;
+
+  /**
+   * Are rows addable.
+   */
+  private boolean canAddRow = true;
+
+  /**
+   * Columns of the table indexed by column index.
+   */
+  private Column[] columns;
+
+  /**
+   * Index of the columns of the table by name.
+   */
+  private Map<String, Integer> columnIndex;
+
+  /**
+   * Row ids of the table.
+   */
+  private RowManager rows;
+
+  /**
+   * Secondary indexes of the table, null until an index is created.
+   */
+  private TableIndexManager indexManager;
+
+  /**
+   * ArrayList of listeners.
+   */
+  private ArrayList<TableListener> listener;
+
+  /**
+   * Constructor for ColumnTableImpl.
+   * @param schemaIn Input schema
+   */
+  public ColumnTableImpl(Schema schemaIn) {
+    this.schema = schemaIn;
+    this.columns = new Column[schema.getColumnCount()];
+    this.columnIndex = new HashMap<String, Integer>();
+    this.rows = new RowManager();
+    this.listener = new ArrayList<TableListener>();
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = ColumnFactory.createColumn(schema.getColumnType(i),
+          INITIAL_CAPACITY);
+      columnIndex.put(schema.getColumnName(i), i);
+    }
+  }
+
+  /**
+   * Gets the storage of a column.
+   * @param col column index
+   * @return the column
+   */
+  public Column getColumn(int col) {
+    return columns[col];
+  }
+
+  /**
+   * Gets the storage of a column.
+   * @param field column name
+   * @return the column
+   */
+  public Column getColumn(String field) {
+    return columns[indexOf(field)];
+  }
+
+  /**
+   * Gets the index of a column from its name.
+   * @param field column name
+   * @return column index
+   */
+  private int indexOf(String field) {
+    Integer col = columnIndex.get(field);
+    if (col == null) {
+      throw new IllegalArgumentException("Unknown column: " + field);
+    }
+    return col;
+  }
+
+  /**
+   * Allocates a row id, growing the columns if needed.
+   * @return index of the new row
+   */
+  private int appendRow() {
+    int row = rows.addRow();
+    for (Column column : columns) {
+      column.ensureCapacity(row + 1);
+    }
+    return row;
+  }
+
+  /**
+   * Adds a row with default value.
+   * @return number of rows
+   */
+  public int addRow() {
+    if (this.canAddRow()) {
+      int row = appendRow();
+      for (int i = 0; i < columns.length; i++) {
+        columns[i].set(row, schema.getColumnDefault(i));
+      }
+      this.fireTableEvent(row, row, TableListener.ALL_COLUMN,
+          TableListener.INSERT);
+    }
+    return this.getRowCount();
+  }
+
+  /**
+   * Adds a row corresponding to the input tuple.
+   * @param tuple tuple to insert in the table
+   * @return number of rows
+   */
+  public int addRow(Tuple tuple) {
+    if (this.canAddRow()) {
+      int row = appendRow();
+      for (int i = 0; i < columns.length; i++) {
+        columns[i].set(row, tuple.get(schema.getColumnName(i)));
+      }
+      this.fireTableEvent(row, row, TableListener.ALL_COLUMN,
+          TableListener.INSERT);
+    }
+    return this.getRowCount();
+  }
+
+  /**
+   * Adds a table listener.
+   * @param listnr an Obvious TableListener
+   */
+  public void addTableListener(TableListener listnr) {
+    listener.add(listnr);
+  }
+
+  /**
+   * Indicates the beginning of a column edit.
+   * @param col column index
+   * @throws ObviousException if edition is not supported.
+   */
+  public void beginEdit(int col) throws ObviousException {
+    this.editing = true;
+    for (TableListener listnr : this.getTableListeners()) {
+      listnr.beginEdit(col);
+    }
+  }
+
+  /**
+   * Indicates the end of a column edit.
+   * @param col column index
+   * @return true if transaction succeed
+   * @throws ObviousException if edition is not supported.
+   */
+  public boolean endEdit(int col) throws ObviousException {
+    this.editing = false;
+    boolean success = true;
+    TableListener failedListener = null;
+    for (TableListener listnr : this.getTableListeners()) {
+      if (!listnr.checkInvariants()) {
+        listnr.endEdit(col);
+        failedListener = listnr;
+        success = false;
+        break;
+      }
+    }
+    for (TableListener listnr : this.getTableListeners()) {
+      if (success && !listnr.equals(failedListener)) {
+        listnr.endEdit(col);
+      }
+    }
+    return success;
+  }
+
+  /**
+   * Indicates if a column is being edited.
+   * @param col column index
+   * @return true if edited
+   */
+  public boolean isEditing(int col) {
+    return this.editing;
+  }
+
+  /**
+   * Indicates if possible to add rows.
+   * @return true if possible
+   */
+  public boolean canAddRow() {
+    return this.canAddRow;
+  }
+
+  /**
+   * Indicates if possible to remove rows.
+   * @return true if possible
+   */
+  public boolean canRemoveRow() {
+    return this.canRemoveRow;
+  }
+
+  /**
+   * Gets the number of rows in the table.
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return rows.getRowCount();
+  }
+
+  /**
+   * Returns this table's schema.
+   * @return  the schema of the table.
+   */
+  public Schema getSchema() {
+    return this.schema;
+  }
+
+  /**
+   * Gets all table listener.
+   * @return a collection of table listeners.
+   */
+  public Collection<TableListener> getTableListeners() {
+    return listener;
+  }
+
+  /**
+   * Gets a specific value.
+   * @param rowId row index
+   * @param field column name
+   * @return value for this couple
+   */
+  public Object getValue(int rowId, String field) {
+    return columns[indexOf(field)].get(rowId);
+  }
+
+  /**
+   * Gets a specific value.
+   * @param rowId row index
+   * @param col column index
+   * @return value for this couple
+   */
+  public Object getValue(int rowId, int col) {
+    return columns[col].get(rowId);
+  }
+
+  /**
+   * Gets a specific value as an int.
+   * @param rowId row index
+   * @param col column index
+   * @return value for this couple
+   */
+  public int getInt(int rowId, int col) {
+    return columns[col].getInt(rowId);
+  }
+
+  /**
+   * Gets a specific value as a long.
+   * @param rowId row index
+   * @param col column index
+   * @return value for this couple
+   */
+  public long getLong(int rowId, int col) {
+    return columns[col].getLong(rowId);
+  }
+
+  /**
+   * Gets a specific value as a double.
+   * @param rowId row index
+   * @param col column index
+   * @return value for this couple
+   */
+  public double getDouble(int rowId, int col) {
+    return columns[col].getDouble(rowId);
+  }
+
+  /**
+   * Gets a specific value as a boolean.
+   * @param rowId row index
+   * @param col column index
+   * @return value for this couple
+   */
+  public boolean getBoolean(int rowId, int col) {
+    return columns[col].getBoolean(rowId);
+  }
+
+  /**
+   * Indicates if the given row number corresponds to a valid table row.
+   * @param rowId row index
+   * @return true if the row is valid, false if it is not
+   */
+  public boolean isValidRow(int rowId) {
+    return rows.isValidRow(rowId);
+  }
+
+  /**
+   * Indicates if a given value is correct.
+   * @param rowId row index
+   * @param col column index
+   * @return true if the coordinates are valid
+   */
+  public boolean isValueValid(int rowId, int col) {
+    return this.isValidRow(rowId) && col >= 0 && col < columns.length;
+  }
+
+  /**
+   * Removes all the rows.
+   *
+   * <p>After this method, the table is almost in the same state as if
+   * it had been created afresh except it contains the same columns as before
+   * but they are all cleared.
+   *
+   */
+  public void removeAllRows() {
+    if (this.canRemoveRow() && rows.getRowTop() > 0) {
+      int oldTop = rows.getRowTop();
+      for (int i = 0; i < columns.length; i++) {
+        columns[i] = ColumnFactory.createColumn(schema.getColumnType(i),
+            INITIAL_CAPACITY);
+      }
+      rows.clear();
+      this.fireTableEvent(0, oldTop - 1, TableListener.ALL_COLUMN,
+          TableListener.DELETE);
+    }
+  }
+
+  /**
+   * Removes a row in the schema's table.
+   * The row is marked dead, the ids of the other rows do not change. If a
+   * compaction threshold is set and exceeded, the table is compacted.
+   * @param row row index
+   * @return true if removes, else false.
+   */
+  public boolean removeRow(int row) {
+    if (!this.canRemoveRow()) {
+      return false;
+    } else if (rows.removeRow(row)) {
+      for (Column column : columns) {
+        column.set(row, null);
+      }
+      this.fireTableEvent(row, row, TableListener.ALL_COLUMN,
+          TableListener.DELETE);
+      if (rows.needsCompaction()) {
+        this.compact();
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Squeezes out the removed rows: live rows are renumbered from 0 to
+   * getRowCount() - 1, keeping their order. Row ids held before the
+   * compaction are no longer valid, so a single event notifies that all
+   * the rows up to the previous highest row id have changed.
+   */
+  public void compact() {
+    int oldTop = rows.getRowTop();
+    if (rows.getDeletedRowCount() == 0) {
+      return;
+    }
+    int newRow = 0;
+    for (IntIterator it = rows.rowIterator(); it.hasNext(); newRow++) {
+      int row = it.nextInt();
+      if (row != newRow) {
+        for (Column column : columns) {
+          column.move(row, newRow);
+        }
+      }
+    }
+    for (int row = newRow; row < oldTop; row++) {
+      for (Column column : columns) {
+        column.set(row, null);
+      }
+    }
+    rows.compacted();
+    this.fireTableEvent(0, oldTop - 1, TableListener.ALL_COLUMN,
+        TableListener.UPDATE);
+  }
+
+  /**
+   * Sets the ratio of removed rows above which the table is compacted by
+   * removeRow. Compaction renumbers the rows, so it is disabled by default.
+   * @param ratio ratio of removed rows in [0, 1], zero or less to disable
+   */
+  public void setCompactionThreshold(double ratio) {
+    rows.setCompactionThreshold(ratio);
+  }
+
+  /**
+   * Creates an index on a column. Once a column is indexed,
+   * {@link #rowIterator(Predicate) rowIterator} answers the predicates of
+   * obvious.impl.predicate on this column without scanning the table.
+   * @param field name of the column
+   * @return the created index
+   */
+  public ColumnIndex createIndex(String field) {
+    return getIndexManager().createIndex(field);
+  }
+
+  /**
+   * Gets the manager of the secondary indexes of the table, creating it
+   * if needed.
+   * @return the index manager
+   */
+  public TableIndexManager getIndexManager() {
+    if (indexManager == null) {
+      indexManager = new TableIndexManager(this);
+    }
+    return indexManager;
+  }
+
+  /**
+   * Gets an iterator over the row numbers of this table.
+   * @return an iterator over the rows of this table
+   */
+  public IntIterator rowIterator() {
+    return rows.rowIterator();
+  }
+
+  /**
+   * Gets an iterator over the row id of this table matching the given
+   * predicate.
+   * @param pred an obvious predicate
+   * @return an iterator over the rows of this table.
+   */
+  public IntIterator rowIterator(Predicate pred) {
+    if (indexManager != null) {
+      return indexManager.rowIterator(pred);
+    }
+    return new FilterIntIterator(this, pred);
+  }
+
+  /**
+   * Removes a table listener.
+   * @param listnr an Obvious TableListener
+   */
+  public void removeTableListener(TableListener listnr) {
+    listener.remove(listnr);
+  }
+
+  /**
+   * Sets a value.
+   * @param rowId row index
+   * @param field column name
+   * @param val value to set
+   */
+  public void set(int rowId, String field, Object val) {
+    this.set(rowId, indexOf(field), val);
+  }
+
+  /**
+   * Sets a value.
+   * @param rowId row index
+   * @param col column index
+   * @param val value to set
+   */
+  public void set(int rowId, int col, Object val) {
+    columns[col].set(rowId, val);
+    this.fireTableEvent(rowId, rowId, col, TableListener.UPDATE);
+  }
+
+  /**
+   * Sets a value from an int.
+   * @param rowId row index
+   * @param col column index
+   * @param val value to set
+   */
+  public void setInt(int rowId, int col, int val) {
+    columns[col].setInt(rowId, val);
+    this.fireTableEvent(rowId, rowId, col, TableListener.UPDATE);
+  }
+
+  /**
+   * Sets a value from a long.
+   * @param rowId row index
+   * @param col column index
+   * @param val value to set
+   */
+  public void setLong(int rowId, int col, long val) {
+    columns[col].setLong(rowId, val);
+    this.fireTableEvent(rowId, rowId, col, TableListener.UPDATE);
+  }
+
+  /**
+   * Sets a value from a double.
+   * @param rowId row index
+   * @param col column index
+   * @param val value to set
+   */
+  public void setDouble(int rowId, int col, double val) {
+    columns[col].setDouble(rowId, val);
+    this.fireTableEvent(rowId, rowId, col, TableListener.UPDATE);
+  }
+
+  /**
+   * Sets a value from a boolean.
+   * @param rowId row index
+   * @param col column index
+   * @param val value to set
+   */
+  public void setBoolean(int rowId, int col, boolean val) {
+    columns[col].setBoolean(rowId, val);
+    this.fireTableEvent(rowId, rowId, col, TableListener.UPDATE);
+  }
+
+  /**
+   * Notifies changes to listener.
+   * @param start the starting row index of the changed table region
+   * @param end the ending row index of the changed table region
+   * @param col the column that has changed
+   * @param type the type of modification
+   */
+  public void fireTableEvent(int start, int end, int col, int type) {
+   if (this.getTableListeners().isEmpty()) {
+     return;
+   }
+   for (TableListener listnr : this.getTableListeners()) {
+     listnr.tableChanged(this, start, end, col, type);
+   }
+  }
+
+  /**
+   * Return the underlying implementation.
+   * @param type targeted class
+   * @return null
+   */
+  public Object getUnderlyingImpl(Class<?> type) {
+    return null;
+  }
+
+}
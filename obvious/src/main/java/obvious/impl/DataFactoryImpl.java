@@ -45,18 +45,23 @@ import obvious.data.Table;
 public class DataFactoryImpl extends DataFactory {
 
   /**
-   * Obvious Impl does not have its own implementation of network.
-   * So this method is unused and always throws an ObviousException.
+   * Key of the createTable parameter selecting the columnar table
+   * implementation {@link ColumnTableImpl ColumnTableImpl}. The associated
+   * value is a Boolean.
+   */
+  public static final String COLUMNAR = "columnar";
+
+  /**
+   * Returns an in-memory {@link NetworkImpl NetworkImpl}.
    * @param nodeSchema original schema for the node
    * @param edgeSchema original schema for the edge
-   * @return nothing unimplemented
-   * @throws ObviousException always throws an ObviousException
+   * @return an Obvious Network
+   * @throws ObviousException if network creation failed
    */
   @Override
   public Network createGraph(Schema nodeSchema, Schema edgeSchema)
       throws ObviousException {
-    throw new ObviousException("Can't create a network Obvious Impl doest not"
-        + "support network!");
+    return new NetworkImpl(nodeSchema, edgeSchema);
   }
 
   @Override
@@ -101,32 +106,45 @@ public class DataFactoryImpl extends DataFactory {
   }
 
   /**
-   * Obvious Impl does not have its own implementation of network.
-   * So this method is unused and always throws an ObviousException.
+   * Returns an in-memory {@link NetworkImpl NetworkImpl}. The parameter
+   * map may give the names of the source and target columns of the edges
+   * with the "sourceKey" and "targetKey" keys.
    * @param nodeSchema original schema for the node
    * @param edgeSchema original schema for the edge
-   * @param param unused parameter
-   * @return nothing unimplemented
-   * @throws ObviousException always throws an ObviousException
+   * @param param parameters of the network, may be null
+   * @return an Obvious Network
+   * @throws ObviousException if network creation failed
    */
   @Override
   public Network createGraph(Schema nodeSchema, Schema edgeSchema,
       Map<String, Object> param) throws ObviousException {
-    return createGraph(nodeSchema, edgeSchema);
+    if (param == null) {
+      return createGraph(nodeSchema, edgeSchema);
+    }
+    String source = param.containsKey("sourceKey")
+        ? (String) param.get("sourceKey") : NetworkImpl.DEFAULT_SOURCE_COLUMN;
+    String target = param.containsKey("targetKey")
+        ? (String) param.get("targetKey") : NetworkImpl.DEFAULT_TARGET_COLUMN;
+    return new NetworkImpl(nodeSchema, edgeSchema, source, target);
   }
 
   /**
    * Returns an Obvious Table. Obvious Impl tables only use schema
-   * as constructor's parameter.
+   * as constructor's parameter. If the parameter map associates
+   * {@link #COLUMNAR COLUMNAR} to true, a {@link ColumnTableImpl
+   * ColumnTableImpl} is created, else a {@link TableImpl TableImpl}.
    * @param schema schema of the table
-   * @param param unused parameter
+   * @param param parameters of the table, may be null
    * @return an Obvious Table
    * @throws ObviousException if table creation failed
    */
   @Override
   public Table createTable(Schema schema,
       Map<String, Object> param) throws ObviousException {
-    return createTable(schema, param);
+    if (param != null && Boolean.TRUE.equals(param.get(COLUMNAR))) {
+      return new ColumnTableImpl(schema);
+    }
+    return createTable(schema);
   }
 
 }
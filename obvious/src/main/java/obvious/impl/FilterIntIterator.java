@@ -36,6 +36,11 @@ import obvious.data.util.Predicate;
 /**
  * An implementation of the interface IntIterator keeping row matching a given
  * predicate.
+ * <p>
+ * Rows are pulled from the table row iterator one at a time and nothing is
+ * allocated while iterating with nextInt. The iterator can be restarted with
+ * {@link #reset() reset}.
+ * </p>
  * @author Pierre-Luc Hemery
  *
  */
@@ -78,6 +83,21 @@ public class FilterIntIterator implements IntIterator {
     this.next = nextValidRow();
   }
 
+  /**
+   * Restarts the iteration from the first row of the table. The predicate is
+   * evaluated again, so the iteration reflects the current content of the
+   * table.
+   */
+  public void reset() {
+    if (it instanceof BitSetIntIterator) {
+      ((BitSetIntIterator) it).reset();
+    } else {
+      it = table.rowIterator();
+    }
+    isIterOver = false;
+    next = nextValidRow();
+  }
+
   /**
    * Gets the next valid row.
    * @return next valid row id.
@@ -0,0 +1,949 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import obvious.ObviousException;
+import obvious.data.Edge;
+import obvious.data.Network;
+import obvious.data.Node;
+import obvious.data.Schema;
+import obvious.data.Table;
+import obvious.data.Tuple;
+import obvious.data.event.NetworkListener;
+import obvious.data.event.TableListener;
+import obvious.data.util.IntIterator;
+import obvious.impl.index.AdjacencyIndex;
+
+/**
+ * In-memory implementation of the Obvious {@link obvious.data.Network
+ * Network} interface.
+ * <p>
+ * Nodes and edges are the rows of two {@link TableImpl TableImpl}; the edge
+ * table has two more integer columns holding the source and target node of
+ * each edge. The topology is kept in an {@link AdjacencyIndex
+ * AdjacencyIndex} updated from the events of both tables, so that the
+ * tables returned by {@link #getNodeTable() getNodeTable} and
+ * {@link #getEdgeTable() getEdgeTable} can be edited directly. Edges of a
+ * node are found in time proportional to its degree, the source and target
+ * of an edge in constant time.
+ * </p>
+ * <p>
+ * Like the other Obvious networks, nodes and edges given as parameters are
+ * identified by their row: a node or an edge of another table designates
+ * the node or edge of this network with the same row index. Undirected
+ * edges are both incoming and outgoing edges of their two nodes.
+ * </p>
+ * <p>
+ * Compacting the node table renumbers the nodes, so the source and target
+ * columns of the edges are renumbered with them; an edge whose source or
+ * target was removed gets -1 and leaves the structure instead of pointing
+ * to another node. Compacting the edge table keeps the edge types.
+ * </p>
+ * @see obvious.data.Network
+ * @author obvious
+ *
+ */
+public class NetworkImpl implements Network {
+
+  /**
+   * Default name of the source column of the edge table.
+   */
+  public static final String DEFAULT_SOURCE_COLUMN = "source";
+
+  /**
+   * Default name of the target column of the edge table.
+   */
+  public static final String DEFAULT_TARGET_COLUMN = "target";
+
+  /**
+   * Table of the nodes, node ids are its row indexes.
+   */
+  private NetworkTable nodeTable;
+
+  /**
+   * Table of the edges, edge ids are its row indexes.
+   */
+  private NetworkTable edgeTable;
+
+  /**
+   * Column describing source node in edge table.
+   */
+  private String sourceCol;
+
+  /**
+   * Column describing target node in edge table.
+   */
+  private String targetCol;
+
+  /**
+   * Describe the network structure with node and edge ids.
+   */
+  private AdjacencyIndex networkStruct = new AdjacencyIndex();
+
+  /**
+   * Undirected edges.
+   */
+  private BitSet undirected = new BitSet();
+
+  /**
+   * Type given to the next edges inserted in the edge table.
+   */
+  private EdgeType insertedType = EdgeType.DIRECTED;
+
+  /**
+   * Is a table being compacted, during which the table listeners ignore
+   * the events.
+   */
+  private boolean compacting;
+
+  /**
+   * ArrayList of listeners.
+   */
+  private ArrayList<NetworkListener> listeners =
+    new ArrayList<NetworkListener>();
+
+  /**
+   * Constructor, with the default names for the source and target columns.
+   * @param nodeSchema schema of the nodes
+   * @param edgeSchema schema of the edges
+   */
+  public NetworkImpl(Schema nodeSchema, Schema edgeSchema) {
+    this(nodeSchema, edgeSchema, DEFAULT_SOURCE_COLUMN,
+        DEFAULT_TARGET_COLUMN);
+  }
+
+  /**
+   * Constructor. The given schemas are copied; the source and target
+   * columns are added to the edge schema copy if it does not have them.
+   * @param nodeSchema schema of the nodes
+   * @param edgeSchema schema of the edges
+   * @param source name of the column describing source node of an edge
+   * @param target name of the column describing target node of an edge
+   */
+  public NetworkImpl(Schema nodeSchema, Schema edgeSchema, String source,
+      String target) {
+    this.sourceCol = source;
+    this.targetCol = target;
+    Schema edgeCopy = copySchema(edgeSchema);
+    for (String col : new String[] {source, target}) {
+      if (!edgeCopy.hasColumn(col)) {
+        edgeCopy.addColumn(col, Integer.class, -1);
+      } else if (!edgeCopy.canGet(col, Integer.class)) {
+        throw new IllegalArgumentException("Column " + col
+            + " should contain node ids");
+      }
+    }
+    this.nodeTable = new NetworkTable(copySchema(nodeSchema), true);
+    this.edgeTable = new NetworkTable(edgeCopy, false);
+    this.nodeTable.addTableListener(new NodeTableListener());
+    this.edgeTable.addTableListener(new EdgeTableListener());
+  }
+
+  /**
+   * Copies a schema.
+   * @param schema a schema
+   * @return a new schema with the same columns
+   */
+  private static Schema copySchema(Schema schema) {
+    Schema copy = new SchemaImpl();
+    for (int i = 0; i < schema.getColumnCount(); i++) {
+      copy.addColumn(schema.getColumnName(i), schema.getColumnType(i),
+          schema.getColumnDefault(i));
+    }
+    return copy;
+  }
+
+  /**
+   * Gets the values of a row of a table from a tuple, by column name.
+   * Columns missing in the tuple get their default value.
+   * @param table a table
+   * @param tuple a tuple
+   * @return the values, in the column order of the table
+   */
+  private static Object[] copyValues(Table table, Tuple tuple) {
+    Schema schema = table.getSchema();
+    Object[] values = new Object[schema.getColumnCount()];
+    for (int i = 0; i < values.length; i++) {
+      String name = schema.getColumnName(i);
+      values[i] = tuple.getSchema().hasColumn(name) ? tuple.get(name)
+          : schema.getColumnDefault(i);
+    }
+    return values;
+  }
+
+  /**
+   * Gets the id of a node.
+   * @param node a node
+   * @return the node id, -1 if the node is not in the network
+   */
+  private int getNodeId(Node node) {
+    return node != null && nodeTable.isValidRow(node.getRow())
+        ? node.getRow() : -1;
+  }
+
+  /**
+   * Gets the id of an edge.
+   * @param edge an edge
+   * @return the edge id, -1 if the edge is not in the network
+   */
+  private int getEdgeId(Edge edge) {
+    return edge != null && networkStruct.isValidEdge(edge.getRow())
+        ? edge.getRow() : -1;
+  }
+
+  @Override
+  public boolean addEdge(Edge edge, Collection<? extends Node> nodes,
+      EdgeType edgeType) {
+    if (null == nodes) {
+      throw new IllegalArgumentException(
+          "'nodes' parameter must not be null");
+    } else if (nodes.size() == 2) {
+      Node[] nodeArray = nodes.toArray(new Node[2]);
+      return this.addEdge(edge, nodeArray[0], nodeArray[1], edgeType);
+    } else if (nodes.size() == 1) {
+      Node[] nodeArray = nodes.toArray(new Node[1]);
+      return this.addEdge(edge, nodeArray[0], nodeArray[0], edgeType);
+    } else {
+      throw new IllegalArgumentException("Networks connect 1 or 2 nodes,"
+          + "'nodes' size is " + nodes.size());
+    }
+  }
+
+  /**
+   * Adds an edge between two nodes of the network.
+   * @param edge edge giving the attribute values of the new edge
+   * @param source source node
+   * @param target target node
+   * @param edgeType directed or undirected edge
+   * @return true if added, false if a node is not in the network
+   */
+  @Override
+  public boolean addEdge(Edge edge, Node source, Node target,
+      EdgeType edgeType) {
+    int sourceId = getNodeId(source);
+    int targetId = getNodeId(target);
+    if (sourceId < 0 || targetId < 0) {
+      return false;
+    }
+    Object[] values = copyValues(edgeTable, edge);
+    values[edgeTable.getSchema().getColumnIndex(sourceCol)] = sourceId;
+    values[edgeTable.getSchema().getColumnIndex(targetCol)] = targetId;
+    insertedType = edgeType;
+    try {
+      edgeTable.addRow(new TupleImpl(edgeTable.getSchema(), values));
+    } finally {
+      insertedType = EdgeType.DIRECTED;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean addNode(Node node) {
+    nodeTable.addRow(new TupleImpl(nodeTable.getSchema(),
+        copyValues(nodeTable, node)));
+    return true;
+  }
+
+  /**
+   * Indicates the beginning of a column edit.
+   * @param col column index
+   * @throws ObviousException if edition is not supported.
+   */
+  public void beginEdit(int col) throws ObviousException {
+    for (NetworkListener listnr : this.getNetworkListeners()) {
+      listnr.beginEdit(col);
+    }
+  }
+
+  /**
+   * Indicates the end of a column edit.
+   * @param col column index
+   * @return true if transaction succeed
+   * @throws ObviousException if edition is not supported.
+   */
+  public boolean endEdit(int col) throws ObviousException {
+    boolean success = true;
+    NetworkListener failedListener = null;
+    for (NetworkListener listnr : this.getNetworkListeners()) {
+      if (!listnr.checkInvariants()) {
+        listnr.endEdit(col);
+        failedListener = listnr;
+        success = false;
+        break;
+      }
+    }
+    for (NetworkListener listnr : this.getNetworkListeners()) {
+      if (success && !listnr.equals(failedListener)) {
+        listnr.endEdit(col);
+      }
+    }
+    return success;
+  }
+
+  @Override
+  public Edge getConnectingEdge(Node v1, Node v2) {
+    int v1Id = getNodeId(v1);
+    int v2Id = getNodeId(v2);
+    int edgeId = networkStruct.getEdge(v1Id, v2Id);
+    if (edgeId < 0) {
+      edgeId = networkStruct.getEdge(v2Id, v1Id);
+    }
+    return edgeId >= 0 ? getEdge(edgeId) : null;
+  }
+
+  @Override
+  public Collection<Edge> getConnectingEdges(Node v1, Node v2) {
+    int v1Id = getNodeId(v1);
+    int v2Id = getNodeId(v2);
+    ArrayList<Edge> edges = new ArrayList<Edge>();
+    for (int edgeId : networkStruct.getOutEdges(v1Id)) {
+      if (networkStruct.getTarget(edgeId) == v2Id) {
+        edges.add(getEdge(edgeId));
+      }
+    }
+    if (v1Id != v2Id) {
+      for (int edgeId : networkStruct.getInEdges(v1Id)) {
+        if (networkStruct.getSource(edgeId) == v2Id) {
+          edges.add(getEdge(edgeId));
+        }
+      }
+    }
+    return edges;
+  }
+
+  @Override
+  public EdgeType getEdgeType(Edge edge) {
+    int edgeId = getEdgeId(edge);
+    return edgeId >= 0 && undirected.get(edgeId) ? EdgeType.UNDIRECTED
+        : EdgeType.DIRECTED;
+  }
+
+  @Override
+  public Collection<Edge> getEdges() {
+    ArrayList<Edge> edges =
+      new ArrayList<Edge>(networkStruct.getEdgeCount());
+    for (IntIterator it = edgeTable.rowIterator(); it.hasNext();) {
+      int edgeId = it.nextInt();
+      if (networkStruct.isValidEdge(edgeId)) {
+        edges.add(getEdge(edgeId));
+      }
+    }
+    return edges;
+  }
+
+  @Override
+  public Collection<Edge> getInEdges(Node node) {
+    return getEdges(getNodeId(node), false);
+  }
+
+  @Override
+  public Collection<Edge> getIncidentEdges(Node node) {
+    int nodeId = getNodeId(node);
+    ArrayList<Edge> edges = new ArrayList<Edge>();
+    for (int edgeId : networkStruct.getOutEdges(nodeId)) {
+      edges.add(getEdge(edgeId));
+    }
+    for (int edgeId : networkStruct.getInEdges(nodeId)) {
+      if (networkStruct.getSource(edgeId) != nodeId) {
+        edges.add(getEdge(edgeId));
+      }
+    }
+    return edges;
+  }
+
+  @Override
+  public Collection<Node> getIncidentNodes(Edge edge) {
+    int edgeId = getEdgeId(edge);
+    ArrayList<Node> nodes = new ArrayList<Node>(2);
+    if (edgeId >= 0) {
+      nodes.add(getNode(networkStruct.getSource(edgeId)));
+      nodes.add(getNode(networkStruct.getTarget(edgeId)));
+    }
+    return nodes;
+  }
+
+  @Override
+  public Collection<Node> getNeighbors(Node node) {
+    int nodeId = getNodeId(node);
+    ArrayList<Node> nodes = new ArrayList<Node>();
+    for (int edgeId : networkStruct.getOutEdges(nodeId)) {
+      nodes.add(getNode(networkStruct.getTarget(edgeId)));
+    }
+    for (int edgeId : networkStruct.getInEdges(nodeId)) {
+      if (networkStruct.getSource(edgeId) != nodeId) {
+        nodes.add(getNode(networkStruct.getSource(edgeId)));
+      }
+    }
+    return nodes;
+  }
+
+  @Override
+  public Collection<Node> getNodes() {
+    ArrayList<Node> nodes = new ArrayList<Node>(nodeTable.getRowCount());
+    for (IntIterator it = nodeTable.rowIterator(); it.hasNext();) {
+      nodes.add(getNode(it.nextInt()));
+    }
+    return nodes;
+  }
+
+  @Override
+  public Node getOpposite(Node node, Edge edge) {
+    int edgeId = getEdgeId(edge);
+    int nodeId = getNodeId(node);
+    if (edgeId < 0) {
+      return null;
+    } else if (nodeId == networkStruct.getSource(edgeId)) {
+      return getNode(networkStruct.getTarget(edgeId));
+    } else if (nodeId == networkStruct.getTarget(edgeId)) {
+      return getNode(networkStruct.getSource(edgeId));
+    }
+    return null;
+  }
+
+  @Override
+  public Collection<Edge> getOutEdges(Node node) {
+    return getEdges(getNodeId(node), true);
+  }
+
+  @Override
+  public Collection<Node> getPredecessors(Node node) {
+    int nodeId = getNodeId(node);
+    ArrayList<Node> nodes = new ArrayList<Node>();
+    for (Edge edge : getEdges(nodeId, false)) {
+      nodes.add(getNode(opposite(nodeId, edge.getRow())));
+    }
+    return nodes;
+  }
+
+  @Override
+  public Node getSource(Edge directedEdge) {
+    int edgeId = getEdgeId(directedEdge);
+    return edgeId >= 0 ? getNode(networkStruct.getSource(edgeId)) : null;
+  }
+
+  @Override
+  public Collection<Node> getSuccessors(Node node) {
+    int nodeId = getNodeId(node);
+    ArrayList<Node> nodes = new ArrayList<Node>();
+    for (Edge edge : getEdges(nodeId, true)) {
+      nodes.add(getNode(opposite(nodeId, edge.getRow())));
+    }
+    return nodes;
+  }
+
+  @Override
+  public Node getTarget(Edge directedEdge) {
+    int edgeId = getEdgeId(directedEdge);
+    return edgeId >= 0 ? getNode(networkStruct.getTarget(edgeId)) : null;
+  }
+
+  @Override
+  public boolean removeEdge(Edge edge) {
+    int edgeId = getEdgeId(edge);
+    return edgeId >= 0 && edgeTable.removeRow(edgeId);
+  }
+
+  /**
+   * Removes a node and its incident edges.
+   * @param node node to remove
+   * @return true if removed
+   */
+  @Override
+  public boolean removeNode(Node node) {
+    int nodeId = getNodeId(node);
+    return nodeId >= 0 && nodeTable.removeRow(nodeId);
+  }
+
+  /**
+   * Return the underlying implementation.
+   * @param type targeted class
+   * @return null
+   */
+  public Object getUnderlyingImpl(Class<?> type) {
+    return null;
+  }
+
+  /**
+   * Gets a node from its id.
+   * @param nodeId a valid node id
+   * @return a node
+   */
+  private Node getNode(int nodeId) {
+    return new NodeImpl(nodeTable, nodeId);
+  }
+
+  /**
+   * Gets an edge from its id.
+   * @param edgeId a valid edge id
+   * @return an edge
+   */
+  private Edge getEdge(int edgeId) {
+    return new EdgeImpl(edgeTable, edgeId);
+  }
+
+  /**
+   * Gets the outgoing or incoming edges of a node. Undirected edges are
+   * both.
+   * @param nodeId a node id
+   * @param out true for the outgoing edges, false for the incoming ones
+   * @return the edges
+   */
+  private Collection<Edge> getEdges(int nodeId, boolean out) {
+    int[] directed = out ? networkStruct.getOutEdges(nodeId)
+        : networkStruct.getInEdges(nodeId);
+    int[] reversed = out ? networkStruct.getInEdges(nodeId)
+        : networkStruct.getOutEdges(nodeId);
+    ArrayList<Edge> edges = new ArrayList<Edge>(directed.length);
+    for (int edgeId : directed) {
+      edges.add(getEdge(edgeId));
+    }
+    for (int edgeId : reversed) {
+      if (undirected.get(edgeId) && networkStruct.getSource(edgeId)
+          != networkStruct.getTarget(edgeId)) {
+        edges.add(getEdge(edgeId));
+      }
+    }
+    return edges;
+  }
+
+  /**
+   * Gets the other end of an edge.
+   * @param nodeId an end of the edge
+   * @param edgeId a valid edge id
+   * @return the other end, or nodeId for a loop
+   */
+  private int opposite(int nodeId, int edgeId) {
+    int source = networkStruct.getSource(edgeId);
+    return source == nodeId ? networkStruct.getTarget(edgeId) : source;
+  }
+
+  /**
+   * Gets the listeners.
+   * @return listeners.
+   */
+  public Collection<NetworkListener> getNetworkListeners() {
+    return listeners;
+  }
+
+  /**
+   * Removes a listener.
+   * @param l listener to remove
+   */
+  public void removeNetworkListener(NetworkListener l) {
+    listeners.remove(l);
+  }
+
+  /**
+   * Add a listener.
+   * @param l listener to add
+   */
+  public void addNetworkListener(NetworkListener l) {
+    listeners.add(l);
+  }
+
+  /**
+   * Gets the edge table, whose row indexes are the edge ids. Changes of
+   * the source and target columns move the edges.
+   * @return the edge table
+   */
+  public Table getEdgeTable() {
+    return edgeTable;
+  }
+
+  /**
+   * Gets the node table, whose row indexes are the node ids. Removing a
+   * node removes its edges.
+   * @return the node table
+   */
+  public Table getNodeTable() {
+    return nodeTable;
+  }
+
+  /**
+   * Gets the name of the column used to spot the source node for an edge.
+   * @return name of the source column
+   */
+  public String getSourceColumnName() {
+    return sourceCol;
+  }
+
+  /**
+   * Gets the name of the column used to spot the target node for an edge.
+   * @return name of the target column
+   */
+  public String getTargetColumnName() {
+    return targetCol;
+  }
+
+  /**
+   * Notifies changes to listener.
+   * @param start the starting row index of the changed network region
+   * @param end the ending row index of the changed network region
+   * @param col the column that has changed
+   * @param type the type of modification
+   */
+  public void fireNetworkEvent(int start, int end, int col, int type) {
+    if (listeners.isEmpty()) {
+      return;
+    }
+    for (NetworkListener listnr : listeners) {
+      listnr.networkChanged(this, start, end, col, type);
+    }
+  }
+
+  /**
+   * Squeezes out the removed nodes and edges. Node and edge ids are
+   * renumbered from 0, keeping their order, and the source and target
+   * columns follow the node ids.
+   */
+  public void compact() {
+    compactNodes();
+    compactEdges();
+  }
+
+  /**
+   * Compacts the node table, renumbering the source and target columns of
+   * the edges. Endpoints that were removed become -1.
+   */
+  private void compactNodes() {
+    int[] newIds = renumbering(nodeTable);
+    if (newIds == null) {
+      trimRows(nodeTable);
+      return;
+    }
+    int edgeTop = 0;
+    compacting = true;
+    try {
+      nodeTable.compactRows();
+      for (IntIterator it = edgeTable.rowIterator(); it.hasNext();) {
+        int edgeId = it.nextInt();
+        edgeTable.set(edgeId, sourceCol,
+            renumber(newIds, edgeTable.getValue(edgeId, sourceCol)));
+        edgeTable.set(edgeId, targetCol,
+            renumber(newIds, edgeTable.getValue(edgeId, targetCol)));
+        edgeTop = edgeId + 1;
+      }
+      relinkAll();
+    } finally {
+      compacting = false;
+    }
+    fireNetworkEvent(0, newIds.length - 1, TableListener.ALL_COLUMN,
+        NetworkListener.UPDATE_NODE);
+    if (edgeTop > 0) {
+      fireNetworkEvent(0, edgeTop - 1, TableListener.ALL_COLUMN,
+          NetworkListener.UPDATE_EDGE);
+    }
+  }
+
+  /**
+   * Compacts the edge table, moving the edge types with the edges.
+   */
+  private void compactEdges() {
+    int[] newIds = renumbering(edgeTable);
+    if (newIds == null) {
+      trimRows(edgeTable);
+      return;
+    }
+    BitSet moved = new BitSet();
+    for (int edgeId = undirected.nextSetBit(0); edgeId >= 0
+        && edgeId < newIds.length; edgeId = undirected.nextSetBit(edgeId + 1)) {
+      if (newIds[edgeId] >= 0) {
+        moved.set(newIds[edgeId]);
+      }
+    }
+    compacting = true;
+    try {
+      edgeTable.compactRows();
+      undirected = moved;
+      relinkAll();
+    } finally {
+      compacting = false;
+    }
+    fireNetworkEvent(0, newIds.length - 1, TableListener.ALL_COLUMN,
+        NetworkListener.UPDATE_EDGE);
+  }
+
+  /**
+   * Compacts a table whose ids are not changed by the compaction, i.e.
+   * only removed rows at its end.
+   * @param table node or edge table
+   */
+  private void trimRows(NetworkTable table) {
+    compacting = true;
+    try {
+      table.compactRows();
+    } finally {
+      compacting = false;
+    }
+  }
+
+  /**
+   * Computes the ids given to the rows of a table by a compaction.
+   * @param table a table
+   * @return the new id of each old row id, -1 for removed rows, or null if
+   * no row id changes
+   */
+  private static int[] renumbering(Table table) {
+    int top = 0;
+    for (IntIterator it = table.rowIterator(); it.hasNext();) {
+      top = it.nextInt() + 1;
+    }
+    if (top == table.getRowCount()) {
+      return null;
+    }
+    int[] newIds = new int[top];
+    Arrays.fill(newIds, -1);
+    int newId = 0;
+    for (IntIterator it = table.rowIterator(); it.hasNext();) {
+      newIds[it.nextInt()] = newId++;
+    }
+    return newIds;
+  }
+
+  /**
+   * Gets the new id of a node after a compaction.
+   * @param newIds new id of each old node id
+   * @param nodeId old node id, as stored in the edge table
+   * @return the new node id, -1 if the node was removed or unknown
+   */
+  private static int renumber(int[] newIds, Object nodeId) {
+    if (nodeId instanceof Number) {
+      int id = ((Number) nodeId).intValue();
+      if (id >= 0 && id < newIds.length) {
+        return newIds[id];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Rebuilds the structure from the edge table.
+   */
+  private void relinkAll() {
+    networkStruct.clear();
+    for (IntIterator it = edgeTable.rowIterator(); it.hasNext();) {
+      link(it.nextInt());
+    }
+    networkStruct.rebuild();
+  }
+
+  /**
+   * Adds an edge of the edge table to the structure if its source and
+   * target are valid nodes.
+   * @param edgeId an edge id
+   */
+  private void link(int edgeId) {
+    if (!edgeTable.isValidRow(edgeId)) {
+      return;
+    }
+    Object source = edgeTable.getValue(edgeId, sourceCol);
+    Object target = edgeTable.getValue(edgeId, targetCol);
+    if (source instanceof Number && target instanceof Number
+        && nodeTable.isValidRow(((Number) source).intValue())
+        && nodeTable.isValidRow(((Number) target).intValue())) {
+      networkStruct.addEdge(edgeId, ((Number) source).intValue(),
+          ((Number) target).intValue());
+    }
+  }
+
+  /**
+   * Node or edge table of the network. Its compaction goes through the
+   * network, which renumbers the edges accordingly.
+   */
+  private final class NetworkTable extends TableImpl {
+
+    /**
+     * Is this the node table.
+     */
+    private final boolean isNodeTable;
+
+    /**
+     * Constructor.
+     * @param schema schema of the table
+     * @param nodes true for the node table, false for the edge table
+     */
+    NetworkTable(Schema schema, boolean nodes) {
+      super(schema);
+      this.isNodeTable = nodes;
+    }
+
+    /**
+     * Compacts the table through the network.
+     */
+    @Override
+    public void compact() {
+      if (isNodeTable) {
+        compactNodes();
+      } else {
+        compactEdges();
+      }
+    }
+
+    /**
+     * Squeezes out the removed rows of the table itself.
+     */
+    void compactRows() {
+      super.compact();
+    }
+
+  }
+
+  /**
+   * Listener of the node table, removing the edges of removed nodes and
+   * forwarding the changes to the network listeners.
+   */
+  private final class NodeTableListener implements TableListener {
+
+    /**
+     * Indicates the beginning of a column edit.
+     * @param context edit context
+     */
+    public void beginEdit(int context) { }
+
+    /**
+     * Indicates the end of a column edit.
+     * @param context edit context
+     * @return true
+     */
+    public boolean endEdit(int context) {
+      return true;
+    }
+
+    /**
+     * Checks the invariants of the listener.
+     * @return true
+     */
+    public boolean checkInvariants() {
+      return true;
+    }
+
+    /**
+     * Updates the network after a change of the node table.
+     * @param t the node table
+     * @param start the starting row index of the changed table region
+     * @param end the ending row index of the changed table region
+     * @param col the column that has changed
+     * @param type the type of modification
+     */
+    public void tableChanged(Table t, int start, int end, int col,
+        int type) {
+      if (compacting) {
+        return;
+      } else if (type == TableListener.DELETE) {
+        for (int nodeId = start; nodeId <= end; nodeId++) {
+          for (int edgeId : networkStruct.getOutEdges(nodeId)) {
+            edgeTable.removeRow(edgeId);
+          }
+          for (int edgeId : networkStruct.getInEdges(nodeId)) {
+            edgeTable.removeRow(edgeId);
+          }
+        }
+        fireNetworkEvent(start, end, col, NetworkListener.DELETE_NODE);
+      } else {
+        fireNetworkEvent(start, end, col, type == TableListener.INSERT
+            ? NetworkListener.INSERT_NODE : NetworkListener.UPDATE_NODE);
+      }
+    }
+
+  }
+
+  /**
+   * Listener of the edge table, keeping the network structure up to date
+   * and forwarding the changes to the network listeners.
+   */
+  private final class EdgeTableListener implements TableListener {
+
+    /**
+     * Indicates the beginning of a column edit.
+     * @param context edit context
+     */
+    public void beginEdit(int context) { }
+
+    /**
+     * Indicates the end of a column edit.
+     * @param context edit context
+     * @return true
+     */
+    public boolean endEdit(int context) {
+      return true;
+    }
+
+    /**
+     * Checks the invariants of the listener.
+     * @return true
+     */
+    public boolean checkInvariants() {
+      return true;
+    }
+
+    /**
+     * Updates the network structure after a change of the edge table.
+     * @param t the edge table
+     * @param start the starting row index of the changed table region
+     * @param end the ending row index of the changed table region
+     * @param col the column that has changed
+     * @param type the type of modification
+     */
+    public void tableChanged(Table t, int start, int end, int col,
+        int type) {
+      if (compacting) {
+        return;
+      }
+      Schema schema = edgeTable.getSchema();
+      if (type == TableListener.INSERT) {
+        for (int edgeId = start; edgeId <= end; edgeId++) {
+          undirected.set(edgeId, insertedType == EdgeType.UNDIRECTED);
+          link(edgeId);
+        }
+        fireNetworkEvent(start, end, col, NetworkListener.INSERT_EDGE);
+      } else if (type == TableListener.DELETE) {
+        for (int edgeId = start; edgeId <= end; edgeId++) {
+          networkStruct.removeEdge(edgeId);
+        }
+        fireNetworkEvent(start, end, col, NetworkListener.DELETE_EDGE);
+      } else {
+        if (col == TableListener.ALL_COLUMN
+            || col == schema.getColumnIndex(sourceCol)
+            || col == schema.getColumnIndex(targetCol)) {
+          for (int edgeId = start; edgeId <= end; edgeId++) {
+            networkStruct.removeEdge(edgeId);
+            link(edgeId);
+          }
+        }
+        fireNetworkEvent(start, end, col, NetworkListener.UPDATE_EDGE);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,265 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl;
+
+import java.util.BitSet;
+
+import obvious.data.util.IntIterator;
+
+/**
+ * Manages the row ids of a table.
+ * <p>
+ * Removed rows are not shifted: they are marked dead in a bitmap of live
+ * rows (a tombstone), so the ids of the other rows never change. Ids of
+ * removed rows are kept in a free list and reused by the next additions.
+ * Dead rows can be squeezed out with a compaction, which renumbers the live
+ * rows from 0. Compaction is explicit, unless a compaction threshold has been
+ * set (see {@link #setCompactionThreshold(double) setCompactionThreshold}).
+ * </p>
+ * @author obvious
+ *
+ */
+public class RowManager {
+
+  /**
+   * Initial size of the free list.
+   */
+  private static final int INITIAL_FREE_SIZE = 16;
+
+  /**
+   * Number of row ids below which compaction is never needed.
+   */
+  private static final int MIN_COMPACTION_SIZE = 64;
+
+  /**
+   * Bitmap of the live rows.
+   */
+  private BitSet rows;
+
+  /**
+   * Stack of the ids of removed rows.
+   */
+  private int[] freeRows;
+
+  /**
+   * Number of ids in the free stack.
+   */
+  private int freeCount;
+
+  /**
+   * Number of live rows.
+   */
+  private int rowCount;
+
+  /**
+   * Number of row ids allocated so far: every row id is lower than it.
+   */
+  private int rowTop;
+
+  /**
+   * Ratio of dead rows above which a compaction is needed, zero or less
+   * to disable it.
+   */
+  private double compactionThreshold;
+
+  /**
+   * Constructor.
+   */
+  public RowManager() {
+    this.rows = new BitSet();
+    this.freeRows = new int[INITIAL_FREE_SIZE];
+  }
+
+  /**
+   * Gets the number of live rows.
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Gets the number of row ids allocated so far. All row ids, live or
+   * dead, are lower than this number.
+   * @return the upper bound of row ids
+   */
+  public int getRowTop() {
+    return rowTop;
+  }
+
+  /**
+   * Gets the number of dead rows.
+   * @return the number of removed rows not yet reused or compacted
+   */
+  public int getDeletedRowCount() {
+    return rowTop - rowCount;
+  }
+
+  /**
+   * Indicates if a row id corresponds to a live row.
+   * @param row row id
+   * @return true if the row is live
+   */
+  public boolean isValidRow(int row) {
+    return row >= 0 && rows.get(row);
+  }
+
+  /**
+   * Allocates a row id, reusing the id of a removed row if there is one.
+   * If the returned id is equal to the previous {@link #getRowTop()
+   * getRowTop}, it is a new id and the storage of the table has to grow.
+   * @return the id of the new row
+   */
+  public int addRow() {
+    int row;
+    if (freeCount > 0) {
+      row = freeRows[--freeCount];
+    } else {
+      row = rowTop++;
+    }
+    rows.set(row);
+    rowCount++;
+    return row;
+  }
+
+  /**
+   * Marks a row as removed and pushes its id in the free list.
+   * @param row row id
+   * @return true if the row was live
+   */
+  public boolean removeRow(int row) {
+    if (!isValidRow(row)) {
+      return false;
+    }
+    rows.clear(row);
+    rowCount--;
+    pushFreeRow(row);
+    return true;
+  }
+
+  /**
+   * Pushes the id of a dead row in the free list.
+   * @param row row id
+   */
+  private void pushFreeRow(int row) {
+    if (freeCount == freeRows.length) {
+      int[] newFree = new int[freeRows.length * 2];
+      System.arraycopy(freeRows, 0, newFree, 0, freeCount);
+      freeRows = newFree;
+    }
+    freeRows[freeCount++] = row;
+  }
+
+  /**
+   * Marks a removed row as live again, keeping its id. The id is taken out
+   * of the free list; if it is above the row top, the ids skipped to reach
+   * it are added to the free list. This is used to undo a removal.
+   * @param row row id
+   * @return true if the row was not live
+   */
+  public boolean restoreRow(int row) {
+    if (row < 0 || isValidRow(row)) {
+      return false;
+    }
+    if (row >= rowTop) {
+      for (int r = rowTop; r < row; r++) {
+        pushFreeRow(r);
+      }
+      rowTop = row + 1;
+    } else {
+      for (int i = freeCount - 1; i >= 0; i--) {
+        if (freeRows[i] == row) {
+          System.arraycopy(freeRows, i + 1, freeRows, i, freeCount - i - 1);
+          freeCount--;
+          break;
+        }
+      }
+    }
+    rows.set(row);
+    rowCount++;
+    return true;
+  }
+
+  /**
+   * Removes all the rows and forgets all the ids.
+   */
+  public void clear() {
+    rows.clear();
+    freeCount = 0;
+    rowCount = 0;
+    rowTop = 0;
+  }
+
+  /**
+   * Gets an iterator over the live row ids, in increasing order.
+   * @return an iterator over the rows
+   */
+  public IntIterator rowIterator() {
+    return new BitSetIntIterator(rows);
+  }
+
+  /**
+   * Sets the ratio of dead rows above which {@link #needsCompaction()
+   * needsCompaction} returns true. Automatic compaction renumbers the rows,
+   * so it is disabled by default.
+   * @param ratio ratio of dead rows in [0, 1], zero or less to disable
+   */
+  public void setCompactionThreshold(double ratio) {
+    this.compactionThreshold = ratio;
+  }
+
+  /**
+   * Gets the ratio of dead rows above which a compaction is needed.
+   * @return the compaction threshold, zero or less if disabled
+   */
+  public double getCompactionThreshold() {
+    return compactionThreshold;
+  }
+
+  /**
+   * Indicates if the ratio of dead rows exceeds the compaction threshold.
+   * @return true if the table should be compacted
+   */
+  public boolean needsCompaction() {
+    return compactionThreshold > 0 && rowTop >= MIN_COMPACTION_SIZE
+        && getDeletedRowCount() > compactionThreshold * rowTop;
+  }
+
+  /**
+   * Records a compaction: the live rows now are the rows 0 to
+   * getRowCount() - 1. The owning table has to move the values of its
+   * live rows, in increasing order, before calling this method.
+   */
+  public void compacted() {
+    rows.clear();
+    rows.set(0, rowCount);
+    freeCount = 0;
+    rowTop = rowCount;
+  }
+
+}
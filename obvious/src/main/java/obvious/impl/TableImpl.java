@@ -30,6 +30,7 @@ package obvious.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import obvious.ObviousException;
@@ -39,10 +40,23 @@ import obvious.data.Tuple;
 import obvious.data.event.TableListener;
 import obvious.data.util.IntIterator;
 import obvious.data.util.Predicate;
+import obvious.impl.index.ColumnIndex;
+import obvious.impl.index.TableIndexManager;
 
 
 /**
  * Example implementation of Interface Table.
+ * <p>
+ * Columns are stored in a list addressed by column index and the number of
+ * rows is cached, so positional accesses, getRowCount and isValueValid are
+ * constant-time. The name to index mapping is only used by the accessors
+ * taking a column name.
+ * </p>
+ * <p>
+ * Row ids are stable: a removed row is only marked dead and its id is reused
+ * by a later addition (see {@link RowManager RowManager}). Dead rows are
+ * squeezed out by {@link #compact() compact}.
+ * </p>
  * @author  Pierre-Luc Hemery.
  */
 public class TableImpl implements Table {
@@ -69,15 +83,25 @@ public class TableImpl implements Table {
   private boolean canAddRow = true;
 
   /**
-   * Columns of the table.
+   * Columns of the table indexed by column index.
    */
-  private Map<String, ArrayList<Object>> column;
+  private List<ArrayList<Object>> column;
 
   /**
    * Index of the columns of the table of the schema.
    */
   private Map<String, Integer> columnIndex;
 
+  /**
+   * Row ids of the table.
+   */
+  private RowManager rows;
+
+  /**
+   * Secondary indexes of the table, null until an index is created.
+   */
+  private TableIndexManager indexManager;
+
   /**
    * ArrayList of listeners.
    */
@@ -89,45 +113,76 @@ public class TableImpl implements Table {
    */
   public TableImpl(Schema schemaIn) {
     this.schema = schemaIn;
-    this.column = new HashMap<String, ArrayList<Object>>();
+    this.column = new ArrayList<ArrayList<Object>>();
     this.columnIndex = new HashMap<String, Integer>();
+    this.rows = new RowManager();
     this.listener = new ArrayList<TableListener>();
     for (int i = 0; i < schema.getColumnCount(); i++) {
-      String title = schema.getColumnName(i);
-      column.put(title, new ArrayList<Object>());
-      columnIndex.put(title, i);
+      column.add(new ArrayList<Object>());
+      columnIndex.put(schema.getColumnName(i), i);
+    }
+  }
+
+  /**
+   * Gets the index of a column from its name.
+   * @param field column name
+   * @return column index
+   */
+  private int indexOf(String field) {
+    Integer col = columnIndex.get(field);
+    if (col == null) {
+      throw new IllegalArgumentException("Unknown column: " + field);
+    }
+    return col;
+  }
+
+  /**
+   * Allocates a row id, growing the columns if it is a new one.
+   * @return id of the new row
+   */
+  private int allocateRow() {
+    int top = rows.getRowTop();
+    int row = rows.addRow();
+    if (row == top) {
+      for (ArrayList<Object> spottedArray : column) {
+        spottedArray.add(null);
+      }
     }
+    return row;
   }
 
   /**
    * Adds a row with default value.
+   * The new row may reuse the id of a removed row.
    * @return number of rows
    */
   public int addRow() {
     if (this.canAddRow()) {
-      for (Map.Entry<String, ArrayList<Object>> e : column.entrySet()) {
-        e.getValue().add(schema.getColumnDefault(
-            schema.getColumnIndex(e.getKey())));
+      int row = allocateRow();
+      for (int i = 0; i < column.size(); i++) {
+        column.get(i).set(row, schema.getColumnDefault(i));
       }
+      this.fireTableEvent(row, row, TableListener.ALL_COLUMN,
+          TableListener.INSERT);
     }
-    this.fireTableEvent(this.getRowCount() - 1, this.getRowCount() - 1,
-        TableListener.ALL_COLUMN, TableListener.INSERT);
     return this.getRowCount();
   }
 
   /**
    * Adds a row corresponding to the input tuple.
+   * The new row may reuse the id of a removed row.
    * @param tuple tuple to insert in the table
    * @return number of rows
    */
   public int addRow(Tuple tuple) {
     if (this.canAddRow()) {
-      for (Map.Entry<String, ArrayList<Object>> e : column.entrySet()) {
-        e.getValue().add(tuple.get(e.getKey()));
+      int row = allocateRow();
+      for (int i = 0; i < column.size(); i++) {
+        column.get(i).set(row, tuple.get(schema.getColumnName(i)));
       }
+      this.fireTableEvent(row, row, TableListener.ALL_COLUMN,
+          TableListener.INSERT);
     }
-    this.fireTableEvent(this.getRowCount() - 1, this.getRowCount() - 1,
-        TableListener.ALL_COLUMN, TableListener.INSERT);
     return this.getRowCount();
   }
 
@@ -207,14 +262,7 @@ public class TableImpl implements Table {
    * @return the number of rows
    */
   public int getRowCount() {
-    int maxArraySize = 0;
-    for (Map.Entry<String, ArrayList<Object>> e : column.entrySet()) {
-      ArrayList<Object> currentArray = (ArrayList<Object>) e.getValue();
-      if (currentArray.size() > maxArraySize) {
-        maxArraySize = currentArray.size();
-      }
-    }
-    return maxArraySize;
+    return rows.getRowCount();
   }
 
   /**
@@ -241,7 +289,7 @@ public class TableImpl implements Table {
    * @return value for this couple
    */
   public Object getValue(int rowId, String field) {
-    return column.get(field).get(rowId);
+    return column.get(indexOf(field)).get(rowId);
   }
 
   /**
@@ -251,12 +299,7 @@ public class TableImpl implements Table {
    * @return value for this couple
    */
   public Object getValue(int rowId, int col) {
-    for (Map.Entry<String, Integer> e : columnIndex.entrySet()) {
-      if (e.getValue() == col) {
-        return this.getValue(rowId, e.getKey());
-      }
-    }
-    return null;
+    return column.get(col).get(rowId);
   }
 
 
@@ -266,11 +309,7 @@ public class TableImpl implements Table {
    * @return true if the row is valid, false if it is not
    */
   public boolean isValidRow(int rowId) {
-    boolean isValid = false;
-    if (rowId < this.getRowCount()) {
-      isValid = true;
-    }
-    return isValid;
+    return rows.isValidRow(rowId);
   }
 
   /**
@@ -280,11 +319,7 @@ public class TableImpl implements Table {
    * @return true if the coordinates are valid
    */
   public boolean isValueValid(int rowId, int col) {
-    if (!this.isValidRow(rowId)) {
-      return false;
-    } else {
-      return columnIndex.containsValue(col);
-    }
+    return this.isValidRow(rowId) && col >= 0 && col < column.size();
   }
 
   /**
@@ -296,45 +331,111 @@ public class TableImpl implements Table {
    *
    */
   public void removeAllRows() {
-    if (this.canRemoveRow()) {
-      for (Map.Entry<String, ArrayList<Object>> e : column.entrySet()) {
-        ArrayList<Object> spottedArray = (ArrayList<Object>) e.getValue();
+    if (this.canRemoveRow() && rows.getRowTop() > 0) {
+      int oldTop = rows.getRowTop();
+      for (ArrayList<Object> spottedArray : column) {
         spottedArray.clear();
       }
+      rows.clear();
+      this.fireTableEvent(0, oldTop - 1, TableListener.ALL_COLUMN,
+          TableListener.DELETE);
     }
-    this.fireTableEvent(0, this.getRowCount() - 1, TableListener.ALL_COLUMN,
-        TableListener.DELETE);
   }
 
   /**
-  /* Removes a row in the schema's table.
+   * Removes a row in the schema's table.
+   * The row is marked dead, the ids of the other rows do not change. If a
+   * compaction threshold is set and exceeded, the table is compacted.
    * @param row row index
    * @return true if removes, else false.
    */
   public boolean removeRow(int row) {
     if (!this.canRemoveRow()) {
       return false;
-    } else if (this.isValidRow(row)) {
-      for (Map.Entry<String, ArrayList<Object>> e : column.entrySet()) {
-        ArrayList<?> spottedArray = (ArrayList<Object>) e.getValue();
-        spottedArray.remove(row);
+    } else if (rows.removeRow(row)) {
+      for (ArrayList<Object> spottedArray : column) {
+        spottedArray.set(row, null);
       }
       this.fireTableEvent(row, row, TableListener.ALL_COLUMN,
           TableListener.DELETE);
+      if (rows.needsCompaction()) {
+        this.compact();
+      }
       return true;
     } else {
       return false;
     }
   }
 
+  /**
+   * Squeezes out the removed rows: live rows are renumbered from 0 to
+   * getRowCount() - 1, keeping their order. Row ids held before the
+   * compaction are no longer valid, so a single event notifies that all
+   * the rows up to the previous highest row id have changed.
+   */
+  public void compact() {
+    int oldTop = rows.getRowTop();
+    if (rows.getDeletedRowCount() == 0) {
+      return;
+    }
+    int newRow = 0;
+    for (IntIterator it = rows.rowIterator(); it.hasNext(); newRow++) {
+      int row = it.nextInt();
+      if (row != newRow) {
+        for (ArrayList<Object> spottedArray : column) {
+          spottedArray.set(newRow, spottedArray.get(row));
+        }
+      }
+    }
+    for (ArrayList<Object> spottedArray : column) {
+      spottedArray.subList(newRow, spottedArray.size()).clear();
+      spottedArray.trimToSize();
+    }
+    rows.compacted();
+    this.fireTableEvent(0, oldTop - 1, TableListener.ALL_COLUMN,
+        TableListener.UPDATE);
+  }
+
+  /**
+   * Sets the ratio of removed rows above which the table is compacted by
+   * removeRow. Compaction renumbers the rows, so it is disabled by default.
+   * @param ratio ratio of removed rows in [0, 1], zero or less to disable
+   */
+  public void setCompactionThreshold(double ratio) {
+    rows.setCompactionThreshold(ratio);
+  }
+
+  /**
+   * Creates an index on a column. Once a column is indexed,
+   * {@link #rowIterator(Predicate) rowIterator} answers the predicates of
+   * obvious.impl.predicate on this column without scanning the table.
+   * @param field name of the column
+   * @return the created index
+   */
+  public ColumnIndex createIndex(String field) {
+    return getIndexManager().createIndex(field);
+  }
+
+  /**
+   * Gets the manager of the secondary indexes of the table, creating it
+   * if needed.
+   * @return the index manager
+   */
+  public TableIndexManager getIndexManager() {
+    if (indexManager == null) {
+      indexManager = new TableIndexManager(this);
+    }
+    return indexManager;
+  }
+
   /**
    * Gets an iterator over the row numbers of this table.
+   * The iterator reads the bitmap of live rows and does not allocate
+   * while iterating.
    * @return an iterator over the rows of this table
    */
   public IntIterator rowIterator() {
-    IntIterator intIterator = new IntIteratorImpl(
-        columnIndex.values().iterator());
-    return intIterator;
+    return rows.rowIterator();
   }
 
   /**
@@ -344,6 +445,9 @@ public class TableImpl implements Table {
    * @return an iterator over the rows of this table.
    */
   public IntIterator rowIterator(Predicate pred) {
+    if (indexManager != null) {
+      return indexManager.rowIterator(pred);
+    }
     return new FilterIntIterator(this, pred);
   }
 
@@ -362,7 +466,7 @@ public class TableImpl implements Table {
    * @param val value to set
    */
   public void set(int rowId, String field, Object val) {
-    column.get(field).set(rowId, val);
+    this.set(rowId, indexOf(field), val);
   }
 
   /**
@@ -372,11 +476,7 @@ public class TableImpl implements Table {
    * @param val value to set
    */
   public void set(int rowId, int col, Object val) {
-    for (Map.Entry<String, Integer> e : columnIndex.entrySet()) {
-      if (e.getValue() == col) {
-        this.set(rowId, e.getKey(), val);
-      }
-    }
+    column.get(col).set(rowId, val);
     this.fireTableEvent(rowId, rowId, col, TableListener.UPDATE);
   }
 
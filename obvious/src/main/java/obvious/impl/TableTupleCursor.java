@@ -0,0 +1,111 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl;
+
+import obvious.data.Table;
+import obvious.data.Tuple;
+import obvious.data.util.IntIterator;
+import obvious.data.util.TupleCursor;
+
+/**
+ * An implementation of the interface TupleCursor over the row iterator of
+ * any table. A single TupleImpl is moved from row to row.
+ * @author obvious
+ *
+ */
+public class TableTupleCursor implements TupleCursor {
+
+  /**
+   * Scanned table.
+   */
+  private Table table;
+
+  /**
+   * Iterator over the rows of the table.
+   */
+  private IntIterator it;
+
+  /**
+   * Reused tuple, null before the first row.
+   */
+  private TupleImpl tuple;
+
+  /**
+   * Current row.
+   */
+  private int row = -1;
+
+  /**
+   * Constructor.
+   * @param t scanned table
+   */
+  public TableTupleCursor(Table t) {
+    this.table = t;
+    this.it = t.rowIterator();
+  }
+
+  /**
+   * Moves the cursor to the next row.
+   * @return false if there is no more row
+   */
+  public boolean next() {
+    if (!it.hasNext()) {
+      return false;
+    }
+    row = it.nextInt();
+    if (tuple == null) {
+      tuple = new TupleImpl(table, row);
+    } else {
+      tuple.setRow(row);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the index of the current row.
+   * @return the row index
+   */
+  public int getRow() {
+    return row;
+  }
+
+  /**
+   * Gets a view on the current row.
+   * @return a tuple valid until the next move of the cursor
+   */
+  public Tuple getTuple() {
+    return tuple;
+  }
+
+  /**
+   * Releases the resources held by the cursor. Nothing to release here.
+   */
+  public void close() {
+  }
+
+}
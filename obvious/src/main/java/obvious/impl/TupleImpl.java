@@ -28,8 +28,6 @@
 package obvious.impl;
 
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 
 import obvious.data.Schema;
 import obvious.data.Table;
@@ -54,11 +52,6 @@ public class TupleImpl implements Tuple  {
    */
   private int row = -1;
 
-  /**
-   * Tuple modelisation.
-   */
-  private Map<Integer, Object> tuple;
-
   /**
    * Constructor from a table.
    * @param tableIn reference table for this tuple.
@@ -67,11 +60,6 @@ public class TupleImpl implements Tuple  {
   public TupleImpl(Table tableIn, int rowId) {
     this.table = tableIn;
     this.row = rowId;
-    tuple = new HashMap<Integer, Object>();
-    for (int i = 0; i < this.table.getSchema().getColumnCount(); i++) {
-      Object data = this.table.getValue(rowId, i);
-      tuple.put(i, data);
-    }
   }
 
   /**
@@ -88,12 +76,6 @@ public class TupleImpl implements Tuple  {
     }
     this.table = tableIn;
     this.row = 0;
-    tuple = new HashMap<Integer, Object>();
-    for (int i = 0; i < this.table.getSchema().getColumnCount(); i++) {
-      Object data = this.table.getValue(0, i);
-      tuple.put(i, data);
-    }
-
   }
 
   /**
@@ -121,6 +103,16 @@ public class TupleImpl implements Tuple  {
   public int getRow() {
     return this.row;
   }
+  /**
+   * Moves this tuple to another row of its backing table. It allows a single
+   * tuple to be used as a cursor over the rows of a table, without creating
+   * a new tuple for each row.
+   * @param rowId row now represented by this tuple
+   */
+  public void setRow(int rowId) {
+    this.row = rowId;
+  }
+
   /**
    * Indicates if this Tuple is valid. Trying to get or set values on an
    * invalid Tuple will result in a runtime exception.
@@ -0,0 +1,242 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.column;
+
+import java.util.BitSet;
+
+/**
+ * Base class for columns. It manages the (lazily allocated) bitmap of
+ * missing values and provides default implementations of the typed
+ * accessors that throw an UnsupportedOperationException.
+ * @author obvious
+ *
+ */
+public abstract class AbstractColumn implements Column {
+
+  /**
+   * Minimal capacity of a column.
+   */
+  protected static final int MIN_CAPACITY = 16;
+
+  /**
+   * Type of the column.
+   */
+  private Class<?> type;
+
+  /**
+   * Rows whose value is missing, null until a missing value is set.
+   */
+  private BitSet nulls;
+
+  /**
+   * Constructor.
+   * @param columnType type of the column
+   */
+  protected AbstractColumn(Class<?> columnType) {
+    this.type = columnType;
+  }
+
+  /**
+   * Gets the type of the values stored in this column.
+   * @return the type of the column
+   */
+  public Class<?> getColumnType() {
+    return this.type;
+  }
+
+  /**
+   * Computes the new capacity of an array that has to hold at least
+   * the given number of rows.
+   * @param current current capacity
+   * @param capacity requested capacity
+   * @return the new capacity
+   */
+  protected static int grow(int current, int capacity) {
+    int newCapacity = Math.max(MIN_CAPACITY, current + (current >> 1));
+    return Math.max(newCapacity, capacity);
+  }
+
+  /**
+   * Indicates if the value for a row is missing (null).
+   * @param row row index
+   * @return true if the value is null
+   */
+  public boolean isNull(int row) {
+    return nulls != null && nulls.get(row);
+  }
+
+  /**
+   * Marks a value as missing or present.
+   * @param row row index
+   * @param isNull true if the value is missing
+   */
+  protected void setNull(int row, boolean isNull) {
+    if (isNull) {
+      if (nulls == null) {
+        nulls = new BitSet();
+      }
+      nulls.set(row);
+    } else if (nulls != null) {
+      nulls.clear(row);
+    }
+  }
+
+  /**
+   * Copies the missing value flag of a row to another row.
+   * @param from source row index
+   * @param to destination row index
+   */
+  protected void moveNull(int from, int to) {
+    if (nulls != null) {
+      nulls.set(to, nulls.get(from));
+    }
+  }
+
+  /**
+   * Builds the exception thrown when a value can't be stored in this column.
+   * @param val rejected value
+   * @return an IllegalArgumentException
+   */
+  protected IllegalArgumentException badValue(Object val) {
+    return new IllegalArgumentException("Can't store a "
+        + val.getClass().getName() + " in a column of type "
+        + type.getName());
+  }
+
+  /**
+   * Converts a number to a long, rejecting values that are not integral or
+   * that don't fit in a long.
+   * @param val number to convert
+   * @return the value as a long
+   * @throws IllegalArgumentException if the conversion loses information
+   */
+  protected long toLong(Number val) {
+    long l = val.longValue();
+    if (!(val instanceof Long || val instanceof Integer
+        || val instanceof Short || val instanceof Byte)
+        && ((double) l != val.doubleValue() || l == Long.MAX_VALUE)) {
+      throw lossyValue(val);
+    }
+    return l;
+  }
+
+  /**
+   * Builds the exception thrown when a value can't be stored in this column
+   * without loss.
+   * @param val rejected value
+   * @return an IllegalArgumentException
+   */
+  protected IllegalArgumentException lossyValue(Object val) {
+    return new IllegalArgumentException("Can't store " + val
+        + " in a column of type " + type.getName() + " without loss");
+  }
+
+  /**
+   * Builds the exception thrown by the accessors this column doesn't
+   * support.
+   * @param accessor name of the accessor
+   * @return an UnsupportedOperationException
+   */
+  protected UnsupportedOperationException unsupported(String accessor) {
+    return new UnsupportedOperationException(accessor
+        + " is not supported by a column of type " + type.getName());
+  }
+
+  /**
+   * By default, throws an UnsupportedOperationException.
+   * @param row row index
+   * @return nothing
+   */
+  public int getInt(int row) {
+    throw unsupported("getInt");
+  }
+
+  /**
+   * By default, throws an UnsupportedOperationException.
+   * @param row row index
+   * @return nothing
+   */
+  public long getLong(int row) {
+    throw unsupported("getLong");
+  }
+
+  /**
+   * By default, throws an UnsupportedOperationException.
+   * @param row row index
+   * @return nothing
+   */
+  public double getDouble(int row) {
+    throw unsupported("getDouble");
+  }
+
+  /**
+   * By default, throws an UnsupportedOperationException.
+   * @param row row index
+   * @return nothing
+   */
+  public boolean getBoolean(int row) {
+    throw unsupported("getBoolean");
+  }
+
+  /**
+   * By default, throws an UnsupportedOperationException.
+   * @param row row index
+   * @param val value to set
+   */
+  public void setInt(int row, int val) {
+    throw unsupported("setInt");
+  }
+
+  /**
+   * By default, throws an UnsupportedOperationException.
+   * @param row row index
+   * @param val value to set
+   */
+  public void setLong(int row, long val) {
+    throw unsupported("setLong");
+  }
+
+  /**
+   * By default, throws an UnsupportedOperationException.
+   * @param row row index
+   * @param val value to set
+   */
+  public void setDouble(int row, double val) {
+    throw unsupported("setDouble");
+  }
+
+  /**
+   * By default, throws an UnsupportedOperationException.
+   * @param row row index
+   * @param val value to set
+   */
+  public void setBoolean(int row, boolean val) {
+    throw unsupported("setBoolean");
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.column;
+
+/**
+ * Interface Column. A column stores the values of a single data field
+ * of a table in a dense, row-indexed storage.
+ * <p>
+ * Typed accessors (getInt, getDouble, ...) let callers read or write
+ * values without boxing when the underlying storage is primitive. Columns
+ * do not know their row count, the owning table is in charge of it and of
+ * growing the columns through {@link #ensureCapacity(int) ensureCapacity}.
+ * </p>
+ * @author obvious
+ *
+ */
+public interface Column {
+
+  /**
+   * Gets the type of the values stored in this column.
+   * @return the type of the column
+   */
+  Class<?> getColumnType();
+
+  /**
+   * Gets the number of rows this column can hold without reallocation.
+   * @return the capacity of the column
+   */
+  int getCapacity();
+
+  /**
+   * Makes sure the column can hold at least the given number of rows.
+   * @param capacity minimal number of rows
+   */
+  void ensureCapacity(int capacity);
+
+  /**
+   * Gets a value as an Object.
+   * @param row row index
+   * @return the value, or null if it is missing
+   */
+  Object get(int row);
+
+  /**
+   * Sets a value from an Object.
+   * @param row row index
+   * @param val value to set, null marks the value as missing
+   */
+  void set(int row, Object val);
+
+  /**
+   * Indicates if the value for a row is missing (null).
+   * @param row row index
+   * @return true if the value is null
+   */
+  boolean isNull(int row);
+
+  /**
+   * Gets a value as an int.
+   * @param row row index
+   * @return the value as an int
+   */
+  int getInt(int row);
+
+  /**
+   * Gets a value as a long.
+   * @param row row index
+   * @return the value as a long
+   */
+  long getLong(int row);
+
+  /**
+   * Gets a value as a double.
+   * @param row row index
+   * @return the value as a double
+   */
+  double getDouble(int row);
+
+  /**
+   * Gets a value as a boolean.
+   * @param row row index
+   * @return the value as a boolean
+   */
+  boolean getBoolean(int row);
+
+  /**
+   * Sets a value from an int.
+   * @param row row index
+   * @param val value to set
+   */
+  void setInt(int row, int val);
+
+  /**
+   * Sets a value from a long.
+   * @param row row index
+   * @param val value to set
+   */
+  void setLong(int row, long val);
+
+  /**
+   * Sets a value from a double.
+   * @param row row index
+   * @param val value to set
+   */
+  void setDouble(int row, double val);
+
+  /**
+   * Sets a value from a boolean.
+   * @param row row index
+   * @param val value to set
+   */
+  void setBoolean(int row, boolean val);
+
+  /**
+   * Copies the value of a row to another row. It is used to compact the
+   * table owning the column.
+   * @param from source row index
+   * @param to destination row index
+   */
+  void move(int from, int to);
+
+}
@@ -0,0 +1,72 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.column;
+
+/**
+ * Creates the column storage best suited to a column type.
+ * <ul>
+ * <li>Integer and int: {@link IntColumn IntColumn}</li>
+ * <li>Long and long: {@link LongColumn LongColumn}</li>
+ * <li>Double and double: {@link DoubleColumn DoubleColumn}</li>
+ * <li>Boolean and boolean: {@link BooleanColumn BooleanColumn}</li>
+ * <li>String: {@link StringColumn StringColumn}</li>
+ * <li>any other type: {@link ObjectColumn ObjectColumn}</li>
+ * </ul>
+ * @author obvious
+ *
+ */
+public final class ColumnFactory {
+
+  /**
+   * Private constructor.
+   */
+  private ColumnFactory() { }
+
+  /**
+   * Creates a column for the given type.
+   * @param type type of the column, as given by the schema
+   * @param capacity initial capacity
+   * @return a new column
+   */
+  public static Column createColumn(Class<?> type, int capacity) {
+    if (type == Integer.class || type == int.class) {
+      return new IntColumn(capacity);
+    } else if (type == Long.class || type == long.class) {
+      return new LongColumn(capacity);
+    } else if (type == Double.class || type == double.class) {
+      return new DoubleColumn(capacity);
+    } else if (type == Boolean.class || type == boolean.class) {
+      return new BooleanColumn(capacity);
+    } else if (type == String.class) {
+      return new StringColumn(capacity);
+    } else {
+      return new ObjectColumn(type == null ? Object.class : type, capacity);
+    }
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.column;
+
+/**
+ * A column storing double values in a primitive array.
+ * @author obvious
+ *
+ */
+public class DoubleColumn extends AbstractColumn {
+
+  /**
+   * Values of the column.
+   */
+  private double[] data;
+
+  /**
+   * Constructor.
+   * @param capacity initial capacity
+   */
+  public DoubleColumn(int capacity) {
+    super(Double.class);
+    this.data = new double[capacity];
+  }
+
+  /**
+   * Gets the number of rows this column can hold without reallocation.
+   * @return the capacity of the column
+   */
+  public int getCapacity() {
+    return data.length;
+  }
+
+  /**
+   * Makes sure the column can hold at least the given number of rows.
+   * @param capacity minimal number of rows
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > data.length) {
+      double[] newData = new double[grow(data.length, capacity)];
+      System.arraycopy(data, 0, newData, 0, data.length);
+      data = newData;
+    }
+  }
+
+  /**
+   * Gets a value as an Object.
+   * @param row row index
+   * @return the value, or null if it is missing
+   */
+  public Object get(int row) {
+    return isNull(row) ? null : Double.valueOf(data[row]);
+  }
+
+  /**
+   * Sets a value from an Object.
+   * @param row row index
+   * @param val value to set, null marks the value as missing
+   */
+  public void set(int row, Object val) {
+    if (val == null) {
+      data[row] = 0;
+      setNull(row, true);
+    } else if (val instanceof Number) {
+      setDouble(row, ((Number) val).doubleValue());
+    } else {
+      throw badValue(val);
+    }
+  }
+
+  /**
+   * Gets a value as a double.
+   * @param row row index
+   * @return the value as a double
+   */
+  @Override
+  public double getDouble(int row) {
+    return data[row];
+  }
+
+  /**
+   * Sets a value from an int.
+   * @param row row index
+   * @param val value to set
+   */
+  @Override
+  public void setInt(int row, int val) {
+    setDouble(row, val);
+  }
+
+  /**
+   * Sets a value from a long.
+   * @param row row index
+   * @param val value to set
+   */
+  @Override
+  public void setLong(int row, long val) {
+    setDouble(row, val);
+  }
+
+  /**
+   * Sets a value from a double.
+   * @param row row index
+   * @param val value to set
+   */
+  @Override
+  public void setDouble(int row, double val) {
+    data[row] = val;
+    setNull(row, false);
+  }
+
+  /**
+   * Copies the value of a row to another row.
+   * @param from source row index
+   * @param to destination row index
+   */
+  public void move(int from, int to) {
+    data[to] = data[from];
+    moveNull(from, to);
+  }
+
+}
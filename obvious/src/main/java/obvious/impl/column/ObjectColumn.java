@@ -0,0 +1,150 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.column;
+
+/**
+ * A column storing arbitrary objects. It is used for the types that do not
+ * have a specialized storage.
+ * @author obvious
+ *
+ */
+public class ObjectColumn extends AbstractColumn {
+
+  /**
+   * Values of the column.
+   */
+  private Object[] data;
+
+  /**
+   * Constructor.
+   * @param columnType type of the column
+   * @param capacity initial capacity
+   */
+  public ObjectColumn(Class<?> columnType, int capacity) {
+    super(columnType);
+    this.data = new Object[capacity];
+  }
+
+  /**
+   * Gets the number of rows this column can hold without reallocation.
+   * @return the capacity of the column
+   */
+  public int getCapacity() {
+    return data.length;
+  }
+
+  /**
+   * Makes sure the column can hold at least the given number of rows.
+   * @param capacity minimal number of rows
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > data.length) {
+      Object[] newData = new Object[grow(data.length, capacity)];
+      System.arraycopy(data, 0, newData, 0, data.length);
+      data = newData;
+    }
+  }
+
+  /**
+   * Gets a value as an Object.
+   * @param row row index
+   * @return the value, or null if it is missing
+   */
+  public Object get(int row) {
+    return data[row];
+  }
+
+  /**
+   * Sets a value from an Object.
+   * @param row row index
+   * @param val value to set
+   */
+  public void set(int row, Object val) {
+    data[row] = val;
+  }
+
+  /**
+   * Indicates if the value for a row is missing (null).
+   * @param row row index
+   * @return true if the value is null
+   */
+  @Override
+  public boolean isNull(int row) {
+    return data[row] == null;
+  }
+
+  /**
+   * Gets a value as an int.
+   * @param row row index
+   * @return the value as an int
+   */
+  @Override
+  public int getInt(int row) {
+    return ((Number) data[row]).intValue();
+  }
+
+  /**
+   * Gets a value as a long.
+   * @param row row index
+   * @return the value as a long
+   */
+  @Override
+  public long getLong(int row) {
+    return ((Number) data[row]).longValue();
+  }
+
+  /**
+   * Gets a value as a double.
+   * @param row row index
+   * @return the value as a double
+   */
+  @Override
+  public double getDouble(int row) {
+    return ((Number) data[row]).doubleValue();
+  }
+
+  /**
+   * Gets a value as a boolean.
+   * @param row row index
+   * @return the value as a boolean
+   */
+  @Override
+  public boolean getBoolean(int row) {
+    return (Boolean) data[row];
+  }
+
+  /**
+   * Copies the value of a row to another row.
+   * @param from source row index
+   * @param to destination row index
+   */
+  public void move(int from, int to) {
+    data[to] = data[from];
+  }
+
+}
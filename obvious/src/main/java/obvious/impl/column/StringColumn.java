@@ -0,0 +1,213 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.column;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dictionary-encoded column of strings. Each distinct string is stored
+ * once and rows only hold an int code referencing it. Missing values are
+ * encoded with the code -1.
+ * <p>
+ * The dictionary only grows: codes of strings that are no longer used
+ * by any row are kept.
+ * </p>
+ * @author obvious
+ *
+ */
+public class StringColumn extends AbstractColumn {
+
+  /**
+   * Code used for missing values.
+   */
+  public static final int NULL_CODE = -1;
+
+  /**
+   * Codes of the column.
+   */
+  private int[] codes;
+
+  /**
+   * Distinct values of the column indexed by code.
+   */
+  private ArrayList<String> dictionary;
+
+  /**
+   * Codes of the distinct values of the column.
+   */
+  private Map<String, Integer> codeIndex;
+
+  /**
+   * Constructor.
+   * @param capacity initial capacity
+   */
+  public StringColumn(int capacity) {
+    super(String.class);
+    this.codes = new int[capacity];
+    this.dictionary = new ArrayList<String>();
+    this.codeIndex = new HashMap<String, Integer>();
+  }
+
+  /**
+   * Gets the number of rows this column can hold without reallocation.
+   * @return the capacity of the column
+   */
+  public int getCapacity() {
+    return codes.length;
+  }
+
+  /**
+   * Makes sure the column can hold at least the given number of rows.
+   * @param capacity minimal number of rows
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > codes.length) {
+      int[] newCodes = new int[grow(codes.length, capacity)];
+      System.arraycopy(codes, 0, newCodes, 0, codes.length);
+      codes = newCodes;
+    }
+  }
+
+  /**
+   * Gets a value as an Object.
+   * @param row row index
+   * @return the value, or null if it is missing
+   */
+  public Object get(int row) {
+    return getString(row);
+  }
+
+  /**
+   * Gets a value as a String.
+   * @param row row index
+   * @return the value, or null if it is missing
+   */
+  public String getString(int row) {
+    int code = codes[row];
+    return code == NULL_CODE ? null : dictionary.get(code);
+  }
+
+  /**
+   * Sets a value from an Object.
+   * @param row row index
+   * @param val value to set, null marks the value as missing
+   */
+  public void set(int row, Object val) {
+    if (val == null || val instanceof String) {
+      setString(row, (String) val);
+    } else {
+      throw badValue(val);
+    }
+  }
+
+  /**
+   * Sets a value from a String.
+   * @param row row index
+   * @param val value to set, null marks the value as missing
+   */
+  public void setString(int row, String val) {
+    codes[row] = encode(val);
+  }
+
+  /**
+   * Indicates if the value for a row is missing (null).
+   * @param row row index
+   * @return true if the value is null
+   */
+  @Override
+  public boolean isNull(int row) {
+    return codes[row] == NULL_CODE;
+  }
+
+  /**
+   * Gets the dictionary code of a value.
+   * @param row row index
+   * @return the code of the value, or NULL_CODE if it is missing
+   */
+  public int getCode(int row) {
+    return codes[row];
+  }
+
+  /**
+   * Gets the code of a string in the dictionary of this column.
+   * @param val a string
+   * @return the code of the string, or NULL_CODE if it is not in
+   * the dictionary
+   */
+  public int getCode(String val) {
+    Integer code = val == null ? null : codeIndex.get(val);
+    return code == null ? NULL_CODE : code;
+  }
+
+  /**
+   * Gets the string corresponding to a dictionary code.
+   * @param code a dictionary code
+   * @return the corresponding string
+   */
+  public String decode(int code) {
+    return code == NULL_CODE ? null : dictionary.get(code);
+  }
+
+  /**
+   * Gets the number of distinct strings stored in the dictionary.
+   * @return the size of the dictionary
+   */
+  public int getDictionarySize() {
+    return dictionary.size();
+  }
+
+  /**
+   * Gets the code of a string, adding it to the dictionary if needed.
+   * @param val a string
+   * @return the code of the string
+   */
+  private int encode(String val) {
+    if (val == null) {
+      return NULL_CODE;
+    }
+    Integer code = codeIndex.get(val);
+    if (code == null) {
+      code = dictionary.size();
+      dictionary.add(val);
+      codeIndex.put(val, code);
+    }
+    return code;
+  }
+
+  /**
+   * Copies the value of a row to another row.
+   * @param from source row index
+   * @param to destination row index
+   */
+  public void move(int from, int to) {
+    codes[to] = codes[from];
+  }
+
+}
@@ -0,0 +1,437 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Topology index of a network in compressed sparse row form.
+ * <p>
+ * Nodes and edges are identified by integers. For each node, the outgoing
+ * and incoming edges are stored contiguously in two arrays addressed by
+ * offset arrays, so that the edges of a node are found in time
+ * proportional to its degree. Removed edges are only masked; added edges
+ * are kept in pending lists, one per node and direction. Once the pending
+ * and masked edges become numerous, a rebuild merges them into the arrays,
+ * so that loading or editing a network does not rebuild the arrays at each
+ * step, and queries stay proportional to the degree in the meantime.
+ * </p>
+ * @author obvious
+ *
+ */
+public class AdjacencyIndex {
+
+  /**
+   * Minimal number of pending and masked edges triggering a rebuild.
+   */
+  private static final int MIN_STALE = 64;
+
+  /**
+   * Source node of each edge.
+   */
+  private int[] sources = new int[16];
+
+  /**
+   * Target node of each edge.
+   */
+  private int[] targets = new int[16];
+
+  /**
+   * Valid edges.
+   */
+  private BitSet valid = new BitSet();
+
+  /**
+   * Valid edges stored in the compressed arrays.
+   */
+  private BitSet built = new BitSet();
+
+  /**
+   * Number of valid edges.
+   */
+  private int edgeCount;
+
+  /**
+   * Number of edges added since the last rebuild and still valid.
+   */
+  private int pendingCount;
+
+  /**
+   * Number of edges removed from the compressed arrays since the last
+   * rebuild, which are masked but still scanned.
+   */
+  private int maskedCount;
+
+  /**
+   * First pending edge whose source is each node, -1 if there is none.
+   */
+  private int[] pendingOut = new int[0];
+
+  /**
+   * First pending edge whose target is each node, -1 if there is none.
+   */
+  private int[] pendingIn = new int[0];
+
+  /**
+   * Next pending edge with the same source as each pending edge.
+   */
+  private int[] nextOut = new int[16];
+
+  /**
+   * Next pending edge with the same target as each pending edge.
+   */
+  private int[] nextIn = new int[16];
+
+  /**
+   * Number of nodes covered by the offset arrays.
+   */
+  private int builtNodeCount;
+
+  /**
+   * Offsets of the outgoing edges of each node in outEdges.
+   */
+  private int[] outOffsets = new int[1];
+
+  /**
+   * Outgoing edges grouped by source node.
+   */
+  private int[] outEdges = new int[0];
+
+  /**
+   * Offsets of the incoming edges of each node in inEdges.
+   */
+  private int[] inOffsets = new int[1];
+
+  /**
+   * Incoming edges grouped by target node.
+   */
+  private int[] inEdges = new int[0];
+
+  /**
+   * Adds an edge.
+   * @param edge edge id, not already used by a valid edge
+   * @param source source node id
+   * @param target target node id
+   */
+  public void addEdge(int edge, int source, int target) {
+    if (edge < 0 || source < 0 || target < 0) {
+      throw new IllegalArgumentException("Negative node or edge id");
+    } else if (valid.get(edge)) {
+      throw new IllegalArgumentException("Edge " + edge + " already exists");
+    }
+    if (edge >= sources.length) {
+      int capacity = Math.max(edge + 1, sources.length * 2);
+      sources = grow(sources, capacity);
+      targets = grow(targets, capacity);
+      nextOut = grow(nextOut, capacity);
+      nextIn = grow(nextIn, capacity);
+    }
+    int nodeCount = Math.max(source, target) + 1;
+    if (nodeCount > pendingOut.length) {
+      int capacity = Math.max(nodeCount, pendingOut.length * 2);
+      pendingOut = growHeads(pendingOut, capacity);
+      pendingIn = growHeads(pendingIn, capacity);
+    }
+    sources[edge] = source;
+    targets[edge] = target;
+    valid.set(edge);
+    edgeCount++;
+    nextOut[edge] = pendingOut[source];
+    pendingOut[source] = edge;
+    nextIn[edge] = pendingIn[target];
+    pendingIn[target] = edge;
+    pendingCount++;
+  }
+
+  /**
+   * Removes an edge.
+   * @param edge edge id
+   * @return true if the edge existed
+   */
+  public boolean removeEdge(int edge) {
+    if (!isValidEdge(edge)) {
+      return false;
+    }
+    valid.clear(edge);
+    edgeCount--;
+    if (built.get(edge)) {
+      built.clear(edge);
+      maskedCount++;
+    } else {
+      pendingOut[sources[edge]] = unlink(pendingOut[sources[edge]], edge,
+          nextOut);
+      pendingIn[targets[edge]] = unlink(pendingIn[targets[edge]], edge,
+          nextIn);
+      pendingCount--;
+    }
+    return true;
+  }
+
+  /**
+   * Removes an edge from a pending list.
+   * @param head first edge of the list
+   * @param edge the removed edge
+   * @param next links of the list
+   * @return the new first edge of the list
+   */
+  private static int unlink(int head, int edge, int[] next) {
+    if (head == edge) {
+      return next[edge];
+    }
+    for (int e = head; next[e] >= 0; e = next[e]) {
+      if (next[e] == edge) {
+        next[e] = next[edge];
+        break;
+      }
+    }
+    return head;
+  }
+
+  /**
+   * Removes all the edges.
+   */
+  public void clear() {
+    valid.clear();
+    built.clear();
+    edgeCount = 0;
+    pendingCount = 0;
+    maskedCount = 0;
+    pendingOut = new int[0];
+    pendingIn = new int[0];
+    builtNodeCount = 0;
+    outOffsets = new int[1];
+    outEdges = new int[0];
+    inOffsets = new int[1];
+    inEdges = new int[0];
+  }
+
+  /**
+   * Indicates if an edge exists.
+   * @param edge edge id
+   * @return true if the edge exists
+   */
+  public boolean isValidEdge(int edge) {
+    return edge >= 0 && valid.get(edge);
+  }
+
+  /**
+   * Gets the number of edges.
+   * @return the number of edges
+   */
+  public int getEdgeCount() {
+    return edgeCount;
+  }
+
+  /**
+   * Gets the source node of an edge.
+   * @param edge a valid edge id
+   * @return the source node id, -1 if the edge does not exist
+   */
+  public int getSource(int edge) {
+    return isValidEdge(edge) ? sources[edge] : -1;
+  }
+
+  /**
+   * Gets the target node of an edge.
+   * @param edge a valid edge id
+   * @return the target node id, -1 if the edge does not exist
+   */
+  public int getTarget(int edge) {
+    return isValidEdge(edge) ? targets[edge] : -1;
+  }
+
+  /**
+   * Gets the edges whose source is a node.
+   * @param node node id
+   * @return edge ids
+   */
+  public int[] getOutEdges(int node) {
+    return collect(node, true);
+  }
+
+  /**
+   * Gets the edges whose target is a node.
+   * @param node node id
+   * @return edge ids
+   */
+  public int[] getInEdges(int node) {
+    return collect(node, false);
+  }
+
+  /**
+   * Gets the number of edges whose source is a node.
+   * @param node node id
+   * @return the out degree
+   */
+  public int getOutDegree(int node) {
+    return getOutEdges(node).length;
+  }
+
+  /**
+   * Gets the number of edges whose target is a node.
+   * @param node node id
+   * @return the in degree
+   */
+  public int getInDegree(int node) {
+    return getInEdges(node).length;
+  }
+
+  /**
+   * Gets an edge from a node to another.
+   * @param source source node id
+   * @param target target node id
+   * @return an edge id, -1 if there is none
+   */
+  public int getEdge(int source, int target) {
+    for (int edge : getOutEdges(source)) {
+      if (targets[edge] == target) {
+        return edge;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the number of edges added or removed since the last rebuild.
+   * @return the number of pending and masked edges
+   */
+  public int getStaleCount() {
+    return pendingCount + maskedCount;
+  }
+
+  /**
+   * Rebuilds the compressed arrays from the valid edges. It is called
+   * automatically when the pending and masked edges exceed a sixteenth of
+   * the edges.
+   */
+  public void rebuild() {
+    int nodeCount = 0;
+    for (int e = valid.nextSetBit(0); e >= 0; e = valid.nextSetBit(e + 1)) {
+      nodeCount = Math.max(nodeCount, Math.max(sources[e], targets[e]) + 1);
+    }
+    outOffsets = new int[nodeCount + 1];
+    inOffsets = new int[nodeCount + 1];
+    for (int e = valid.nextSetBit(0); e >= 0; e = valid.nextSetBit(e + 1)) {
+      outOffsets[sources[e] + 1]++;
+      inOffsets[targets[e] + 1]++;
+    }
+    for (int n = 0; n < nodeCount; n++) {
+      outOffsets[n + 1] += outOffsets[n];
+      inOffsets[n + 1] += inOffsets[n];
+    }
+    outEdges = new int[edgeCount];
+    inEdges = new int[edgeCount];
+    int[] outFill = new int[nodeCount];
+    int[] inFill = new int[nodeCount];
+    System.arraycopy(outOffsets, 0, outFill, 0, nodeCount);
+    System.arraycopy(inOffsets, 0, inFill, 0, nodeCount);
+    for (int e = valid.nextSetBit(0); e >= 0; e = valid.nextSetBit(e + 1)) {
+      outEdges[outFill[sources[e]]++] = e;
+      inEdges[inFill[targets[e]]++] = e;
+    }
+    builtNodeCount = nodeCount;
+    built = (BitSet) valid.clone();
+    pendingCount = 0;
+    maskedCount = 0;
+    Arrays.fill(pendingOut, -1);
+    Arrays.fill(pendingIn, -1);
+  }
+
+  /**
+   * Collects the edges of a node from the compressed arrays and the pending
+   * lists of the node.
+   * @param node node id
+   * @param out true for the outgoing edges, false for the incoming ones
+   * @return edge ids
+   */
+  private int[] collect(int node, boolean out) {
+    if (getStaleCount() > Math.max(MIN_STALE, edgeCount / 16)) {
+      rebuild();
+    }
+    int[] offsets = out ? outOffsets : inOffsets;
+    int[] edges = out ? outEdges : inEdges;
+    int[] heads = out ? pendingOut : pendingIn;
+    int[] next = out ? nextOut : nextIn;
+    if (node < 0) {
+      return new int[0];
+    }
+    int start = 0;
+    int end = 0;
+    if (node < builtNodeCount) {
+      start = offsets[node];
+      end = offsets[node + 1];
+    }
+    int pendingDegree = 0;
+    int head = node < heads.length ? heads[node] : -1;
+    for (int e = head; e >= 0; e = next[e]) {
+      pendingDegree++;
+    }
+    int[] result = new int[end - start + pendingDegree];
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      if (built.get(edges[i])) {
+        result[count++] = edges[i];
+      }
+    }
+    for (int e = head; e >= 0; e = next[e]) {
+      result[count++] = e;
+    }
+    if (count < result.length) {
+      int[] trimmed = new int[count];
+      System.arraycopy(result, 0, trimmed, 0, count);
+      return trimmed;
+    }
+    return result;
+  }
+
+  /**
+   * Grows an array.
+   * @param array an array
+   * @param capacity new capacity
+   * @return a copy of the array with the new capacity
+   */
+  private static int[] grow(int[] array, int capacity) {
+    int[] copy = new int[capacity];
+    System.arraycopy(array, 0, copy, 0, array.length);
+    return copy;
+  }
+
+  /**
+   * Grows an array of pending list heads, new nodes having empty lists.
+   * @param heads an array of list heads
+   * @param capacity new capacity
+   * @return a copy of the array with the new capacity
+   */
+  private static int[] growHeads(int[] heads, int capacity) {
+    int[] copy = grow(heads, capacity);
+    Arrays.fill(copy, heads.length, capacity, -1);
+    return copy;
+  }
+
+}
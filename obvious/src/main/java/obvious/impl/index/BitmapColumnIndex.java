@@ -0,0 +1,252 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.index;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import obvious.data.Table;
+import obvious.data.util.IntIterator;
+import obvious.impl.predicate.ComparisonPredicate;
+
+/**
+ * Index keeping one bitmap of rows per distinct value of a column.
+ * <p>
+ * It suits columns with few distinct values (categories, flags): an
+ * equality is answered by returning a bitmap, a range by merging the
+ * bitmaps of the matching values. The value of each indexed row is kept so
+ * that removed rows can be unindexed even though their cells were cleared.
+ * </p>
+ * @author obvious
+ *
+ */
+public class BitmapColumnIndex implements ColumnIndex {
+
+  /**
+   * Indexed table.
+   */
+  private Table table;
+
+  /**
+   * Indexed column.
+   */
+  private int col;
+
+  /**
+   * Bitmap of the rows for each distinct value.
+   */
+  private Map<Object, BitSet> bitmaps = new HashMap<Object, BitSet>();
+
+  /**
+   * Indexed value of each row, null if the row is not indexed.
+   */
+  private Object[] rowValues = new Object[0];
+
+  /**
+   * Boxed class of the numeric values of the column, null if the column is
+   * not numeric.
+   */
+  private Class<?> keyClass;
+
+  /**
+   * Constructor. The index is built from the current content of the table.
+   * @param t indexed table
+   * @param column indexed column
+   */
+  public BitmapColumnIndex(Table t, int column) {
+    this.table = t;
+    this.col = column;
+    rebuild();
+  }
+
+  /**
+   * Gets the index of the indexed column.
+   * @return the column index
+   */
+  public int getColumn() {
+    return col;
+  }
+
+  /**
+   * Gets the number of distinct indexed values.
+   * @return the number of distinct values
+   */
+  public int getCardinality() {
+    return bitmaps.size();
+  }
+
+  /**
+   * Adds to a bitmap the rows whose value lies in a range.
+   * @param low lower bound, null if none
+   * @param lowInclusive true if the lower bound is inclusive
+   * @param high upper bound, null if none
+   * @param highInclusive true if the upper bound is inclusive
+   * @param result bitmap receiving the selected rows
+   * @return always true
+   */
+  public boolean select(Object low, boolean lowInclusive, Object high,
+      boolean highInclusive, BitSet result) {
+    if (low != null && low.equals(high) && lowInclusive && highInclusive) {
+      Object key = toKey(low);
+      if (!(key instanceof Number) || key.getClass() == keyClass) {
+        BitSet rows = bitmaps.get(key);
+        if (rows != null) {
+          result.or(rows);
+        }
+        return true;
+      }
+    }
+    for (Map.Entry<Object, BitSet> entry : bitmaps.entrySet()) {
+      Object val = entry.getKey();
+      if (low != null) {
+        int c = ComparisonPredicate.compare(val, low);
+        if (c < 0 || (c == 0 && !lowInclusive)) {
+          continue;
+        }
+      }
+      if (high != null) {
+        int c = ComparisonPredicate.compare(val, high);
+        if (c > 0 || (c == 0 && !highInclusive)) {
+          continue;
+        }
+      }
+      result.or(entry.getValue());
+    }
+    return true;
+  }
+
+  /**
+   * Notifies the index that the value of some rows may have changed.
+   * @param start first changed row
+   * @param end last changed row
+   */
+  public void rowsChanged(int start, int end) {
+    if (end >= rowValues.length) {
+      Object[] values = new Object[Math.max(end + 1,
+          rowValues.length + (rowValues.length >> 1))];
+      System.arraycopy(rowValues, 0, values, 0, rowValues.length);
+      rowValues = values;
+    }
+    for (int row = start; row <= end; row++) {
+      Object old = rowValues[row];
+      Object val = table.isValidRow(row)
+          ? toKey(table.getValue(row, col)) : null;
+      if (old != null && old.equals(val)) {
+        continue;
+      }
+      if (old != null) {
+        BitSet rows = bitmaps.get(old);
+        rows.clear(row);
+        if (rows.isEmpty()) {
+          bitmaps.remove(old);
+        }
+      }
+      if (val != null) {
+        BitSet rows = bitmaps.get(val);
+        if (rows == null) {
+          rows = new BitSet();
+          bitmaps.put(val, rows);
+        }
+        rows.set(row);
+      }
+      rowValues[row] = val;
+    }
+  }
+
+  /**
+   * Rebuilds the index from the whole table.
+   */
+  public void rebuild() {
+    keyClass = numericClass(table.getSchema().getColumnType(col));
+    bitmaps.clear();
+    rowValues = new Object[0];
+    int top = -1;
+    for (IntIterator it = table.rowIterator(); it.hasNext();) {
+      top = Math.max(top, it.nextInt());
+    }
+    if (top >= 0) {
+      rowsChanged(0, top);
+    }
+  }
+
+  /**
+   * Converts a numeric value to the class of the numeric values of the
+   * column, so that numerically equal values of different classes, such as
+   * an Integer and a Long, share the same key.
+   * @param val a value
+   * @return the converted value, or the value itself when it is not
+   * numeric, when the column is not numeric or when the conversion is not
+   * exact
+   */
+  private Object toKey(Object val) {
+    if (!(val instanceof Number) || keyClass == null
+        || val.getClass() == keyClass) {
+      return val;
+    }
+    Number n = (Number) val;
+    Object key;
+    if (keyClass == Integer.class) {
+      key = Integer.valueOf(n.intValue());
+    } else if (keyClass == Long.class) {
+      key = Long.valueOf(n.longValue());
+    } else if (keyClass == Double.class) {
+      key = Double.valueOf(n.doubleValue());
+    } else if (keyClass == Float.class) {
+      key = Float.valueOf(n.floatValue());
+    } else if (keyClass == Short.class) {
+      key = Short.valueOf(n.shortValue());
+    } else {
+      key = Byte.valueOf(n.byteValue());
+    }
+    return ComparisonPredicate.compare(key, val) == 0 ? key : val;
+  }
+
+  /**
+   * Gets the boxed class of a numeric column type.
+   * @param type a column type
+   * @return the boxed class, or null if the type is not numeric
+   */
+  private static Class<?> numericClass(Class<?> type) {
+    if (type == int.class || type == Integer.class) {
+      return Integer.class;
+    } else if (type == long.class || type == Long.class) {
+      return Long.class;
+    } else if (type == double.class || type == Double.class) {
+      return Double.class;
+    } else if (type == float.class || type == Float.class) {
+      return Float.class;
+    } else if (type == short.class || type == Short.class) {
+      return Short.class;
+    } else if (type == byte.class || type == Byte.class) {
+      return Byte.class;
+    }
+    return null;
+  }
+
+}
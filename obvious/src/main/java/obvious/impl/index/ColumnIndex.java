@@ -0,0 +1,76 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.index;
+
+import java.util.BitSet;
+
+/**
+ * Secondary index over a column of a table.
+ * <p>
+ * An index selects the rows whose value lies in a range. It is told which
+ * rows changed by {@link #rowsChanged(int, int) rowsChanged} and must then
+ * reflect their current values. Missing (null) values are never selected.
+ * </p>
+ * @author obvious
+ *
+ */
+public interface ColumnIndex {
+
+  /**
+   * Gets the index of the indexed column.
+   * @return the column index
+   */
+  int getColumn();
+
+  /**
+   * Adds to a bitmap the rows whose value lies in a range.
+   * @param low lower bound, null if none
+   * @param lowInclusive true if the lower bound is inclusive
+   * @param high upper bound, null if none
+   * @param highInclusive true if the upper bound is inclusive
+   * @param result bitmap receiving the selected rows
+   * @return false if the bounds cannot be handled by this index, in that
+   * case result is left unchanged
+   */
+  boolean select(Object low, boolean lowInclusive, Object high,
+      boolean highInclusive, BitSet result);
+
+  /**
+   * Notifies the index that the value of some rows may have changed, or
+   * that these rows have been added or removed.
+   * @param start first changed row
+   * @param end last changed row
+   */
+  void rowsChanged(int start, int end);
+
+  /**
+   * Rebuilds the index from the whole table.
+   */
+  void rebuild();
+
+}
@@ -0,0 +1,391 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.index;
+
+import java.util.BitSet;
+
+import obvious.data.Table;
+import obvious.data.util.IntIterator;
+import obvious.impl.ColumnTableImpl;
+import obvious.impl.column.Column;
+import obvious.impl.column.DoubleColumn;
+import obvious.impl.column.IntColumn;
+import obvious.impl.column.LongColumn;
+
+/**
+ * Index keeping the rows of a numeric column sorted by value.
+ * <p>
+ * A range is answered by two binary searches followed by a walk over the
+ * matching rows, so its cost depends on the number of selected rows and
+ * not on the size of the table. Changed rows are not re-sorted one by one:
+ * they are marked dirty, skipped in the sorted arrays and evaluated
+ * directly. The arrays are sorted again lazily, when the number of dirty
+ * rows becomes large. Values are compared as doubles.
+ * </p>
+ * @author obvious
+ *
+ */
+public class SortedColumnIndex implements ColumnIndex {
+
+  /**
+   * Minimum number of dirty rows before the index is sorted again.
+   */
+  private static final int MIN_DIRTY = 64;
+
+  /**
+   * Arrays smaller than this are sorted by insertion.
+   */
+  private static final int INSERTION_SORT_SIZE = 16;
+
+  /**
+   * Indexed table.
+   */
+  private Table table;
+
+  /**
+   * Indexed column.
+   */
+  private int col;
+
+  /**
+   * Primitive storage of the indexed column, null if values are read
+   * through the table. It is looked up again before each use since the
+   * table may replace its storages.
+   */
+  private Column column;
+
+  /**
+   * Sorted values.
+   */
+  private double[] keys = new double[0];
+
+  /**
+   * Row of each sorted value.
+   */
+  private int[] keyRows = new int[0];
+
+  /**
+   * Number of sorted values.
+   */
+  private int size;
+
+  /**
+   * Rows changed since the last sort.
+   */
+  private BitSet dirty = new BitSet();
+
+  /**
+   * Number of dirty rows.
+   */
+  private int dirtyCount;
+
+  /**
+   * Is a sort needed before the next selection.
+   */
+  private boolean stale;
+
+  /**
+   * Constructor. The index is built from the current content of the table.
+   * @param t indexed table
+   * @param col indexed column, its type has to be numeric
+   */
+  public SortedColumnIndex(Table t, int col) {
+    if (!isNumeric(t.getSchema().getColumnType(col))) {
+      throw new IllegalArgumentException("Column " + col + " is not numeric");
+    }
+    this.table = t;
+    this.col = col;
+    rebuild();
+  }
+
+  /**
+   * Looks up the primitive storage of the indexed column.
+   */
+  private void updateColumn() {
+    column = null;
+    if (table instanceof ColumnTableImpl) {
+      Column c = ((ColumnTableImpl) table).getColumn(col);
+      if (c instanceof IntColumn || c instanceof LongColumn
+          || c instanceof DoubleColumn) {
+        column = c;
+      }
+    }
+  }
+
+  /**
+   * Indicates if a type can be indexed by this class.
+   * @param type a column type
+   * @return true if the type is numeric
+   */
+  public static boolean isNumeric(Class<?> type) {
+    return Number.class.isAssignableFrom(type) || type == int.class
+        || type == long.class || type == double.class || type == float.class
+        || type == short.class || type == byte.class;
+  }
+
+  /**
+   * Gets the index of the indexed column.
+   * @return the column index
+   */
+  public int getColumn() {
+    return col;
+  }
+
+  /**
+   * Adds to a bitmap the rows whose value lies in a range.
+   * @param low lower bound, null if none
+   * @param lowInclusive true if the lower bound is inclusive
+   * @param high upper bound, null if none
+   * @param highInclusive true if the upper bound is inclusive
+   * @param result bitmap receiving the selected rows
+   * @return false if a bound is not a number
+   */
+  public boolean select(Object low, boolean lowInclusive, Object high,
+      boolean highInclusive, BitSet result) {
+    if ((low != null && !(low instanceof Number))
+        || (high != null && !(high instanceof Number))) {
+      return false;
+    }
+    if (stale) {
+      rebuild();
+    } else {
+      updateColumn();
+    }
+    int from = 0;
+    int to = size;
+    if (low != null) {
+      from = search(((Number) low).doubleValue(), lowInclusive);
+    }
+    if (high != null) {
+      to = search(((Number) high).doubleValue(), !highInclusive);
+    }
+    for (int i = from; i < to; i++) {
+      int row = keyRows[i];
+      if (dirtyCount == 0 || !dirty.get(row)) {
+        result.set(row);
+      }
+    }
+    for (int row = dirty.nextSetBit(0); row >= 0;
+        row = dirty.nextSetBit(row + 1)) {
+      if (!table.isValidRow(row) || isNull(row)) {
+        continue;
+      }
+      double val = getDouble(row);
+      if (low != null) {
+        int c = Double.compare(val, ((Number) low).doubleValue());
+        if (c < 0 || (c == 0 && !lowInclusive)) {
+          continue;
+        }
+      }
+      if (high != null) {
+        int c = Double.compare(val, ((Number) high).doubleValue());
+        if (c > 0 || (c == 0 && !highInclusive)) {
+          continue;
+        }
+      }
+      result.set(row);
+    }
+    return true;
+  }
+
+  /**
+   * Searches the position of a value in the sorted keys.
+   * @param val searched value
+   * @param first true to get the first key greater or equal to the value,
+   * false to get the first key strictly greater
+   * @return a position between 0 and the number of keys
+   */
+  private int search(double val, boolean first) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = Double.compare(keys[mid], val);
+      if (c < 0 || (c == 0 && !first)) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Notifies the index that the value of some rows may have changed.
+   * @param start first changed row
+   * @param end last changed row
+   */
+  public void rowsChanged(int start, int end) {
+    if (stale) {
+      return;
+    }
+    int maxDirty = Math.max(MIN_DIRTY, size >> 4);
+    if (end - start + 1 > maxDirty) {
+      stale = true;
+      return;
+    }
+    for (int row = start; row <= end; row++) {
+      if (!dirty.get(row)) {
+        dirty.set(row);
+        dirtyCount++;
+      }
+    }
+    if (dirtyCount > maxDirty) {
+      stale = true;
+    }
+  }
+
+  /**
+   * Rebuilds the index from the whole table.
+   */
+  public void rebuild() {
+    updateColumn();
+    int count = table.getRowCount();
+    if (keys.length < count) {
+      keys = new double[count];
+      keyRows = new int[count];
+    }
+    size = 0;
+    for (IntIterator it = table.rowIterator(); it.hasNext();) {
+      int row = it.nextInt();
+      if (!isNull(row)) {
+        if (size == keys.length) {
+          int capacity = size + (size >> 1) + 1;
+          double[] newKeys = new double[capacity];
+          int[] newRows = new int[capacity];
+          System.arraycopy(keys, 0, newKeys, 0, size);
+          System.arraycopy(keyRows, 0, newRows, 0, size);
+          keys = newKeys;
+          keyRows = newRows;
+        }
+        keys[size] = getDouble(row);
+        keyRows[size] = row;
+        size++;
+      }
+    }
+    sort(0, size - 1);
+    dirty.clear();
+    dirtyCount = 0;
+    stale = false;
+  }
+
+  /**
+   * Indicates if the value of a row is missing.
+   * @param row a valid row
+   * @return true if the value is null
+   */
+  private boolean isNull(int row) {
+    if (column != null) {
+      return column.isNull(row);
+    }
+    return !(table.getValue(row, col) instanceof Number);
+  }
+
+  /**
+   * Gets the value of a row.
+   * @param row a valid row with a non null value
+   * @return the value as a double
+   */
+  private double getDouble(int row) {
+    if (column != null) {
+      return column.getDouble(row);
+    }
+    return ((Number) table.getValue(row, col)).doubleValue();
+  }
+
+  /**
+   * Sorts a part of the keys, moving the rows along.
+   * @param lo first sorted position
+   * @param hi last sorted position
+   */
+  private void sort(int lo, int hi) {
+    while (hi - lo >= INSERTION_SORT_SIZE) {
+      int mid = (lo + hi) >>> 1;
+      if (Double.compare(keys[mid], keys[lo]) < 0) {
+        swap(lo, mid);
+      }
+      if (Double.compare(keys[hi], keys[lo]) < 0) {
+        swap(lo, hi);
+      }
+      if (Double.compare(keys[hi], keys[mid]) < 0) {
+        swap(mid, hi);
+      }
+      double pivot = keys[mid];
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (Double.compare(keys[i], pivot) < 0) {
+          i++;
+        }
+        while (Double.compare(keys[j], pivot) > 0) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i, j);
+          i++;
+          j--;
+        }
+      }
+      // Recurse on the smaller part to bound the stack depth.
+      if (j - lo < hi - i) {
+        sort(lo, j);
+        lo = i;
+      } else {
+        sort(i, hi);
+        hi = j;
+      }
+    }
+    for (int i = lo + 1; i <= hi; i++) {
+      double key = keys[i];
+      int row = keyRows[i];
+      int j = i - 1;
+      while (j >= lo && Double.compare(keys[j], key) > 0) {
+        keys[j + 1] = keys[j];
+        keyRows[j + 1] = keyRows[j];
+        j--;
+      }
+      keys[j + 1] = key;
+      keyRows[j + 1] = row;
+    }
+  }
+
+  /**
+   * Swaps two sorted positions.
+   * @param i first position
+   * @param j second position
+   */
+  private void swap(int i, int j) {
+    double key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    int row = keyRows[i];
+    keyRows[i] = keyRows[j];
+    keyRows[j] = row;
+  }
+
+}
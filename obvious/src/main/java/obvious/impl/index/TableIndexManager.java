@@ -0,0 +1,388 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import obvious.data.Table;
+import obvious.data.event.TableListener;
+import obvious.data.util.IntIterator;
+import obvious.data.util.Predicate;
+import obvious.impl.BitSetIntIterator;
+import obvious.impl.FilterIntIterator;
+import obvious.impl.predicate.AndPredicate;
+import obvious.impl.predicate.ComparisonPredicate;
+import obvious.impl.predicate.NotPredicate;
+import obvious.impl.predicate.OrPredicate;
+import obvious.impl.predicate.RangePredicate;
+
+/**
+ * Manages the secondary indexes of a table and answers predicates with
+ * them.
+ * <p>
+ * The manager listens to the table to keep its indexes up to date.
+ * Comparisons and ranges on indexed columns, and their conjunctions,
+ * disjunctions and negations, are answered with bitmaps of rows. In a
+ * conjunction, clauses that cannot use an index are only evaluated on the
+ * rows selected by the other clauses. Other predicates are evaluated on
+ * every row.
+ * </p>
+ * @author obvious
+ *
+ */
+public class TableIndexManager implements TableListener {
+
+  /**
+   * Columns with at most this number of distinct values get a bitmap index
+   * when the kind of index is not specified.
+   */
+  public static final int BITMAP_MAX_CARDINALITY = 256;
+
+  /**
+   * Indexed table.
+   */
+  private Table table;
+
+  /**
+   * Indexes by column.
+   */
+  private Map<Integer, ColumnIndex> indexes =
+    new HashMap<Integer, ColumnIndex>();
+
+  /**
+   * Constructor. The manager registers itself as a listener of the table.
+   * @param t indexed table
+   */
+  public TableIndexManager(Table t) {
+    this.table = t;
+    t.addTableListener(this);
+  }
+
+  /**
+   * Creates an index on a column. Numeric columns with many distinct values
+   * get a sorted index, other columns a bitmap index.
+   * @param field name of the column
+   * @return the created index
+   */
+  public ColumnIndex createIndex(String field) {
+    int col = columnOf(field);
+    if (SortedColumnIndex.isNumeric(table.getSchema().getColumnType(col))
+        && countDistinct(col, BITMAP_MAX_CARDINALITY + 1)
+        > BITMAP_MAX_CARDINALITY) {
+      return putIndex(new SortedColumnIndex(table, col));
+    }
+    return putIndex(new BitmapColumnIndex(table, col));
+  }
+
+  /**
+   * Creates a sorted index on a numeric column.
+   * @param field name of the column
+   * @return the created index
+   */
+  public ColumnIndex createSortedIndex(String field) {
+    return putIndex(new SortedColumnIndex(table, columnOf(field)));
+  }
+
+  /**
+   * Creates a bitmap index on a column.
+   * @param field name of the column
+   * @return the created index
+   */
+  public ColumnIndex createBitmapIndex(String field) {
+    return putIndex(new BitmapColumnIndex(table, columnOf(field)));
+  }
+
+  /**
+   * Gets the index of a column.
+   * @param field name of the column
+   * @return the index, null if the column is not indexed
+   */
+  public ColumnIndex getIndex(String field) {
+    return indexes.get(table.getSchema().getColumnIndex(field));
+  }
+
+  /**
+   * Removes the index of a column.
+   * @param field name of the column
+   * @return true if the column was indexed
+   */
+  public boolean removeIndex(String field) {
+    return indexes.remove(table.getSchema().getColumnIndex(field)) != null;
+  }
+
+  /**
+   * Gets the index of a column from its name.
+   * @param field name of the column
+   * @return the column index
+   */
+  private int columnOf(String field) {
+    int col = table.getSchema().getColumnIndex(field);
+    if (col < 0) {
+      throw new IllegalArgumentException("Unknown column: " + field);
+    }
+    return col;
+  }
+
+  /**
+   * Registers an index, replacing the previous index of its column.
+   * @param index an index
+   * @return the index
+   */
+  private ColumnIndex putIndex(ColumnIndex index) {
+    indexes.put(index.getColumn(), index);
+    return index;
+  }
+
+  /**
+   * Counts the distinct values of a column, stopping at a limit.
+   * @param col a column
+   * @param limit count at which to stop
+   * @return the number of distinct values, or limit if there are more
+   */
+  private int countDistinct(int col, int limit) {
+    Set<Object> values = new HashSet<Object>();
+    for (IntIterator it = table.rowIterator();
+        it.hasNext() && values.size() < limit;) {
+      Object val = table.getValue(it.nextInt(), col);
+      if (val != null) {
+        values.add(val);
+      }
+    }
+    return values.size();
+  }
+
+  /**
+   * Gets an iterator over the rows matching a predicate, using the indexes
+   * when possible.
+   * @param pred a predicate
+   * @return an iterator over the matching rows
+   */
+  public IntIterator rowIterator(Predicate pred) {
+    BitSet rows = select(pred);
+    if (rows == null) {
+      return new FilterIntIterator(table, pred);
+    }
+    return new BitSetIntIterator(rows);
+  }
+
+  /**
+   * Selects the rows matching a predicate using the indexes.
+   * @param pred a predicate
+   * @return a new bitmap of the matching rows, or null if the predicate
+   * cannot be answered by the indexes
+   */
+  public BitSet select(Predicate pred) {
+    if (pred instanceof ComparisonPredicate) {
+      return selectComparison((ComparisonPredicate) pred);
+    } else if (pred instanceof RangePredicate) {
+      RangePredicate range = (RangePredicate) pred;
+      return selectRange(range.getField(), range.getLow(),
+          range.isLowInclusive(), range.getHigh(), range.isHighInclusive());
+    } else if (pred instanceof AndPredicate) {
+      return selectAnd((AndPredicate) pred);
+    } else if (pred instanceof OrPredicate) {
+      OrPredicate or = (OrPredicate) pred;
+      BitSet result = new BitSet();
+      for (int i = 0; i < or.size(); i++) {
+        BitSet rows = select(or.get(i));
+        if (rows == null) {
+          return null;
+        }
+        result.or(rows);
+      }
+      return result;
+    } else if (pred instanceof NotPredicate) {
+      BitSet rows = select(((NotPredicate) pred).getPredicate());
+      if (rows == null) {
+        return null;
+      }
+      BitSet result = liveRows();
+      result.andNot(rows);
+      return result;
+    }
+    return null;
+  }
+
+  /**
+   * Selects the rows matching a comparison.
+   * @param pred a comparison
+   * @return a new bitmap of the matching rows, or null
+   */
+  private BitSet selectComparison(ComparisonPredicate pred) {
+    Object val = pred.getValue();
+    if (val == null) {
+      return indexes.containsKey(table.getSchema().getColumnIndex(
+          pred.getField())) ? new BitSet() : null;
+    }
+    String field = pred.getField();
+    switch (pred.getOperation()) {
+      case ComparisonPredicate.LT:
+        return selectRange(field, null, false, val, false);
+      case ComparisonPredicate.GT:
+        return selectRange(field, val, false, null, false);
+      case ComparisonPredicate.EQ:
+        return selectRange(field, val, true, val, true);
+      case ComparisonPredicate.LTEQ:
+        return selectRange(field, null, false, val, true);
+      case ComparisonPredicate.GTEQ:
+        return selectRange(field, val, true, null, false);
+      default:
+        BitSet result = selectRange(field, null, false, val, false);
+        if (result != null) {
+          result.or(selectRange(field, val, false, null, false));
+        }
+        return result;
+    }
+  }
+
+  /**
+   * Selects the rows whose value lies in a range.
+   * @param field name of the column
+   * @param low lower bound, null if none
+   * @param lowInclusive true if the lower bound is inclusive
+   * @param high upper bound, null if none
+   * @param highInclusive true if the upper bound is inclusive
+   * @return a new bitmap of the matching rows, or null
+   */
+  private BitSet selectRange(String field, Object low, boolean lowInclusive,
+      Object high, boolean highInclusive) {
+    ColumnIndex index = indexes.get(table.getSchema().getColumnIndex(field));
+    if (index == null) {
+      return null;
+    }
+    BitSet result = new BitSet();
+    if (!index.select(low, lowInclusive, high, highInclusive, result)) {
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * Selects the rows matching a conjunction. Clauses without index are
+   * evaluated on the rows selected by the indexed clauses.
+   * @param pred a conjunction
+   * @return a new bitmap of the matching rows, or null if no clause can
+   * use an index
+   */
+  private BitSet selectAnd(AndPredicate pred) {
+    BitSet result = null;
+    List<Predicate> residual = new ArrayList<Predicate>();
+    for (int i = 0; i < pred.size(); i++) {
+      BitSet rows = select(pred.get(i));
+      if (rows == null) {
+        residual.add(pred.get(i));
+      } else if (result == null) {
+        result = rows;
+      } else {
+        result.and(rows);
+      }
+    }
+    if (result == null) {
+      return null;
+    }
+    for (int row = result.nextSetBit(0); row >= 0;
+        row = result.nextSetBit(row + 1)) {
+      for (Predicate clause : residual) {
+        if (!clause.apply(table, row)) {
+          result.clear(row);
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the live rows of the table.
+   * @return a new bitmap of the rows
+   */
+  private BitSet liveRows() {
+    BitSet rows = new BitSet();
+    for (IntIterator it = table.rowIterator(); it.hasNext();) {
+      rows.set(it.nextInt());
+    }
+    return rows;
+  }
+
+  /**
+   * Specifies that the following calls to tableChanged belong to the same
+   * transaction.
+   * @param context an integer used, if needed, to identify the edition
+   * context of the edit.
+   */
+  public void beginEdit(int context) {
+  }
+
+  /**
+   * Specifies that the calls to tableChanged belonging to the same
+   * transaction are finished.
+   * @param context an integer used, if needed, to retrieve the edition
+   * context
+   * @return true if transaction succeed
+   */
+  public boolean endEdit(int context) {
+    return true;
+  }
+
+  /**
+   * Checks if the table meets criteria defined by invariant(s).
+   * @return true if the invariant is checked
+   */
+  public boolean checkInvariants() {
+    return true;
+  }
+
+  /**
+   * Notifies that a table has changed. The indexes of the changed columns
+   * are updated, an event without row range rebuilds them.
+   * @param t the table that has changed
+   * @param start the starting row index of the changed table region
+   * @param end the ending row index of the changed table region
+   * @param col the column that has changed, or ALL_COLUMN
+   * @param type the type of modification
+   */
+  public void tableChanged(Table t, int start, int end, int col, int type) {
+    for (ColumnIndex index : indexes.values()) {
+      if (col != TableListener.ALL_COLUMN && col != index.getColumn()) {
+        continue;
+      }
+      if (start < 0 || end < start) {
+        index.rebuild();
+      } else {
+        index.rowsChanged(start, end);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.predicate;
+
+import obvious.data.Table;
+import obvious.data.util.Predicate;
+
+/**
+ * Predicate comparing the value of a column to a constant.
+ * <p>
+ * Numbers are compared by value whatever their class, other values have
+ * to be Comparable. A missing (null) value never matches.
+ * </p>
+ * @author obvious
+ *
+ */
+public class ComparisonPredicate implements Predicate {
+
+  /** Indicates a less-than comparison. */
+  public static final int LT   = 0;
+  /** Indicates a greater-than comparison. */
+  public static final int GT   = 1;
+  /** Indicates a equals comparison. */
+  public static final int EQ   = 2;
+  /** Indicates a not-equals comparison. */
+  public static final int NEQ  = 3;
+  /** Indicates a less-than-or-equals comparison. */
+  public static final int LTEQ = 4;
+  /** Indicates a greater-than-or-equals comparison. */
+  public static final int GTEQ = 5;
+
+  /**
+   * Compared column.
+   */
+  private String field;
+
+  /**
+   * Comparison operation.
+   */
+  private int operation;
+
+  /**
+   * Value the column is compared to.
+   */
+  private Object value;
+
+  /**
+   * Constructor.
+   * @param op the comparison operation (LT, GT, EQ, NEQ, LTEQ or GTEQ)
+   * @param fieldName name of the compared column
+   * @param val value the column is compared to
+   */
+  public ComparisonPredicate(int op, String fieldName, Object val) {
+    if (op < LT || op > GTEQ) {
+      throw new IllegalArgumentException("Unknown operation: " + op);
+    }
+    this.operation = op;
+    this.field = fieldName;
+    this.value = val;
+  }
+
+  /**
+   * Gets the name of the compared column.
+   * @return the column name
+   */
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * Gets the comparison operation.
+   * @return the operation code
+   */
+  public int getOperation() {
+    return operation;
+  }
+
+  /**
+   * Gets the value the column is compared to.
+   * @return the compared value
+   */
+  public Object getValue() {
+    return value;
+  }
+
+  /**
+   * Applies a predicate on a table's row.
+   * @param table an obvious table
+   * @param rowId row index
+   * @return true if it applies
+   */
+  public boolean apply(Table table, int rowId) {
+    Object val = table.getValue(rowId, field);
+    if (val == null || value == null) {
+      return false;
+    }
+    int c = compare(val, value);
+    switch (operation) {
+      case LT:
+        return c < 0;
+      case GT:
+        return c > 0;
+      case EQ:
+        return c == 0;
+      case NEQ:
+        return c != 0;
+      case LTEQ:
+        return c <= 0;
+      default:
+        return c >= 0;
+    }
+  }
+
+  /**
+   * Compares two non null values. Numbers are compared by value, other
+   * values with their natural ordering.
+   * @param a first value
+   * @param b second value
+   * @return a negative integer, zero or a positive integer as a is less
+   * than, equal to or greater than b
+   */
+  @SuppressWarnings("unchecked")
+  public static int compare(Object a, Object b) {
+    if (a instanceof Number && b instanceof Number) {
+      return Double.compare(((Number) a).doubleValue(),
+          ((Number) b).doubleValue());
+    }
+    return ((Comparable<Object>) a).compareTo(b);
+  }
+
+  /**
+   * Returns a string representation of the predicate.
+   * @return a string
+   */
+  @Override
+  public String toString() {
+    final String[] ops = {"<", ">", "=", "!=", "<=", ">="};
+    return field + " " + ops[operation] + " " + value;
+  }
+
+}
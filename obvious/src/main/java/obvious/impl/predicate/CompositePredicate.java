@@ -0,0 +1,99 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import obvious.data.util.Predicate;
+
+/**
+ * Base class for predicates combining other predicates.
+ * @author obvious
+ *
+ */
+public abstract class CompositePredicate implements Predicate {
+
+  /**
+   * Combined predicates.
+   */
+  private List<Predicate> clauses;
+
+  /**
+   * Constructor.
+   * @param preds combined predicates
+   */
+  protected CompositePredicate(Predicate... preds) {
+    this.clauses = new ArrayList<Predicate>(preds.length);
+    for (Predicate pred : preds) {
+      add(pred);
+    }
+  }
+
+  /**
+   * Adds a predicate to the combination.
+   * @param pred a predicate
+   */
+  public void add(Predicate pred) {
+    clauses.add(pred);
+  }
+
+  /**
+   * Gets the number of combined predicates.
+   * @return the number of predicates
+   */
+  public int size() {
+    return clauses.size();
+  }
+
+  /**
+   * Gets a combined predicate.
+   * @param i index of the predicate
+   * @return the predicate
+   */
+  public Predicate get(int i) {
+    return clauses.get(i);
+  }
+
+  /**
+   * Returns a string representation of the predicate.
+   * @param op name of the boolean operator
+   * @return a string
+   */
+  protected String toString(String op) {
+    StringBuilder sb = new StringBuilder("(");
+    for (int i = 0; i < clauses.size(); i++) {
+      if (i > 0) {
+        sb.append(' ').append(op).append(' ');
+      }
+      sb.append(clauses.get(i));
+    }
+    return sb.append(')').toString();
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.predicate;
+
+import obvious.data.Table;
+import obvious.data.util.Predicate;
+
+/**
+ * Predicate matching the rows matched by at least one of its clauses.
+ * @author obvious
+ *
+ */
+public class OrPredicate extends CompositePredicate {
+
+  /**
+   * Constructor.
+   * @param preds combined predicates
+   */
+  public OrPredicate(Predicate... preds) {
+    super(preds);
+  }
+
+  /**
+   * Applies a predicate on a table's row.
+   * @param table an obvious table
+   * @param rowId row index
+   * @return true if it applies
+   */
+  public boolean apply(Table table, int rowId) {
+    for (int i = 0; i < size(); i++) {
+      if (get(i).apply(table, rowId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns a string representation of the predicate.
+   * @return a string
+   */
+  @Override
+  public String toString() {
+    return toString("OR");
+  }
+
+}
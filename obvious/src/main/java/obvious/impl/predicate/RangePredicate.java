@@ -0,0 +1,175 @@
+/*
+* Copyright (c) 2011, INRIA
+* All rights reserved.
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions are met:
+*
+*     * Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*     * Redistributions in binary form must reproduce the above copyright
+*       notice, this list of conditions and the following disclaimer in the
+*       documentation and/or other materials provided with the distribution.
+*     * Neither the name of INRIA nor the names of its contributors may
+*       be used to endorse or promote products derived from this software
+*       without specific prior written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND ANY
+* EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+* WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+* DISCLAIMED. IN NO EVENT SHALL THE REGENTS AND CONTRIBUTORS BE LIABLE FOR ANY
+* DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+* LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+* ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+* (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package obvious.impl.predicate;
+
+import obvious.data.Table;
+import obvious.data.util.Predicate;
+
+/**
+ * Predicate testing if the value of a column lies between two bounds.
+ * A null bound leaves the range open on its side. A missing (null) value
+ * never matches.
+ * @author obvious
+ *
+ */
+public class RangePredicate implements Predicate {
+
+  /** Indicates that both bounds are inclusive. */
+  public static final int IN_IN = 0;
+  /** Indicates an inclusive left bound and an exclusive right bound. */
+  public static final int IN_EX = 1;
+  /** Indicates an exclusive left bound and an inclusive right bound. */
+  public static final int EX_IN = 2;
+  /** Indicates that both bounds are exclusive. */
+  public static final int EX_EX = 3;
+
+  /**
+   * Tested column.
+   */
+  private String field;
+
+  /**
+   * Inclusiveness of the bounds.
+   */
+  private int operation;
+
+  /**
+   * Lower bound, null if none.
+   */
+  private Object low;
+
+  /**
+   * Upper bound, null if none.
+   */
+  private Object high;
+
+  /**
+   * Constructor. Both bounds are inclusive.
+   * @param fieldName name of the tested column
+   * @param lowBound lower bound, null if none
+   * @param highBound upper bound, null if none
+   */
+  public RangePredicate(String fieldName, Object lowBound, Object highBound) {
+    this(IN_IN, fieldName, lowBound, highBound);
+  }
+
+  /**
+   * Constructor.
+   * @param op inclusiveness of the bounds (IN_IN, IN_EX, EX_IN or EX_EX)
+   * @param fieldName name of the tested column
+   * @param lowBound lower bound, null if none
+   * @param highBound upper bound, null if none
+   */
+  public RangePredicate(int op, String fieldName, Object lowBound,
+      Object highBound) {
+    if (op < IN_IN || op > EX_EX) {
+      throw new IllegalArgumentException("Unknown operation: " + op);
+    }
+    this.operation = op;
+    this.field = fieldName;
+    this.low = lowBound;
+    this.high = highBound;
+  }
+
+  /**
+   * Gets the name of the tested column.
+   * @return the column name
+   */
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * Gets the lower bound.
+   * @return the lower bound, null if none
+   */
+  public Object getLow() {
+    return low;
+  }
+
+  /**
+   * Gets the upper bound.
+   * @return the upper bound, null if none
+   */
+  public Object getHigh() {
+    return high;
+  }
+
+  /**
+   * Indicates if the lower bound is inclusive.
+   * @return true if inclusive
+   */
+  public boolean isLowInclusive() {
+    return operation == IN_IN || operation == IN_EX;
+  }
+
+  /**
+   * Indicates if the upper bound is inclusive.
+   * @return true if inclusive
+   */
+  public boolean isHighInclusive() {
+    return operation == IN_IN || operation == EX_IN;
+  }
+
+  /**
+   * Applies a predicate on a table's row.
+   * @param table an obvious table
+   * @param rowId row index
+   * @return true if it applies
+   */
+  public boolean apply(Table table, int rowId) {
+    Object val = table.getValue(rowId, field);
+    if (val == null) {
+      return false;
+    }
+    if (low != null) {
+      int c = ComparisonPredicate.compare(val, low);
+      if (c < 0 || (c == 0 && !isLowInclusive())) {
+        return false;
+      }
+    }
+    if (high != null) {
+      int c = ComparisonPredicate.compare(val, high);
+      if (c > 0 || (c == 0 && !isHighInclusive())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a string representation of the predicate.
+   * @return a string
+   */
+  @Override
+  public String toString() {
+    return field + " in " + (isLowInclusive() ? "[" : "]") + low + ", "
+        + high + (isHighInclusive() ? "]" : "[");
+  }
+
+}
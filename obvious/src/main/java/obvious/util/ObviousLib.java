@@ -33,8 +33,9 @@ import obvious.data.Node;
 import obvious.data.Table;
 import obvious.data.Network;
 import obvious.data.Tree;
-import obvious.data.util.IntIterator;
-import obvious.impl.TupleImpl;
+import obvious.data.util.ScannableTable;
+import obvious.data.util.TupleCursor;
+import obvious.impl.TableTupleCursor;
 
 /**
  * A class that contains convenient methods for Obvious.
@@ -53,14 +54,35 @@ public final class ObviousLib {
   /**
    * Fills an obvious table with the content of an another table.
    * Tables have to have the same schema.
+   * The source table is read with {@link #scan(Table) scan}: a single tuple
+   * is moved along its rows, so the filled table has to copy the values of
+   * the tuple given to addRow.
    * @param sourceTable content table
    * @param filledTable table to fill
    */
   public static void fillTable(Table sourceTable, Table filledTable) {
-    for (IntIterator it = sourceTable.rowIterator(); it.hasNext();) {
-      int rowId = it.nextInt();
-      filledTable.addRow(new TupleImpl(sourceTable, rowId));
+    TupleCursor cursor = scan(sourceTable);
+    try {
+      while (cursor.next()) {
+        filledTable.addRow(cursor.getTuple());
+      }
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Opens a cursor reading all the rows of a table sequentially. Tables
+   * implementing ScannableTable provide their own cursor, other tables are
+   * read through their row iterator.
+   * @param table the table to read
+   * @return a cursor, to be closed once used
+   */
+  public static TupleCursor scan(Table table) {
+    if (table instanceof ScannableTable) {
+      return ((ScannableTable) table).scan();
     }
+    return new TableTupleCursor(table);
   }
 
   /**
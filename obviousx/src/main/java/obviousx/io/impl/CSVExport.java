@@ -32,6 +32,9 @@ import java.io.FileWriter;
 import java.text.Format;
 
 import obvious.data.Table;
+import obvious.data.Tuple;
+import obvious.data.util.TupleCursor;
+import obvious.util.ObviousLib;
 import obviousx.ObviousxException;
 import obviousx.io.Exporter;
 import obviousx.text.TypedFormat;
@@ -122,7 +125,6 @@ public class CSVExport implements Exporter {
   public void createFile() throws ObviousxException {
     try {
     int numberColumn = this.table.getSchema().getColumnCount();
-    int numberRow = this.table.getRowCount();
     String[] title =  new String[numberColumn];
     String[] type = new String[numberColumn];
     String[] defaultValue = new String[numberColumn];
@@ -142,13 +144,19 @@ public class CSVExport implements Exporter {
     writer.writeNext(title);
     writer.writeNext(type);
     writer.writeNext(defaultValue);
-    // fill data in the csv file.
-    for (int i = 0; i < numberRow; i++) {
-      String[] currentRow = new String[numberColumn];
-      for (int j = 0; j < numberColumn; j++) {
-        currentRow[j] = this.table.getValue(i, j).toString();
+    // fill data in the csv file, reading the table sequentially.
+    String[] currentRow = new String[numberColumn];
+    TupleCursor cursor = ObviousLib.scan(this.table);
+    try {
+      while (cursor.next()) {
+        Tuple tuple = cursor.getTuple();
+        for (int j = 0; j < numberColumn; j++) {
+          currentRow[j] = tuple.get(j).toString();
+        }
+        writer.writeNext(currentRow);
       }
-      writer.writeNext(currentRow);
+    } finally {
+      cursor.close();
     }
     writer.close();
     } catch (Exception e) {